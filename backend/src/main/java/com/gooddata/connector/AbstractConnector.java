@@ -27,12 +27,15 @@ import com.gooddata.Constants;
 import com.gooddata.exception.GdcIntegrationErrorException;
 import com.gooddata.exception.GdcProjectAccessException;
 import com.gooddata.exception.HttpMethodException;
+import com.gooddata.exception.InternalErrorException;
 import com.gooddata.exception.InvalidParameterException;
 import com.gooddata.exception.ProcessingException;
+import com.gooddata.integration.datatransfer.GdcDataTransferAPI;
 import com.gooddata.integration.model.Column;
 import com.gooddata.integration.model.SLI;
 import com.gooddata.integration.rest.GdcRESTApiWrapper;
 import com.gooddata.modeling.generator.MaqlGenerator;
+import com.gooddata.modeling.model.LdmType;
 import com.gooddata.modeling.model.SourceColumn;
 import com.gooddata.modeling.model.SourceSchema;
 import com.gooddata.naming.N;
@@ -42,16 +45,30 @@ import com.gooddata.processor.ProcessingContext;
 import com.gooddata.transform.Transformer;
 import com.gooddata.util.CSVReader;
 import com.gooddata.util.CSVWriter;
+import com.gooddata.util.ExternalSorter;
 import com.gooddata.util.FileUtil;
+import com.gooddata.util.Metrics;
 import org.apache.log4j.Logger;
 import org.apache.log4j.MDC;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.Writer;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 /**
  * GoodData abstract connector implements functionality that can be reused in several connectors.
@@ -65,6 +82,25 @@ public abstract class AbstractConnector implements Connector {
 
     private static int ETL_POLL_INTERVAL = 10000;
 
+    /**
+     * Default number of projects that TransferData processes concurrently
+     */
+    public static final int DEFAULT_TRANSFER_PARALLELISM = 4;
+
+    public static final String TRANSFER_STATUS_PENDING = "PENDING";
+    public static final String TRANSFER_STATUS_STARTED = "STARTED";
+    public static final String TRANSFER_STATUS_OK = "OK";
+    public static final String TRANSFER_STATUS_FAILED = "FAILED";
+
+    // names of the data loading phase metrics
+    public static final String METRIC_EXTRACT = "extract";
+    public static final String METRIC_TRANSFORM = "transform";
+    public static final String METRIC_DEPLOY = "deploy";
+    public static final String METRIC_TRANSFER_WORKERS = "transfer.workers";
+    public static final String METRIC_START_LOADING = "startLoading";
+    public static final String METRIC_PROJECT_TRANSFER = "transfer.project";
+    public static final String METRIC_CHECK_LOADING_STATUS = "checkLoadingStatus";
+
     /**
      * The LDM schema of the data source
      */
@@ -132,6 +168,7 @@ public abstract class AbstractConnector implements Connector {
         cw.writeNext(header);
         String[] row = cr.readNext();
         int rowCnt = 0;
+        long transformTime = 0;
         while (row != null) {
             rowCnt++;
             if (row.length == 1 && row[0].length() == 0) {
@@ -139,11 +176,13 @@ public abstract class AbstractConnector implements Connector {
                 continue;
             }
             if (transform) {
+                long start = Metrics.start();
                 try {
                     row = t.transformRow(row, dateLength);
                 } catch (InvalidParameterException e) {
                     throw new InvalidParameterException(e.getMessage() + " Error occured at row " + rowCnt);
                 }
+                transformTime += System.nanoTime() - start;
             }
             cw.writeNext(row);
             cw.flush();
@@ -151,6 +190,11 @@ public abstract class AbstractConnector implements Connector {
         }
         cw.close();
         cr.close();
+        if (transform) {
+            Metrics.time(METRIC_TRANSFORM, transformTime);
+            Metrics.count(METRIC_TRANSFORM + Metrics.ROWS_SUFFIX, rowCnt);
+        }
+        Metrics.count(METRIC_EXTRACT + Metrics.ROWS_SUFFIX, rowCnt);
         return rowCnt;
     }
 
@@ -227,9 +271,25 @@ public abstract class AbstractConnector implements Connector {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     */
     public String generateMaqlCreate() {
+        StringBuilder maql = new StringBuilder();
+        try {
+            generateMaqlCreate(maql);
+        } catch (IOException e) {
+            throw new InternalErrorException("Can't generate the MAQL.", e);
+        }
+        return maql.toString();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void generateMaqlCreate(Appendable out) throws IOException {
         MaqlGenerator mg = new MaqlGenerator(schema);
-        return mg.generateMaqlCreate();
+        mg.generateMaqlCreate(out);
     }
 
     /**
@@ -276,10 +336,14 @@ public abstract class AbstractConnector implements Connector {
         c.paramsProcessed();
 
         l.debug("Executing maql generation.");
-        String maql = cc.generateMaqlCreate();
-        l.debug("Finished maql generation maql:\n" + maql);
-
-        FileUtil.writeStringToFile(maql, maqlFile);
+        // the MAQL of wide datasets is large, it is streamed to the file
+        Writer maql = FileUtil.createBufferedUtf8Writer(maqlFile);
+        try {
+            cc.generateMaqlCreate(maql);
+        } finally {
+            maql.close();
+        }
+        l.debug("Finished maql generation into " + maqlFile);
         l.info("MAQL script successfully generated into " + maqlFile);
     }
 
@@ -320,7 +384,9 @@ public abstract class AbstractConnector implements Connector {
     protected void transferData(Command c, CliParams p, ProcessingContext ctx) throws IOException, InterruptedException {
         l.debug("Transferring data.");
         Connector cc = ctx.getConnectorMandatory();
-        String pid = ctx.getProjectIdMandatory();
+        // the active project isn't needed when the data go to an explicit list of projects
+        String pid = (c.checkParam("projects") || c.checkParam("projectsFile")) ? ctx.getProjectId() :
+                ctx.getProjectIdMandatory();
 
         boolean waitForFinish = true;
         if (c.checkParam("waitForFinish")) {
@@ -358,68 +424,71 @@ public abstract class AbstractConnector implements Connector {
         String ssn = schema.getName();
         for (SourceColumn sc : schema.getColumns()) {
             String scn = sc.getName();
-            if (!sc.getLdmType().equalsIgnoreCase(SourceColumn.LDM_TYPE_IGNORE)) {
+            LdmType type = sc.getLdmTypeEnum();
+            if (type != LdmType.IGNORE) {
                 String schemaName = (sc.getSchemaReference() == null) ? ssn : sc.getSchemaReference();
                 Column c = new Column(sc.getName());
                 c.setMode(Column.LM_FULL);
-                if (sc.getLdmType().equalsIgnoreCase(SourceColumn.LDM_TYPE_ATTRIBUTE) ||
-                        sc.getLdmType().equalsIgnoreCase(SourceColumn.LDM_TYPE_CONNECTION_POINT) ||
-                        sc.getLdmType().equalsIgnoreCase(SourceColumn.LDM_TYPE_REFERENCE) ||
-                        sc.getLdmType().equalsIgnoreCase(SourceColumn.LDM_TYPE_DATE))
-                    c.setReferenceKey(1);
-                if (sc.getLdmType().equalsIgnoreCase(SourceColumn.LDM_TYPE_ATTRIBUTE))
-                    c.setPopulates(new String[]{"label." + schemaName + "." + scn});
-                if (sc.getLdmType().equalsIgnoreCase(SourceColumn.LDM_TYPE_CONNECTION_POINT))
-                    c.setPopulates(new String[]{"label." + ssn + "." + scn});
-                if (sc.getLdmType().equalsIgnoreCase(SourceColumn.LDM_TYPE_REFERENCE)) {
-                    if (sc.isTimeFact()) {
-                        c.setName(sc.getName());
-                        c.setPopulates(new String[]{Constants.DEFAULT_TIME_LABEL + sc.getSchemaReference()});
-
-                    } else
-                        c.setPopulates(new String[]{"label." + sc.getSchemaReference() +
-                                "." + sc.getReference()});
-                }
-                if (sc.getLdmType().equalsIgnoreCase(SourceColumn.LDM_TYPE_LABEL) ||
-                        sc.getLdmType().equalsIgnoreCase(SourceColumn.LDM_TYPE_HYPERLINK))
-                    c.setPopulates(new String[]{"label." + ssn + "." + sc.getReference() +
-                            "." + scn});
-                if (sc.getLdmType().equalsIgnoreCase(SourceColumn.LDM_TYPE_DATE)) {
-                    String fmt = sc.getFormat();
-                    if (fmt != null && fmt.length() > 0) {
-                        c.setFormat(fmt);
-                    } else {
-                        if (sc.getLdmType().equalsIgnoreCase(SourceColumn.LDM_TYPE_DATE))
-                            c.setFormat(Constants.DEFAULT_DATE_FMT_STRING);
-                        else if (sc.isDatetime())
-                            c.setFormat(Constants.DEFAULT_DATETIME_FMT_STRING);
-                    }
-                    String sr = sc.getSchemaReference();
-                    if (sr != null && sr.length() > 0) {
-
-                        String r = sc.getReference();
-                        if (r != null && r.length() > 0) {
-                            // fix for the fiscal date dimension
-                            c.setPopulates(new String[]{sr + "." + r +
-                                    Constants.DEFAULT_DATE_LABEL_SUFFIX});
-                        } else {
-                            c.setPopulates(new String[]{sr + "." + Constants.DEFAULT_DATE_LABEL +
-                                    Constants.DEFAULT_DATE_LABEL_SUFFIX});
-                        }
-                    } else {
-                        c.setPopulates(new String[]{"label." + ssn + "." + scn});
-                    }
+                if (type != null) {
+                    switch (type) {
+                        case ATTRIBUTE:
+                            c.setReferenceKey(1);
+                            c.setPopulates(new String[]{"label." + schemaName + "." + scn});
+                            break;
+                        case CONNECTION_POINT:
+                            c.setReferenceKey(1);
+                            c.setPopulates(new String[]{"label." + ssn + "." + scn});
+                            break;
+                        case REFERENCE:
+                            c.setReferenceKey(1);
+                            if (sc.isTimeFact()) {
+                                c.setName(sc.getName());
+                                c.setPopulates(new String[]{Constants.DEFAULT_TIME_LABEL + sc.getSchemaReference()});
 
-                }
-                if (sc.getLdmType().equalsIgnoreCase(SourceColumn.LDM_TYPE_FACT)) {
-                    if (sc.isDateFact()) {
-                        c.setName(sc.getName());
-                        c.setPopulates(new String[]{N.DT + "." + ssn + "." + scn.replace(N.DT_SLI_SFX, "")});
-                    } else if (sc.isTimeFact()) {
-                        c.setName(sc.getName());
-                        c.setPopulates(new String[]{N.TM + "." + N.DT + "." + ssn + "." + scn.replace(N.TM_SLI_SFX, "")});
-                    } else {
-                        c.setPopulates(new String[]{"fact." + ssn + "." + scn});
+                            } else
+                                c.setPopulates(new String[]{"label." + sc.getSchemaReference() +
+                                        "." + sc.getReference()});
+                            break;
+                        case LABEL:
+                        case HYPERLINK:
+                            c.setPopulates(new String[]{"label." + ssn + "." + sc.getReference() +
+                                    "." + scn});
+                            break;
+                        case DATE:
+                            c.setReferenceKey(1);
+                            String fmt = sc.getFormat();
+                            if (fmt != null && fmt.length() > 0) {
+                                c.setFormat(fmt);
+                            } else {
+                                c.setFormat(Constants.DEFAULT_DATE_FMT_STRING);
+                            }
+                            String sr = sc.getSchemaReference();
+                            if (sr != null && sr.length() > 0) {
+
+                                String r = sc.getReference();
+                                if (r != null && r.length() > 0) {
+                                    // fix for the fiscal date dimension
+                                    c.setPopulates(new String[]{sr + "." + r +
+                                            Constants.DEFAULT_DATE_LABEL_SUFFIX});
+                                } else {
+                                    c.setPopulates(new String[]{sr + "." + Constants.DEFAULT_DATE_LABEL +
+                                            Constants.DEFAULT_DATE_LABEL_SUFFIX});
+                                }
+                            } else {
+                                c.setPopulates(new String[]{"label." + ssn + "." + scn});
+                            }
+                            break;
+                        case FACT:
+                            if (sc.isDateFact()) {
+                                c.setName(sc.getName());
+                                c.setPopulates(new String[]{N.DT + "." + ssn + "." + scn.replace(N.DT_SLI_SFX, "")});
+                            } else if (sc.isTimeFact()) {
+                                c.setName(sc.getName());
+                                c.setPopulates(new String[]{N.TM + "." + N.DT + "." + ssn + "." + scn.replace(N.TM_SLI_SFX, "")});
+                            } else {
+                                c.setPopulates(new String[]{"fact." + ssn + "." + scn});
+                            }
+                            break;
                     }
                 }
                 columns.add(c);
@@ -443,18 +512,23 @@ public abstract class AbstractConnector implements Connector {
         String archivePath = tmpZipDir.getAbsolutePath() + System.getProperty("file.separator") +
                 archiveName + ".zip";
 
+        String incremental = c.getParam("incremental");
+        List<String> targets = getTargetProjects(c);
+        int parallelism = getParallelism(c);
+        String deduplicate = c.getParam("deduplicate");
+        long sortMemory = getSortMemory(c);
+        c.paramsProcessed();
+
         // get information about the data loading package
-        SLI sli = ctx.getRestApi(p).getSLIById("dataset." + ssn, pid);
+        // the manifest only depends on the SLI name and columns, so the first target project is representative
+        String manifestPid = (targets != null) ? targets.get(0) : pid;
+        SLI sli = ctx.getRestApi(p).getSLIById("dataset." + ssn, manifestPid);
         List<Column> sliColumns = ctx.getRestApi(p).getSLIColumns(sli.getUri());
         List<Column> columns = populateColumnsFromSchema(cc.getSchema());
 
         if (sliColumns.size() > columns.size())
             throw new InvalidParameterException("The GoodData data loading interface (SLI) expects more columns.");
 
-
-        String incremental = c.getParam("incremental");
-        c.paramsProcessed();
-
         if (incremental != null && incremental.length() > 0 &&
                 incremental.equalsIgnoreCase("true")) {
             l.debug("Using incremental mode.");
@@ -462,13 +536,46 @@ public abstract class AbstractConnector implements Connector {
         }
 
         // extract the data to the CSV that is going to be transferred to the server
+        long start = Metrics.start();
         cc.extract(tmpDir.getAbsolutePath());
+        Metrics.stop(METRIC_EXTRACT, start);
+        Metrics.count(METRIC_EXTRACT + Metrics.BYTES_SUFFIX, FileUtil.getDirectorySize(tmpDir));
+
+        if (deduplicate != null && deduplicate.equalsIgnoreCase("true")) {
+            sortAndDeduplicate(cc.getSchema(), new File(tmpDir, "data.csv"), sortMemory);
+        }
 
+        start = Metrics.start();
         cc.deploy(sli, columns, tmpDir.getAbsolutePath(), archivePath);
+        Metrics.stop(METRIC_DEPLOY, start);
+        Metrics.count(METRIC_DEPLOY + Metrics.BYTES_SUFFIX, new File(archivePath).length());
+        if (targets != null) {
+            Map<String, String> status = transferToProjects(targets, parallelism, ssn, columns.size(), archivePath,
+                    archiveName, waitForFinish, p, ctx);
+            l.debug("Cleaning the temporary files.");
+            FileUtil.recursiveDelete(tmpDir);
+            FileUtil.recursiveDelete(tmpZipDir);
+            MDC.remove("GdcDataPackageDir");
+            int failed = 0;
+            for (String target : status.keySet()) {
+                String st = status.get(target);
+                l.info("Project " + target + ": " + st);
+                if (!TRANSFER_STATUS_OK.equals(st) && !TRANSFER_STATUS_STARTED.equals(st))
+                    failed++;
+            }
+            l.info("Data transferred to " + (status.size() - failed) + " of " + status.size() + " projects.");
+            if (failed > 0)
+                throw new GdcIntegrationErrorException("Data transfer failed for " + failed + " of " + status.size() +
+                        " projects.");
+            l.debug("Data extract finished.");
+            return;
+        }
         // transfer the data package to the GoodData server
         ctx.getFtpApi(p).transferDir(archivePath);
         // kick the GooDData server to load the data package to the project
+        start = Metrics.start();
         String taskUri = ctx.getRestApi(p).startLoading(pid, archiveName);
+        Metrics.stop(METRIC_START_LOADING, start);
         if (waitForFinish) {
             checkLoadingStatus(taskUri, tmpDir.getName(), p, ctx);
         }
@@ -480,6 +587,207 @@ public abstract class AbstractConnector implements Connector {
         l.debug("Data extract finished.");
     }
 
+    /**
+     * Reads the list of target projects from the 'projects' (comma separated project ids) or
+     * 'projectsFile' (one project id per line) command parameters
+     *
+     * @param c command
+     * @return list of project ids or null if none of the parameters is specified
+     * @throws IOException if the projects file can't be read
+     */
+    protected List<String> getTargetProjects(Command c) throws IOException {
+        List<String> targets = new ArrayList<String>();
+        if (c.checkParam("projects")) {
+            for (String pid : c.getParam("projects").split(",")) {
+                if (pid.trim().length() > 0)
+                    targets.add(pid.trim());
+            }
+        }
+        if (c.checkParam("projectsFile")) {
+            for (String line : FileUtil.readStringFromFile(c.getParam("projectsFile")).split("\n")) {
+                String pid = line.trim();
+                if (pid.length() > 0 && !pid.startsWith("#"))
+                    targets.add(pid);
+            }
+        }
+        if (targets.isEmpty()) {
+            if (c.checkParam("projects") || c.checkParam("projectsFile"))
+                throw new InvalidParameterException("No target projects specified.");
+            return null;
+        }
+        return targets;
+    }
+
+    /**
+     * Reads the optional 'parallelism' command parameter
+     *
+     * @param c command
+     * @return the parallelism or DEFAULT_TRANSFER_PARALLELISM if the parameter isn't specified
+     */
+    protected int getParallelism(Command c) {
+        int parallelism = DEFAULT_TRANSFER_PARALLELISM;
+        if (c.checkParam("parallelism")) {
+            try {
+                parallelism = Integer.parseInt(c.getParam("parallelism"));
+            }
+            catch (NumberFormatException e) {
+                throw new InvalidParameterException("The 'parallelism' parameter must be a number.");
+            }
+            if (parallelism <= 0)
+                throw new InvalidParameterException("The 'parallelism' parameter must be a positive number.");
+        }
+        return parallelism;
+    }
+
+    /**
+     * Reads the optional 'sortMemory' command parameter (in megabytes)
+     *
+     * @param c command
+     * @return the memory budget of the sort in bytes
+     */
+    protected long getSortMemory(Command c) {
+        long sortMemory = ExternalSorter.DEFAULT_MEMORY_BUDGET;
+        if (c.checkParam("sortMemory")) {
+            try {
+                sortMemory = Long.parseLong(c.getParam("sortMemory")) * 1024 * 1024;
+            }
+            catch (NumberFormatException e) {
+                throw new InvalidParameterException("The 'sortMemory' parameter must be a number.");
+            }
+            if (sortMemory <= 0)
+                throw new InvalidParameterException("The 'sortMemory' parameter must be a positive number.");
+        }
+        return sortMemory;
+    }
+
+    /**
+     * Sorts the extracted data by the connection point and removes the rows with duplicate connection point
+     * values, the last row wins. The whole rows are compared if the schema has no connection point. Uses
+     * the external merge sort, so the data doesn't have to fit in the memory.
+     *
+     * @param schema       source schema
+     * @param dataFile     the extracted CSV with the header
+     * @param memoryBudget max memory used for sorting in bytes
+     * @throws IOException in case of IO issues
+     * @throws InvalidParameterException if the connection point isn't in the header of the extracted data
+     */
+    protected void sortAndDeduplicate(SourceSchema schema, File dataFile, long memoryBudget) throws IOException {
+        int[] keys = new int[0];
+        List<SourceColumn> cps = schema.getConnectionPoints();
+        if (!cps.isEmpty()) {
+            // the key position comes from the file that is sorted
+            CSVReader cr = FileUtil.createUtf8CsvReader(dataFile);
+            String[] header;
+            try {
+                header = cr.readNext();
+            } finally {
+                cr.close();
+            }
+            String name = cps.get(0).getName();
+            for (int i = 0; header != null && i < header.length; i++) {
+                if (header[i].equals(name)) {
+                    keys = new int[]{i};
+                    break;
+                }
+            }
+            if (keys.length == 0)
+                throw new InvalidParameterException("Can't deduplicate the data: the connection point " + name +
+                        " isn't in the header of the extracted data.");
+        }
+        l.debug("Sorting the extracted data by " + ((keys.length > 0) ? cps.get(0).getName() : "all columns") + ".");
+        ExternalSorter sorter = new ExternalSorter(keys);
+        sorter.setMemoryBudget(memoryBudget);
+        sorter.sort(dataFile, dataFile);
+        l.info("Removed " + sorter.getDuplicates() + " duplicate rows of " + sorter.getRows() + ".");
+    }
+
+    /**
+     * Uploads a single data package to multiple projects and kicks the loading concurrently. Each worker
+     * uses its own processing context (REST session) as the REST API wrapper isn't thread safe. The workers
+     * share the thread safe data transfer sessions of the current context.
+     *
+     * @param targets       target project ids
+     * @param parallelism   max number of projects that are processed at the same time
+     * @param ssn           source schema name
+     * @param columnCount   number of columns in the data package
+     * @param archivePath   local path of the data package
+     * @param archiveName   the data package name
+     * @param waitForFinish wait for the server-side processing
+     * @param p             cli parameters
+     * @param ctx           current context
+     * @return map of the project ids to the transfer status
+     * @throws InterruptedException when interrupted while waiting for the workers
+     */
+    protected Map<String, String> transferToProjects(List<String> targets, int parallelism, final String ssn,
+                                                     final int columnCount, final String archivePath,
+                                                     final String archiveName, final boolean waitForFinish,
+                                                     final CliParams p, ProcessingContext ctx)
+            throws InterruptedException {
+        int workers = Math.min(parallelism, targets.size());
+        l.info("Transferring data to " + targets.size() + " projects using " + workers + " workers.");
+        Metrics.gauge(METRIC_TRANSFER_WORKERS, workers);
+        final Map<String, String> status = Collections.synchronizedMap(new LinkedHashMap<String, String>());
+        final BlockingQueue<ProcessingContext> contexts = new LinkedBlockingQueue<ProcessingContext>();
+        GdcDataTransferAPI transfer = ctx.getFtpApi(p);
+        for (int i = 0; i < workers; i++) {
+            ProcessingContext wctx = new ProcessingContext();
+            wctx.setFtpApi(transfer);
+            contexts.add(wctx);
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            for (final String target : targets) {
+                status.put(target, TRANSFER_STATUS_PENDING);
+                pool.execute(new Runnable() {
+                    public void run() {
+                        ProcessingContext wctx = contexts.poll();
+                        long start = Metrics.start();
+                        try {
+                            wctx.setProjectId(target);
+                            SLI sli = wctx.getRestApi(p).getSLIById("dataset." + ssn, target);
+                            List<Column> sliColumns = wctx.getRestApi(p).getSLIColumns(sli.getUri());
+                            if (sliColumns.size() > columnCount)
+                                throw new InvalidParameterException("The GoodData data loading interface (SLI) " +
+                                        "expects more columns.");
+                            // each project loads from its own remote directory
+                            String remoteDir = archiveName + "-" + target;
+                            wctx.getFtpApi(p).transferDir(archivePath, remoteDir);
+                            long phase = Metrics.start();
+                            String taskUri = wctx.getRestApi(p).startLoading(target, remoteDir);
+                            Metrics.stop(METRIC_START_LOADING, phase);
+                            if (waitForFinish) {
+                                checkLoadingStatus(taskUri, remoteDir, p, wctx);
+                                status.put(target, TRANSFER_STATUS_OK);
+                            } else {
+                                status.put(target, TRANSFER_STATUS_STARTED);
+                            }
+                            l.debug("Project " + target + " finished in " +
+                                    Metrics.stop(METRIC_PROJECT_TRANSFER, start) / 1000000 + " ms.");
+                        }
+                        catch (Exception e) {
+                            l.error("Data transfer to project " + target + " failed: " + e.getMessage());
+                            l.debug("Data transfer to project " + target + " failed.", e);
+                            status.put(target, TRANSFER_STATUS_FAILED + ": " + e.getMessage());
+                        }
+                        finally {
+                            MDC.remove("GdcProjectId");
+                            contexts.add(wctx);
+                        }
+                    }
+                });
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+        while (!pool.awaitTermination(ETL_POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+            l.debug("Waiting for the data transfer workers.");
+        }
+        for (ProcessingContext wctx : contexts)
+            wctx.close();
+        return status;
+    }
+
     /**
      * Sets the incremental loading status for a part
      *
@@ -506,6 +814,7 @@ public abstract class AbstractConnector implements Connector {
         l.debug("Checking data transfer status.");
         String status = "";
         int retryCount = 0;
+        long start = Metrics.start();
         while (!"OK".equalsIgnoreCase(status) && !"ERROR".equalsIgnoreCase(status) && !"WARNING".equalsIgnoreCase(status)) {
             try {
                 status = ctx.getRestApi(p).getLoadingStatus(taskUri);
@@ -520,6 +829,7 @@ public abstract class AbstractConnector implements Connector {
                     throw e;
             }
         }
+        Metrics.stop(METRIC_CHECK_LOADING_STATUS, start);
         l.debug("Data transfer finished with status " + status);
         if ("OK".equalsIgnoreCase(status)) {
             l.info("Data successfully loaded.");
@@ -558,9 +868,10 @@ public abstract class AbstractConnector implements Connector {
      * @param c   command
      * @param p   cli parameters
      * @param ctx current context
-     * @throws IOException IO issue
+     * @throws IOException          IO issue
+     * @throws InterruptedException when interrupted while fetching the SLI columns
      */
-    private void generateUpdateMaql(Command c, CliParams p, ProcessingContext ctx) throws IOException {
+    private void generateUpdateMaql(Command c, CliParams p, ProcessingContext ctx) throws IOException, InterruptedException {
         l.debug("Updating MAQL.");
         //final String configFile = c.getParamMandatory( "configFile");
         //final SourceSchema schema = SourceSchema.createSchema(new File(configFile));
@@ -571,63 +882,71 @@ public abstract class AbstractConnector implements Connector {
 
             final String pid = ctx.getProjectIdMandatory();
             final String maqlFile = c.getParamMandatory("maqlFile");
+            final String updateAll = c.getParam("updateAll");
+            final boolean all = updateAll != null && !updateAll.equalsIgnoreCase("false");
             final String updateTitles = c.getParam("updateTitles");
+            final boolean titles = all || (updateTitles != null && !updateTitles.equalsIgnoreCase("false"));
             final String updateDataTypes = c.getParam("updateDataTypes");
+            final boolean dataTypes = all || (updateDataTypes != null && !updateDataTypes.equalsIgnoreCase("false"));
             final String updateSorting = c.getParam("updateSorting");
-            final String updateAll = c.getParam("updateAll");
+            final boolean sorting = all || (updateSorting != null && !updateSorting.equalsIgnoreCase("false"));
             final String createIfNotExists = c.getParam("createIfNotExists");
+            final boolean create = createIfNotExists != null && !createIfNotExists.equalsIgnoreCase("false");
             final boolean rebuildLabels = !"FALSE".equalsIgnoreCase(c.getParam("rebuildLabels"));
+            final String configFiles = c.getParam("configFiles");
+            final int parallelism = getParallelism(c);
             c.paramsProcessed();
 
-            final String dataset = schema.getDatasetName();
+            final String maql;
+            if (configFiles != null) {
+                // batch mode: the connector's schema and all the other data sets of the project at once
+                final List<SourceSchema> schemas = new ArrayList<SourceSchema>();
+                schemas.add(schema);
+                for (String configFile : configFiles.split(",")) {
+                    if (configFile.trim().length() > 0) {
+                        SourceSchema s = SourceSchema.createSchema(new File(configFile.trim()));
+                        expandDates(s);
+                        schemas.add(s);
+                    }
+                }
+                final Map<SourceSchema, DataSetDiffMaker> diffs = createDiffMakers(schemas, pid, parallelism,
+                        rebuildLabels, p, ctx);
+                final StringBuilder sb = new StringBuilder();
+                for (SourceSchema s : schemas) {
+                    final DataSetDiffMaker diffMaker = diffs.get(s);
+                    if (diffMaker == null) {
+                        if (!create)
+                            throw new GdcProjectAccessException("The SLI id=" + s.getDatasetName() +
+                                    " doesn't exist in the project id=" + pid);
+                        l.debug("Data set " + s.getDatasetName() + " doesn't exist, generating the create MAQL.");
+                        sb.append(new MaqlGenerator(s).generateMaqlCreate());
+                    } else {
+                        sb.append(generateUpdateMaql(s, diffMaker, titles, dataTypes, sorting));
+                    }
+                }
+                maql = sb.toString();
+            } else {
+                final String dataset = schema.getDatasetName();
 
-            final GdcRESTApiWrapper gd = ctx.getRestApi(p);
-            final SLI sli;
-            try {
-            	sli = gd.getSLIById(dataset, pid);
-            } catch (GdcProjectAccessException e) {
-            	if (createIfNotExists != null && !createIfNotExists.equalsIgnoreCase("false")) {
-            		c.setParameters(new Properties() {{ put("maqlFile", maqlFile); }});
-            		generateMAQL(c, p, ctx);
-            		return;
-            	}
-            	throw e;
+                final GdcRESTApiWrapper gd = ctx.getRestApi(p);
+                final SLI sli;
+                try {
+                    sli = gd.getSLIById(dataset, pid);
+                } catch (GdcProjectAccessException e) {
+                    if (create) {
+                        c.setParameters(new Properties() {{ put("maqlFile", maqlFile); }});
+                        generateMAQL(c, p, ctx);
+                        return;
+                    }
+                    throw e;
+                }
+                maql = generateUpdateMaql(schema, new DataSetDiffMaker(gd, sli, schema, rebuildLabels), titles,
+                        dataTypes, sorting);
             }
 
-            final DataSetDiffMaker diffMaker = new DataSetDiffMaker(gd, sli, schema, rebuildLabels);
-            final List<SourceColumn> newColumns = diffMaker.findNewColumns();
-            final List<SourceColumn> deletedColumns = diffMaker.findDeletedColumns();
-            final MaqlGenerator mg = new MaqlGenerator(schema);
-
-            final StringBuilder maql = new StringBuilder();
-            if (!deletedColumns.isEmpty()) {
-                mg.setSynchronize(false);
-                maql.append(mg.generateMaqlDrop(deletedColumns, diffMaker.getLocalColumns()));
-            }
-            if (!newColumns.isEmpty()) {
-                mg.setSynchronize(false);
-                maql.append(mg.generateMaqlAdd(newColumns, diffMaker.getLocalColumns()));
-            }
-            if (updateAll != null && !updateAll.equalsIgnoreCase("false")) {
-            	maql.append(mg.generateMaqlUpdateTitles(diffMaker.getLocalColumns()));
-            	maql.append(mg.generateMaqlUpdateDataTypes(diffMaker.getLocalColumns()));
-            	maql.append(mg.generateMaqlSorting(diffMaker.getLocalColumns()));            	
-            } else {
-            	if (updateTitles != null && !updateTitles.equalsIgnoreCase("false")) {
-	            	maql.append(mg.generateMaqlUpdateTitles(diffMaker.getLocalColumns()));
-	            }
-	            if (updateDataTypes != null && !updateDataTypes.equalsIgnoreCase("false")) {
-	            	maql.append(mg.generateMaqlUpdateDataTypes(diffMaker.getLocalColumns()));
-	            }
-	            if (updateSorting != null && !updateSorting.equalsIgnoreCase("false")) {
-	            	maql.append(mg.generateMaqlSorting(diffMaker.getLocalColumns()));
-	            }
-            }
             if (maql.length() > 0) {
-                maql.append(mg.generateMaqlSynchronize());
-                final String mqqlStr = mg.removeDropAndRecreateOfDateFacts(deletedColumns, newColumns, maql.toString());
-                l.debug("Finished maql generation maql:\n" + mqqlStr);
-                FileUtil.writeStringToFile(mqqlStr, maqlFile);
+                l.debug("Finished maql generation maql:\n" + maql);
+                FileUtil.writeStringToFile(maql, maqlFile);
                 l.debug("MAQL update finished.");
                 l.info("MAQL update successfully finished.");
             } else {
@@ -642,6 +961,127 @@ public abstract class AbstractConnector implements Connector {
         }
     }
 
+    /**
+     * Generates the MAQL that updates a single data set
+     *
+     * @param schema    the local data set schema
+     * @param diffMaker the diff of the local schema and the remote data set
+     * @param titles    update the titles
+     * @param dataTypes update the data types
+     * @param sorting   update the sorting
+     * @return the MAQL or an empty string if there are no changes
+     */
+    private String generateUpdateMaql(SourceSchema schema, DataSetDiffMaker diffMaker, boolean titles,
+                                      boolean dataTypes, boolean sorting) {
+        final List<SourceColumn> newColumns = diffMaker.findNewColumns();
+        final List<SourceColumn> deletedColumns = diffMaker.findDeletedColumns();
+        final MaqlGenerator mg = new MaqlGenerator(schema);
+
+        final StringBuilder maql = new StringBuilder();
+        if (!deletedColumns.isEmpty()) {
+            mg.setSynchronize(false);
+            maql.append(mg.generateMaqlDrop(deletedColumns, diffMaker.getLocalColumns()));
+        }
+        if (!newColumns.isEmpty()) {
+            mg.setSynchronize(false);
+            maql.append(mg.generateMaqlAdd(newColumns, diffMaker.getLocalColumns()));
+        }
+        if (titles) {
+            maql.append(mg.generateMaqlUpdateTitles(diffMaker.getLocalColumns()));
+        }
+        if (dataTypes) {
+            maql.append(mg.generateMaqlUpdateDataTypes(diffMaker.getLocalColumns()));
+        }
+        if (sorting) {
+            maql.append(mg.generateMaqlSorting(diffMaker.getLocalColumns()));
+        }
+        if (maql.length() > 0) {
+            maql.append(mg.generateMaqlSynchronize());
+            return mg.removeDropAndRecreateOfDateFacts(deletedColumns, newColumns, maql.toString());
+        }
+        return "";
+    }
+
+    /**
+     * Computes the diffs of multiple local schemas and their data sets in a project. The project's SLIs are listed
+     * once and the SLI columns are fetched concurrently. Each worker uses its own processing context
+     * as the API wrappers aren't thread safe.
+     *
+     * @param schemas       the local schemas
+     * @param pid           project id
+     * @param parallelism   max number of SLIs that are fetched at the same time
+     * @param rebuildLabels rebuild labels even if only their type differs
+     * @param p             cli parameters
+     * @param ctx           current context
+     * @return map of the schemas to their diffs, schemas without a remote data set are missing
+     * @throws InterruptedException when interrupted while waiting for the workers
+     */
+    private Map<SourceSchema, DataSetDiffMaker> createDiffMakers(List<SourceSchema> schemas, String pid,
+                                                                 int parallelism, boolean rebuildLabels,
+                                                                 final CliParams p, ProcessingContext ctx)
+            throws InterruptedException {
+        final Map<String, SLI> slis = new HashMap<String, SLI>();
+        for (SLI sli : ctx.getRestApi(p).getSLIs(pid)) {
+            slis.put(sli.getId(), sli);
+        }
+        final Map<SourceSchema, DataSetDiffMaker> diffs = new HashMap<SourceSchema, DataSetDiffMaker>();
+        final List<SourceSchema> existing = new ArrayList<SourceSchema>();
+        for (SourceSchema s : schemas) {
+            if (slis.containsKey(s.getDatasetName()))
+                existing.add(s);
+        }
+        if (existing.isEmpty())
+            return diffs;
+
+        int workers = Math.min(parallelism, existing.size());
+        l.debug("Fetching the SLI columns of " + existing.size() + " data sets using " + workers + " workers.");
+        final BlockingQueue<ProcessingContext> contexts = new LinkedBlockingQueue<ProcessingContext>();
+        // the current context serves as one of the workers
+        contexts.add(ctx);
+        for (int i = 1; i < workers; i++)
+            contexts.add(new ProcessingContext());
+        final List<Future<List<Column>>> columns = new ArrayList<Future<List<Column>>>();
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            for (SourceSchema s : existing) {
+                final SLI sli = slis.get(s.getDatasetName());
+                columns.add(pool.submit(new Callable<List<Column>>() {
+                    public List<Column> call() throws Exception {
+                        ProcessingContext wctx = contexts.take();
+                        try {
+                            return wctx.getRestApi(p).getSLIColumns(sli.getUri());
+                        }
+                        finally {
+                            contexts.add(wctx);
+                        }
+                    }
+                }));
+            }
+            for (int i = 0; i < existing.size(); i++) {
+                SourceSchema s = existing.get(i);
+                List<Column> sliColumns;
+                try {
+                    sliColumns = columns.get(i).get();
+                }
+                catch (ExecutionException e) {
+                    if (e.getCause() instanceof RuntimeException)
+                        throw (RuntimeException) e.getCause();
+                    throw new InternalErrorException("Can't fetch the SLI columns of " + s.getDatasetName(), e.getCause());
+                }
+                diffs.put(s, new DataSetDiffMaker(slis.get(s.getDatasetName()), sliColumns, s, rebuildLabels));
+            }
+        }
+        finally {
+            pool.shutdownNow();
+            // the contexts of the workers still running after a failure aren't back in the queue
+            for (ProcessingContext wctx : contexts) {
+                if (wctx != ctx)
+                    wctx.close();
+            }
+        }
+        return diffs;
+    }
+
     public String getProjectId() {
         return projectId;
     }
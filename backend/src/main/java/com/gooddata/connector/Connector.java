@@ -50,6 +50,14 @@ public interface Connector extends Executor {
      */
     public String generateMaqlCreate();
 
+    /**
+     * Generates the MAQL for the data source
+     *
+     * @param out the MAQL output
+     * @throws IOException in case of IO issues
+     */
+    public void generateMaqlCreate(Appendable out) throws IOException;
+
     /**
      * LDM schema getter
      *
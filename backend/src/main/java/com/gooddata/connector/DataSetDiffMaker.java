@@ -18,6 +18,14 @@ import static com.gooddata.modeling.model.SourceColumn.*;
 class DataSetDiffMaker {
     private static Logger l = Logger.getLogger(DataSetDiffMaker.class);
 
+    private static final String DATASET_PREFIX = "dataset.";
+    private static final String LABEL_PREFIX = "label.";
+    private static final String TIME_ATTR_PREFIX = "d_time_second_of_day_";
+    private static final String ID_SUFFIX = "_" + N.ID;
+    private static final String DT_INFIX = "." + N.DT;
+    private static final String TM_INFIX = "." + N.TM;
+    private static final String NM_INFIX = "." + N.NM_PFX;
+
     private final ColumnsSet remote = new ColumnsSet();
     private final ColumnsSet local = new ColumnsSet();
     private final List<SourceColumn> deletedColumns = new ArrayList<SourceColumn>();
@@ -28,6 +36,18 @@ class DataSetDiffMaker {
     }
 
     DataSetDiffMaker(GdcRESTApiWrapper gd, SLI sli, SourceSchema ss, boolean rebuildLabels) {
+        this(sli, gd.getSLIColumns(sli.getUri()), ss, rebuildLabels);
+    }
+
+    /**
+     * Computes the diff of the local schema and the already fetched SLI columns
+     *
+     * @param sli           the remote data set SLI
+     * @param sliColumns    the SLI columns
+     * @param ss            the local schema
+     * @param rebuildLabels rebuild labels even if only their type (LABEL / HYPERLINK) differs
+     */
+    DataSetDiffMaker(SLI sli, List<Column> sliColumns, SourceSchema ss, boolean rebuildLabels) {
         this.rebuildLabels = rebuildLabels;
         SourceColumn sourceConnectionPoint = null;
         Map<String, SourceColumn> sourceDateColumns = new HashMap<String, SourceColumn>();
@@ -37,7 +57,7 @@ class DataSetDiffMaker {
             sc.setName(sc.getName());
             sc.setReference(sc.getReference());
             sc.setSchemaReference(sc.getSchemaReference());
-            local.columns.add(sc);
+            local.add(sc);
             if (LDM_TYPE_CONNECTION_POINT.equals(sc.getLdmType())) {
                 sourceConnectionPoint = sc;
             } else if (LDM_TYPE_DATE.equals(sc.getLdmType())) {
@@ -45,14 +65,8 @@ class DataSetDiffMaker {
             }
         }
         Map<String, String> dateColumns = new HashMap<String, String>(); // maps date dim names to column names
-        String datasetId = sli.getId().replaceAll("^dataset\\.", "");
-        String factPrefix = N.FCT_PFX + datasetId + "." + N.FCT_PFX;
-        String cpPrefix = N.FCT_PFX + datasetId + "." + N.NM_PFX;
-        String datePrefix = N.FCT_PFX + datasetId + "." + N.DT_PFX;
-        String timeFactPrefix = N.FCT_PFX + datasetId + "." + N.TM_PFX;
-        String timeAttrPrefix = "d_time_second_of_day_";
-        String lookupPrefix = N.LKP_PFX;
-        final List<Column> sliColumns = gd.getSLIColumns(sli.getUri());
+        final NameDecoder names = new NameDecoder(sli.getId());
+        final String datasetId = names.datasetId;
 
         for (final Column c : sliColumns) {
             final String ldmType,
@@ -65,23 +79,25 @@ class DataSetDiffMaker {
                     timeFact = false;
 
             // fields populating a fact table column
-            if (c.getName().startsWith(factPrefix)) {   // FACT
-                prefixLen = factPrefix.length();
+            final String cn = c.getName();
+            if (cn.startsWith(names.factPrefix)) {   // FACT
+                prefixLen = names.factPrefix.length();
                 ldmType = LDM_TYPE_FACT;
-                name = c.getName().substring(prefixLen).replaceAll("\\..*$", "");
-            } else if (c.getName().startsWith(datePrefix)) { // DATE
-                prefixLen = datePrefix.length();
-                if (c.getName().endsWith("_" + N.ID)) {
+                name = beforeFirstDot(cn.substring(prefixLen));
+            } else if (cn.startsWith(names.datePrefix)) { // DATE
+                prefixLen = names.datePrefix.length();
+                if (cn.endsWith(ID_SUFFIX)) {
                     ldmType = LDM_TYPE_DATE;
-                    String sourceName = c.getName().substring(prefixLen).replaceAll(".*\\." + N.DT, "").replaceAll("_id", "");
+                    String sourceName = removeAll(afterLast(cn.substring(prefixLen), DT_INFIX), "_id");
                     name = sourceName; // + "_" + N.DT;
                     for (String pop : c.getPopulates()) {
                         // HACK - where is this naming convention defined?
-                        if (pop.contains(".date.")) { // date attribute
-                            schemaReference = pop.replaceAll("\\.date\\..*$", "");
+                        int date = pop.indexOf(".date.");
+                        if (date >= 0) { // date attribute
+                            schemaReference = pop.substring(0, date);
                             dateColumns.put(schemaReference, sourceName);
-                        } else if (pop.matches(".*\\.[^\\.]*$")) { // old date dimension, identifiers like "${schema}.${randomString}"
-                            schemaReference = pop.replaceAll("\\.[^\\.]*$", "");
+                        } else if (pop.lastIndexOf('.') >= 0) { // old date dimension, identifiers like "${schema}.${randomString}"
+                            schemaReference = pop.substring(0, pop.lastIndexOf('.'));
                             dateColumns.put(schemaReference, sourceName);
                         } else {
                             l.warn(String.format("Cannot determine the ldm type for field '%s'", name));
@@ -90,24 +106,24 @@ class DataSetDiffMaker {
                     }
                 } else {
                     ldmType = LDM_TYPE_FACT;
-                    name = c.getName().substring(prefixLen).replaceAll(".*\\." + N.DT, "") + "_" + N.DT;
+                    name = afterLast(cn.substring(prefixLen), DT_INFIX) + "_" + N.DT;
                     dateFact = true;
                 }
-            } else if (c.getName().startsWith(timeFactPrefix)) { // TIME
-                prefixLen = timeFactPrefix.length();
+            } else if (cn.startsWith(names.timeFactPrefix)) { // TIME
+                prefixLen = names.timeFactPrefix.length();
                 ldmType = LDM_TYPE_FACT;
-                name = c.getName().substring(prefixLen).replaceAll(".*\\." + N.TM, "") + "_" + N.TM;
+                name = afterLast(cn.substring(prefixLen), TM_INFIX) + "_" + N.TM;
                 timeFact = true;
-            } else if (c.getName().startsWith(timeAttrPrefix)) {
-                prefixLen = timeAttrPrefix.length();
-                name = c.getName().substring(prefixLen).replaceAll("\\..*$", "");
+            } else if (cn.startsWith(TIME_ATTR_PREFIX)) {
+                prefixLen = TIME_ATTR_PREFIX.length();
+                name = beforeFirstDot(cn.substring(prefixLen));
                 schemaReference = name;
                 ldmType = LDM_TYPE_REFERENCE;
                 timeFact = true;
                 remote.timeDimensions.add(schemaReference);
-            } else if (c.getName().startsWith(cpPrefix)) {  // CONNECTION_POINT (or its LABEL)
-                prefixLen = cpPrefix.length();
-                name = c.getName().substring(prefixLen).replaceAll(".*\\." + N.NM_PFX, "");
+            } else if (cn.startsWith(names.cpPrefix)) {  // CONNECTION_POINT (or its LABEL)
+                prefixLen = names.cpPrefix.length();
+                name = afterLast(cn.substring(prefixLen), NM_INFIX);
                 // we don't support dropping connection points
                 // so this field may be either the same connection
                 // point as in the local file or a label of it
@@ -123,46 +139,48 @@ class DataSetDiffMaker {
                 }
 
                 // fields populating a lookup table column
-            } else if (c.getName().startsWith(lookupPrefix)) {
-                String parts[] = c.getName().split("\\.", 2); // splits into [ table, nm_something ] where table starts with the lookupPrefix
-                assert parts.length == 2;
-                String table = parts[0].replaceAll("^" + lookupPrefix, "");
-                if (!parts[1].startsWith(N.NM_PFX)) {
-                    throw new IllegalStateException("Non-lookup column name '" + c.getName() + "' detected");
+            } else if (cn.startsWith(N.LKP_PFX)) {
+                // splits into [ table, nm_something ] where table starts with the lookup prefix
+                int dot = cn.indexOf('.');
+                if (dot < 0 || !cn.startsWith(N.NM_PFX, dot + 1)) {
+                    throw new IllegalStateException("Non-lookup column name '" + cn + "' detected");
                 }
-                name = parts[1].replaceAll("^" + N.NM_PFX, "");
+                String table = cn.substring(N.LKP_PFX.length(), dot);
+                name = cn.substring(dot + 1 + N.NM_PFX.length());
 
-                if (table.equals(datasetId + "_" + name)) {
+                if (table.equals(names.tablePrefix + name)) {
                     ldmType = LDM_TYPE_ATTRIBUTE;
                 } else if (table.endsWith("_" + name)) { // cross data set attribute
                     ldmType = LDM_TYPE_ATTRIBUTE;
-                    schemaReference = table.replaceAll("_" + name + "$", "");
-                } else if (table.startsWith(datasetId + "_")) {
+                    schemaReference = table.substring(0, table.length() - name.length() - 1);
+                } else if (table.startsWith(names.tablePrefix)) {
                     ldmType = LDM_TYPE_LABEL;
-                    reference = table.replaceAll("^" + datasetId + "_", "");
+                    reference = table.substring(names.tablePrefix.length());
                 } else {
-                    throw new IllegalStateException("Unknown format of column name '" + c.getName() + "' detected");
+                    throw new IllegalStateException("Unknown format of column name '" + cn + "' detected");
                 }
 
-                // references to lookups from other data sets
-            } else if (c.getName().startsWith(N.LKP_PFX)) {
-                continue; // we cannot detect other changes than facts and attributes yet
-
                 // references to fact tables of other data sets
-            } else if (c.getName().startsWith(N.FCT_PFX)) {
+            } else if (cn.startsWith(N.FCT_PFX)) {
                 name = null; // the name of a reference field cannot be
-                schemaReference = c.getName().replaceAll("^" + N.FCT_PFX, "").replaceAll("\\..*$", "");
+                schemaReference = beforeFirstDot(cn.substring(N.FCT_PFX.length()));
                 if (c.getPopulates() == null || c.getPopulates().length == 0) {
                     throw new IllegalStateException(String.format(
-                            "'%s' field in dataset '%s' does not populate anything", c.getName(), datasetId));
+                            "'%s' field in dataset '%s' does not populate anything", cn, datasetId));
                 }
-                reference = c.getPopulates()[0].replaceAll("^label\\.[^\\.]*\\.", "").replaceAll("\\..*$", "");
+                String label = c.getPopulates()[0];
+                if (label.startsWith(LABEL_PREFIX)) {
+                    int dot = label.indexOf('.', LABEL_PREFIX.length());
+                    if (dot >= 0)
+                        label = label.substring(dot + 1);
+                }
+                reference = beforeFirstDot(label);
                 ldmType = "REFERENCE";
                 // unknown stuff
             } else {
                 throw new IllegalStateException(String.format(
                         "Unsupported naming convention: '%s' field in dataset '%s",
-                        c.getName(), datasetId));
+                        cn, datasetId));
             }
             final SourceColumn column = new SourceColumn(name, ldmType, name); // title (3rd) arg is ignored in this use case
 
@@ -176,9 +194,9 @@ class DataSetDiffMaker {
                 column.setSchemaReference(schemaReference);
             }
             if (remoteColumn) {
-                remote.columns.add(column);
+                remote.add(column);
             }
-            if (!contains(local.columns, column)) {
+            if (!contains(local, column)) {
                 final boolean cond = LDM_TYPE_REFERENCE.equals(column.getLdmType()) && !column.isTimeFact();
                 if (cond) {
                     l.warn(String.format(
@@ -215,16 +233,15 @@ class DataSetDiffMaker {
      * @param column        the reference column
      * @return
      */
-    private boolean contains(Set<SourceColumn> sourceColumns, SourceColumn column) {
+    private boolean contains(ColumnsSet sourceColumns, SourceColumn column) {
         if (SourceColumn.LDM_TYPE_REFERENCE.equals(column.getLdmType())) {
-            for (final SourceColumn sc : sourceColumns) {
-                if ("REFERENCE".equals(sc.getLdmType())) {
-                    if (sc.getSchemaReference().equals(column.getSchemaReference())) {
-                        if ((sc.isDateFact() && column.isDateFact()) || (sc.isTimeFact() && column.isTimeFact())) {
-                            return true;
-                        } else if (sc.getReference() != null && sc.getReference().equals(column.getReference())) {
-                            return true;
-                        }
+            List<SourceColumn> references = sourceColumns.referencesBySchema.get(column.getSchemaReference());
+            if (references != null) {
+                for (final SourceColumn sc : references) {
+                    if ((sc.isDateFact() && column.isDateFact()) || (sc.isTimeFact() && column.isTimeFact())) {
+                        return true;
+                    } else if (sc.getReference() != null && sc.getReference().equals(column.getReference())) {
+                        return true;
                     }
                 }
             }
@@ -233,15 +250,18 @@ class DataSetDiffMaker {
         if (!rebuildLabels) {
            // Hyperlinks and labels are actually the same, right?
            if (SourceColumn.LDM_TYPE_LABEL.equals(column.getLdmType()) || SourceColumn.LDM_TYPE_HYPERLINK.equals(column.getLdmType())) {
-              for (final SourceColumn sc : sourceColumns) {
-                 if (column.equalsToLabel(sc)) {
-                    return true;
+              List<SourceColumn> labels = sourceColumns.labelsByName.get(column.getName());
+              if (labels != null) {
+                 for (final SourceColumn sc : labels) {
+                    if (column.equalsToLabel(sc)) {
+                       return true;
+                    }
                  }
               }
               return false;
            }
         }
-        return sourceColumns.contains(column);
+        return sourceColumns.columns.contains(column);
     }
 
     List<SourceColumn> findNewColumns() {
@@ -260,7 +280,7 @@ class DataSetDiffMaker {
 //		            result.add(sc);
 //		        }
 //		    }
-            if (!contains(tgt.columns, sc)) {
+            if (!contains(tgt, sc)) {
                 result.add(sc);
             }
         }
@@ -271,8 +291,85 @@ class DataSetDiffMaker {
         return local.columns;
     }
 
+    /**
+     * Extracts the part of the name before the first dot (the whole name if there is no dot)
+     */
+    private static String beforeFirstDot(String name) {
+        int dot = name.indexOf('.');
+        return (dot >= 0) ? (name.substring(0, dot)) : (name);
+    }
+
+    /**
+     * Extracts the part of the name after the last occurrence of the infix (the whole name if there is no infix)
+     */
+    private static String afterLast(String name, String infix) {
+        int i = name.lastIndexOf(infix);
+        return (i >= 0) ? (name.substring(i + infix.length())) : (name);
+    }
+
+    /**
+     * Removes all occurrences of the part from the name
+     */
+    private static String removeAll(String name, String part) {
+        int i = name.indexOf(part);
+        if (i < 0)
+            return name;
+        StringBuilder sb = new StringBuilder(name.length());
+        int from = 0;
+        while (i >= 0) {
+            sb.append(name, from, i);
+            from = i + part.length();
+            i = name.indexOf(part, from);
+        }
+        return sb.append(name, from, name.length()).toString();
+    }
+
+    /**
+     * The SLI column name prefixes of a data set. The prefixes are computed once per diff.
+     */
+    private static class NameDecoder {
+        private final String datasetId;
+        private final String factPrefix;
+        private final String cpPrefix;
+        private final String datePrefix;
+        private final String timeFactPrefix;
+        // lookup table names of the data set's attributes and labels
+        private final String tablePrefix;
+
+        private NameDecoder(String sliId) {
+            datasetId = sliId.startsWith(DATASET_PREFIX) ? sliId.substring(DATASET_PREFIX.length()) : sliId;
+            factPrefix = N.FCT_PFX + datasetId + "." + N.FCT_PFX;
+            cpPrefix = N.FCT_PFX + datasetId + "." + N.NM_PFX;
+            datePrefix = N.FCT_PFX + datasetId + "." + N.DT_PFX;
+            timeFactPrefix = N.FCT_PFX + datasetId + "." + N.TM_PFX;
+            tablePrefix = datasetId + "_";
+        }
+    }
+
     private static class ColumnsSet {
         public final Set<SourceColumn> columns = new HashSet<SourceColumn>();
         public final Set<String> timeDimensions = new HashSet<String>();
+        // REFERENCE columns by the schemaReference, LABEL and HYPERLINK columns by the name
+        private final Map<String, List<SourceColumn>> referencesBySchema = new HashMap<String, List<SourceColumn>>();
+        private final Map<String, List<SourceColumn>> labelsByName = new HashMap<String, List<SourceColumn>>();
+
+        private void add(SourceColumn sc) {
+            columns.add(sc);
+            if ("REFERENCE".equals(sc.getLdmType())) {
+                if (sc.getSchemaReference() != null)
+                    index(referencesBySchema, sc.getSchemaReference(), sc);
+            } else if (LDM_TYPE_LABEL.equals(sc.getLdmType()) || LDM_TYPE_HYPERLINK.equals(sc.getLdmType())) {
+                index(labelsByName, sc.getName(), sc);
+            }
+        }
+
+        private static void index(Map<String, List<SourceColumn>> index, String key, SourceColumn sc) {
+            List<SourceColumn> l = index.get(key);
+            if (l == null) {
+                l = new ArrayList<SourceColumn>(1);
+                index.put(key, l);
+            }
+            l.add(sc);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,513 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.integration.datatransfer;
+
+import com.gooddata.Constants;
+import com.gooddata.exception.GdcUploadErrorException;
+import com.gooddata.util.Metrics;
+import org.apache.commons.codec.binary.Hex;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Uploads a file in chunks. A failed chunk is retried from the size the remote file reached,
+ * the chunks that have already been stored are never sent again. The size of the remote file is checked after
+ * every chunk. Optionally the upload is verified by comparing the MD5 checksums of the local and the remote file,
+ * which reads the whole remote file back.
+ * <p/>
+ * With more than one connection the chunks after the first one are written concurrently, each over its own
+ * session opened by {@link Target#open()}. If the server doesn't accept the writes beyond the end of the file,
+ * the upload falls back to the sequential chunks.
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+public class ChunkedUploader {
+
+    private static Logger l = Logger.getLogger(ChunkedUploader.class);
+
+    /**
+     * Metric name of the retried chunks
+     */
+    public static final String METRIC_TRANSFER_RETRIES = "transfer.retries";
+
+    public static final long DEFAULT_CHUNK_SIZE = 8 * 1024 * 1024;
+    public static final int DEFAULT_MAX_RETRIES = 5;
+    public static final int DEFAULT_CONNECTIONS = 1;
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * The remote file the chunks are written to
+     */
+    public interface Target {
+
+        /**
+         * Returns the size of the remote file
+         *
+         * @return the size of the remote file or -1 if the file doesn't exist
+         * @throws IOException in case of IO issues
+         */
+        public long length() throws IOException;
+
+        /**
+         * Writes the data to the remote file starting at the given offset. The file is truncated
+         * when the offset is zero.
+         *
+         * @param offset the offset of the data in the remote file
+         * @param data   the data
+         * @param length the data length
+         * @param total  the size of the whole file
+         * @return false if the server doesn't support writing at the non-zero offset, true otherwise
+         * @throws IOException in case of IO issues
+         */
+        public boolean write(long offset, InputStream data, long length, long total) throws IOException;
+
+        /**
+         * Reads the remote file
+         *
+         * @return the remote file content or null if it can't be read back
+         * @throws IOException in case of IO issues
+         */
+        public InputStream read() throws IOException;
+
+        /**
+         * Opens another session that writes the same remote file, used by the parallel uploads
+         *
+         * @return the new session or null if the target doesn't support the concurrent writes or no more
+         *         sessions are available
+         * @throws IOException in case of IO issues
+         */
+        public Target open() throws IOException;
+
+        /**
+         * Closes the session opened by {@link #open()}
+         */
+        public void close();
+    }
+
+    private long chunkSize = DEFAULT_CHUNK_SIZE;
+    private int maxRetries = DEFAULT_MAX_RETRIES;
+    private int connections = DEFAULT_CONNECTIONS;
+    private long retryInterval = Constants.RETRY_INTERVAL;
+    private boolean verifyChecksum = false;
+
+    /**
+     * Uploads the file to the target
+     *
+     * @param file   the local file
+     * @param target the remote file
+     * @throws IOException in case of IO issues that persist after all retries
+     * @throws GdcUploadErrorException if the checksum of the uploaded file doesn't match
+     */
+    public void upload(File file, Target target) throws IOException {
+        long total = file.length();
+        int attempts = 0;
+        while (true) {
+            if (connections > 1 && total > chunkSize) {
+                if (!uploadParallel(file, target, total)) {
+                    l.debug("The server doesn't support the parallel upload, uploading the chunks sequentially.");
+                    uploadChunks(file, target, total);
+                }
+            } else {
+                uploadChunks(file, target, total);
+            }
+            if (!verifyChecksum || verify(file, target)) {
+                return;
+            }
+            if (++attempts > maxRetries) {
+                throw new GdcUploadErrorException("The checksum of the uploaded file " + file.getName()
+                        + " doesn't match the local file.");
+            }
+            l.info("The checksum of the uploaded file " + file.getName() + " doesn't match, uploading it again.");
+            Metrics.count(METRIC_TRANSFER_RETRIES, 1);
+        }
+    }
+
+    /**
+     * Writes the file chunk by chunk, retries the failed chunks
+     *
+     * @param file   the local file
+     * @param target the remote file
+     * @param total  the file size
+     * @throws IOException when a chunk fails more than maxRetries times in a row
+     */
+    private void uploadChunks(File file, Target target, long total) throws IOException {
+        boolean ranged = true;
+        int failures = 0;
+        long offset = 0;
+        do {
+            long len = ranged ? Math.min(chunkSize, total - offset) : total - offset;
+            try {
+                if (!writeChunk(file, target, offset, len, total)) {
+                    l.debug("The server doesn't support ranged uploads, uploading the whole file.");
+                    ranged = false;
+                    offset = 0;
+                    continue;
+                }
+                long remote = target.length();
+                if (remote != offset + len) {
+                    if (offset > 0 && remote == len) {
+                        // the server ignored the range and replaced the file with the chunk
+                        l.debug("The server doesn't support ranged uploads, uploading the whole file.");
+                        ranged = false;
+                        offset = 0;
+                        continue;
+                    }
+                    throw new IOException("The remote file has " + remote + " bytes, expected " + (offset + len) + ".");
+                }
+                offset += len;
+                failures = 0;
+            } catch (IOException e) {
+                if (++failures > maxRetries) {
+                    throw e;
+                }
+                l.info("Upload of " + file.getName() + " at offset " + offset + " failed (" + e.getMessage()
+                        + "), retrying.");
+                l.debug("Upload failed.", e);
+                Metrics.count(METRIC_TRANSFER_RETRIES, 1);
+                sleep(failures * retryInterval);
+                offset = ranged ? resumeOffset(target, offset, total) : 0;
+            }
+        } while (offset < total);
+    }
+
+    /**
+     * Writes the first chunk and then the remaining chunks concurrently
+     *
+     * @param file   the local file
+     * @param target the remote file
+     * @param total  the file size
+     * @return false if the server doesn't support the concurrent writes
+     * @throws IOException when a chunk fails more than maxRetries times
+     */
+    private boolean uploadParallel(final File file, Target target, final long total) throws IOException {
+        // the first chunk creates the remote file
+        if (!writeChunk(file, target, 0, chunkSize, total, 0)) {
+            return false;
+        }
+        final BlockingQueue<Target> sessions = new LinkedBlockingQueue<Target>();
+        List<Target> opened = new ArrayList<Target>();
+        int workers = (int) Math.min(connections, (total - 1) / chunkSize);
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        try {
+            sessions.add(target);
+            for (int i = 1; i < workers; i++) {
+                Target session = target.open();
+                if (session == null) {
+                    if (opened.isEmpty()) {
+                        return false;
+                    }
+                    // no more sessions available, continue with the opened ones
+                    break;
+                }
+                opened.add(session);
+                sessions.add(session);
+            }
+            l.debug("Uploading " + file.getName() + " over " + sessions.size() + " connections.");
+            List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+            for (long offset = chunkSize; offset < total; offset += chunkSize) {
+                final long chunk = offset;
+                results.add(pool.submit(new Callable<Boolean>() {
+                    public Boolean call() throws Exception {
+                        Target session = sessions.take();
+                        try {
+                            return writeChunk(file, session, chunk, Math.min(chunkSize, total - chunk), total, 0);
+                        } finally {
+                            sessions.add(session);
+                        }
+                    }
+                }));
+            }
+            boolean ranged = true;
+            for (Future<Boolean> result : results) {
+                ranged &= result.get();
+            }
+            if (!ranged) {
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while uploading " + file.getName());
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        } finally {
+            pool.shutdownNow();
+            for (Target session : opened) {
+                session.close();
+            }
+        }
+        long remote = target.length();
+        if (remote != total) {
+            l.debug("The remote file has " + remote + " bytes after the parallel upload, expected " + total + ".");
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes a single chunk, retries it on failure
+     *
+     * @return false if the server doesn't support the ranged write
+     */
+    private boolean writeChunk(File file, Target target, long offset, long len, long total, int failures)
+            throws IOException {
+        while (true) {
+            try {
+                return writeChunk(file, target, offset, len, total);
+            } catch (IOException e) {
+                if (++failures > maxRetries) {
+                    throw e;
+                }
+                l.info("Upload of " + file.getName() + " at offset " + offset + " failed (" + e.getMessage()
+                        + "), retrying.");
+                l.debug("Upload failed.", e);
+                Metrics.count(METRIC_TRANSFER_RETRIES, 1);
+                sleep(failures * retryInterval);
+            }
+        }
+    }
+
+    /**
+     * Writes a single chunk
+     *
+     * @return false if the server doesn't support the ranged write
+     */
+    private boolean writeChunk(File file, Target target, long offset, long len, long total) throws IOException {
+        FileInputStream fis = new FileInputStream(file);
+        try {
+            long skipped = 0;
+            while (skipped < offset) {
+                long n = fis.skip(offset - skipped);
+                if (n <= 0) {
+                    throw new IOException("Can't seek to " + offset + " in " + file.getName());
+                }
+                skipped += n;
+            }
+            return target.write(offset, new BoundedInputStream(fis, len), len, total);
+        } finally {
+            fis.close();
+        }
+    }
+
+    /**
+     * Determines where to resume the upload after a failure
+     *
+     * @param target the remote file
+     * @param offset the offset of the failed chunk
+     * @param total  the file size
+     * @return the offset to resume from
+     */
+    private long resumeOffset(Target target, long offset, long total) {
+        try {
+            long remote = target.length();
+            if (remote < 0) {
+                return 0;
+            }
+            return Math.min(remote, total);
+        } catch (IOException e) {
+            l.debug("Can't get the remote file size, retrying the chunk at " + offset, e);
+            return offset;
+        }
+    }
+
+    /**
+     * Compares the checksum of the local and the remote file
+     *
+     * @return true if the checksums match or the remote file can't be read back
+     */
+    private boolean verify(File file, Target target) throws IOException {
+        InputStream remote = target.read();
+        if (remote == null) {
+            l.debug("Can't read back " + file.getName() + ", skipping the checksum verification.");
+            return true;
+        }
+        String remoteMd5;
+        try {
+            remoteMd5 = md5(remote);
+        } finally {
+            remote.close();
+        }
+        FileInputStream local = new FileInputStream(file);
+        try {
+            String localMd5 = md5(local);
+            l.debug("Checksum of " + file.getName() + ": local=" + localMd5 + ", remote=" + remoteMd5);
+            return localMd5.equals(remoteMd5);
+        } finally {
+            local.close();
+        }
+    }
+
+    /**
+     * Computes the MD5 checksum of the stream content
+     *
+     * @param is the stream
+     * @return hex encoded MD5
+     * @throws IOException in case of IO issues
+     */
+    public static String md5(InputStream is) throws IOException {
+        MessageDigest md;
+        try {
+            md = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 isn't available.", e);
+        }
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int n;
+        while ((n = is.read(buffer)) != -1) {
+            md.update(buffer, 0, n);
+        }
+        return new String(Hex.encodeHex(md.digest()));
+    }
+
+    private void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public long getChunkSize() {
+        return chunkSize;
+    }
+
+    public void setChunkSize(long chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("The chunk size must be positive.");
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public int getConnections() {
+        return connections;
+    }
+
+    public void setConnections(int connections) {
+        if (connections <= 0) {
+            throw new IllegalArgumentException("The number of connections must be positive.");
+        }
+        this.connections = connections;
+    }
+
+    public long getRetryInterval() {
+        return retryInterval;
+    }
+
+    public void setRetryInterval(long retryInterval) {
+        this.retryInterval = retryInterval;
+    }
+
+    public boolean isVerifyChecksum() {
+        return verifyChecksum;
+    }
+
+    public void setVerifyChecksum(boolean verifyChecksum) {
+        this.verifyChecksum = verifyChecksum;
+    }
+
+    /**
+     * Reads at most the given number of bytes and leaves the underlying stream open
+     */
+    private static class BoundedInputStream extends FilterInputStream {
+
+        private long remaining;
+
+        BoundedInputStream(InputStream in, long length) {
+            super(in);
+            this.remaining = length;
+        }
+
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = super.read();
+            if (b >= 0) {
+                remaining--;
+            }
+            return b;
+        }
+
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = super.read(b, off, (int) Math.min(len, remaining));
+            if (n > 0) {
+                remaining -= n;
+            }
+            return n;
+        }
+
+        public long skip(long n) throws IOException {
+            long skipped = super.skip(Math.min(n, remaining));
+            remaining -= skipped;
+            return skipped;
+        }
+
+        public int available() throws IOException {
+            return (int) Math.min(super.available(), remaining);
+        }
+
+        public boolean markSupported() {
+            return false;
+        }
+
+        public void close() {
+            // the underlying stream is closed by the uploader
+        }
+    }
+}
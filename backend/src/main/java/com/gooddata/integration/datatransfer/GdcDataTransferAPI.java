@@ -34,6 +34,11 @@ import java.util.Map;
  */
 public interface GdcDataTransferAPI {
 
+    /**
+     * Metric names of the archive transfers and of the transferred bytes
+     */
+    public static final String METRIC_TRANSFER = "transfer";
+    public static final String METRIC_TRANSFER_BYTES = "transfer.bytes";
 
     /**
      * Transfers a local directory to the remote GDC server
@@ -43,6 +48,15 @@ public interface GdcDataTransferAPI {
      */
     public void transferDir(String archiveName) throws IOException;
 
+    /**
+     * Transfers a local archive to the given remote directory on the GDC server
+     *
+     * @param archiveName the name of the ZIP archive that is going to be transferred
+     * @param remoteDir   the remote directory name
+     * @throws IOException in case of IO issues
+     */
+    public void transferDir(String archiveName, String remoteDir) throws IOException;
+
     /**
      * GET the transfer logs from the server
      *
@@ -51,4 +65,17 @@ public interface GdcDataTransferAPI {
      * @throws IOException in case of IO issues
      */
     public Map<String, String> getTransferLogs(String remoteDir) throws IOException;
+
+    /**
+     * Returns the uploader that transfers the archives, the chunk size and the number of connections
+     * can be configured there
+     *
+     * @return the uploader
+     */
+    public ChunkedUploader getUploader();
+
+    /**
+     * Closes the connections kept open for the subsequent transfers
+     */
+    public void close();
 }
@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.integration.ftp;
+
+import com.gooddata.exception.GdcUploadErrorException;
+import com.gooddata.integration.rest.configuration.NamePasswordConfiguration;
+import org.apache.commons.net.ftp.FTPClient;
+import org.apache.commons.net.ftp.FTPReply;
+import org.apache.commons.net.ftp.FTPSClient;
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Pool of the authenticated FTP sessions. The idle sessions are validated (NOOP) before they are reused,
+ * the number of the open sessions is limited. The pool is thread safe.
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+public class FtpSessionPool {
+
+    private static Logger l = Logger.getLogger(FtpSessionPool.class);
+
+    public static final int DEFAULT_MAX_SESSIONS = 8;
+    public static final long DEFAULT_MAX_IDLE_TIME = 60000;
+
+    protected NamePasswordConfiguration config;
+    private final Semaphore permits;
+    private final long maxIdleTime;
+    // the most recently used session first
+    private final LinkedList<FTPClient> idle = new LinkedList<FTPClient>();
+    private final Map<FTPClient, Long> lastUsed = new HashMap<FTPClient, Long>();
+    private final Map<FTPClient, String> homes = new HashMap<FTPClient, String>();
+    private int created = 0;
+    private volatile boolean closed = false;
+
+    /**
+     * Constructs the pool
+     *
+     * @param config      NamePasswordConfiguration object with the GDC name and password configuration
+     * @param maxSessions the maximum number of the open sessions
+     * @param maxIdleTime the time in ms after which an idle session is closed instead of reused
+     */
+    public FtpSessionPool(NamePasswordConfiguration config, int maxSessions, long maxIdleTime) {
+        this.config = config;
+        this.permits = new Semaphore(maxSessions, true);
+        this.maxIdleTime = maxIdleTime;
+    }
+
+    /**
+     * Returns a logged in session, waits until a session is available
+     *
+     * @return the session
+     * @throws IOException if the session can't be opened
+     */
+    public FTPClient borrow() throws IOException {
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for an FTP session.");
+        }
+        return take();
+    }
+
+    /**
+     * Returns a logged in session if one is available immediately
+     *
+     * @return the session or null if all sessions are in use
+     * @throws IOException if the session can't be opened
+     */
+    public FTPClient tryBorrow() throws IOException {
+        if (!permits.tryAcquire()) {
+            return null;
+        }
+        return take();
+    }
+
+    /**
+     * Returns the session to the pool, the session can be reused
+     *
+     * @param session the borrowed session
+     */
+    public void release(FTPClient session) {
+        String home;
+        synchronized (this) {
+            home = homes.get(session);
+        }
+        boolean valid = !closed && session.isConnected();
+        if (valid && home != null) {
+            try {
+                valid = session.changeWorkingDirectory(home);
+            } catch (IOException e) {
+                valid = false;
+            }
+        }
+        if (!valid) {
+            invalidate(session);
+            return;
+        }
+        synchronized (this) {
+            lastUsed.put(session, System.currentTimeMillis());
+            idle.addFirst(session);
+        }
+        permits.release();
+    }
+
+    /**
+     * Closes the broken session
+     *
+     * @param session the borrowed session
+     */
+    public void invalidate(FTPClient session) {
+        synchronized (this) {
+            lastUsed.remove(session);
+            homes.remove(session);
+        }
+        disconnect(session);
+        permits.release();
+    }
+
+    /**
+     * Closes the idle sessions, the borrowed sessions are closed when they are returned
+     */
+    public void close() {
+        LinkedList<FTPClient> sessions;
+        synchronized (this) {
+            closed = true;
+            sessions = new LinkedList<FTPClient>(idle);
+            idle.clear();
+        }
+        for (FTPClient session : sessions) {
+            try {
+                session.logout();
+            } catch (IOException e) {
+                l.debug("FTP logout failed.", e);
+            }
+            disconnect(session);
+        }
+    }
+
+    /**
+     * Returns the number of the sessions opened so far
+     *
+     * @return the number of the logins
+     */
+    public synchronized int getCreated() {
+        return created;
+    }
+
+    /**
+     * Takes a valid idle session or opens a new one, the permit is already acquired
+     */
+    private FTPClient take() throws IOException {
+        try {
+            while (true) {
+                FTPClient session;
+                long used;
+                synchronized (this) {
+                    if (closed) {
+                        throw new IllegalStateException("The FTP session pool is closed.");
+                    }
+                    session = idle.poll();
+                    if (session == null) {
+                        created++;
+                        break;
+                    }
+                    used = lastUsed.get(session);
+                }
+                if (isValid(session, used)) {
+                    return session;
+                }
+                l.debug("Discarding the stale FTP session.");
+                synchronized (this) {
+                    lastUsed.remove(session);
+                    homes.remove(session);
+                }
+                disconnect(session);
+            }
+            FTPClient session = createClient();
+            try {
+                login(session);
+                String home = session.printWorkingDirectory();
+                synchronized (this) {
+                    homes.put(session, home);
+                }
+            } catch (IOException e) {
+                disconnect(session);
+                throw e;
+            } catch (RuntimeException e) {
+                disconnect(session);
+                throw e;
+            }
+            return session;
+        } catch (IOException e) {
+            permits.release();
+            throw e;
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Checks that the idle session is still open
+     */
+    private boolean isValid(FTPClient session, long used) {
+        if (!session.isConnected() || System.currentTimeMillis() - used > maxIdleTime) {
+            return false;
+        }
+        try {
+            return session.sendNoOp();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Creates a new FTP client, secure if the configuration requires it
+     *
+     * @return the FTP client
+     */
+    protected FTPClient createClient() {
+        if (config.getProtocol().equals("ftps")) {
+            try {
+                return new FTPSClient();
+            } catch (NoSuchAlgorithmException e) {
+                throw new GdcUploadErrorException("Failed to initialize secure FTP client");
+            }
+        }
+        l.debug("Using insecure FTP transfer");
+        return new FTPClient();
+    }
+
+    /**
+     * Connects to the FTP server and logs in
+     *
+     * @param client the FTP client
+     * @throws IOException in case of IO issues
+     */
+    protected void login(FTPClient client) throws IOException {
+        client.connect(config.getGdcHost());
+        if (!FTPReply.isPositiveCompletion(client.getReplyCode())) {
+            throw error(client, "Can't FTP connect: server=" + config.getGdcHost());
+        }
+        client.enterLocalPassiveMode();
+        if (!FTPReply.isPositiveCompletion(client.getReplyCode())) {
+            throw error(client, "Can't set FTP PASV mode: server=" + config.getGdcHost() + ", username="
+                    + config.getUsername());
+        }
+        client.login(config.getUsername(), config.getPassword());
+        if (!FTPReply.isPositiveCompletion(client.getReplyCode())) {
+            throw error(client, "Can't FTP login: server=" + config.getGdcHost() + ", username="
+                    + config.getUsername());
+        }
+    }
+
+    /**
+     * Disconnects from the FTP server, ignores the errors
+     *
+     * @param client the FTP client
+     */
+    static void disconnect(FTPClient client) {
+        if (client.isConnected()) {
+            try {
+                client.disconnect();
+            } catch (IOException ioe) {
+                // do nothing
+            }
+        }
+    }
+
+    /**
+     * Creates the upload error with the last client reply
+     *
+     * @param client the FTP client
+     * @param msg    the error message
+     * @return the upload error
+     */
+    static GdcUploadErrorException error(FTPClient client, String msg) {
+        String reply = client.getReplyString() + " (code: " + client.getReplyCode() + ")";
+        l.debug(msg + ", " + reply);
+        return new GdcUploadErrorException(msg + ", " + reply);
+    }
+}
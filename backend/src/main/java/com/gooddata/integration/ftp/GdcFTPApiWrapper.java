@@ -24,21 +24,22 @@
 package com.gooddata.integration.ftp;
 
 import com.gooddata.exception.GdcUploadErrorException;
+import com.gooddata.integration.datatransfer.ChunkedUploader;
 import com.gooddata.integration.datatransfer.GdcDataTransferAPI;
 import com.gooddata.integration.rest.configuration.NamePasswordConfiguration;
 import com.gooddata.util.FileUtil;
+import com.gooddata.util.Metrics;
 import org.apache.commons.net.ftp.FTPClient;
 import org.apache.commons.net.ftp.FTPReply;
-import org.apache.commons.net.ftp.FTPSClient;
 import org.apache.log4j.Logger;
 
 import java.io.*;
-import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
- * GoodData FTP API Java wrapper
+ * GoodData FTP API Java wrapper. The authenticated FTP sessions are pooled and reused by the subsequent
+ * transfers, the wrapper can be used from multiple threads.
  *
  * @author zd <zd@gooddata.com>
  * @version 1.0
@@ -49,7 +50,8 @@ public class GdcFTPApiWrapper implements GdcDataTransferAPI {
 
     protected static final String DEFAULT_ARCHIVE_NAME = "upload.zip";
 
-    protected FTPClient client;
+    protected FtpSessionPool sessions;
+    protected ChunkedUploader uploader = new ChunkedUploader();
     protected NamePasswordConfiguration config;
 
     /**
@@ -58,17 +60,19 @@ public class GdcFTPApiWrapper implements GdcDataTransferAPI {
      * @param config NamePasswordConfiguration object with the GDC name and password configuration
      */
     public GdcFTPApiWrapper(NamePasswordConfiguration config) {
+        this(config, new FtpSessionPool(config, FtpSessionPool.DEFAULT_MAX_SESSIONS,
+                FtpSessionPool.DEFAULT_MAX_IDLE_TIME));
+    }
+
+    /**
+     * Constructs the GoodData FTP API Java wrapper that uses the given sessions
+     *
+     * @param config   NamePasswordConfiguration object with the GDC name and password configuration
+     * @param sessions the FTP session pool
+     */
+    public GdcFTPApiWrapper(NamePasswordConfiguration config, FtpSessionPool sessions) {
         this.config = config;
-        if (config.getProtocol().equals("ftps")) {
-            try {
-                client = new FTPSClient();
-            } catch (NoSuchAlgorithmException e) {
-                throw new GdcUploadErrorException("Failed to initialize secure FTP client");
-            }
-        } else {
-            l.debug("Using insecure FTP transfer");
-            client = new FTPClient();
-        }
+        this.sessions = sessions;
     }
 
     /**
@@ -78,84 +82,64 @@ public class GdcFTPApiWrapper implements GdcDataTransferAPI {
      * @throws IOException in case of IO issues
      */
     public void transferDir(String archiveName) throws IOException {
-        l.debug("Transfering archive " + archiveName);
+        transferDir(archiveName, new File(archiveName).getName().split("\\.")[0]);
+    }
+
+    /**
+     * Transfers a local archive to the given remote directory on the GDC server
+     *
+     * @param archiveName the name of the ZIP archive that is going to be transferred
+     * @param dir         the remote directory name
+     * @throws IOException in case of IO issues
+     */
+    public void transferDir(String archiveName, String dir) throws IOException {
+        l.debug("Transfering archive " + archiveName + " to " + dir);
+        long start = Metrics.start();
+        File file = new File(archiveName);
+        FtpTarget target = new FtpTarget(sessions.borrow(), dir, file.getName());
+        boolean ok = false;
         try {
-            File file = new File(archiveName);
-            String dir = file.getName().split("\\.")[0];
-            client.connect(config.getGdcHost());
-            if (FTPReply.isPositiveCompletion(client.getReplyCode())) {
-                client.enterLocalPassiveMode();
-                if (FTPReply.isPositiveCompletion(client.getReplyCode())) {
-                    client.login(config.getUsername(), config.getPassword());
-                    if (FTPReply.isPositiveCompletion(client.getReplyCode())) {
-                        client.makeDirectory(dir);
-                        if (FTPReply.isPositiveCompletion(client.getReplyCode())) {
-                            client.changeWorkingDirectory(dir);
-                            if (FTPReply.isPositiveCompletion(client.getReplyCode())) {
-                                client.setFileType(FTPClient.BINARY_FILE_TYPE);
-                                if (FTPReply.isPositiveCompletion(client.getReplyCode())) {
-                                    client.storeFile(file.getName(), new FileInputStream(file));
-                                    if (FTPReply.isPositiveCompletion(client.getReplyCode())) {
-                                        client.rename(file.getName(), DEFAULT_ARCHIVE_NAME);
-                                        if (!FTPReply.isPositiveCompletion(client.getReplyCode())) {
-                                            l.debug("Can't change the file's name: server="
-                                                    + config.getGdcHost() + ", file=" + file.getName() + ", " + clientReply(client));
-                                            throw new GdcUploadErrorException("Can't change the file's name: server="
-                                                    + config.getGdcHost() + ", file=" + file.getName() + ", " + clientReply(client));
-                                        }
-                                    } else {
-                                        l.debug("Can't copy file to the FTP: server="
-                                                + config.getGdcHost() + ", file=" + file.getName() + ", " + clientReply(client));
-                                        throw new GdcUploadErrorException("Can't copy file to the FTP: server="
-                                                + config.getGdcHost() + ", file=" + file.getName() + ", " + clientReply(client));
-                                    }
-                                } else {
-                                    l.debug("Can't set the BINARY file transfer: server="
-                                            + config.getGdcHost() + ", " + clientReply(client));
-                                    throw new GdcUploadErrorException("Can't set the BINARY file transfer: server="
-                                            + config.getGdcHost() + ", " + clientReply(client));
-                                }
-                            } else {
-                                l.debug("Can't cd to the '" + dir + "' directory: server="
-                                        + config.getGdcHost() + ", " + clientReply(client));
-                                throw new GdcUploadErrorException("Can't cd to the '" + dir + "' directory: server="
-                                        + config.getGdcHost() + ", " + clientReply(client));
-                            }
-                        } else {
-                            l.debug("Can't create the '" + dir + "' directory: server="
-                                    + config.getGdcHost() + ", " + clientReply(client));
-                            throw new GdcUploadErrorException("Can't create the '" + dir + "' directory: server="
-                                    + config.getGdcHost() + ", " + clientReply(client));
-                        }
-                        client.logout();
-                    } else {
-                        l.debug("Can't FTP login: server=" + config.getGdcHost()
-                                + ", username=" + config.getUsername() + ", " + clientReply(client));
-                        throw new GdcUploadErrorException("Can't FTP login: server=" + config.getGdcHost()
-                                + ", username=" + config.getUsername() + ", " + clientReply(client));
-                    }
-                } else {
-                    l.debug("Can't set FTP PASV mode: server=" + config.getGdcHost()
-                            + ", username=" + config.getUsername() + ", " + clientReply(client));
-                    throw new GdcUploadErrorException("Can't set FTP PASV mode: server=" + config.getGdcHost()
-                            + ", username=" + config.getUsername() + ", " + clientReply(client));
-                }
-            } else {
-                l.debug("Can't FTP connect: server=" + config.getGdcHost() + ", " + clientReply(client));
-                throw new GdcUploadErrorException("Can't FTP connect: server=" + config.getGdcHost() + ", " + clientReply(client));
+            FTPClient client = target.client;
+            client.makeDirectory(dir);
+            if (!FTPReply.isPositiveCompletion(client.getReplyCode())) {
+                throw FtpSessionPool.error(client, "Can't create the '" + dir + "' directory: server="
+                        + config.getGdcHost());
             }
+            target.prepare();
+            uploader.upload(file, target);
+            client = target.client;
+            client.rename(file.getName(), DEFAULT_ARCHIVE_NAME);
+            if (!FTPReply.isPositiveCompletion(client.getReplyCode())) {
+                throw FtpSessionPool.error(client, "Can't change the file's name: server=" + config.getGdcHost()
+                        + ", file=" + file.getName());
+            }
+            ok = true;
         } finally {
-            if (client.isConnected()) {
-                try {
-                    client.disconnect();
-                } catch (IOException ioe) {
-                    // do nothing
-                }
+            if (ok) {
+                target.close();
+            } else {
+                target.invalidate();
             }
         }
+        Metrics.stop(METRIC_TRANSFER, start);
+        Metrics.count(METRIC_TRANSFER_BYTES, file.length());
         l.debug("Transferred archive " + archiveName);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public ChunkedUploader getUploader() {
+        return uploader;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void close() {
+        sessions.close();
+    }
+
     /**
      * GET the transfer logs from the FTP server
      *
@@ -166,62 +150,38 @@ public class GdcFTPApiWrapper implements GdcDataTransferAPI {
     public Map<String, String> getTransferLogs(String remoteDir) throws IOException {
         l.debug("Retrieveing transfer logs.");
         Map<String, String> result = new HashMap<String, String>();
+        FTPClient client = sessions.borrow();
+        boolean ok = false;
         try {
-            client.connect(config.getGdcHost());
-            if (FTPReply.isPositiveCompletion(client.getReplyCode())) {
-                client.enterLocalPassiveMode();
-                client.login(config.getUsername(), config.getPassword());
-                if (FTPReply.isPositiveCompletion(client.getReplyCode())) {
-                    client.changeWorkingDirectory(remoteDir);
-                    if (FTPReply.isPositiveCompletion(client.getReplyCode())) {
-                        client.setFileType(FTPClient.ASCII_FILE_TYPE);
-                        if (FTPReply.isPositiveCompletion(client.getReplyCode())) {
-                            String[] files = client.listNames();
-                            for (String file : files) {
-                                if (file.endsWith(".log")) {
-                                    ByteArrayOutputStream logContent = new ByteArrayOutputStream();
-                                    InputStream in = client.retrieveFileStream(file);
-                                    FileUtil.copy(in, logContent);
-                                    boolean st = client.completePendingCommand();
-                                    if (!st || !FTPReply.isPositiveCompletion(client.getReplyCode())) {
-                                        l.debug("Can't retrieve log file: server="
-                                                + config.getGdcHost() + ", file=" + file + ", " + clientReply(client));
-                                        throw new GdcUploadErrorException("Can't retrieve log file: server="
-                                                + config.getGdcHost() + ", file=" + file + ", " + clientReply(client));
-                                    }
-                                    result.put(file, new String(logContent.toByteArray()));
-                                }
-                            }
-                        } else {
-                            l.debug("Can't set the ASCII file transfer: server="
-                                    + config.getGdcHost() + ", " + clientReply(client));
-                            throw new GdcUploadErrorException("Can't set the ASCII file transfer: server="
-                                    + config.getGdcHost() + ", " + clientReply(client));
-                        }
-                    } else {
-                        l.debug("Can't cd to the '" + remoteDir + "' directory: server="
-                                + config.getGdcHost() + ", " + clientReply(client));
-                        throw new GdcUploadErrorException("Can't cd to the '" + remoteDir + "' directory: server="
-                                + config.getGdcHost() + ", " + clientReply(client));
+            client.changeWorkingDirectory(remoteDir);
+            if (!FTPReply.isPositiveCompletion(client.getReplyCode())) {
+                throw FtpSessionPool.error(client, "Can't cd to the '" + remoteDir + "' directory: server="
+                        + config.getGdcHost());
+            }
+            client.setFileType(FTPClient.ASCII_FILE_TYPE);
+            if (!FTPReply.isPositiveCompletion(client.getReplyCode())) {
+                throw FtpSessionPool.error(client, "Can't set the ASCII file transfer: server=" + config.getGdcHost());
+            }
+            String[] files = client.listNames();
+            for (String file : files) {
+                if (file.endsWith(".log")) {
+                    ByteArrayOutputStream logContent = new ByteArrayOutputStream();
+                    InputStream in = client.retrieveFileStream(file);
+                    FileUtil.copy(in, logContent);
+                    boolean st = client.completePendingCommand();
+                    if (!st || !FTPReply.isPositiveCompletion(client.getReplyCode())) {
+                        throw FtpSessionPool.error(client, "Can't retrieve log file: server=" + config.getGdcHost()
+                                + ", file=" + file);
                     }
-                    client.logout();
-                } else {
-                    l.debug("Can't FTP login: server=" + config.getGdcHost()
-                            + ", username=" + config.getUsername() + ", " + clientReply(client));
-                    throw new GdcUploadErrorException("Can't FTP login: server=" + config.getGdcHost()
-                            + ", username=" + config.getUsername() + ", " + clientReply(client));
+                    result.put(file, new String(logContent.toByteArray()));
                 }
-            } else {
-                l.debug("Can't FTP connect: server=" + config.getGdcHost() + ", " + clientReply(client));
-                throw new GdcUploadErrorException("Can't FTP connect: server=" + config.getGdcHost() + ", " + clientReply(client));
             }
+            ok = true;
         } finally {
-            if (client.isConnected()) {
-                try {
-                    client.disconnect();
-                } catch (IOException ioe) {
-                    // do nothing
-                }
+            if (ok) {
+                sessions.release(client);
+            } else {
+                sessions.invalidate(client);
             }
         }
         l.debug("Transfer logs retrieved.");
@@ -237,4 +197,150 @@ public class GdcFTPApiWrapper implements GdcDataTransferAPI {
     private String clientReply(FTPClient client) {
         return client.getReplyString() + " (code: " + client.getReplyCode() + ")";
     }
+
+    /**
+     * Remote FTP file written by the restarted STORs (REST command) over a single pooled FTP session.
+     * The broken sessions are replaced.
+     */
+    private class FtpTarget implements ChunkedUploader.Target {
+
+        private FTPClient client;
+        private final String dir;
+        private final String name;
+
+        FtpTarget(FTPClient client, String dir, String name) {
+            this.client = client;
+            this.dir = dir;
+            this.name = name;
+        }
+
+        public long length() throws IOException {
+            reconnect();
+            try {
+                int reply = client.sendCommand("SIZE", name);
+                if (reply == FTPReply.FILE_STATUS) {
+                    String size = client.getReplyString().substring(3).trim();
+                    try {
+                        return Long.parseLong(size);
+                    } catch (NumberFormatException e) {
+                        throw new IOException("Invalid FTP SIZE reply: " + clientReply(client));
+                    }
+                }
+                if (reply == FTPReply.FILE_UNAVAILABLE) {
+                    return -1;
+                }
+                throw new IOException("Can't get the size of " + name + ": " + clientReply(client));
+            } catch (IOException e) {
+                FtpSessionPool.disconnect(client);
+                throw e;
+            }
+        }
+
+        public boolean write(long offset, InputStream data, long length, long total) throws IOException {
+            reconnect();
+            try {
+                client.setRestartOffset(offset);
+                if (client.storeFile(name, data)) {
+                    return true;
+                }
+                int reply = client.getReplyCode();
+                if (offset > 0 && (reply == FTPReply.COMMAND_NOT_IMPLEMENTED
+                        || reply == FTPReply.COMMAND_NOT_IMPLEMENTED_FOR_PARAMETER
+                        || reply == FTPReply.UNRECOGNIZED_COMMAND)) {
+                    return false;
+                }
+                throw new IOException("Can't copy file to the FTP: server=" + config.getGdcHost() + ", file="
+                        + name + ", " + clientReply(client));
+            } catch (IOException e) {
+                FtpSessionPool.disconnect(client);
+                throw e;
+            }
+        }
+
+        public InputStream read() throws IOException {
+            reconnect();
+            InputStream in = client.retrieveFileStream(name);
+            if (in == null) {
+                FtpSessionPool.disconnect(client);
+                throw new IOException("Can't read " + name + " from the FTP: " + clientReply(client));
+            }
+            return new FilterInputStream(in) {
+                public void close() throws IOException {
+                    super.close();
+                    if (!client.completePendingCommand()) {
+                        throw new IOException("Can't read " + name + " from the FTP: " + clientReply(client));
+                    }
+                }
+            };
+        }
+
+        public ChunkedUploader.Target open() throws IOException {
+            FTPClient session = sessions.tryBorrow();
+            if (session == null) {
+                return null;
+            }
+            FtpTarget target = new FtpTarget(session, dir, name);
+            try {
+                target.prepare();
+            } catch (IOException e) {
+                target.invalidate();
+                throw e;
+            }
+            return target;
+        }
+
+        public void close() {
+            if (client != null) {
+                sessions.release(client);
+                client = null;
+            }
+        }
+
+        /**
+         * Returns the broken session to the pool, the session is returned only once
+         */
+        void invalidate() {
+            if (client != null) {
+                sessions.invalidate(client);
+                client = null;
+            }
+        }
+
+        /**
+         * Changes to the remote directory in the BINARY mode
+         */
+        void prepare() throws IOException {
+            try {
+                client.changeWorkingDirectory(dir);
+                if (!FTPReply.isPositiveCompletion(client.getReplyCode())) {
+                    throw FtpSessionPool.error(client, "Can't cd to the '" + dir + "' directory: server="
+                            + config.getGdcHost());
+                }
+                client.setFileType(FTPClient.BINARY_FILE_TYPE);
+                if (!FTPReply.isPositiveCompletion(client.getReplyCode())) {
+                    throw FtpSessionPool.error(client, "Can't set the BINARY file transfer: server="
+                            + config.getGdcHost());
+                }
+            } catch (GdcUploadErrorException e) {
+                // let the uploader retry
+                FtpSessionPool.disconnect(client);
+                throw new IOException(e.getMessage());
+            }
+        }
+
+        /**
+         * Replaces the session closed after a failure
+         */
+        private void reconnect() throws IOException {
+            if (client != null && !client.isConnected()) {
+                l.debug("Reconnecting to the FTP server " + config.getGdcHost());
+                invalidate();
+            }
+            // the previous reconnect may have failed to borrow a new session
+            if (client == null) {
+                client = sessions.borrow();
+                prepare();
+            }
+        }
+    }
 }
@@ -29,6 +29,8 @@ import com.gooddata.integration.model.Column;
 import com.gooddata.integration.model.Project;
 import com.gooddata.integration.model.SLI;
 import com.gooddata.integration.rest.configuration.NamePasswordConfiguration;
+import com.gooddata.util.JSONStreamReader;
+import com.gooddata.util.Metrics;
 import com.gooddata.util.NetUtil;
 
 import net.sf.json.JSON;
@@ -37,9 +39,11 @@ import net.sf.json.JSONObject;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpException;
 import org.apache.commons.httpclient.HttpMethod;
+import org.apache.commons.httpclient.HttpMethodBase;
 import org.apache.commons.httpclient.HttpStatus;
 import org.apache.commons.httpclient.cookie.CookiePolicy;
 import org.apache.commons.httpclient.methods.DeleteMethod;
+import org.apache.commons.httpclient.methods.EntityEnclosingMethod;
 import org.apache.commons.httpclient.methods.GetMethod;
 import org.apache.commons.httpclient.methods.InputStreamRequestEntity;
 import org.apache.commons.httpclient.methods.PostMethod;
@@ -47,6 +51,7 @@ import org.apache.log4j.Logger;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.net.URL;
@@ -112,6 +117,21 @@ public class GdcRESTApiWrapper {
     protected NamePasswordConfiguration config;
     private JSONObject userLogin = null;
     private JSONObject profile;
+    // project id -> project roles, the roles don't change during the project lifetime
+    private final Map<String, List<GdcRole>> projectRoles = new HashMap<String, List<GdcRole>>();
+
+    /**
+     * Max number of users in a single project users update request
+     */
+    public static final int USERS_CHUNK_SIZE = 100;
+
+    /**
+     * Metric names of the REST API round trips and of the failed calls
+     */
+    public static final String METRIC_REST = "rest";
+    public static final String METRIC_REST_ERRORS = "rest.errors";
+    public static final String METRIC_REST_RETRIES = "rest.retries";
+    public static final String METRIC_REST_RETRY_WAIT = "rest.retryWait";
 
     private static HashMap<String, String> ROLES = new HashMap<String, String>();
 
@@ -508,34 +528,7 @@ public class GdcRESTApiWrapper {
      */
     public List<String> enumerateAttributes(String projectId) {
         l.debug("Enumerating attributes for project id=" + projectId);
-        List<String> list = new ArrayList<String>();
-        String qUri = getProjectMdUrl(projectId) + ATTR_QUERY;
-        HttpMethod qGet = createGetMethod(qUri);
-        try {
-            String qr = executeMethodOk(qGet);
-            JSONObject q = JSONObject.fromObject(qr);
-            if (q.isNullObject()) {
-                l.debug("Enumerating attributes for project id=" + projectId + " failed.");
-                throw new GdcProjectAccessException("Enumerating attributes for project id=" + projectId + " failed.");
-            }
-            JSONObject qry = q.getJSONObject("query");
-            if (qry.isNullObject()) {
-                l.debug("Enumerating attributes for project id=" + projectId + " failed.");
-                throw new GdcProjectAccessException("Enumerating reports for project id=" + projectId + " failed.");
-            }
-            JSONArray entries = qry.getJSONArray("entries");
-            if (entries == null) {
-                l.debug("Enumerating attributes for project id=" + projectId + " failed.");
-                throw new GdcProjectAccessException("Enumerating reports for project id=" + projectId + " failed.");
-            }
-            for (Object oentry : entries) {
-                JSONObject entry = (JSONObject) oentry;
-                list.add(entry.getString("link"));
-            }
-        } finally {
-            qGet.releaseConnection();
-        }
-        return list;
+        return enumerateLinks(projectId, getProjectMdUrl(projectId) + ATTR_QUERY, "attributes", false);
     }
 
     /**
@@ -738,32 +731,46 @@ public class GdcRESTApiWrapper {
      */
     public List<String> enumerateReports(String projectId) {
         l.debug("Enumerating reports for project id=" + projectId);
+        return enumerateLinks(projectId, getProjectMdUrl(projectId) + REPORT_QUERY, "reports", true);
+    }
+
+    /**
+     * Enumerates the links of a query resource entries. The response is streamed, only the entries'
+     * links are read.
+     *
+     * @param projectId      project Id
+     * @param qUri           the query resource uri
+     * @param resource       the enumerated resource name (for messages)
+     * @param skipDeprecated if true, the deprecated entries are left out
+     * @return List of the entry uris
+     */
+    private List<String> enumerateLinks(String projectId, String qUri, String resource, boolean skipDeprecated) {
         List<String> list = new ArrayList<String>();
-        String qUri = getProjectMdUrl(projectId) + REPORT_QUERY;
         HttpMethod qGet = createGetMethod(qUri);
         try {
-            String qr = executeMethodOk(qGet);
-            JSONObject q = JSONObject.fromObject(qr);
-            if (q.isNullObject()) {
-                l.debug("Enumerating reports for project id=" + projectId + " failed.");
-                throw new GdcProjectAccessException("Enumerating reports for project id=" + projectId + " failed.");
-            }
-            JSONObject qry = q.getJSONObject("query");
-            if (qry.isNullObject()) {
-                l.debug("Enumerating reports for project id=" + projectId + " failed.");
-                throw new GdcProjectAccessException("Enumerating reports for project id=" + projectId + " failed.");
-            }
-            JSONArray entries = qry.getJSONArray("entries");
-            if (entries == null) {
-                l.debug("Enumerating reports for project id=" + projectId + " failed.");
-                throw new GdcProjectAccessException("Enumerating reports for project id=" + projectId + " failed.");
-            }
-            for (Object oentry : entries) {
-                JSONObject entry = (JSONObject) oentry;
-                int deprecated = entry.getInt("deprecated");
-                if (deprecated == 0)
-                    list.add(entry.getString("link"));
+            JSONStreamReader r = executeMethodOkStream(qGet);
+            if (!r.find("query", "entries") || r.peek() != JSONStreamReader.Token.BEGIN_ARRAY) {
+                l.debug("Enumerating " + resource + " for project id=" + projectId + " failed.");
+                throw new GdcProjectAccessException("Enumerating " + resource + " for project id=" + projectId + " failed.");
+            }
+            r.beginArray();
+            while (r.hasNext()) {
+                Map<String, String> entry = r.readFields("link", "deprecated");
+                String deprecated = entry.get("deprecated");
+                if (skipDeprecated && deprecated != null && !"0".equals(deprecated))
+                    continue;
+                String link = entry.get("link");
+                if (link == null) {
+                    l.debug("Enumerating " + resource + " for project id=" + projectId + " failed. An entry without link.");
+                    throw new GdcProjectAccessException("Enumerating " + resource + " for project id=" + projectId
+                            + " failed. An entry without link.");
+                }
+                list.add(link);
             }
+            r.endArray();
+        } catch (IOException e) {
+            l.debug("Error reading GoodData REST API response.", e);
+            throw new HttpMethodException("Error reading GoodData REST API response.", e);
         } finally {
             qGet.releaseConnection();
         }
@@ -1085,6 +1092,31 @@ public class GdcRESTApiWrapper {
         }
     }
 
+    /**
+     * Checks whether a report data result has already been computed
+     *
+     * @param dataResultUri the data result uri returned by the {@link #executeReport(String)} method
+     * @return true if the data result is ready, false if it is still being computed
+     */
+    public boolean isReportResultReady(String dataResultUri) {
+        l.debug("Checking report data result uri=" + dataResultUri);
+        HttpMethod resultGet = createGetMethod(getServerUrl() + dataResultUri);
+        try {
+            executeMethodOkOnly(resultGet, true, 16);
+            return true;
+        } catch (HttpMethodNotFinishedYetException e) {
+            return false;
+        } catch (HttpMethodException e) {
+            l.debug("Checking report data result uri=" + dataResultUri + " failed.", e);
+            throw new GdcRestApiException("Checking report data result uri=" + dataResultUri + " failed.", e);
+        } catch (IOException e) {
+            l.debug("Network error while checking report data result uri=" + dataResultUri, e);
+            throw new GdcRestApiException("Network error while checking report data result uri=" + dataResultUri, e);
+        } finally {
+            resultGet.releaseConnection();
+        }
+    }
+
     /**
      * Export a report result
      *
@@ -1627,6 +1659,7 @@ public class GdcRESTApiWrapper {
         private String ssoProvider;
         private String status;
         private String uri;
+        private List<String> roles;
 
 
         public GdcUser() {
@@ -1669,6 +1702,14 @@ public class GdcRESTApiWrapper {
             if (v != null && v.trim().length() > 0) {
                 this.setStatus(v);
             }
+            JSONArray r = c.optJSONArray("userRoles");
+            if (r != null) {
+                List<String> roleUris = new ArrayList<String>(r.size());
+                for (Object o : r) {
+                    roleUris.add(o.toString());
+                }
+                this.setRoles(roleUris);
+            }
             JSONObject l = u.getJSONObject("links");
             if (l == null || l.isEmpty() || l.isNullObject()) {
                 throw new GdcRestApiException("Can't extract user from JSON. No links key in the JSON.");
@@ -1714,6 +1755,17 @@ public class GdcRESTApiWrapper {
             this.status = s;
         }
 
+        /**
+         * @return the project role uris of a project user, null if unknown
+         */
+        public List<String> getRoles() {
+            return roles;
+        }
+
+        public void setRoles(List<String> roles) {
+            this.roles = roles;
+        }
+
         public String getLicence() {
             return licence;
         }
@@ -1886,9 +1938,19 @@ public class GdcRESTApiWrapper {
         return param;
     }
 
-    private String getRoleUri(String projectId, String role) {
+    /**
+     * Returns the uri of a project role
+     *
+     * @param projectId project ID
+     * @param role      the role identifier or one of the ADMIN, EDITOR, DASHBOARD ONLY, UNVERIFIED ADMIN, READONLY
+     *                  role names
+     * @return the role uri or null if the project doesn't have the role
+     */
+    public String getRoleUri(String projectId, String role) {
 
         String roleUri = null;
+        if (role == null)
+            return null;
 
         // for backward compatibility
 
@@ -1926,35 +1988,56 @@ public class GdcRESTApiWrapper {
         addUsersToProjectWithRoleUri(projectId, uris, roleUri);
     }
 
+    /**
+     * Adds users to project. Large user lists are sent in chunks of {@link #USERS_CHUNK_SIZE} users.
+     *
+     * @param projectId project ID
+     * @param uris      user URIs
+     * @param roleUri   the role uri
+     * @throws GdcRestApiException
+     */
     public void addUsersToProjectWithRoleUri(String projectId, List<String> uris, String roleUri)
             throws GdcRestApiException {
 
         l.debug("Adding users " + uris + " to project " + projectId + " with roleUri "+ roleUri);
-        String projectsUrl = getProjectUrl(projectId);
+        List<String> failed = new ArrayList<String>();
+        for (int i = 0; i < uris.size(); i += USERS_CHUNK_SIZE) {
+            List<String> chunk = uris.subList(i, Math.min(uris.size(), i + USERS_CHUNK_SIZE));
+            failed.addAll(updateProjectUsers(projectId, getAddUsersToProjectStructure(chunk, roleUri)));
+        }
+        if (!failed.isEmpty()) {
+            String errMsg = "Following users can't be added to the project: " + failed;
+            l.debug(errMsg);
+            throw new GdcRestApiException(errMsg);
+        }
+    }
 
-        PostMethod req = createPostMethod(projectsUrl + PROJECT_USERS_SUFFIX);
-        JSONObject param = getAddUsersToProjectStructure(uris, roleUri);
+    /**
+     * Posts the project users update
+     *
+     * @param projectId project ID
+     * @param param     the users update structure
+     * @return the failed updates
+     * @throws GdcRestApiException
+     */
+    private List<String> updateProjectUsers(String projectId, JSONObject param) throws GdcRestApiException {
+        PostMethod req = createPostMethod(getProjectUrl(projectId) + PROJECT_USERS_SUFFIX);
         InputStreamRequestEntity request = new InputStreamRequestEntity(new ByteArrayInputStream(
                 param.toString().getBytes()));
         req.setRequestEntity(request);
-        String result = null;
         try {
             String response = executeMethodOk(req);
             JSONObject responseObject = JSONObject.fromObject(response);
             JSONObject projectUsersUpdateResult = responseObject.getJSONObject("projectUsersUpdateResult");
             JSONArray failed = projectUsersUpdateResult.getJSONArray("failed");
-            if (!failed.isEmpty()) {
-                String errMsg = "Following users can't be added to the project:";
-                for (Object uri : failed.toArray()) {
-                    errMsg += " " + uris.toString();
-                }
-                l.debug(errMsg);
-                throw new GdcRestApiException(errMsg);
+            List<String> ret = new ArrayList<String>(failed.size());
+            for (Object o : failed) {
+                ret.add(o.toString());
             }
-            //JSONArray successful = projectUsersUpdateResult.getJSONArray("successful");
+            return ret;
         } catch (HttpMethodException ex) {
-            l.debug("Error adding users " + uris + " to project", ex);
-            throw new GdcRestApiException("Error adding users " + uris + " to project ", ex);
+            l.debug("Error updating users in project " + projectId, ex);
+            throw new GdcRestApiException("Error updating users in project " + projectId, ex);
         } finally {
             req.releaseConnection();
         }
@@ -1987,7 +2070,7 @@ public class GdcRESTApiWrapper {
     }
 
     /**
-     * Disables a user in project
+     * Disables users in project. Large user lists are sent in chunks of {@link #USERS_CHUNK_SIZE} users.
      *
      * @param projectId project ID
      * @param uris      user URIs
@@ -1997,33 +2080,15 @@ public class GdcRESTApiWrapper {
             throws GdcRestApiException {
 
         l.debug("Disabling users " + uris + " in project " + projectId);
-        String projectsUrl = getProjectUrl(projectId);
-
-        PostMethod req = createPostMethod(projectsUrl + PROJECT_USERS_SUFFIX);
-        JSONObject param = getDisableUsersInProjectStructure(uris);
-        InputStreamRequestEntity request = new InputStreamRequestEntity(new ByteArrayInputStream(
-                param.toString().getBytes()));
-        req.setRequestEntity(request);
-        String result = null;
-        try {
-            String response = executeMethodOk(req);
-            JSONObject responseObject = JSONObject.fromObject(response);
-            JSONObject projectUsersUpdateResult = responseObject.getJSONObject("projectUsersUpdateResult");
-            JSONArray failed = projectUsersUpdateResult.getJSONArray("failed");
-            if (!failed.isEmpty()) {
-                String errMsg = "Following users can't be disabled in the project:";
-                for (Object uri : failed.toArray()) {
-                    errMsg += " " + uris.toString();
-                }
-                l.debug(errMsg);
-                throw new GdcRestApiException(errMsg);
-            }
-            //JSONArray successful = projectUsersUpdateResult.getJSONArray("successful");
-        } catch (HttpMethodException ex) {
-            l.debug("Error disabling users " + uris + " in project", ex);
-            throw new GdcRestApiException("Error disabling users " + uris + " in project ", ex);
-        } finally {
-            req.releaseConnection();
+        List<String> failed = new ArrayList<String>();
+        for (int i = 0; i < uris.size(); i += USERS_CHUNK_SIZE) {
+            List<String> chunk = uris.subList(i, Math.min(uris.size(), i + USERS_CHUNK_SIZE));
+            failed.addAll(updateProjectUsers(projectId, getDisableUsersInProjectStructure(chunk)));
+        }
+        if (!failed.isEmpty()) {
+            String errMsg = "Following users can't be disabled in the project: " + failed;
+            l.debug(errMsg);
+            throw new GdcRestApiException(errMsg);
         }
     }
 
@@ -2047,12 +2112,15 @@ public class GdcRESTApiWrapper {
     }
 
     /**
-     * Returns the selected project's roles
+     * Returns the selected project's roles. The roles are cached, they are fetched once per project.
      *
      * @param pid             project ID
-     * @return array of the project's users
+     * @return array of the project's roles
      */
     public ArrayList<GdcRole> getProjectRoles(String pid) {
+        List<GdcRole> cached = projectRoles.get(pid);
+        if (cached != null)
+            return new ArrayList<GdcRole>(cached);
         ArrayList<GdcRole> ret = new ArrayList<GdcRole>();
         l.debug("Executing getProjectRoles for project id=" + pid);
         HttpMethod req = createGetMethod(getProjectUrl(pid) + ROLES_URI);
@@ -2078,6 +2146,7 @@ public class GdcRESTApiWrapper {
                 GdcRole g = getRoleFromUri(role);
                 ret.add(g);
             }
+            projectRoles.put(pid, new ArrayList<GdcRole>(ret));
             return ret;
         } finally {
             req.releaseConnection();
@@ -2128,7 +2197,7 @@ public class GdcRESTApiWrapper {
     }
 
     /**
-     * Returns the selected project's users
+     * Returns the selected project's users. All pages of the users list are fetched.
      *
      * @param pid             project ID
      * @param activeUsersOnly lists only active users
@@ -2137,30 +2206,54 @@ public class GdcRESTApiWrapper {
     public ArrayList<GdcUser> getProjectUsers(String pid, boolean activeUsersOnly) {
         ArrayList<GdcUser> ret = new ArrayList<GdcUser>();
         l.debug("Executing getProjectUsers for project id=" + pid);
-        HttpMethod req = createGetMethod(getProjectUrl(pid) + PROJECT_USERS_SUFFIX);
-        try {
-            String resp = executeMethodOk(req);
-            JSONObject parsedResp = JSONObject.fromObject(resp);
-            if (parsedResp == null || parsedResp.isNullObject() || parsedResp.isEmpty()) {
-                l.debug("Can't getProjectUsers for project id=" + pid + ". Invalid response.");
-                throw new GdcRestApiException("Can't getProjectUsers for project id=" + pid + ". Invalid response.");
-            }
-            JSONArray users = parsedResp.getJSONArray("users");
-            if (users == null) {
-                l.debug("Can't getProjectUsers for project id=" + pid + ". No users key in the response.");
-                throw new GdcRestApiException("Can't getProjectUsers for project id=" + pid + ". No users key in the response.");
-            }
-            for (Object o : users) {
-                JSONObject user = (JSONObject) o;
-                GdcUser g = new GdcUser(user);
-                if ((activeUsersOnly && "ENABLED".equalsIgnoreCase(g.getStatus())) || (!activeUsersOnly)) {
-                    ret.add(g);
+        String next = getProjectUrl(pid) + PROJECT_USERS_SUFFIX;
+        while (next != null) {
+            HttpMethod req = createGetMethod(next);
+            try {
+                JSONStreamReader r = executeMethodOkStream(req);
+                String page = next;
+                boolean found = false;
+                next = null;
+                if (r.peek() != JSONStreamReader.Token.BEGIN_OBJECT) {
+                    l.debug("Can't getProjectUsers for project id=" + pid + ". Invalid response.");
+                    throw new GdcRestApiException("Can't getProjectUsers for project id=" + pid + ". Invalid response.");
+                }
+                r.beginObject();
+                while (r.hasNext()) {
+                    String name = r.nextName();
+                    if ("users".equals(name) && r.peek() == JSONStreamReader.Token.BEGIN_ARRAY) {
+                        found = true;
+                        r.beginArray();
+                        while (r.hasNext()) {
+                            GdcUser g = new GdcUser(r.readObject());
+                            if ((activeUsersOnly && "ENABLED".equalsIgnoreCase(g.getStatus())) || (!activeUsersOnly)) {
+                                ret.add(g);
+                            }
+                        }
+                        r.endArray();
+                    } else if ("paging".equals(name) && r.peek() == JSONStreamReader.Token.BEGIN_OBJECT) {
+                        String n = r.readFields("next").get("next");
+                        if (n != null && n.length() > 0) {
+                            next = (n.startsWith("/")) ? (getServerUrl() + n) : (n);
+                            if (next.equals(page))
+                                next = null;
+                        }
+                    } else {
+                        r.skipValue();
+                    }
                 }
+                if (!found) {
+                    l.debug("Can't getProjectUsers for project id=" + pid + ". No users key in the response.");
+                    throw new GdcRestApiException("Can't getProjectUsers for project id=" + pid + ". No users key in the response.");
+                }
+            } catch (IOException e) {
+                l.debug("Error reading GoodData REST API response.", e);
+                throw new HttpMethodException("Error reading GoodData REST API response.", e);
+            } finally {
+                req.releaseConnection();
             }
-            return ret;
-        } finally {
-            req.releaseConnection();
         }
+        return ret;
     }
 
 
@@ -2380,7 +2473,34 @@ public class GdcRESTApiWrapper {
     private String executeMethodOk(HttpMethod method, boolean reloginOn401, int retries) throws HttpMethodException {
         try {
             executeMethodOkOnly(method, reloginOn401, retries);
-            return method.getResponseBodyAsString();
+            String body = method.getResponseBodyAsString();
+            if (body != null && getResponseLength(method) < 0)
+                RestApiTelemetry.received(RestApiTelemetry.endpoint(method), body.length());
+            return body;
+        } catch (IOException e) {
+            l.debug("Error invoking GoodData REST API.", e);
+            throw new HttpMethodException("Error invoking GoodData REST API.", e);
+        }
+    }
+
+    /**
+     * Executes HttpMethod, tests if the response is 200(OK) and returns the streaming reader of the response
+     * body. The body is parsed directly from the connection, the method must be released after the reader
+     * has been consumed.
+     *
+     * @param method the HTTP method
+     * @return the response body reader
+     * @throws HttpMethodException
+     */
+    private JSONStreamReader executeMethodOkStream(HttpMethod method) throws HttpMethodException {
+        try {
+            executeMethodOkOnly(method, true, 16);
+            InputStream is = method.getResponseBodyAsStream();
+            if (is == null) {
+                l.debug("Empty GoodData REST API response.");
+                throw new HttpMethodException("Empty GoodData REST API response.");
+            }
+            return new JSONStreamReader(is);
         } catch (IOException e) {
             l.debug("Error invoking GoodData REST API.", e);
             throw new HttpMethodException("Error invoking GoodData REST API.", e);
@@ -2403,8 +2523,19 @@ public class GdcRESTApiWrapper {
      * @throws HttpMethodException
      */
     private void executeMethodOkOnly(HttpMethod method, boolean reloginOn401, int retries) throws HttpMethodException, IOException {
+        String endpoint = RestApiTelemetry.endpoint(method);
         try {
-            client.executeMethod(method);
+            long start = Metrics.start();
+            try {
+                client.executeMethod(method);
+            } finally {
+                long elapsed = Metrics.stop(METRIC_REST, start);
+                // no status line if the call failed without a response
+                int status = (method.getStatusLine() != null) ? method.getStatusCode() : 0;
+                RestApiTelemetry.call(endpoint, elapsed, status, getRequestLength(method), getResponseLength(method));
+            }
+            if (method.getStatusCode() >= HttpStatus.SC_BAD_REQUEST)
+                Metrics.count(METRIC_REST_ERRORS, 1);
 
             /* HttpClient is rather unsupportive when it comes to robust interpreting
              * of response classes; which is mandated by RFC and extensively used in
@@ -2426,6 +2557,7 @@ public class GdcRESTApiWrapper {
             } else if (method.getStatusCode() == HttpStatus.SC_UNAUTHORIZED && reloginOn401) {
                 // refresh the temporary token
                 setTokenCookie();
+                retried(endpoint, 0);
                 executeMethodOkOnly(method, false, retries);
                 return;
             } else if (method.getStatusCode() == HttpStatus.SC_SERVICE_UNAVAILABLE && retries-- > 0
@@ -2435,10 +2567,12 @@ public class GdcRESTApiWrapper {
                 int timeout = Integer.parseInt(method.getResponseHeader("Retry-After").getValue());
                 l.debug("Remote asked us to retry after " + timeout + " seconds, sleeping.");
                 l.debug(retries + " more retries");
+                long wait = Metrics.start();
                 try {
                     Thread.currentThread().sleep(Constants.RETRY_INTERVAL * timeout);
                 } catch (java.lang.InterruptedException e) {
                 }
+                retried(endpoint, Metrics.stop(METRIC_REST_RETRY_WAIT, wait));
                 executeMethodOkOnly(method, false, retries);
                 return;
             } else if (method.getStatusCode() == HttpStatus.SC_GONE) {
@@ -2461,6 +2595,32 @@ public class GdcRESTApiWrapper {
     }
 
 
+    /**
+     * Records a retried REST API call
+     *
+     * @param endpoint the called endpoint
+     * @param wait     time waited before the retry in nanoseconds
+     */
+    private void retried(String endpoint, long wait) {
+        Metrics.count(METRIC_REST_RETRIES, 1);
+        RestApiTelemetry.retry(endpoint, wait);
+    }
+
+    private static long getRequestLength(HttpMethod method) {
+        if (method instanceof EntityEnclosingMethod) {
+            EntityEnclosingMethod m = (EntityEnclosingMethod) method;
+            if (m.getRequestEntity() != null)
+                return m.getRequestEntity().getContentLength();
+        }
+        return -1;
+    }
+
+    private static long getResponseLength(HttpMethod method) {
+        if (method instanceof HttpMethodBase)
+            return ((HttpMethodBase) method).getResponseContentLength();
+        return -1;
+    }
+
     /**
      * Returns the data interfaces URI
      *
@@ -2746,27 +2906,20 @@ public class GdcRESTApiWrapper {
         String usedUri = uri.replace("/obj/", "/using/");
         HttpMethod req = createGetMethod(getServerUrl() + usedUri);
         try {
-            String resp = executeMethodOk(req);
-            JSONObject parsedResp = JSONObject.fromObject(resp);
-            if (parsedResp == null || parsedResp.isNullObject() || parsedResp.isEmpty()) {
-                l.debug("Can't call using on uri=" + uri + ". Invalid response.");
-                throw new GdcRestApiException("Can't call using on uri=" + uri + ". Invalid response.");
-            }
-            JSONObject using = parsedResp.getJSONObject("using");
-            if (using == null || using.isNullObject() || using.isEmpty()) {
-                l.debug("Can't call using on uri=" + uri + ". No using data.");
-                throw new GdcRestApiException("Can't call using on uri=" + uri + ". No using data.");
-            }
-            JSONArray nodes = using.getJSONArray("nodes");
-            if (nodes == null) {
+            JSONStreamReader r = executeMethodOkStream(req);
+            if (!r.find("using", "nodes") || r.peek() != JSONStreamReader.Token.BEGIN_ARRAY) {
                 l.debug("Can't call using on uri=" + uri + ". No nodes key in the response.");
                 throw new GdcRestApiException("Can't call using on uri=" + uri + ". No nodes key in the response.");
             }
-            for (Object o : nodes) {
-                JSONObject obj = (JSONObject) o;
-                ret.add(obj);
+            r.beginArray();
+            while (r.hasNext()) {
+                ret.add(r.readObject());
             }
+            r.endArray();
             return ret;
+        } catch (IOException e) {
+            l.debug("Error reading GoodData REST API response.", e);
+            throw new HttpMethodException("Error reading GoodData REST API response.", e);
         } finally {
             req.releaseConnection();
         }
@@ -2785,27 +2938,20 @@ public class GdcRESTApiWrapper {
         String usedUri = uri.replace("/obj/", "/usedby/");
         HttpMethod req = createGetMethod(getServerUrl() + usedUri);
         try {
-            String resp = executeMethodOk(req);
-            JSONObject parsedResp = JSONObject.fromObject(resp);
-            if (parsedResp == null || parsedResp.isNullObject() || parsedResp.isEmpty()) {
-                l.debug("Can't call usedby on uri=" + uri + ". Invalid response.");
-                throw new GdcRestApiException("Can't call usedby on uri=" + uri + ". Invalid response.");
-            }
-            JSONObject usedby = parsedResp.getJSONObject("usedby");
-            if (usedby == null || usedby.isNullObject() || usedby.isEmpty()) {
-                l.debug("Can't call usedby on uri=" + uri + ". No usedby data.");
-                throw new GdcRestApiException("Can't call usedby on uri=" + uri + ". No usedby data.");
-            }
-            JSONArray nodes = usedby.getJSONArray("nodes");
-            if (nodes == null) {
+            JSONStreamReader r = executeMethodOkStream(req);
+            if (!r.find("usedby", "nodes") || r.peek() != JSONStreamReader.Token.BEGIN_ARRAY) {
                 l.debug("Can't call usedby on uri=" + uri + ". No nodes key in the response.");
                 throw new GdcRestApiException("Can't call usedby on uri=" + uri + ". No nodes key in the response.");
             }
-            for (Object o : nodes) {
-                JSONObject obj = (JSONObject) o;
-                ret.add(obj);
+            r.beginArray();
+            while (r.hasNext()) {
+                ret.add(r.readObject());
             }
+            r.endArray();
             return ret;
+        } catch (IOException e) {
+            l.debug("Error reading GoodData REST API response.", e);
+            throw new HttpMethodException("Error reading GoodData REST API response.", e);
         } finally {
             req.releaseConnection();
         }
@@ -3142,27 +3288,48 @@ public class GdcRESTApiWrapper {
     }
 
     /**
-     * API for querying users in a domain
+     * API for querying users in a domain. All pages of the users list are fetched.
      *
      * @param domain
-     * @return
+     * @return the domain users by their login
      */
     public Map<String, GdcUser> getUsers(String domain) {
 	Map<String, GdcUser> users = new HashMap<String, GdcUser>();
 
 	String url = "/gdc/account/domains/" + domain + "/users";
+	while (url != null) {
+	    String page = url;
+	    JSONObject accountSettings = getUsersPage(page);
+	    url = null;
+	    if (accountSettings == null) {
+		return users;
+	    }
+	    JSONObject paging = accountSettings.optJSONObject("paging");
+	    if (paging != null && paging.optString("next").length() > 0
+		    && !page.equals(paging.getString("next"))) {
+		url = paging.getString("next");
+	    }
+	    addUsers(users, (JSONArray) accountSettings.get("items"));
+	}
+	return users;
+    }
+
+    private JSONObject getUsersPage(String url) {
 	JSONObject jsonObject = getObjectByUri(url);
-	if (jsonObject == null) {
-	    return users;
+	if (jsonObject == null || jsonObject.isNullObject()) {
+	    return null;
 	}
 	JSONObject accountSettings = jsonObject
-		.getJSONObject("accountSettings");
-	if (accountSettings == null) {
-	    return users;
+		.optJSONObject("accountSettings");
+	if (accountSettings == null || accountSettings.isNullObject()) {
+	    return null;
 	}
-	JSONArray items = (JSONArray) accountSettings.get("items");
+	return accountSettings;
+    }
+
+    private void addUsers(Map<String, GdcUser> users, JSONArray items) {
 	if (items == null) {
-	    return users;
+	    return;
 	}
 	for (Object item : items) {
 	    JSONObject itemJSON = JSONObject.fromObject(item);
@@ -3196,7 +3363,6 @@ public class GdcRESTApiWrapper {
 	    user.setUri(uri);
 	    users.put(user.getLogin(), user);
 	}
-	return users;
     }
 
     public List<String> enumerateDimensions(String projectId) {
@@ -3216,38 +3382,8 @@ public class GdcRESTApiWrapper {
     }
 
     protected List<String> enumerateResource(String projectId, String resource) {
-	l.debug("Enumerating attributes for project id=" + projectId);
-	List<String> list = new ArrayList<String>();
-	String qUri = getProjectMdUrl(projectId) + QUERY_PREFIX + resource;
-	HttpMethod qGet = createGetMethod(qUri);
-	try {
-	    String qr = executeMethodOk(qGet);
-	    JSONObject q = JSONObject.fromObject(qr);
-	    if (q.isNullObject()) {
-		l.debug("Enumerating "+resource+" for project id="+projectId+" failed.");
-		throw new GdcException(
-			"Enumerating "+resource+" for project id="+projectId+" failed.");
-	    }
-	    JSONObject qry = q.getJSONObject("query");
-	    if (qry.isNullObject()) {
-		l.debug("Enumerating "+resource+" for project id="+projectId+" failed.");
-		throw new GdcException(
-			"Enumerating "+resource+" for project id="+projectId+" failed.");
-	    }
-	    JSONArray entries = qry.getJSONArray("entries");
-	    if (entries == null) {
-		l.debug("Enumerating "+resource+" for project id="+projectId+" failed.");
-		throw new GdcException(
-			"Enumerating "+resource+" for project id="+projectId+" failed.");
-	    }
-	    for (Object oentry : entries) {
-		JSONObject entry = (JSONObject) oentry;
-		list.add(entry.getString("link"));
-	    }
-	} finally {
-	    qGet.releaseConnection();
-	}
-	return list;
+	l.debug("Enumerating "+resource+" for project id=" + projectId);
+	return enumerateLinks(projectId, getProjectMdUrl(projectId) + QUERY_PREFIX + resource, resource, false);
     }
 
     public ProjectExportResult exportMDByUrl(String projectId, List<String> urls) {
@@ -0,0 +1,404 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.integration.rest;
+
+import net.sf.json.JSONObject;
+import org.apache.commons.httpclient.HttpMethod;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Process wide GoodData REST API call statistics per endpoint (HTTP method and URI template): latency
+ * histogram, errors, retries, time spent waiting for the retries and transferred bytes. The calls that
+ * take longer than the slow call threshold are logged. All methods are thread safe.
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+public class RestApiTelemetry {
+
+    private static Logger l = Logger.getLogger(RestApiTelemetry.class);
+
+    /**
+     * Upper bounds of the latency histogram buckets in milliseconds, the last bucket is unbounded
+     */
+    public static final long[] LATENCY_BUCKETS = {50, 100, 250, 500, 1000, 2500, 5000, 10000, 30000};
+
+    /**
+     * Default slow call threshold in milliseconds
+     */
+    public static final long DEFAULT_SLOW_CALL_THRESHOLD = 10000;
+
+    /**
+     * Max number of tracked endpoints, the calls of any other endpoint are tracked together
+     */
+    public static final int MAX_ENDPOINTS = 1000;
+
+    private static final String OTHER = "{other}";
+
+    private static final ConcurrentMap<String, Endpoint> endpoints = new ConcurrentHashMap<String, Endpoint>();
+
+    private static volatile long slowCallThreshold = DEFAULT_SLOW_CALL_THRESHOLD;
+
+    /**
+     * Sets the slow call threshold
+     *
+     * @param millis the threshold in milliseconds, zero or less turns the slow call logging off
+     */
+    public static void setSlowCallThreshold(long millis) {
+        slowCallThreshold = millis;
+    }
+
+    /**
+     * @return the slow call threshold in milliseconds
+     */
+    public static long getSlowCallThreshold() {
+        return slowCallThreshold;
+    }
+
+    /**
+     * Returns the endpoint of the HTTP method, the HTTP method name and the URI template
+     *
+     * @param method the HTTP method
+     * @return the endpoint name, e.g. GET /gdc/md/{project}/obj/{id}
+     */
+    public static String endpoint(HttpMethod method) {
+        return method.getName() + " " + template(method.getPath());
+    }
+
+    /**
+     * Converts the URI path to a template, the project and object identifiers are replaced
+     * by the {project} and {id} placeholders
+     *
+     * @param path the URI path
+     * @return the URI template
+     */
+    public static String template(String path) {
+        if (path == null || path.length() == 0)
+            return "/";
+        StringBuilder sb = new StringBuilder(path.length());
+        String previous = null;
+        int start = 0;
+        while (start <= path.length()) {
+            int end = path.indexOf('/', start);
+            if (end < 0)
+                end = path.length();
+            String segment = path.substring(start, end);
+            if (start > 0)
+                sb.append('/');
+            if (segment.length() > 0 && ("md".equals(previous) || "projects".equals(previous)))
+                sb.append("{project}");
+            else if (isIdentifier(segment))
+                sb.append("{id}");
+            else
+                sb.append(segment);
+            previous = segment;
+            start = end + 1;
+        }
+        return sb.toString();
+    }
+
+    private static boolean isIdentifier(String segment) {
+        if (segment.length() == 0)
+            return false;
+        boolean digits = true;
+        boolean hasDigit = false;
+        for (int i = 0; i < segment.length(); i++) {
+            if (Character.isDigit(segment.charAt(i)))
+                hasDigit = true;
+            else
+                digits = false;
+        }
+        return digits || (hasDigit && segment.length() >= 16);
+    }
+
+    /**
+     * Records a finished call
+     *
+     * @param endpoint      the endpoint
+     * @param nanos         the call duration in nanoseconds
+     * @param status        the HTTP status, zero if the call failed without a response
+     * @param bytesSent     request body size or -1 if unknown
+     * @param bytesReceived response body size or -1 if unknown
+     */
+    public static void call(String endpoint, long nanos, int status, long bytesSent, long bytesReceived) {
+        Endpoint e = get(endpoint);
+        long millis = nanos / 1000000;
+        e.calls.incrementAndGet();
+        e.time.addAndGet(nanos);
+        long max = e.max.get();
+        while (nanos > max && !e.max.compareAndSet(max, nanos)) {
+            max = e.max.get();
+        }
+        int bucket = 0;
+        while (bucket < LATENCY_BUCKETS.length && millis > LATENCY_BUCKETS[bucket]) {
+            bucket++;
+        }
+        e.buckets.incrementAndGet(bucket);
+        if (status == 0 || status >= 400)
+            e.errors.incrementAndGet();
+        if (bytesSent > 0)
+            e.bytesSent.addAndGet(bytesSent);
+        if (bytesReceived > 0)
+            e.bytesReceived.addAndGet(bytesReceived);
+        long threshold = slowCallThreshold;
+        if (threshold > 0 && millis >= threshold)
+            l.info("Slow GoodData REST API call: " + endpoint + " took " + millis + " ms (HTTP status " + status + ").");
+    }
+
+    /**
+     * Records the received bytes that weren't known when the call finished
+     *
+     * @param endpoint      the endpoint
+     * @param bytesReceived response body size
+     */
+    public static void received(String endpoint, long bytesReceived) {
+        get(endpoint).bytesReceived.addAndGet(bytesReceived);
+    }
+
+    /**
+     * Records a retried call
+     *
+     * @param endpoint the endpoint
+     * @param nanos    time waited before the retry in nanoseconds
+     */
+    public static void retry(String endpoint, long nanos) {
+        Endpoint e = get(endpoint);
+        e.retries.incrementAndGet();
+        e.retryWait.addAndGet(nanos);
+    }
+
+    /**
+     * Discards all statistics
+     */
+    public static void reset() {
+        endpoints.clear();
+    }
+
+    /**
+     * Returns the statistics of all called endpoints
+     *
+     * @return the endpoints sorted by the total call time, the slowest first
+     */
+    public static List<Endpoint> getEndpoints() {
+        List<Endpoint> ret = new ArrayList<Endpoint>(endpoints.values());
+        Collections.sort(ret, new Comparator<Endpoint>() {
+            public int compare(Endpoint o1, Endpoint o2) {
+                long t1 = o1.getTime() + o1.getRetryWait();
+                long t2 = o2.getTime() + o2.getRetryWait();
+                return (t1 < t2) ? 1 : ((t1 > t2) ? -1 : o1.getName().compareTo(o2.getName()));
+            }
+        });
+        return ret;
+    }
+
+    /**
+     * Formats the statistics as human readable summary, one endpoint per line
+     *
+     * @return the summary, empty if there were no calls
+     */
+    public static String summary() {
+        List<Endpoint> list = getEndpoints();
+        if (list.isEmpty())
+            return "";
+        long calls = 0, time = 0, retries = 0, retryWait = 0;
+        StringBuilder sb = new StringBuilder();
+        for (Endpoint e : list) {
+            calls += e.getCalls();
+            time += e.getTime();
+            retries += e.getRetries();
+            retryWait += e.getRetryWait();
+            sb.append("\n  ").append(e.getName()).append(": ").append(e.getCalls()).append(" calls, ")
+                    .append(e.getTime() / 1000000).append(" ms, avg ").append(e.getAverage() / 1000000)
+                    .append(" ms, p95 ").append(e.getPercentile(0.95)).append(" ms, max ")
+                    .append(e.getMax() / 1000000).append(" ms");
+            if (e.getErrors() > 0)
+                sb.append(", ").append(e.getErrors()).append(" errors");
+            if (e.getRetries() > 0)
+                sb.append(", ").append(e.getRetries()).append(" retries (").append(e.getRetryWait() / 1000000)
+                        .append(" ms waiting)");
+            sb.append(", sent ").append(e.getBytesSent()).append(" B, received ").append(e.getBytesReceived())
+                    .append(" B");
+        }
+        return "GoodData REST API: " + calls + " calls, " + (time / 1000000) + " ms, " + retries + " retries ("
+                + (retryWait / 1000000) + " ms waiting)" + sb;
+    }
+
+    /**
+     * Converts the statistics to JSON
+     *
+     * @return the JSON object with the endpoint statistics keyed by the endpoint name
+     */
+    public static JSONObject toJson() {
+        JSONObject ret = new JSONObject();
+        for (Endpoint e : getEndpoints()) {
+            JSONObject o = new JSONObject();
+            o.put("calls", e.getCalls());
+            o.put("errors", e.getErrors());
+            o.put("retries", e.getRetries());
+            o.put("retryWaitMs", e.getRetryWait() / 1000000);
+            o.put("totalMs", e.getTime() / 1000000);
+            o.put("maxMs", e.getMax() / 1000000);
+            o.put("p50Ms", e.getPercentile(0.5));
+            o.put("p95Ms", e.getPercentile(0.95));
+            o.put("bytesSent", e.getBytesSent());
+            o.put("bytesReceived", e.getBytesReceived());
+            JSONObject histogram = new JSONObject();
+            for (int i = 0; i <= LATENCY_BUCKETS.length; i++) {
+                String bucket = (i < LATENCY_BUCKETS.length) ? ("le" + LATENCY_BUCKETS[i]) : "inf";
+                histogram.put(bucket, e.getBucket(i));
+            }
+            o.put("latencyMs", histogram);
+            ret.put(e.getName(), o);
+        }
+        return ret;
+    }
+
+    private static Endpoint get(String name) {
+        Endpoint e = endpoints.get(name);
+        if (e == null) {
+            if (endpoints.size() >= MAX_ENDPOINTS)
+                name = name.substring(0, name.indexOf(' ') + 1) + OTHER;
+            Endpoint n = new Endpoint(name);
+            e = endpoints.putIfAbsent(name, n);
+            if (e == null)
+                e = n;
+        }
+        return e;
+    }
+
+    /**
+     * Statistics of a single endpoint
+     */
+    public static class Endpoint {
+        private final String name;
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong errors = new AtomicLong();
+        private final AtomicLong retries = new AtomicLong();
+        private final AtomicLong retryWait = new AtomicLong();
+        private final AtomicLong time = new AtomicLong();
+        private final AtomicLong max = new AtomicLong();
+        private final AtomicLong bytesSent = new AtomicLong();
+        private final AtomicLong bytesReceived = new AtomicLong();
+        private final AtomicLongArray buckets = new AtomicLongArray(LATENCY_BUCKETS.length + 1);
+
+        private Endpoint(String name) {
+            this.name = name;
+        }
+
+        /**
+         * @return the HTTP method and the URI template
+         */
+        public String getName() {
+            return name;
+        }
+
+        public long getCalls() {
+            return calls.get();
+        }
+
+        public long getErrors() {
+            return errors.get();
+        }
+
+        public long getRetries() {
+            return retries.get();
+        }
+
+        /**
+         * @return time waited before the retries in nanoseconds
+         */
+        public long getRetryWait() {
+            return retryWait.get();
+        }
+
+        /**
+         * @return total call time in nanoseconds
+         */
+        public long getTime() {
+            return time.get();
+        }
+
+        /**
+         * @return the longest call in nanoseconds
+         */
+        public long getMax() {
+            return max.get();
+        }
+
+        /**
+         * @return average call time in nanoseconds
+         */
+        public long getAverage() {
+            long c = calls.get();
+            return (c > 0) ? (time.get() / c) : 0;
+        }
+
+        public long getBytesSent() {
+            return bytesSent.get();
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived.get();
+        }
+
+        /**
+         * @param i the bucket index, see {@link RestApiTelemetry#LATENCY_BUCKETS}
+         * @return number of calls in the latency bucket
+         */
+        public long getBucket(int i) {
+            return buckets.get(i);
+        }
+
+        /**
+         * Estimates the latency percentile from the histogram
+         *
+         * @param p the percentile, e.g. 0.95
+         * @return the upper bound of the bucket that contains the percentile in milliseconds, at most
+         *         the longest call
+         */
+        public long getPercentile(double p) {
+            long c = calls.get();
+            if (c == 0)
+                return 0;
+            long rank = (long) Math.ceil(c * p);
+            long maxMillis = max.get() / 1000000;
+            long n = 0;
+            for (int i = 0; i < LATENCY_BUCKETS.length; i++) {
+                n += buckets.get(i);
+                if (n >= rank)
+                    return Math.min(LATENCY_BUCKETS[i], maxMillis);
+            }
+            return maxMillis;
+        }
+    }
+}
@@ -23,8 +23,18 @@
 
 package com.gooddata.integration.soap;
 
+import com.gooddata.exception.InternalErrorException;
+import com.gooddata.util.NetUtil;
 import com.sun.org.apache.xml.internal.serialize.OutputFormat;
 import com.sun.org.apache.xml.internal.serialize.XMLSerializer;
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
+import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
+import org.apache.log4j.Logger;
 import org.jaxen.JaxenException;
 import org.jaxen.SimpleNamespaceContext;
 import org.jaxen.XPath;
@@ -33,18 +43,86 @@ import org.w3c.dom.Document;
 
 import javax.xml.soap.*;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.StringWriter;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.Map;
 
 /**
- * Executes SOAP message
+ * Executes SOAP message. The executor keeps its SAAJ message factory and a pool of keep-alive HTTP
+ * connections for its whole lifetime, so the same instance should be reused for all calls to one CRM.
  *
  * @author zd <zd@gooddata.com>
  * @version 1.0
  */
 public class SoapExecutor {
 
+    private static Logger l = Logger.getLogger(SoapExecutor.class);
+
+    /**
+     * Default maximum number of pooled connections per host
+     */
+    public static final int DEFAULT_MAX_CONNECTIONS_PER_HOST = 4;
+
+    /**
+     * Default maximum number of pooled connections in total
+     */
+    public static final int DEFAULT_MAX_TOTAL_CONNECTIONS = 20;
+
+    /**
+     * Default connect timeout in ms
+     */
+    public static final int DEFAULT_CONNECTION_TIMEOUT = 30000;
+
+    /**
+     * Default socket (read) timeout in ms
+     */
+    public static final int DEFAULT_SO_TIMEOUT = 600000;
+
+    private static final String SOAP_ACTION_HEADER = "SOAPAction";
+    private static final String CONTENT_TYPE_HEADER = "Content-Type";
+    private static final String DEFAULT_CONTENT_TYPE = "text/xml; charset=utf-8";
+
+    private final MessageFactory messageFactory;
+    private final MultiThreadedHttpConnectionManager connectionManager;
+    private final HttpClient client;
+
+    // per endpoint timing statistics
+    private final Map<String, EndpointStatistics> statistics = new HashMap<String, EndpointStatistics>();
+
+    /**
+     * Constructs the executor with the default connection pool settings
+     */
+    public SoapExecutor() {
+        this(DEFAULT_MAX_CONNECTIONS_PER_HOST, DEFAULT_MAX_TOTAL_CONNECTIONS);
+    }
+
+    /**
+     * Constructs the executor
+     *
+     * @param maxConnectionsPerHost maximum number of pooled connections per host
+     * @param maxTotalConnections   maximum number of pooled connections in total
+     */
+    public SoapExecutor(int maxConnectionsPerHost, int maxTotalConnections) {
+        try {
+            messageFactory = MessageFactory.newInstance();
+        } catch (SOAPException e) {
+            throw new InternalErrorException("Can't create the SOAP message factory.", e);
+        }
+        connectionManager = new MultiThreadedHttpConnectionManager();
+        HttpConnectionManagerParams params = connectionManager.getParams();
+        params.setDefaultMaxConnectionsPerHost(maxConnectionsPerHost);
+        params.setMaxTotalConnections(maxTotalConnections);
+        params.setConnectionTimeout(DEFAULT_CONNECTION_TIMEOUT);
+        params.setSoTimeout(DEFAULT_SO_TIMEOUT);
+        params.setStaleCheckingEnabled(true);
+        client = new HttpClient(connectionManager);
+        NetUtil.configureHttpProxy(client);
+    }
+
     /**
      * Executes SOAP message
      *
@@ -55,7 +133,7 @@ public class SoapExecutor {
      * @throws IOException   in case of an IO issue
      */
     public SOAPMessage execute(String endpointUrl, String request) throws SOAPException, IOException {
-        SOAPMessage message = MessageFactory.newInstance().createMessage(new MimeHeaders(), new ByteArrayInputStream(request.getBytes()));
+        SOAPMessage message = messageFactory.createMessage(new MimeHeaders(), new ByteArrayInputStream(request.getBytes()));
         return execute(endpointUrl, message);
     }
 
@@ -69,17 +147,164 @@ public class SoapExecutor {
      * @throws IOException   in case of an IO issue
      */
     public SOAPMessage execute(String endpointUrl, SOAPMessage message) throws SOAPException, IOException {
-        SOAPConnection conn = null;
+        long start = System.currentTimeMillis();
+        boolean failed = true;
+        PostMethod post = new PostMethod(endpointUrl);
         try {
-            conn = SOAPConnectionFactory.newInstance().createConnection();
-            SOAPMessage response = conn.call(message, endpointUrl);
-            SOAPBody body = response.getSOAPBody();
-            if (body.hasFault())
-                throw new SOAPException(body.getFault().getFaultString());
+            if (message.saveRequired())
+                message.saveChanges();
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            message.writeTo(out);
+            String contentType = DEFAULT_CONTENT_TYPE;
+            boolean hasSoapAction = false;
+            Iterator headers = message.getMimeHeaders().getAllHeaders();
+            while (headers.hasNext()) {
+                MimeHeader header = (MimeHeader) headers.next();
+                if (CONTENT_TYPE_HEADER.equalsIgnoreCase(header.getName())) {
+                    contentType = header.getValue();
+                } else {
+                    if (SOAP_ACTION_HEADER.equalsIgnoreCase(header.getName()))
+                        hasSoapAction = true;
+                    post.addRequestHeader(header.getName(), header.getValue());
+                }
+            }
+            if (!hasSoapAction)
+                post.addRequestHeader(SOAP_ACTION_HEADER, "\"\"");
+            post.setRequestEntity(new ByteArrayRequestEntity(out.toByteArray(), contentType));
+            int status = client.executeMethod(post);
+            // SOAP 1.1 faults are returned with the 500 status
+            if (status != HttpStatus.SC_OK && status != HttpStatus.SC_INTERNAL_SERVER_ERROR)
+                throw new SOAPException("SOAP call to " + endpointUrl + " failed with HTTP status " + status +
+                        " " + post.getStatusText());
+            MimeHeaders responseHeaders = new MimeHeaders();
+            for (Header header : post.getResponseHeaders()) {
+                responseHeaders.addHeader(header.getName(), header.getValue());
+            }
+            InputStream body = post.getResponseBodyAsStream();
+            if (body == null)
+                throw new SOAPException("SOAP call to " + endpointUrl + " returned an empty response.");
+            SOAPMessage response = messageFactory.createMessage(responseHeaders, body);
+            SOAPBody soapBody = response.getSOAPBody();
+            if (soapBody.hasFault())
+                throw new SOAPException(soapBody.getFault().getFaultString());
+            failed = false;
             return response;
         } finally {
-            if (conn != null)
-                conn.close();
+            post.releaseConnection();
+            record(endpointUrl, System.currentTimeMillis() - start, failed);
+        }
+    }
+
+    /**
+     * Records a single call timing
+     *
+     * @param endpointUrl SOAP endpoint
+     * @param duration    call duration in ms
+     * @param failed      true if the call failed
+     */
+    private void record(String endpointUrl, long duration, boolean failed) {
+        synchronized (statistics) {
+            EndpointStatistics s = statistics.get(endpointUrl);
+            if (s == null) {
+                s = new EndpointStatistics(endpointUrl);
+                statistics.put(endpointUrl, s);
+            }
+            s.record(duration, failed);
+        }
+        l.debug("SOAP call to " + endpointUrl + " took " + duration + " ms" + (failed ? " and failed." : "."));
+    }
+
+    /**
+     * Returns a snapshot of the per endpoint request/response timing statistics
+     *
+     * @return endpoint URL to statistics map
+     */
+    public Map<String, EndpointStatistics> getStatistics() {
+        Map<String, EndpointStatistics> ret = new HashMap<String, EndpointStatistics>();
+        synchronized (statistics) {
+            for (String endpoint : statistics.keySet()) {
+                ret.put(endpoint, statistics.get(endpoint).copy());
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Logs the per endpoint timing statistics
+     */
+    public void logStatistics() {
+        for (EndpointStatistics s : getStatistics().values()) {
+            l.info(s.toString());
+        }
+    }
+
+    /**
+     * Closes all pooled connections. The executor can't be used afterwards.
+     */
+    public void close() {
+        connectionManager.shutdown();
+    }
+
+    /**
+     * Request/response timing statistics of a single SOAP endpoint
+     */
+    public static class EndpointStatistics {
+
+        private final String endpoint;
+        private int count;
+        private int failures;
+        private long totalTime;
+        private long maxTime;
+
+        private EndpointStatistics(String endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        private void record(long duration, boolean failed) {
+            count++;
+            if (failed)
+                failures++;
+            totalTime += duration;
+            if (duration > maxTime)
+                maxTime = duration;
+        }
+
+        private EndpointStatistics copy() {
+            EndpointStatistics s = new EndpointStatistics(endpoint);
+            s.count = count;
+            s.failures = failures;
+            s.totalTime = totalTime;
+            s.maxTime = maxTime;
+            return s;
+        }
+
+        public String getEndpoint() {
+            return endpoint;
+        }
+
+        public int getCount() {
+            return count;
+        }
+
+        public int getFailures() {
+            return failures;
+        }
+
+        public long getTotalTime() {
+            return totalTime;
+        }
+
+        public long getMaxTime() {
+            return maxTime;
+        }
+
+        public long getAverageTime() {
+            return (count > 0) ? totalTime / count : 0;
+        }
+
+        public String toString() {
+            return "SOAP endpoint " + endpoint + ": " + count + " calls, " + failures + " failed, total " + totalTime +
+                    " ms, avg " + getAverageTime() + " ms, max " + maxTime + " ms";
         }
     }
 
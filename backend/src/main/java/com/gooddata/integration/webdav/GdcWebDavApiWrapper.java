@@ -25,7 +25,9 @@ package com.gooddata.integration.webdav;
 
 import com.gooddata.exception.HttpMethodException;
 import com.gooddata.exception.HttpMethodNotFinishedYetException;
+import com.gooddata.integration.datatransfer.ChunkedUploader;
 import com.gooddata.integration.datatransfer.GdcDataTransferAPI;
+import com.gooddata.util.Metrics;
 import com.gooddata.util.NetUtil;
 
 import net.sf.json.JSONException;
@@ -34,9 +36,9 @@ import net.sf.json.JSONObject;
 import org.apache.commons.httpclient.*;
 import org.apache.commons.httpclient.auth.AuthScope;
 import org.apache.commons.httpclient.methods.GetMethod;
+import org.apache.commons.httpclient.methods.HeadMethod;
 import org.apache.commons.httpclient.methods.InputStreamRequestEntity;
 import org.apache.commons.httpclient.methods.PutMethod;
-import org.apache.commons.httpclient.methods.RequestEntity;
 import org.apache.jackrabbit.webdav.DavConstants;
 import org.apache.jackrabbit.webdav.DavException;
 import org.apache.jackrabbit.webdav.MultiStatus;
@@ -45,15 +47,18 @@ import org.apache.jackrabbit.webdav.client.methods.MkColMethod;
 import org.apache.jackrabbit.webdav.client.methods.PropFindMethod;
 import org.apache.log4j.Logger;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
 import java.util.HashMap;
 import java.util.Map;
 
 /**
- * GoodData Webdav API Java wrapper
+ * GoodData Webdav API Java wrapper. The HTTP connections are kept alive between the transfers,
+ * the wrapper can be used from multiple threads.
  *
  * @author zd <zd@gooddata.com>
  * @version 1.0
@@ -64,7 +69,14 @@ public class GdcWebDavApiWrapper implements GdcDataTransferAPI {
 
     protected static final String DEFAULT_ARCHIVE_NAME = "upload.zip";
 
+    /**
+     * The kept alive connections idle for a longer time (ms) are closed instead of reused
+     */
+    protected static final long MAX_IDLE_TIME = 60000;
+
     protected HttpClient client;
+    protected MultiThreadedHttpConnectionManager connectionManager;
+    protected ChunkedUploader uploader = new ChunkedUploader();
     private URL webdavURL;
 
     /**
@@ -76,13 +88,19 @@ public class GdcWebDavApiWrapper implements GdcDataTransferAPI {
      */
     public GdcWebDavApiWrapper(String username, String password, URL webdavURL) {
 
-        client = new HttpClient();
+        // the connections are kept alive between the transfers and shared by the parallel uploads,
+        // a kept alive connection is checked before it is reused
+        connectionManager = new MultiThreadedHttpConnectionManager();
+        connectionManager.getParams().setStaleCheckingEnabled(true);
+        client = new HttpClient(connectionManager);
 
         NetUtil.configureHttpProxy(client);
 
         Credentials creds = new UsernamePasswordCredentials(username, password);
         this.webdavURL = webdavURL;
         client.getState().setCredentials(AuthScope.ANY, creds);
+        // the chunks are streamed from the file and can't be resent after an authentication challenge
+        client.getParams().setAuthenticationPreemptive(true);
     }
 
     /**
@@ -92,20 +110,49 @@ public class GdcWebDavApiWrapper implements GdcDataTransferAPI {
      * @throws java.io.IOException in case of IO issues
      */
     public void transferDir(String archiveName) throws IOException {
-        l.debug("Transfering archive " + archiveName);
+        transferDir(archiveName, new File(archiveName).getName().split("\\.")[0]);
+    }
+
+    /**
+     * Transfers a local archive to the given remote directory on the GDC server
+     *
+     * @param archiveName the name of the ZIP archive that is going to be transferred
+     * @param dir         the remote directory name
+     * @throws IOException in case of IO issues
+     */
+    public void transferDir(String archiveName, String dir) throws IOException {
+        l.debug("Transfering archive " + archiveName + " to " + dir);
+        long start = Metrics.start();
         File file = new File(archiveName);
-        String dir = file.getName().split("\\.")[0];
+        connectionManager.closeIdleConnections(MAX_IDLE_TIME);
         MkColMethod mkdir = new MkColMethod(webdavURL.toString() + "/" + dir);
-        executeMethodOk(mkdir);
-        PutMethod put = new PutMethod(webdavURL.toString() + "/" + dir + "/" + DEFAULT_ARCHIVE_NAME);
-        FileInputStream fis = new FileInputStream(file);
-        RequestEntity requestEntity = new InputStreamRequestEntity(fis);
-        put.setRequestEntity(requestEntity);
-        executeMethodOk(put);
-        fis.close();
+        try {
+            executeMethodOk(mkdir);
+        } finally {
+            mkdir.releaseConnection();
+        }
+        connectionManager.getParams().setDefaultMaxConnectionsPerHost(Math.max(uploader.getConnections(),
+                MultiThreadedHttpConnectionManager.DEFAULT_MAX_HOST_CONNECTIONS));
+        uploader.upload(file, new WebDavTarget(webdavURL.toString() + "/" + dir + "/" + DEFAULT_ARCHIVE_NAME));
+        Metrics.stop(METRIC_TRANSFER, start);
+        Metrics.count(METRIC_TRANSFER_BYTES, file.length());
         l.debug("Transferred archive " + archiveName);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    public ChunkedUploader getUploader() {
+        return uploader;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    public void close() {
+        connectionManager.shutdown();
+    }
+
     /**
      * GET the transfer logs from the FTP server
      *
@@ -116,15 +163,24 @@ public class GdcWebDavApiWrapper implements GdcDataTransferAPI {
     public Map<String, String> getTransferLogs(String remoteDir) throws IOException {
         l.debug("Retrieveing transfer logs.");
         Map<String, String> result = new HashMap<String, String>();
+        connectionManager.closeIdleConnections(MAX_IDLE_TIME);
         PropFindMethod ls = new PropFindMethod(webdavURL.toString() + "/" + remoteDir + "/", DavConstants.PROPFIND_PROPERTY_NAMES, 1);
-        String ret = executeMethodOk(ls);
+        String ret;
+        try {
+            ret = executeMethodOk(ls);
+        } finally {
+            ls.releaseConnection();
+        }
         String[] files = ret.split(",");
         for (String file : files) {
             if (file.endsWith(".log") || file.endsWith(".json")) {
                 final URL logURL = new URL(webdavURL.getProtocol(), webdavURL.getHost(), webdavURL.getPort(), file);
                 GetMethod get = new GetMethod(logURL.toString());
-                String content = executeMethodOk(get);
-                result.put(file, content);
+                try {
+                    result.put(file, executeMethodOk(get));
+                } finally {
+                    get.releaseConnection();
+                }
             }
         }
         l.debug("Transfer logs retrieved.");
@@ -193,4 +249,88 @@ public class GdcWebDavApiWrapper implements GdcDataTransferAPI {
         }
     }
 
+    /**
+     * Remote WebDav file written by the ranged PUTs (Content-Range header). The target is thread safe.
+     */
+    private class WebDavTarget implements ChunkedUploader.Target {
+
+        private final String url;
+
+        WebDavTarget(String url) {
+            this.url = url;
+        }
+
+        public long length() throws IOException {
+            HeadMethod head = new HeadMethod(url);
+            try {
+                client.executeMethod(head);
+                if (head.getStatusCode() == HttpStatus.SC_NOT_FOUND) {
+                    return -1;
+                }
+                if (head.getStatusCode() != HttpStatus.SC_OK) {
+                    throw new IOException("HEAD " + url + " failed: " + head.getStatusCode() + " " + head.getStatusText());
+                }
+                Header contentLength = head.getResponseHeader("Content-Length");
+                if (contentLength == null) {
+                    throw new IOException("HEAD " + url + " didn't return the Content-Length.");
+                }
+                try {
+                    return Long.parseLong(contentLength.getValue().trim());
+                } catch (NumberFormatException e) {
+                    throw new IOException("HEAD " + url + " returned invalid Content-Length " + contentLength.getValue());
+                }
+            } finally {
+                head.releaseConnection();
+            }
+        }
+
+        public boolean write(long offset, InputStream data, long length, long total) throws IOException {
+            PutMethod put = new PutMethod(url);
+            put.setRequestEntity(new InputStreamRequestEntity(data, length));
+            if (offset > 0) {
+                put.setRequestHeader("Content-Range", "bytes " + offset + "-" + (offset + length - 1) + "/" + total);
+            }
+            try {
+                client.executeMethod(put);
+                int status = put.getStatusCode();
+                if (status == HttpStatus.SC_OK || status == HttpStatus.SC_CREATED || status == HttpStatus.SC_NO_CONTENT) {
+                    return true;
+                }
+                if (offset > 0 && (status == HttpStatus.SC_BAD_REQUEST || status == HttpStatus.SC_METHOD_NOT_ALLOWED
+                        || status == HttpStatus.SC_REQUESTED_RANGE_NOT_SATISFIABLE || status == HttpStatus.SC_NOT_IMPLEMENTED)) {
+                    return false;
+                }
+                throw new IOException("PUT " + url + " failed: " + status + " " + put.getStatusText());
+            } finally {
+                put.releaseConnection();
+            }
+        }
+
+        public InputStream read() throws IOException {
+            final GetMethod get = new GetMethod(url);
+            client.executeMethod(get);
+            if (get.getStatusCode() != HttpStatus.SC_OK) {
+                get.releaseConnection();
+                throw new IOException("GET " + url + " failed: " + get.getStatusCode() + " " + get.getStatusText());
+            }
+            InputStream body = get.getResponseBodyAsStream();
+            return new FilterInputStream(body != null ? body : new ByteArrayInputStream(new byte[0])) {
+                public void close() throws IOException {
+                    try {
+                        super.close();
+                    } finally {
+                        get.releaseConnection();
+                    }
+                }
+            };
+        }
+
+        public ChunkedUploader.Target open() {
+            return this;
+        }
+
+        public void close() {
+        }
+    }
+
 }
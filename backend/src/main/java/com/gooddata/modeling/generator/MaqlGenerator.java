@@ -23,13 +23,13 @@
 
 package com.gooddata.modeling.generator;
 
-import static com.gooddata.modeling.model.SourceColumn.LDM_TYPE_ATTRIBUTE;
-import static com.gooddata.modeling.model.SourceColumn.LDM_TYPE_CONNECTION_POINT;
-
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 
@@ -37,13 +37,15 @@ import com.gooddata.modeling.generator.MaqlGenerator.State.Attribute;
 import com.gooddata.modeling.generator.MaqlGenerator.State.Column;
 import com.gooddata.modeling.generator.MaqlGenerator.State.ConnectionPoint;
 import com.gooddata.modeling.generator.MaqlGenerator.State.Label;
+import com.gooddata.modeling.model.LdmType;
 import com.gooddata.modeling.model.SourceColumn;
 import com.gooddata.modeling.model.SourceSchema;
 import com.gooddata.naming.N;
 import com.gooddata.util.StringUtil;
 
 /**
- * GoodData MAQL Generator generates the MAQL from the LDM schema object
+ * GoodData MAQL Generator generates the MAQL from the LDM schema object. The MAQL is appended to
+ * an {@link Appendable} (e.g. a file writer), the String returning methods are shortcuts that collect it in memory.
  *
  * @author zd <zd@gooddata.com>
  * @version 1.0
@@ -71,15 +73,31 @@ public class MaqlGenerator {
      * @return the MAQL as a String
      */
     public String generateMaqlCreate() {
-        String script = "# This is MAQL script that generates project logical model.\n# See the MAQL documentation " +
-                "at http://developer.gooddata.com/reference/maql/maql-ddl for more details.\n\n";
-        script += "# Create dataset. Dataset groups all following logical model elements together.\n";
-        script += "CREATE DATASET {" + schema.getDatasetName() + "} VISUAL(TITLE \"" + lsn + "\");\n\n";
-        script += generateFoldersMaqlDdl(schema.getColumns());
+        StringBuilder script = new StringBuilder();
+        generateMaqlCreate(new MaqlWriter(script));
+        return script.toString();
+    }
 
-        script += generateMaqlAdd(schema.getColumns(), new ArrayList<SourceColumn>(), true);
+    /**
+     * Generates the MAQL from the schema
+     *
+     * @param out the MAQL output
+     * @throws IOException in case of IO issues
+     */
+    public void generateMaqlCreate(Appendable out) throws IOException {
+        MaqlWriter w = new MaqlWriter(out);
+        generateMaqlCreate(w);
+        w.checkError();
+    }
+
+    private void generateMaqlCreate(MaqlWriter w) {
+        w.append("# This is MAQL script that generates project logical model.\n# See the MAQL documentation " +
+                "at http://developer.gooddata.com/reference/maql/maql-ddl for more details.\n\n");
+        w.append("# Create dataset. Dataset groups all following logical model elements together.\n");
+        w.append("CREATE DATASET {", schema.getDatasetName(), "} VISUAL(TITLE \"", lsn, "\");\n\n");
+        generateFoldersMaqlDdl(schema.getColumns(), w);
 
-        return script;
+        generateMaqlAdd(schema.getColumns(), new ArrayList<SourceColumn>(), true, w);
     }
 
     /**
@@ -100,6 +118,19 @@ public class MaqlGenerator {
         return generateMaqlAdd(newColumns, knownColumns, false);
     }
 
+    /**
+     * Generate MAQL for specified (new) columns
+     *
+     * @param out the MAQL output
+     * @throws IOException in case of IO issues
+     */
+    public void generateMaqlAdd(Iterable<SourceColumn> newColumns, Iterable<SourceColumn> knownColumns,
+                                Appendable out) throws IOException {
+        MaqlWriter w = new MaqlWriter(out);
+        generateMaqlAdd(newColumns, knownColumns, false, w);
+        w.checkError();
+    }
+
     /**
      * Creates attribute table name
      *
@@ -119,47 +150,66 @@ public class MaqlGenerator {
      * @return MAQL as String
      */
     public String generateMaqlDrop(List<SourceColumn> columns, Iterable<SourceColumn> knownColumns) {
+        StringBuilder script = new StringBuilder();
+        generateMaqlDrop(columns, knownColumns, new MaqlWriter(script));
+        return script.toString();
+    }
+
+    /**
+     * Generate MAQL DROP statement for selected columns
+     *
+     * @param columns list of columns
+     * @param out     the MAQL output
+     * @throws IOException in case of IO issues
+     */
+    public void generateMaqlDrop(List<SourceColumn> columns, Iterable<SourceColumn> knownColumns, Appendable out)
+            throws IOException {
+        MaqlWriter w = new MaqlWriter(out);
+        generateMaqlDrop(columns, knownColumns, w);
+        w.checkError();
+    }
+
+    private void generateMaqlDrop(List<SourceColumn> columns, Iterable<SourceColumn> knownColumns, MaqlWriter w) {
         // generate attributes and facts
         State state = new State();
         for (SourceColumn column : columns) {
             state.processColumn(column);
         }
 
-        StringBuffer nonLabelsScript = new StringBuffer("# Drop attributes.\n");
+        // the labels are dropped first, they need the known attributes
+        StringBuilder nonLabelsScript = new StringBuilder("# Drop attributes.\n");
+        MaqlWriter nonLabels = new MaqlWriter(nonLabelsScript);
 
         for (final Column c : state.attributes.values()) {
-            nonLabelsScript.append(c.generateMaqlDdlDrop());
+            c.generateMaqlDdlDrop(nonLabels);
         }
-        nonLabelsScript.append("# Drop facts.\n");
+        nonLabels.append("# Drop facts.\n");
         for (final Column c : state.facts) {
-            nonLabelsScript.append(c.generateMaqlDdlDrop());
+            c.generateMaqlDdlDrop(nonLabels);
         }
-        nonLabelsScript.append("# Drop dates.\n# Dates are represented as facts.\n");
-        nonLabelsScript.append("# Dates are also connected to the date dimensions.\n");
+        nonLabels.append("# Drop dates.\n# Dates are represented as facts.\n");
+        nonLabels.append("# Dates are also connected to the date dimensions.\n");
         for (final Column c : state.dates) {
-            nonLabelsScript.append(c.generateMaqlDdlDrop());
+            c.generateMaqlDdlDrop(nonLabels);
         }
-        nonLabelsScript.append("# Drop references.\n# References connect the dataset to other datasets.\n");
+        nonLabels.append("# Drop references.\n# References connect the dataset to other datasets.\n");
         for (final Column c : state.references) {
-            nonLabelsScript.append(c.generateMaqlDdlDrop());
+            c.generateMaqlDdlDrop(nonLabels);
         }
 
         state.addKnownColumns(knownColumns);
 
-        StringBuilder script = new StringBuilder();
-        script.append("# Drop labels\n");
+        w.append("# Drop labels\n");
         for (final Column c : state.labels) {
-            script.append(c.generateMaqlDdlDrop());
+            c.generateMaqlDdlDrop(w);
         }
-        script.append(nonLabelsScript);
+        w.append(nonLabelsScript.toString());
 
         // finally
         if (synchronize) {
-            script.append("# Synchronize the storage and data loading interfaces with the new logical model.\n");
-            script.append("SYNCHRONIZE {" + schema.getDatasetName() + "} PRESERVE DATA;\n\n");
+            w.append("# Synchronize the storage and data loading interfaces with the new logical model.\n");
+            w.append("SYNCHRONIZE {", schema.getDatasetName(), "} PRESERVE DATA;\n\n");
         }
-
-        return script.toString();
     }
 
     /**
@@ -170,12 +220,28 @@ public class MaqlGenerator {
      * @return
      */
     public String generateMaqlSynchronize() {
-        StringBuffer script = new StringBuffer();
-        script.append("# Synchronize the storage and data loading interfaces with the new logical model.\n");
-        script.append("SYNCHRONIZE {" + schema.getDatasetName() + "} PRESERVE DATA;\n\n");
+        StringBuilder script = new StringBuilder();
+        generateMaqlSynchronize(new MaqlWriter(script));
         return script.toString();
     }
 
+    /**
+     * Generates the single <tt>SYNCHRONIZE</tt> command, see {@link #generateMaqlSynchronize()}
+     *
+     * @param out the MAQL output
+     * @throws IOException in case of IO issues
+     */
+    public void generateMaqlSynchronize(Appendable out) throws IOException {
+        MaqlWriter w = new MaqlWriter(out);
+        generateMaqlSynchronize(w);
+        w.checkError();
+    }
+
+    private void generateMaqlSynchronize(MaqlWriter w) {
+        w.append("# Synchronize the storage and data loading interfaces with the new logical model.\n");
+        w.append("SYNCHRONIZE {", schema.getDatasetName(), "} PRESERVE DATA;\n\n");
+    }
+
     /**
      * Generate MAQL for selected (new) columns
      *
@@ -184,6 +250,13 @@ public class MaqlGenerator {
      * @return MAQL as String
      */
     protected String generateMaqlAdd(Iterable<SourceColumn> newColumns, Iterable<SourceColumn> knownColumns, boolean createFactsOf) {
+        StringBuilder script = new StringBuilder();
+        generateMaqlAdd(newColumns, knownColumns, createFactsOf, new MaqlWriter(script));
+        return script.toString();
+    }
+
+    private void generateMaqlAdd(Iterable<SourceColumn> newColumns, Iterable<SourceColumn> knownColumns,
+                                 boolean createFactsOf, MaqlWriter w) {
 
         // generate attributes and facts
         State state = new State();
@@ -191,41 +264,41 @@ public class MaqlGenerator {
             state.processColumn(column);
         }
 
-        String script = "# Create attributes.\n# Attributes are categories that are used for slicing and dicing the " +
-                "numbers (facts)\n";
+        w.append("# Create attributes.\n# Attributes are categories that are used for slicing and dicing the " +
+                "numbers (facts)\n");
 
         ConnectionPoint connectionPoint = null; // hold the CP's default label to be created at the end
         for (final Column c : state.attributes.values()) {
-            script += c.generateMaqlDdlAdd();
+            c.generateMaqlDdlAdd(w);
             if (c instanceof ConnectionPoint) {
                 connectionPoint = (ConnectionPoint) c;
             } else {
                 final Attribute a = (Attribute) c;
-                script += a.generateOriginalLabelMaqlDdl();
-                script += a.generateDefaultLabelMaqlDdl();
+                a.generateOriginalLabelMaqlDdl(w);
+                a.generateDefaultLabelMaqlDdl(w);
             }
         }
-        script += "# Create facts.\n# Facts are numbers that are aggregated by attributes.\n";
+        w.append("# Create facts.\n# Facts are numbers that are aggregated by attributes.\n");
         for (final Column c : state.facts) {
-            script += c.generateMaqlDdlAdd();
+            c.generateMaqlDdlAdd(w);
         }
-        script += "# Create date facts.\n# Dates are represented as facts.\n# Dates are also connected to the " +
-                "date dimensions.\n";
+        w.append("# Create date facts.\n# Dates are represented as facts.\n# Dates are also connected to the " +
+                "date dimensions.\n");
         for (final Column c : state.dates) {
-            script += c.generateMaqlDdlAdd();
+            c.generateMaqlDdlAdd(w);
         }
-        script += "# Create references.\n# References connect the dataset to other datasets.\n";
+        w.append("# Create references.\n# References connect the dataset to other datasets.\n");
         for (final Column c : state.references) {
-            script += c.generateMaqlDdlAdd();
+            c.generateMaqlDdlAdd(w);
         }
 
         if (createFactsOf & (!state.hasCp)) {
-            script += "# The facts of attribute is sort of dataset identifier,\n";
-            script += "# it is used for COUNT aggregations.\n";
+            w.append("# The facts of attribute is sort of dataset identifier,\n");
+            w.append("# it is used for COUNT aggregations.\n");
             // generate the facts of / record id special attribute
-            script += "CREATE ATTRIBUTE " + factsOfAttrMaqlDdl + " VISUAL(TITLE \""
-                    + "Records of " + lsn + "\") AS KEYS {" + getFactTableName() + "." + state.factsOfPrimaryColumn + "} FULLSET;\n";
-            script += "ALTER DATASET {" + schema.getDatasetName() + "} ADD {attr." + schemaName + ".factsof};\n\n";
+            w.append("CREATE ATTRIBUTE ", factsOfAttrMaqlDdl, " VISUAL(TITLE \"", "Records of ", lsn,
+                    "\") AS KEYS {", getFactTableName(), ".", state.factsOfPrimaryColumn, "} FULLSET;\n");
+            w.append("ALTER DATASET {", schema.getDatasetName(), "} ADD {attr.", schemaName, ".factsof};\n\n");
         }
 
         state.addKnownColumns(knownColumns);
@@ -234,29 +307,28 @@ public class MaqlGenerator {
         boolean cpDefLabelSet = false;
         boolean cpSortSet = false;
         for (final Column c : state.labels) {
-            script += c.generateMaqlDdlAdd();
+            c.generateMaqlDdlAdd(w);
             Label l = (Label) c;
             if (!cpDefLabelSet && (connectionPoint != null) && l.attr.identifier.equals(connectionPoint.identifier)) {
-                script += l.generateMaqlDdlDefaultLabel();
+                l.generateMaqlDdlDefaultLabel(w);
                 cpDefLabelSet = true;
             }
             if (!cpSortSet && l.column.getName().equals(StringUtil.toIdentifier(l.attr.column.getSortLabel()))) {
-                script += l.generateMaqlSortLabel();
+                l.generateMaqlSortLabel(w);
                 cpSortSet = true;
             }
         }
 
         // CP's default label after all other labels
         if (connectionPoint != null) {
-            script += connectionPoint.generateOriginalLabelMaqlDdl();
+            connectionPoint.generateOriginalLabelMaqlDdl(w);
         }
 
         // finally
         if (synchronize) {
-            script += "# Synchronize the storage and data loading interfaces with the new logical model.\n";
-            script += "SYNCHRONIZE {" + schema.getDatasetName() + "};\n\n";
+            w.append("# Synchronize the storage and data loading interfaces with the new logical model.\n");
+            w.append("SYNCHRONIZE {", schema.getDatasetName(), "};\n\n");
         }
-        return script;
     }
     
     /**
@@ -265,15 +337,31 @@ public class MaqlGenerator {
      * @return
      */
     public String generateMaqlUpdateTitles(Iterable<SourceColumn> columns) {
-    	StringBuffer maql = new StringBuffer("");
+    	StringBuilder maql = new StringBuilder();
+    	generateMaqlUpdateTitles(columns, new MaqlWriter(maql));
+    	return maql.toString();
+    }
+
+    /**
+     * Generate MAQL to alter titles of provided columns
+     * @param columns
+     * @param out the MAQL output
+     * @throws IOException in case of IO issues
+     */
+    public void generateMaqlUpdateTitles(Iterable<SourceColumn> columns, Appendable out) throws IOException {
+    	MaqlWriter w = new MaqlWriter(out);
+    	generateMaqlUpdateTitles(columns, w);
+    	w.checkError();
+    }
+
+    private void generateMaqlUpdateTitles(Iterable<SourceColumn> columns, MaqlWriter w) {
     	State state = new State();
     	for (final SourceColumn sc : columns) {
     		state.processColumn(sc);
     	}
     	for (final Column c : state.getColumns()) {
-    		maql.append(c.generateMaqlAlterTitle());
+    		c.generateMaqlAlterTitle(w);
     	}
-    	return maql.toString();
     }
 
     /**
@@ -282,15 +370,31 @@ public class MaqlGenerator {
      * @return
      */
     public String generateMaqlUpdateDataTypes(Iterable<SourceColumn> columns) {
-    	StringBuffer maql = new StringBuffer("");
+    	StringBuilder maql = new StringBuilder();
+    	generateMaqlUpdateDataTypes(columns, new MaqlWriter(maql));
+    	return maql.toString();
+    }
+
+    /**
+     * Generate MAQL to alter specified data types of given columns
+     * @param columns
+     * @param out the MAQL output
+     * @throws IOException in case of IO issues
+     */
+    public void generateMaqlUpdateDataTypes(Iterable<SourceColumn> columns, Appendable out) throws IOException {
+    	MaqlWriter w = new MaqlWriter(out);
+    	generateMaqlUpdateDataTypes(columns, w);
+    	w.checkError();
+    }
+
+    private void generateMaqlUpdateDataTypes(Iterable<SourceColumn> columns, MaqlWriter w) {
     	State state = new State();
     	for (final SourceColumn sc : columns) {
     		state.processColumn(sc);
     	}
     	for (final Column c : state.getColumns()) {
-    		maql.append(c.generateMaqlAlterDataType());
+    		c.generateMaqlAlterDataType(w);
     	}
-    	return maql.toString();
     }
 
     /**
@@ -299,16 +403,32 @@ public class MaqlGenerator {
      * @return
      */
     public String generateMaqlSorting(Iterable<SourceColumn> columns) {
-    	StringBuffer maql = new StringBuffer("");
+    	StringBuilder maql = new StringBuilder();
+    	generateMaqlSorting(columns, new MaqlWriter(maql));
+    	return maql.toString();
+    }
+
+    /**
+     * Generate MAQL to alter the sorting of provided columns
+     * @param columns
+     * @param out the MAQL output
+     * @throws IOException in case of IO issues
+     */
+    public void generateMaqlSorting(Iterable<SourceColumn> columns, Appendable out) throws IOException {
+    	MaqlWriter w = new MaqlWriter(out);
+    	generateMaqlSorting(columns, w);
+    	w.checkError();
+    }
+
+    private void generateMaqlSorting(Iterable<SourceColumn> columns, MaqlWriter w) {
     	State state = new State();
     	for (final SourceColumn sc : columns) {
     		state.processColumn(sc);
     	}
     	for (final Column c : state.labels) {
     		Label l = (Label) c;
-            maql.append(l.generateMaqlSortLabel());
+            l.generateMaqlSortLabel(w);
     	}
-    	return maql.toString();
     }
 
     /**
@@ -318,27 +438,45 @@ public class MaqlGenerator {
      * @return MAQL as String
      */
     protected String generateFoldersMaqlDdl(List<SourceColumn> columns) {
-        final ArrayList<String> attributeFolders = new ArrayList<String>();
-        final ArrayList<String> factFolders = new ArrayList<String>();
+        StringBuilder script = new StringBuilder();
+        generateFoldersMaqlDdl(columns, new MaqlWriter(script));
+        return script.toString();
+    }
+
+    private void generateFoldersMaqlDdl(List<SourceColumn> columns, MaqlWriter w) {
+        final List<String> attributeFolders = new ArrayList<String>();
+        final List<String> factFolders = new ArrayList<String>();
+        // the folder lists keep the order, the sets make the lookups constant
+        final Set<String> attributeFolderSet = new HashSet<String>();
+        final Set<String> factFolderSet = new HashSet<String>();
 
         for (SourceColumn column : columns) {
             String folder = column.getFolder();
             if (folder != null && folder.length() > 0) {
                 String ldmType = column.getLdmType();
                 if(ldmType != null && ldmType.length()>0) {
-                    if (column.getLdmType().equalsIgnoreCase(SourceColumn.LDM_TYPE_ATTRIBUTE) ||
-                            column.getLdmType().equalsIgnoreCase(SourceColumn.LDM_TYPE_LABEL) ||
-                            column.getLdmType().equalsIgnoreCase(SourceColumn.LDM_TYPE_HYPERLINK) ||
-                            column.getLdmType().equalsIgnoreCase(SourceColumn.LDM_TYPE_CONNECTION_POINT) ||
-                            column.getLdmType().equalsIgnoreCase(SourceColumn.LDM_TYPE_REFERENCE) ||
-                            column.getLdmType().equalsIgnoreCase(SourceColumn.LDM_TYPE_DATE)) {
-                        if (!attributeFolders.contains(folder))
-                            attributeFolders.add(folder);
-                    }
-                    if (column.getLdmType().equalsIgnoreCase(SourceColumn.LDM_TYPE_FACT) ||
-                            column.getLdmType().equalsIgnoreCase(SourceColumn.LDM_TYPE_DATE)) {
-                        if (!factFolders.contains(folder))
-                            factFolders.add(folder);
+                    LdmType type = column.getLdmTypeEnum();
+                    if (type != null) {
+                        switch (type) {
+                            case ATTRIBUTE:
+                            case LABEL:
+                            case HYPERLINK:
+                            case CONNECTION_POINT:
+                            case REFERENCE:
+                                if (attributeFolderSet.add(folder))
+                                    attributeFolders.add(folder);
+                                break;
+                            case DATE:
+                                if (attributeFolderSet.add(folder))
+                                    attributeFolders.add(folder);
+                                if (factFolderSet.add(folder))
+                                    factFolders.add(folder);
+                                break;
+                            case FACT:
+                                if (factFolderSet.add(folder))
+                                    factFolders.add(folder);
+                                break;
+                        }
                     }
                 }
                 else {
@@ -347,26 +485,24 @@ public class MaqlGenerator {
             }
         }
 
-        String script = "";
         if (!attributeFolders.isEmpty() || !factFolders.isEmpty())
-            script += "# Create the folders that group attributes and facts.\n";
+            w.append("# Create the folders that group attributes and facts.\n");
         // Generate statements for the ATTRIBUTE folders
         for (String folder : attributeFolders) {
             String sfn = StringUtil.toIdentifier(folder);
             String lfn = folder;
-            script += "CREATE FOLDER {dim." + sfn + "} VISUAL(TITLE \"" + lfn + "\") TYPE ATTRIBUTE;\n";
+            w.append("CREATE FOLDER {dim.", sfn, "} VISUAL(TITLE \"", lfn, "\") TYPE ATTRIBUTE;\n");
         }
-        script += "\n";
+        w.append("\n");
 
         // Generate statements for the FACT folders
         for (String folder : factFolders) {
             String sfn = StringUtil.toIdentifier(folder);
             String lfn = folder;
-            script += "CREATE FOLDER {ffld." + sfn + "} VISUAL(TITLE \"" + lfn + "\") TYPE FACT;\n";
+            w.append("CREATE FOLDER {ffld.", sfn, "} VISUAL(TITLE \"", lfn, "\") TYPE FACT;\n");
         }
 
-        script += "\n";
-        return script;
+        w.append("\n");
     }
 
     /**
@@ -405,38 +541,47 @@ public class MaqlGenerator {
          * @param column source columns
          */
         private void processColumn(SourceColumn column) {
-            if (column.getLdmType().equals(SourceColumn.LDM_TYPE_ATTRIBUTE)) {
-                Attribute attr = new Attribute(column);
-                attributes.put(attr.columnName, attr);
-            } else if (column.getLdmType().equals(SourceColumn.LDM_TYPE_FACT)) {
-                facts.add(new Fact(column));
-            } else if (column.getLdmType().equals(SourceColumn.LDM_TYPE_DATE)) {
-                if (column.getSchemaReference() != null && column.getSchemaReference().length() > 0) {
-                    dates.add(new DateColumn(column));
-                } else {
+            LdmType type = column.getLdmTypeEnum();
+            if (type == null)
+                throw new IllegalArgumentException("Unsupported ldm type '" + column.getLdmType() + "'.");
+            switch (type) {
+                case ATTRIBUTE:
                     Attribute attr = new Attribute(column);
                     attributes.put(attr.columnName, attr);
-                }
-            } else if (column.getLdmType().equals(SourceColumn.LDM_TYPE_LABEL)) {
-                labels.add(new Label(column));
-            } else if (column.getLdmType().equals(SourceColumn.LDM_TYPE_HYPERLINK)) {
-                labels.add(new Hyperlink(column));
-            } else if (column.getLdmType().equals(SourceColumn.LDM_TYPE_REFERENCE)) {
-                references.add(new Reference(column));
-            } else if (column.getLdmType().equals(SourceColumn.LDM_TYPE_IGNORE)) {
-                ; // intentionally do nothing
-            } else if (column.getLdmType().equals(SourceColumn.LDM_TYPE_CONNECTION_POINT)) {
-                processConnectionPoint(column);
-            } else {
-                throw new IllegalArgumentException("Unsupported ldm type '" + column.getLdmType() + "'.");
+                    break;
+                case FACT:
+                    facts.add(new Fact(column));
+                    break;
+                case DATE:
+                    if (column.getSchemaReference() != null && column.getSchemaReference().length() > 0) {
+                        dates.add(new DateColumn(column));
+                    } else {
+                        Attribute dateAttr = new Attribute(column);
+                        attributes.put(dateAttr.columnName, dateAttr);
+                    }
+                    break;
+                case LABEL:
+                    labels.add(new Label(column));
+                    break;
+                case HYPERLINK:
+                    labels.add(new Hyperlink(column));
+                    break;
+                case REFERENCE:
+                    references.add(new Reference(column));
+                    break;
+                case IGNORE:
+                    break; // intentionally do nothing
+                case CONNECTION_POINT:
+                    processConnectionPoint(column);
+                    break;
             }
         }
 
         private void addKnownColumns(Iterable<SourceColumn> knownColumns) { // attributes only
             for (SourceColumn column : knownColumns) {
-                if (LDM_TYPE_ATTRIBUTE.equals(column.getLdmType())) {
+                if (column.getLdmTypeEnum() == LdmType.ATTRIBUTE) {
                     attributes.put(column.getName(), new Attribute(column));
-                } else if (LDM_TYPE_CONNECTION_POINT.equals(column.getLdmType())) {
+                } else if (column.getLdmTypeEnum() == LdmType.CONNECTION_POINT) {
                     processConnectionPoint(column);
                 }
             }
@@ -448,7 +593,7 @@ public class MaqlGenerator {
          * @param column source column
          */
         private void processConnectionPoint(SourceColumn column) {
-            if (column.getLdmType().equals(SourceColumn.LDM_TYPE_CONNECTION_POINT)) {
+            if (column.getLdmTypeEnum() == LdmType.CONNECTION_POINT) {
                 if (hasCp) {
                     throw new IllegalStateException("Only one connection point per dataset is allowed. "
                             + "Consider declaring the duplicate connection points as labels of the main connection point.");
@@ -488,18 +633,18 @@ public class MaqlGenerator {
                 return "{" + getFactTableName() + "." + columnName + "_" + N.ID + "}";
             }
 
-            public abstract String generateMaqlDdlAdd();
+            public abstract void generateMaqlDdlAdd(MaqlWriter w);
 
-            public String generateMaqlAlterTitle() {
-            	return ""; // intentionally left blank - no applicable MAQL DDL
+            public void generateMaqlAlterTitle(MaqlWriter w) {
+            	// intentionally left blank - no applicable MAQL DDL
             }
 
-            public String generateMaqlAlterDataType() {
-            	return ""; // intentionally left blank - no applicable MAQL DDL
+            public void generateMaqlAlterDataType(MaqlWriter w) {
+            	// intentionally left blank - no applicable MAQL DDL
             }
 
-            public String generateMaqlDdlDrop() {
-                return "DROP {" + identifier + "} CASCADE;\n\n";
+            public void generateMaqlDdlDrop(MaqlWriter w) {
+                w.append("DROP {", identifier, "} CASCADE;\n\n");
             }
         }
 
@@ -523,7 +668,7 @@ public class MaqlGenerator {
                 this(column, null);
             }
 
-            public String generateMaqlDdlAdd() {
+            public void generateMaqlDdlAdd(MaqlWriter w) {
                 String folderStatement = "";
                 String folder = column.getFolder();
                 if (folder != null && folder.length() > 0) {
@@ -531,69 +676,63 @@ public class MaqlGenerator {
                     folderStatement = ", FOLDER {dim." + sfn + "}";
                 }
 
-                String script = "";
                 String fks = createForeignKeyMaqlDdl();
                 if (!reference) {
-                    script += "CREATE ATTRIBUTE {" + identifier + "} VISUAL(TITLE \"" + lcn
-                            + "\"" + folderStatement + ") AS KEYS {" + table + "." + N.ID + "} FULLSET";
+                    w.append("CREATE ATTRIBUTE {", identifier, "} VISUAL(TITLE \"", lcn,
+                            "\"", folderStatement, ") AS KEYS {", table, ".", N.ID, "} FULLSET");
                     if ((fks != null) && (fks.length() > 0)) {
-                        script += ", " + fks;
+                        w.append(", ", fks);
                     }
                 } else if ((fks != null) && (fks.length() > 0)) {
-                    script += String.format("ALTER ATTRIBUTE {%s} ADD KEYS %s", identifier, fks);
+                    w.append("ALTER ATTRIBUTE {", identifier, "} ADD KEYS ", fks);
                 }
 
-                script += ";\n";
+                w.append(";\n");
 
                 if (!reference) { // don't add cross-dataset attributes
-                    script += "ALTER DATASET {" + schema.getDatasetName() + "} ADD {" + identifier + "};\n";
+                    w.append("ALTER DATASET {", schema.getDatasetName(), "} ADD {", identifier, "};\n");
                 }
 
                 String dataType = column.getDataType();
                 if (SourceColumn.LDM_IDENTITY.equalsIgnoreCase(column.getTransformation()))
                     dataType = SourceColumn.IDENTITY_DATATYPE;
                 if (dataType != null && dataType.length() > 0) {
-                    script += "ALTER DATATYPE {" + table + "." + N.NM_PFX + columnName + "} " + dataType + ";\n";
+                    w.append("ALTER DATATYPE {", table, ".", N.NM_PFX, columnName, "} ", dataType, ";\n");
                 } else {
-                    script += "\n";
+                    w.append("\n");
                 }
-
-                return script;
             }
             
-            public String generateMaqlAlterTitle() {
-            	return "ALTER ATTRIBUTE {" + identifier + "} VISUAL(TITLE \"" + lcn + "\");\n";
+            public void generateMaqlAlterTitle(MaqlWriter w) {
+            	w.append("ALTER ATTRIBUTE {", identifier, "} VISUAL(TITLE \"", lcn, "\");\n");
             }
 
-            public String generateMaqlAlterDataType() {
+            public void generateMaqlAlterDataType(MaqlWriter w) {
             	if (column.getDataType() != null) {
-            		return "ALTER DATATYPE {" + table + "." + N.NM_PFX + columnName + "} " + column.getDataType() + ";\n";
+            		w.append("ALTER DATATYPE {", table, ".", N.NM_PFX, columnName, "} ", column.getDataType(), ";\n");
             	}
-            	return "";
             }
 
             @Override
-            public String generateMaqlDdlDrop() {
+            public void generateMaqlDdlDrop(MaqlWriter w) {
                 if (reference) {
                     String fks = createForeignKeyMaqlDdl();
-                    return String.format("ALTER ATTRIBUTE {%s} DROP KEYS %s;\n", identifier, fks);
+                    w.append("ALTER ATTRIBUTE {", identifier, "} DROP KEYS ", fks, ";\n");
+                    return;
                 }
-                return super.generateMaqlDdlDrop();
+                super.generateMaqlDdlDrop(w);
             }
 
-            public String generateOriginalLabelMaqlDdl() {
+            public void generateOriginalLabelMaqlDdl(MaqlWriter w) {
                 if (!reference) {
-                    String script = "ALTER ATTRIBUTE {" + identifier + "} ADD LABELS " + defaultLabelDdl + "; \n";
-                    return script;
+                    w.append("ALTER ATTRIBUTE {", identifier, "} ADD LABELS ", defaultLabelDdl, "; \n");
                 }
-                return "";
             }
 
-            public String generateDefaultLabelMaqlDdl() {
+            public void generateDefaultLabelMaqlDdl(MaqlWriter w) {
                 if (!reference) {
-                    return "ALTER ATTRIBUTE  {" + identifier + "} DEFAULT LABEL {" + defaultLabelIdentifier + "};\n";
+                    w.append("ALTER ATTRIBUTE  {", identifier, "} DEFAULT LABEL {", defaultLabelIdentifier, "};\n");
                 }
-                return "";
             }
         }
 
@@ -624,7 +763,7 @@ public class MaqlGenerator {
             }
 
             @Override
-            public String generateMaqlDdlAdd() {
+            public void generateMaqlDdlAdd(MaqlWriter w) {
                 String folderStatement = "";
                 String folder = column.getFolder();
                 if (folder != null && folder.length() > 0) {
@@ -634,29 +773,27 @@ public class MaqlGenerator {
                 // unfortunate backward compatibility fix
                 // we have converted the date/time facts and the time attribute to explicit schema elements
                 // we needed to keep the dt_ and tm_ prefixes instead of the f_
-                String script = "CREATE FACT {" + identifier + "} VISUAL(TITLE \"" + lcn
-                        + "\"" + folderStatement + ") AS {" + getFactTableName() + "." + fcolname + "};\n"
-                        + "ALTER DATASET {" + schema.getDatasetName() + "} ADD {" + identifier + "};\n";
+                w.append("CREATE FACT {", identifier, "} VISUAL(TITLE \"", lcn,
+                        "\"", folderStatement, ") AS {", getFactTableName(), ".", fcolname, "};\n");
+                w.append("ALTER DATASET {", schema.getDatasetName(), "} ADD {", identifier, "};\n");
                 String dataType = column.getDataType();
                 if (SourceColumn.LDM_IDENTITY.equalsIgnoreCase(column.getTransformation()))
                     dataType = SourceColumn.IDENTITY_DATATYPE;
                 if (dataType != null && dataType.length() > 0) {
-                    script += "ALTER DATATYPE {" + getFactTableName() + "." + fcolname + "} " + dataType + ";\n";
+                    w.append("ALTER DATATYPE {", getFactTableName(), ".", fcolname, "} ", dataType, ";\n");
                 } else {
-                    script += "\n";
+                    w.append("\n");
                 }
-                return script;
             }
             
-            public String generateMaqlAlterTitle() {
-            	return "ALTER FACT {" + identifier + "} VISUAL(TITLE \"" + lcn + "\");\n";
+            public void generateMaqlAlterTitle(MaqlWriter w) {
+            	w.append("ALTER FACT {", identifier, "} VISUAL(TITLE \"", lcn, "\");\n");
             }
 
-            public String generateMaqlAlterDataType() {
+            public void generateMaqlAlterDataType(MaqlWriter w) {
             	if (column.getDataType() != null) {
-            		return "ALTER DATATYPE {" + getFactTableName() + "." + fcolname + "} " + column.getDataType() + ";\n";
+            		w.append("ALTER DATATYPE {", getFactTableName(), ".", fcolname, "} ", column.getDataType(), ";\n");
             	}
-            	return "";
             }
         }
 
@@ -671,84 +808,70 @@ public class MaqlGenerator {
                 scnPk = column.getReference();
             }
 
-            @Override
-            public String generateMaqlDdlAdd() {
+            /**
+             * Looks up the labeled attribute
+             */
+            protected Attribute getAttribute() {
                 attr = attributes.get(scnPk);
                 if (attr == null) {
                     throw new IllegalArgumentException("Label " + columnName + " points to non-existing attribute " + scnPk);
                 }
-                String script = "# Add labels to attributes\n";
-                script += "ALTER ATTRIBUTE {attr." + schemaName + "." + scnPk + "} ADD LABELS {label." + schemaName + "." + scnPk + "."
-                        + columnName + "} VISUAL(TITLE \"" + lcn + "\") AS {" + attr.table + "." + N.NM_PFX + columnName + "};\n";
+                return attr;
+            }
+
+            @Override
+            public void generateMaqlDdlAdd(MaqlWriter w) {
+                getAttribute();
+                w.append("# Add labels to attributes\n");
+                w.append("ALTER ATTRIBUTE {attr.", schemaName, ".", scnPk, "} ADD LABELS {label.", schemaName, ".",
+                        scnPk, ".", columnName, "} VISUAL(TITLE \"", lcn, "\") AS {", attr.table, ".", N.NM_PFX,
+                        columnName, "};\n");
 
                 String dataType = column.getDataType();
                 if (SourceColumn.LDM_IDENTITY.equalsIgnoreCase(column.getTransformation()))
                     dataType = SourceColumn.IDENTITY_DATATYPE;
                 if (dataType != null && dataType.length() > 0) {
-                    script += "ALTER DATATYPE {" + attr.table + "." + N.NM_PFX + columnName + "} " + dataType + ";\n";
+                    w.append("ALTER DATATYPE {", attr.table, ".", N.NM_PFX, columnName, "} ", dataType, ";\n");
                 } else {
-                    script += "\n";
+                    w.append("\n");
                 }
-                return script;
             }
 
-            public String generateMaqlDdlDrop() {
-                attr = attributes.get(scnPk);
-                if (attr == null) {
-                    throw new IllegalArgumentException("Label " + columnName + " points to non-existing attribute " + scnPk);
-                }
-                String script = "# Drop labels from attributes.\n";
-                final String labelId = getLabelId();
-                script += "ALTER ATTRIBUTE  {" + attr.identifier + "} DROP LABELS {" + labelId + "};\n";
-                return script;
+            public void generateMaqlDdlDrop(MaqlWriter w) {
+                getAttribute();
+                w.append("# Drop labels from attributes.\n");
+                w.append("ALTER ATTRIBUTE  {", attr.identifier, "} DROP LABELS {", getLabelId(), "};\n");
             }
 
-            public String generateMaqlDdlDefaultLabel() {
-                attr = attributes.get(scnPk);
-                if (attr == null) {
-                    throw new IllegalArgumentException("Label " + columnName + " points to non-existing attribute " + scnPk);
-                }
+            public void generateMaqlDdlDefaultLabel(MaqlWriter w) {
+                getAttribute();
                 // TODO why is this different than this.identifier?
-                final String labelId = getLabelId();
-                return "ALTER ATTRIBUTE  {" + attr.identifier + "} DEFAULT LABEL {" + labelId + "};\n";
+                w.append("ALTER ATTRIBUTE  {", attr.identifier, "} DEFAULT LABEL {", getLabelId(), "};\n");
             }
 
-            public String generateMaqlSortLabel() {
-                attr = attributes.get(scnPk);
-                if (attr == null) {
-                    throw new IllegalArgumentException("Label " + columnName + " points to non-existing attribute " + scnPk);
-                }
+            public void generateMaqlSortLabel(MaqlWriter w) {
+                getAttribute();
                 if (column.getName().equals(StringUtil.toIdentifier(attr.column.getSortLabel()))) {
                 	String sortOrder = attr.column.getSortOrder();
-	                final String labelId = getLabelId();
 	                if(sortOrder == null || sortOrder.length() <=0 || !(SourceColumn.LDM_SORT_ORDER_ASC.equals(sortOrder) &&
 	                        SourceColumn.LDM_SORT_ORDER_DESC.equals(sortOrder)))
 	                    sortOrder = SourceColumn.LDM_SORT_ORDER_ASC;
-	                return "ALTER ATTRIBUTE  {" + attr.identifier + "} ORDER BY {" + labelId + "} "+sortOrder+";\n";
+	                w.append("ALTER ATTRIBUTE  {", attr.identifier, "} ORDER BY {", getLabelId(), "} ", sortOrder, ";\n");
                 }
-                return "";
             }
 
-            public String generateMaqlAlterTitle() {
-                attr = attributes.get(scnPk);
-                if (attr == null) {
-                    throw new IllegalArgumentException("Label " + columnName + " points to non-existing attribute " + scnPk);
-                }
+            public void generateMaqlAlterTitle(MaqlWriter w) {
+                getAttribute();
                 // TODO why is this different than this.identifier?
-                final String labelId = getLabelId();
-                return "ALTER ATTRIBUTE {attr." + schemaName + "." + scnPk + "} ALTER LABELS {label." + schemaName + "." + scnPk + "."
-                        + columnName + "} VISUAL(TITLE \"" + lcn + "\");\n";
+                w.append("ALTER ATTRIBUTE {attr.", schemaName, ".", scnPk, "} ALTER LABELS {label.", schemaName, ".",
+                        scnPk, ".", columnName, "} VISUAL(TITLE \"", lcn, "\");\n");
             }
 
-            public String generateMaqlAlterDataType() {
-            	attr = attributes.get(scnPk);
-                if (attr == null) {
-                    throw new IllegalArgumentException("Label " + columnName + " points to non-existing attribute " + scnPk);
-                }
+            public void generateMaqlAlterDataType(MaqlWriter w) {
+                getAttribute();
             	if (column.getDataType() != null) {
-            		return "ALTER DATATYPE {" + attr.table + "." + N.NM_PFX + columnName + "} " + column.getDataType() + ";\n";
+            		w.append("ALTER DATATYPE {", attr.table, ".", N.NM_PFX, columnName, "} ", column.getDataType(), ";\n");
             	}
-            	return "";
             }
 
             protected String getLabelId() {
@@ -763,12 +886,10 @@ public class MaqlGenerator {
             }
 
             @Override
-            public String generateMaqlDdlAdd() {
-                String script = super.generateMaqlDdlAdd();
-                attr = attributes.get(scnPk);
-                script += "# Add hyperlink mark to label\n";
-                script += "ALTER ATTRIBUTE {" + attr.identifier + "} ALTER LABELS {" + getLabelId() + "} HYPERLINK;\n";
-                return script;
+            public void generateMaqlDdlAdd(MaqlWriter w) {
+                super.generateMaqlDdlAdd(w);
+                w.append("# Add hyperlink mark to label\n");
+                w.append("ALTER ATTRIBUTE {", attr.identifier, "} ALTER LABELS {", getLabelId(), "} HYPERLINK;\n");
             }
         }
 
@@ -790,18 +911,18 @@ public class MaqlGenerator {
             }
 
             @Override
-            public String generateMaqlDdlAdd() {
+            public void generateMaqlDdlAdd(MaqlWriter w) {
                 String reference = column.getSchemaReference();
 
-                String stat = generateFactMaqlCreate();
+                w.append(generateFactMaqlCreate());
                 if (reference != null && reference.length() > 0) {
                     String r = column.getReference();
                     if (r == null || r.length() <= 0) {
                         r = N.DT_ATTR_NAME;
                     }
-                    stat += "# Connect the date to the date dimension.\n";
-                    stat += "ALTER ATTRIBUTE {" + reference + "." + r + "} ADD KEYS {" + getFactTableName() +
-                            "." + N.DT_PFX + columnName + "_" + N.ID + "};\n\n";
+                    w.append("# Connect the date to the date dimension.\n");
+                    w.append("ALTER ATTRIBUTE {", reference, ".", r, "} ADD KEYS {", getFactTableName(),
+                            ".", N.DT_PFX, columnName, "_", N.ID, "};\n\n");
                     /* This is now handled by adding entirely new attribute to the schema in the initSchema
                     if(includeTime) {
                         stat += "# Connect the time to the time dimension.\n";
@@ -810,11 +931,10 @@ public class MaqlGenerator {
                     }
                      */
                 }
-                return stat;
             }
 
-            public String generateMaqlDdlDrop() {
-                String script = generateFactMaqlDrop();
+            public void generateMaqlDdlDrop(MaqlWriter w) {
+                w.append(generateFactMaqlDrop());
                 String reference = column.getSchemaReference();
                 boolean includeTime = column.isDatetime();
                 if (reference != null && reference.length() > 0) {
@@ -822,9 +942,9 @@ public class MaqlGenerator {
                     if (r == null || r.length() <= 0) {
                         r = N.DT_ATTR_NAME;
                     }
-                    script += "# Disconnect the date dimension.\n";
-                    script += "ALTER ATTRIBUTE {" + reference + "." + r + "} DROP KEYS {" + getFactTableName() +
-                            "." + N.DT_PFX + columnName + "_" + N.ID + "};\n\n";
+                    w.append("# Disconnect the date dimension.\n");
+                    w.append("ALTER ATTRIBUTE {", reference, ".", r, "} DROP KEYS {", getFactTableName(),
+                            ".", N.DT_PFX, columnName, "_", N.ID, "};\n\n");
                     /* Consistently with generateMaqlAddDrop(), it's moved somewhere else
                     if(includeTime) {
                         script += "ALTER ATTRIBUTE {"+N.TM_ATTR_NAME+reference+"} DROP KEYS {"+getFactTableName() +
@@ -832,7 +952,6 @@ public class MaqlGenerator {
                     }
                      */
                 }
-                return script;
             }
 
             public String generateFactMaqlDrop() {
@@ -882,7 +1001,7 @@ public class MaqlGenerator {
                 return null;
             }
 
-            public String generateMaqlDdlDrop() {
+            public void generateMaqlDdlDrop(MaqlWriter w) {
                 throw new UnsupportedOperationException("Generate MAQL Drop is not supported for CONNECTION_POINTS yet");
             }
         }
@@ -894,31 +1013,27 @@ public class MaqlGenerator {
             }
 
             @Override
-            public String generateMaqlDdlAdd() {
+            public void generateMaqlDdlAdd(MaqlWriter w) {
                 String foreignAttrId = "{attr" + "." + column.getSchemaReference() + "." + column.getReference() + "}";
                 String fk = createForeignKeyMaqlDdl();
                 if (column.isTimeFact()) {
                     foreignAttrId = "{" + N.TM_ATTR_NAME + column.getSchemaReference() + "}";
                     fk = "{" + getFactTableName() + "." + N.TM_PFX + columnName + "}";
                 }
-                String script = "# Connect the reference to the appropriate dimension.\n";
-                script += "ALTER ATTRIBUTE " + foreignAttrId
-                        + " ADD KEYS " + fk + ";\n\n";
-                return script;
+                w.append("# Connect the reference to the appropriate dimension.\n");
+                w.append("ALTER ATTRIBUTE ", foreignAttrId, " ADD KEYS ", fk, ";\n\n");
             }
 
 
-            public String generateMaqlDdlDrop() {
+            public void generateMaqlDdlDrop(MaqlWriter w) {
                 String foreignAttrId = "{attr" + "." + column.getSchemaReference() + "." + column.getReference() + "}";
                 String fk = createForeignKeyMaqlDdl();
                 if (column.isTimeFact()) {
                     foreignAttrId = "{" + N.TM_ATTR_NAME + column.getSchemaReference() + "}";
                     fk = "{" + getFactTableName() + "." + N.TM_PFX + columnName + "}";
                 }
-                String script = "# Disconnect the reference from the appropriate dimension.\n";
-                script += "ALTER ATTRIBUTE " + foreignAttrId
-                        + " DROP KEYS " + fk + ";\n\n";
-                return script;
+                w.append("# Disconnect the reference from the appropriate dimension.\n");
+                w.append("ALTER ATTRIBUTE ", foreignAttrId, " DROP KEYS ", fk, ";\n\n");
             }
         }
 
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.gooddata.modeling.generator;
+
+import java.io.IOException;
+
+/**
+ * Appends the generated MAQL to an {@link Appendable}. The first IO error is kept and rethrown by
+ * {@link #checkError()}, so the generator code doesn't need to handle it on every append.
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+class MaqlWriter {
+
+    private final Appendable out;
+    private IOException error;
+
+    MaqlWriter(Appendable out) {
+        this.out = out;
+    }
+
+    /**
+     * Appends the MAQL fragments
+     *
+     * @param fragments MAQL fragments
+     * @return this writer
+     */
+    MaqlWriter append(String... fragments) {
+        if (error == null) {
+            try {
+                for (String fragment : fragments) {
+                    out.append(fragment);
+                }
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Appends a single MAQL fragment
+     *
+     * @param fragment MAQL fragment
+     * @return this writer
+     */
+    MaqlWriter append(String fragment) {
+        if (error == null) {
+            try {
+                out.append(fragment);
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Rethrows the first IO error
+     *
+     * @throws IOException the IO error
+     */
+    void checkError() throws IOException {
+        if (error != null)
+            throw error;
+    }
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.modeling.model;
+
+/**
+ * GoodData LDM column types. The config files keep the type as the plain string
+ * (see the SourceColumn.LDM_TYPE_* constants), the enum is resolved once per column
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+public enum LdmType {
+
+    ATTRIBUTE,
+    FACT,
+    LABEL,
+    DATE,
+    CONNECTION_POINT,
+    REFERENCE,
+    HYPERLINK,
+    IGNORE;
+
+    private static final LdmType[] types = values();
+
+    /**
+     * Resolves the LDM type string (case insensitive)
+     *
+     * @param ldmType LDM type string (e.g. SourceColumn.LDM_TYPE_ATTRIBUTE)
+     * @return the matching LDM type or null if the string isn't a valid LDM type
+     */
+    public static LdmType fromString(String ldmType) {
+        if (ldmType != null) {
+            for (LdmType t : types) {
+                if (t.name().equalsIgnoreCase(ldmType))
+                    return t;
+            }
+        }
+        return null;
+    }
+
+}
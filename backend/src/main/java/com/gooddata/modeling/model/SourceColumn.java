@@ -26,6 +26,9 @@ package com.gooddata.modeling.model;
 import com.gooddata.exception.ModelException;
 import com.gooddata.util.StringUtil;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * GoodData LDM schema column
  *
@@ -59,6 +62,9 @@ public class SourceColumn {
 
     private String ldmType;
 
+    // ldmType resolved to the enum, not serialized
+    private transient LdmType ldmTypeEnum;
+
     private String reference;
 
     private String schemaReference;
@@ -81,6 +87,9 @@ public class SourceColumn {
 
     private String sortOrder = LDM_SORT_ORDER_ASC;
 
+    // the schemas that have indexed this column, notified whenever a property that identifies
+    // the column (name, LDM type, references) changes so that they can rebuild their column indexes
+    private transient List<SourceSchema> schemas;
 
     /**
      * SourceColumn constructor
@@ -160,6 +169,7 @@ public class SourceColumn {
      */
     public void setName(String nm) {
         this.name = StringUtil.toIdentifier(nm);
+        modified();
     }
 
     /**
@@ -181,6 +191,20 @@ public class SourceColumn {
      */
     public void setLdmType(String ldmType) {
         this.ldmType = ldmType;
+        this.ldmTypeEnum = LdmType.fromString(ldmType);
+        modified();
+    }
+
+    /**
+     * Column's resolved LDM type getter
+     *
+     * @return column LDM type, null if the LDM type string isn't a valid LDM type
+     */
+    public LdmType getLdmTypeEnum() {
+        // the XML deserialization sets the ldmType field directly
+        if (ldmTypeEnum == null && ldmType != null)
+            ldmTypeEnum = LdmType.fromString(ldmType);
+        return ldmTypeEnum;
     }
 
     /**
@@ -207,6 +231,7 @@ public class SourceColumn {
      */
     public void setReference(String reference) {
         this.reference = StringUtil.toIdentifier(reference);
+        modified();
     }
 
     /**
@@ -232,6 +257,7 @@ public class SourceColumn {
      */
     public void setSchemaReference(String pks) {
         this.schemaReference = StringUtil.toIdentifier(pks);
+        modified();
     }
 
     /**
@@ -459,6 +485,35 @@ public class SourceColumn {
       return true;
     }
  
+    /**
+     * Registers a schema that has indexed this column
+     *
+     * @param schema the schema to notify about the changes of this column
+     */
+    synchronized void addSchema(SourceSchema schema) {
+        if (schemas == null)
+            schemas = new ArrayList<SourceSchema>(1);
+        for (SourceSchema s : schemas) {
+            if (s == schema)
+                return;
+        }
+        schemas.add(schema);
+    }
+
+    /**
+     * Notifies the schemas that have indexed this column about a change of an identifying property
+     */
+    private void modified() {
+        SourceSchema[] notified;
+        synchronized (this) {
+            if (schemas == null)
+                return;
+            notified = schemas.toArray(new SourceSchema[schemas.size()]);
+        }
+        for (SourceSchema s : notified)
+            s.columnModified();
+    }
+
     /**
      * Transformation
      */
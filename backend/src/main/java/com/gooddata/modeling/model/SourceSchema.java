@@ -31,7 +31,10 @@ import org.apache.log4j.Logger;
 
 import java.io.*;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 /**
  * GoodData source schema. Source schema describes the structure of the source data and its mapping to the LDM types
@@ -64,6 +67,16 @@ public class SourceSchema {
      */
     private List<SourceColumn> columns;
 
+    /**
+     * Lazily built column lookup indexes (not serialized)
+     */
+    private transient volatile ColumnIndex index;
+
+    /**
+     * Number of changes of the identifying properties of the indexed columns (not serialized)
+     */
+    private transient volatile int modifications;
+
     /**
      * Constructor
      *
@@ -81,7 +94,8 @@ public class SourceSchema {
      * @return the column's index
      */
     public int getColumnIndex(SourceColumn c) {
-        return columns.indexOf(c);
+        Integer i = getIndex().positions.get(c);
+        return (i != null) ? (i) : (-1);
     }
 
     /**
@@ -217,6 +231,7 @@ public class SourceSchema {
      */
     public void setColumns(List<SourceColumn> columns) {
         this.columns = columns;
+        this.index = null;
     }
 
     /**
@@ -226,6 +241,7 @@ public class SourceSchema {
      */
     public void addColumn(SourceColumn c) {
         this.columns.add(c);
+        this.index = null;
     }
 
     /**
@@ -265,9 +281,9 @@ public class SourceSchema {
      *          thrown if the column doesn't exist
      */
     public SourceColumn getColumnByName(String name) throws ModelException {
-        for (SourceColumn c : columns)
-            if (c.getName().equals(name))
-                return c;
+        SourceColumn c = getIndex().byName.get(name);
+        if (c != null)
+            return c;
         throw new ModelException("Column " + name + " not found.");
 
     }
@@ -275,17 +291,24 @@ public class SourceSchema {
     /**
      * Returns a column by it's type
      *
-     * @param type type to search for (case sensitive)
-     * @return the matching columns
-     * @throws com.gooddata.exception.ModelException
-     *          thrown if the column doesn't exist
+     * @param type type to search for (case insensitive)
+     * @return the matching columns (unmodifiable)
      */
     public List<SourceColumn> getColumnByType(String type) {
-        ArrayList<SourceColumn> l = new ArrayList<SourceColumn>();
-        for (SourceColumn c : columns)
-            if (type.equals(c.getLdmType()))
-                l.add(c);
-        return l;
+        return getColumnByType(LdmType.fromString(type));
+    }
+
+    /**
+     * Returns a column by it's type
+     *
+     * @param type type to search for
+     * @return the matching columns (unmodifiable)
+     */
+    public List<SourceColumn> getColumnByType(LdmType type) {
+        List<SourceColumn> l = (type != null) ? (getIndex().byType.get(type)) : (null);
+        if (l != null)
+            return l;
+        return Collections.emptyList();
     }
 
     /**
@@ -294,7 +317,7 @@ public class SourceSchema {
      * @return all LABEL columns
      */
     public List<SourceColumn> getLabels() {
-        return getColumnByType(SourceColumn.LDM_TYPE_LABEL);
+        return getColumnByType(LdmType.LABEL);
     }
 
     /**
@@ -303,7 +326,7 @@ public class SourceSchema {
      * @return all ATTRIBUTE columns
      */
     public List<SourceColumn> getAttributes() {
-        return getColumnByType(SourceColumn.LDM_TYPE_ATTRIBUTE);
+        return getColumnByType(LdmType.ATTRIBUTE);
     }
 
     /**
@@ -312,7 +335,7 @@ public class SourceSchema {
      * @return all FACT columns
      */
     public List<SourceColumn> getFacts() {
-        return getColumnByType(SourceColumn.LDM_TYPE_FACT);
+        return getColumnByType(LdmType.FACT);
     }
 
     /**
@@ -321,7 +344,7 @@ public class SourceSchema {
      * @return all REFERENCE columns
      */
     public List<SourceColumn> getReferences() {
-        return getColumnByType(SourceColumn.LDM_TYPE_REFERENCE);
+        return getColumnByType(LdmType.REFERENCE);
     }
 
     /**
@@ -330,7 +353,7 @@ public class SourceSchema {
      * @return all IGNORE columns
      */
     public List<SourceColumn> getIgnored() {
-        return getColumnByType(SourceColumn.LDM_TYPE_IGNORE);
+        return getColumnByType(LdmType.IGNORE);
     }
 
 
@@ -340,7 +363,7 @@ public class SourceSchema {
      * @return all CONNECTION POINT columns
      */
     public List<SourceColumn> getConnectionPoints() {
-        return getColumnByType(SourceColumn.LDM_TYPE_CONNECTION_POINT);
+        return getColumnByType(LdmType.CONNECTION_POINT);
     }
 
     /**
@@ -349,7 +372,7 @@ public class SourceSchema {
      * @return all DATE POINT columns
      */
     public List<SourceColumn> getDates() {
-        return getColumnByType(SourceColumn.LDM_TYPE_DATE);
+        return getColumnByType(LdmType.DATE);
     }
 
     @Override
@@ -395,5 +418,78 @@ public class SourceSchema {
         return identityColumn;
     }
 
+    /**
+     * Invalidates the column indexes after an identifying property of an indexed column has changed
+     */
+    synchronized void columnModified() {
+        modifications++;
+    }
+
+    /**
+     * Returns the column indexes, rebuilds them if the columns have changed since they were built
+     *
+     * @return the current column indexes
+     */
+    private ColumnIndex getIndex() {
+        ColumnIndex i = index;
+        if (i == null || !i.isValid(this)) {
+            i = new ColumnIndex(this);
+            index = i;
+        }
+        return i;
+    }
+
+    /**
+     * Immutable name, LDM type and position indexes of the schema columns
+     */
+    private static class ColumnIndex {
+
+        private final Map<String, SourceColumn> byName;
+        private final Map<LdmType, List<SourceColumn>> byType;
+        private final Map<SourceColumn, Integer> positions;
+
+        // the state of the columns this index has been built from
+        private final List<SourceColumn> columns;
+        private final int size;
+        private final int modificationCount;
+
+        ColumnIndex(SourceSchema schema) {
+            // read before the columns so that a concurrent change makes this index stale
+            this.modificationCount = schema.modifications;
+            this.columns = schema.columns;
+            this.size = columns.size();
+            byName = new HashMap<String, SourceColumn>(size * 2);
+            positions = new HashMap<SourceColumn, Integer>(size * 2);
+            Map<LdmType, List<SourceColumn>> types = new HashMap<LdmType, List<SourceColumn>>();
+            for (int i = 0; i < size; i++) {
+                SourceColumn c = columns.get(i);
+                c.addSchema(schema);
+                // the first occurrence wins the same way as the former linear scans
+                if (!byName.containsKey(c.getName()))
+                    byName.put(c.getName(), c);
+                if (!positions.containsKey(c))
+                    positions.put(c, i);
+                // the columns with an invalid LDM type aren't found by any type
+                LdmType type = c.getLdmTypeEnum();
+                if (type != null) {
+                    List<SourceColumn> t = types.get(type);
+                    if (t == null) {
+                        t = new ArrayList<SourceColumn>();
+                        types.put(type, t);
+                    }
+                    t.add(c);
+                }
+            }
+            byType = new HashMap<LdmType, List<SourceColumn>>(types.size() * 2);
+            for (Map.Entry<LdmType, List<SourceColumn>> e : types.entrySet())
+                byType.put(e.getKey(), Collections.unmodifiableList(e.getValue()));
+        }
+
+        boolean isValid(SourceSchema schema) {
+            return columns == schema.columns && size == columns.size()
+                    && modificationCount == schema.modifications;
+        }
+    }
+
 
 }
@@ -29,6 +29,7 @@ import org.apache.log4j.Logger;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.List;
 import java.util.Properties;
 
 /**
@@ -45,6 +46,8 @@ public class Command {
     private String command;
     // Command parameters
     private Properties parameters;
+    // Nested commands of a block command (e.g. Parallel), null for plain commands
+    private List<Command> commands;
 
 
     /**
@@ -120,9 +123,39 @@ public class Command {
         this.parameters = parameters;
     }
 
+    /**
+     * Nested commands getter
+     *
+     * @return nested commands of a block command or null for plain commands
+     */
+    public List<Command> getCommands() {
+        return commands;
+    }
+
+    /**
+     * Nested commands setter
+     *
+     * @param commands nested commands
+     */
+    public void setCommands(List<Command> commands) {
+        this.commands = commands;
+    }
+
+    /**
+     * Returns true if the command is a block with nested commands
+     *
+     * @return true if the command is a block with nested commands
+     */
+    public boolean isBlock() {
+        return commands != null;
+    }
+
     @Override
     public String toString() {
-        return new StringBuffer(command).append("(").append(parameters).append(")").toString();
+        StringBuffer b = new StringBuffer(command).append("(").append(parameters).append(")");
+        if (isBlock())
+            b.append(commands);
+        return b.toString();
     }
 
     /**
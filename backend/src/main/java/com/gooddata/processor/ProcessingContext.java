@@ -28,6 +28,7 @@ import com.gooddata.exception.HttpMethodException;
 import com.gooddata.exception.InvalidArgumentException;
 import com.gooddata.exception.InvalidCommandException;
 import com.gooddata.exception.InvalidParameterException;
+import com.gooddata.integration.datatransfer.ChunkedUploader;
 import com.gooddata.integration.datatransfer.GdcDataTransferAPI;
 import com.gooddata.integration.rest.GdcRESTApiWrapper;
 import com.gooddata.integration.rest.configuration.NamePasswordConfiguration;
@@ -47,10 +48,19 @@ public class ProcessingContext {
 
     private static Logger l = Logger.getLogger(ProcessingContext.class);
 
+    /**
+     * CLI parameters with the upload chunk size (in MB) and the number of upload connections
+     */
+    public static final String CLI_PARAM_CHUNK_SIZE = "chunksize";
+    public static final String CLI_PARAM_CONNECTIONS = "connections";
+    public static final String CLI_PARAM_VERIFY_UPLOAD = "verifyupload";
+
     private String projectId;
     private Connector connector;
     private GdcRESTApiWrapper _restApi = null;
     private GdcDataTransferAPI webDAVApiWrapper = null;
+    // false when the data transfer API belongs to another context
+    private boolean ownFtpApi = true;
 
 
     public String getProjectId() throws InvalidParameterException {
@@ -116,10 +126,61 @@ public class ProcessingContext {
             checkConfig(httpConfig);
             l.debug("Using the GoodData data stage host '" + url + "'.");
             webDAVApiWrapper = new GdcWebDavApiWrapper(httpConfig.getUsername(), httpConfig.getPassword(), url);
+            ChunkedUploader uploader = webDAVApiWrapper.getUploader();
+            String chunkSize = cliParams.get(CLI_PARAM_CHUNK_SIZE);
+            if (chunkSize != null && chunkSize.length() > 0)
+                uploader.setChunkSize(Long.parseLong(chunkSize) * 1024 * 1024);
+            String connections = cliParams.get(CLI_PARAM_CONNECTIONS);
+            if (connections != null && connections.length() > 0)
+                uploader.setConnections(Integer.parseInt(connections));
+            if (cliParams.containsKey(CLI_PARAM_VERIFY_UPLOAD))
+                uploader.setVerifyChecksum(!"false".equalsIgnoreCase(cliParams.get(CLI_PARAM_VERIFY_UPLOAD)));
         }
         return webDAVApiWrapper;
     }
 
+    /**
+     * Uses the given data transfer sessions, e.g. the ones of another context. The data transfer API wrappers
+     * are thread safe, so the contexts of the concurrent loads can share them.
+     *
+     * @param ftpApi the data transfer API
+     */
+    public void setFtpApi(GdcDataTransferAPI ftpApi) {
+        this.webDAVApiWrapper = ftpApi;
+        this.ownFtpApi = false;
+    }
+
+    /**
+     * Closes the data transfer connections kept open for the lifetime of the context and logs out
+     * the REST session. The data transfer API set by {@link #setFtpApi(GdcDataTransferAPI)} is left open.
+     */
+    public void close() {
+        if (webDAVApiWrapper != null) {
+            if (ownFtpApi)
+                webDAVApiWrapper.close();
+            webDAVApiWrapper = null;
+            ownFtpApi = true;
+        }
+        if (_restApi != null) {
+            try {
+                _restApi.logout();
+            } catch (RuntimeException e) {
+                l.debug("Error logging out the REST session.", e);
+            }
+            _restApi = null;
+        }
+    }
+
+    /**
+     * Forgets the active project and connector but keeps the authenticated REST and data transfer
+     * sessions, so the context can be reused for another script
+     */
+    public void reset() {
+        MDC.remove("GdcProjectId");
+        projectId = null;
+        connector = null;
+    }
+
     private static void checkConfig(NamePasswordConfiguration config) {
         if (config.getUsername() == null) {
             throw new InvalidArgumentException("Missing the 'username' commandline parameter.");
@@ -25,6 +25,7 @@ package com.gooddata.transform;
 
 import com.gooddata.Constants;
 import com.gooddata.exception.InvalidParameterException;
+import com.gooddata.modeling.model.LdmType;
 import com.gooddata.modeling.model.SourceColumn;
 import com.gooddata.modeling.model.SourceSchema;
 import com.gooddata.util.DateUtil;
@@ -53,9 +54,23 @@ public class Transformer {
 
     private static Logger l = Logger.getLogger(Transformer.class);
 
+    // per column action plan, resolved from the schema once
+    private static final byte ACTION_VALUE = 0;
+    private static final byte ACTION_FACT = 1;
+    private static final byte ACTION_DATE = 2;
+    private static final byte ACTION_EXPRESSION = 3;
+
     private Expression[] expressions;
     private SourceSchema schema;
 
+    private SourceColumn[] columns;
+    private String[] names;
+    private byte[] actions;
+    private boolean[] identityKeys;
+    private boolean[] ignored;
+    private int outputCount;
+    private Boolean computeIdentity;
+
     protected Transformer(SourceSchema schema) {
         setSchema(schema);
     }
@@ -72,7 +87,7 @@ public class Transformer {
         List<String> header = new ArrayList<String>();
         for (int i = 0; i < columns.size(); i++) {
             SourceColumn c = columns.get(i);
-            if (!SourceColumn.LDM_TYPE_IGNORE.equalsIgnoreCase(c.getLdmType())) {
+            if (c.getLdmTypeEnum() != LdmType.IGNORE) {
                 if (transform) {
                     header.add(c.getName());
                 } else {
@@ -101,73 +116,61 @@ public class Transformer {
     public String[] transformRow(Object[] row, int dateLength) {
         try {
             if (row != null) {
-                List<SourceColumn> columns = schema.getColumns();
-                boolean computeIdentity = (schema.getIdentityColumn() >= 0);
+                if (computeIdentity == null)
+                    computeIdentity = (schema.getIdentityColumn() >= 0);
+                boolean identity = computeIdentity;
                 int idx = 0;
-                String key = "";
+                StringBuilder key = (identity) ? (new StringBuilder()) : (null);
                 JexlContext jc = new MapContext();
-                for (int i = 0; i < columns.size(); i++) {
-                    SourceColumn c = columns.get(i);
-                    String t = c.getTransformation();
-                    if (t == null) {
-                        // this is core (non-transformed) column
-                        if (idx < row.length) {
-                            if (SourceColumn.LDM_TYPE_FACT.equalsIgnoreCase(c.getLdmType())) {
-                                row[idx] = handleFact(row[idx]);
-                            }
-                            if (SourceColumn.LDM_TYPE_DATE.equalsIgnoreCase(c.getLdmType())) {
-                                row[idx] = handleDate(row[idx], c);
-                                row[idx] = cutStringDate(row[idx], dateLength);
-                            }
-                            // compute identity if required
-                            if (computeIdentity && SourceColumn.LDM_TYPE_ATTRIBUTE.equalsIgnoreCase(c.getLdmType()) ||
-                                    SourceColumn.LDM_TYPE_DATE.equalsIgnoreCase(c.getLdmType()) ||
-                                    SourceColumn.LDM_TYPE_REFERENCE.equalsIgnoreCase(c.getLdmType())) {
-                                key += row[idx] + "|";
-                            }
-                            jc.set(c.getName(), (row[idx] != null) ? (row[idx]) : (""));
-                            idx++;
-                        } else {
-                            throw new InvalidParameterException("Transform: The schema " + schema.getName() + " contains different" +
-                                    " number of columns than the processed row.");
-                        }
+                for (int i = 0; i < actions.length; i++) {
+                    byte action = actions[i];
+                    if (action == ACTION_EXPRESSION)
+                        continue;
+                    // this is core (non-transformed) column
+                    if (idx >= row.length) {
+                        throw new InvalidParameterException("Transform: The schema " + schema.getName() + " contains different" +
+                                " number of columns than the processed row.");
+                    }
+                    switch (action) {
+                        case ACTION_FACT:
+                            row[idx] = handleFact(row[idx]);
+                            break;
+                        case ACTION_DATE:
+                            row[idx] = handleDate(row[idx], columns[i]);
+                            row[idx] = cutStringDate(row[idx], dateLength);
+                            break;
+                    }
+                    // compute identity if required
+                    if (identity && identityKeys[i]) {
+                        key.append(row[idx]).append('|');
                     }
+                    jc.set(names[i], (row[idx] != null) ? (row[idx]) : (""));
+                    idx++;
                 }
                 // insert identity var
-                if (computeIdentity) {
-                    String identity = DigestUtils.md5Hex(key);
-                    jc.set("IDENTITY", identity);
+                if (identity) {
+                    jc.set("IDENTITY", DigestUtils.md5Hex(key.toString()));
                 }
 
                 jc.set("GdcDateArithmetics", da);
 
-
-                idx = 0;
-                int cntWithoutIgnored = columns.size();
-                List<SourceColumn> ignored = schema.getIgnored();
-                if (ignored != null)
-                    cntWithoutIgnored -= ignored.size();
-                List<String> nrow = new ArrayList<String>(cntWithoutIgnored);
-                for (int i = 0; i < columns.size(); i++) {
-                    SourceColumn c = columns.get(i);
-                    String t = c.getTransformation();
-                    //System.err.println("Column "+c.getName()+" tx:"+c.getTransformation());
-                    String cid = c.getName();
-                    if (!SourceColumn.LDM_TYPE_IGNORE.equalsIgnoreCase(c.getLdmType())) {
-                        if (t == null) {
-                            Object value = jc.get(cid);
-                            if (value != null) {
-                                nrow.add(value.toString());
-                            } else {
-                                l.debug("The column " + cid + " doesn't contain any value.");
-                            }
-
+                List<String> nrow = new ArrayList<String>(outputCount);
+                for (int i = 0; i < actions.length; i++) {
+                    if (ignored[i])
+                        continue;
+                    String cid = names[i];
+                    if (actions[i] != ACTION_EXPRESSION) {
+                        Object value = jc.get(cid);
+                        if (value != null) {
+                            nrow.add(value.toString());
                         } else {
-                            Object result = expressions[i].evaluate(jc);
-                            String value = (result != null) ? (result.toString()) : ("");
-                            nrow.add(value);
-                            jc.set(cid, result);
+                            l.debug("The column " + cid + " doesn't contain any value.");
                         }
+                    } else {
+                        Object result = expressions[i].evaluate(jc);
+                        String value = (result != null) ? (result.toString()) : ("");
+                        nrow.add(value);
+                        jc.set(cid, result);
                     }
                 }
                 return nrow.toArray(fk);
@@ -255,17 +258,44 @@ public class Transformer {
             if (schema != null) {
                 List<SourceColumn> columns = schema.getColumns();
                 if (columns != null & columns.size() > 0) {
-                    Expression[] es = new Expression[columns.size()];
-                    for (int i = 0; i < columns.size(); i++) {
+                    int n = columns.size();
+                    Expression[] es = new Expression[n];
+                    byte[] as = new byte[n];
+                    boolean[] keys = new boolean[n];
+                    boolean[] ign = new boolean[n];
+                    String[] nms = new String[n];
+                    int cnt = 0;
+                    for (int i = 0; i < n; i++) {
                         SourceColumn c = columns.get(i);
                         if (c != null) {
                             String t = c.getTransformation();
                             if (t != null) {
                                 es[i] = jexl.createExpression(t);
                             }
+                            LdmType type = c.getLdmTypeEnum();
+                            if (t != null)
+                                as[i] = ACTION_EXPRESSION;
+                            else if (type == LdmType.FACT)
+                                as[i] = ACTION_FACT;
+                            else if (type == LdmType.DATE)
+                                as[i] = ACTION_DATE;
+                            else
+                                as[i] = ACTION_VALUE;
+                            keys[i] = (type == LdmType.ATTRIBUTE || type == LdmType.DATE || type == LdmType.REFERENCE);
+                            ign[i] = (type == LdmType.IGNORE);
+                            nms[i] = c.getName();
+                            if (!ign[i])
+                                cnt++;
                         }
                     }
                     setExpressions(es);
+                    this.columns = columns.toArray(new SourceColumn[n]);
+                    this.actions = as;
+                    this.identityKeys = keys;
+                    this.ignored = ign;
+                    this.names = nms;
+                    this.outputCount = cnt;
+                    this.computeIdentity = null;
                     this.schema = schema;
                 } else {
                     throw new InvalidParameterException("The Transformer requires a non-empty schema to run.");
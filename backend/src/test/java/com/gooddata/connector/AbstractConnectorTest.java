@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2007-2011, GoodData(R) Corporation. All rights reserved.
+ */
+package com.gooddata.connector;
+
+import com.gooddata.exception.InvalidParameterException;
+import com.gooddata.modeling.model.SourceColumn;
+import com.gooddata.modeling.model.SourceSchema;
+import com.gooddata.util.FileUtil;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.assertEquals;
+
+public class AbstractConnectorTest {
+
+    private File dataFile;
+
+    @Before
+    public void setUp() throws IOException {
+        dataFile = File.createTempFile("data", ".csv");
+    }
+
+    @After
+    public void tearDown() {
+        dataFile.delete();
+    }
+
+    @Test
+    public void testSortAndDeduplicateByFileHeader() throws IOException {
+        // the connection point isn't the first column of the file
+        FileUtil.writeStringToFile("name,id\nb,2\na,1\nc,2\n", dataFile.getAbsolutePath());
+        new TestConnector().sortAndDeduplicate(createSchema("id"), dataFile, 1024 * 1024);
+        assertEquals("\"name\",\"id\"\n\"a\",\"1\"\n\"c\",\"2\"\n", FileUtil.readStringFromFile(dataFile.getAbsolutePath()));
+    }
+
+    @Test(expected = InvalidParameterException.class)
+    public void testSortAndDeduplicateMissingConnectionPoint() throws IOException {
+        FileUtil.writeStringToFile("name,key\nb,2\na,1\n", dataFile.getAbsolutePath());
+        new TestConnector().sortAndDeduplicate(createSchema("id"), dataFile, 1024 * 1024);
+    }
+
+    private static SourceSchema createSchema(String cp) {
+        SourceSchema schema = SourceSchema.createSchema("ds");
+        schema.addColumn(new SourceColumn("name", SourceColumn.LDM_TYPE_ATTRIBUTE, "Name"));
+        schema.addColumn(new SourceColumn(cp, SourceColumn.LDM_TYPE_CONNECTION_POINT, "Id"));
+        return schema;
+    }
+
+    private static class TestConnector extends AbstractConnector {
+        public void extract(String file, boolean transform) throws IOException {
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2007-2011, GoodData(R) Corporation. All rights reserved.
+ */
+package com.gooddata.connector;
+
+import com.gooddata.integration.model.Column;
+import com.gooddata.integration.model.SLI;
+import com.gooddata.modeling.model.SourceColumn;
+import com.gooddata.modeling.model.SourceSchema;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DataSetDiffMakerTest {
+
+    @Test
+    public void testDiff() {
+        SLI sli = new SLI("dataset.ds", "ds", "/gdc/md/pid/ldm/singleloadinterface/dataset.ds");
+
+        DataSetDiffMaker diff = new DataSetDiffMaker(sli, createSliColumns(), createSchema(), false);
+        List<SourceColumn> added = diff.findNewColumns();
+        assertEquals(1, added.size());
+        assertEquals("newfact", added.get(0).getName());
+        List<SourceColumn> deleted = diff.findDeletedColumns();
+        assertEquals(1, deleted.size());
+        assertEquals("old", deleted.get(0).getName());
+        assertEquals(SourceColumn.LDM_TYPE_FACT, deleted.get(0).getLdmType());
+
+        // the local HYPERLINK differs from the remote LABEL when the labels are rebuilt
+        diff = new DataSetDiffMaker(sli, createSliColumns(), createSchema(), true);
+        assertEquals(2, diff.findNewColumns().size());
+        assertEquals(2, diff.findDeletedColumns().size());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testUnknownName() {
+        SLI sli = new SLI("dataset.ds", "ds", "/gdc/md/pid/ldm/singleloadinterface/dataset.ds");
+        List<Column> columns = new ArrayList<Column>();
+        columns.add(column("x_ds.unknown"));
+        new DataSetDiffMaker(sli, columns, createSchema(), false);
+    }
+
+    private static SourceSchema createSchema() {
+        SourceSchema schema = SourceSchema.createSchema("ds");
+        schema.addColumn(new SourceColumn("id", SourceColumn.LDM_TYPE_CONNECTION_POINT, "Id"));
+        schema.addColumn(new SourceColumn("name", SourceColumn.LDM_TYPE_ATTRIBUTE, "Name"));
+        schema.addColumn(new SourceColumn("name_label", SourceColumn.LDM_TYPE_HYPERLINK, "Link", null, "name"));
+        schema.addColumn(new SourceColumn("amount", SourceColumn.LDM_TYPE_FACT, "Amount"));
+        schema.addColumn(new SourceColumn("newfact", SourceColumn.LDM_TYPE_FACT, "New"));
+        schema.addColumn(new SourceColumn("cust", SourceColumn.LDM_TYPE_REFERENCE, "Customer", null, "cid", "customer"));
+        SourceColumn date = new SourceColumn("created", SourceColumn.LDM_TYPE_DATE, "Created", null, null, "created_dt");
+        date.setFormat("yyyy-MM-dd");
+        schema.addColumn(date);
+        AbstractConnector.expandDates(schema);
+        return schema;
+    }
+
+    private static List<Column> createSliColumns() {
+        List<Column> columns = new ArrayList<Column>();
+        columns.add(column("f_ds.nm_id", "label.ds.id"));
+        columns.add(column("d_ds_name.nm_name", "label.ds.name"));
+        columns.add(column("d_ds_name.nm_name_label", "label.ds.name.name_label"));
+        columns.add(column("f_ds.f_amount", "fact.ds.amount"));
+        columns.add(column("f_ds.f_old", "fact.ds.old"));
+        columns.add(column("f_ds.dt_created_id", "created_dt.date.mmddyyyy"));
+        columns.add(column("f_ds.dt_created", "dt.ds.created"));
+        columns.add(column("f_customer.id", "label.customer.cid"));
+        return columns;
+    }
+
+    private static Column column(String name, String... populates) {
+        Column c = new Column(name);
+        c.setPopulates(populates);
+        return c;
+    }
+}
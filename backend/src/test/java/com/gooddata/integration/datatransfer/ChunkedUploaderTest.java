@@ -0,0 +1,235 @@
+/*
+ * Copyright (C) 2007-2011, GoodData(R) Corporation. All rights reserved.
+ */
+package com.gooddata.integration.datatransfer;
+
+import com.gooddata.exception.GdcUploadErrorException;
+import com.gooddata.util.FileUtil;
+import com.gooddata.util.Metrics;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ChunkedUploaderTest {
+
+    private File file;
+    private byte[] data;
+    private ChunkedUploader uploader;
+
+    @Before
+    public void setUp() throws IOException {
+        data = new byte[10000];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        file = File.createTempFile("upload", ".zip");
+        FileOutputStream fos = new FileOutputStream(file);
+        fos.write(data);
+        fos.close();
+        uploader = new ChunkedUploader();
+        uploader.setChunkSize(3000);
+        uploader.setRetryInterval(0);
+        Metrics.begin();
+    }
+
+    @After
+    public void tearDown() {
+        Metrics.end();
+        file.delete();
+    }
+
+    @Test
+    public void testChunks() throws IOException {
+        MemoryTarget target = new MemoryTarget();
+        uploader.upload(file, target);
+        assertEquals(Arrays.asList(0L, 3000L, 6000L, 9000L), target.writes);
+        assertArrayEquals(data, target.content);
+        assertEquals(null, Metrics.snapshot().get(ChunkedUploader.METRIC_TRANSFER_RETRIES));
+        // the checksum verification is off by default, the file isn't read back
+        assertEquals(0, target.reads);
+    }
+
+    @Test
+    public void testRetryFailedChunk() throws IOException {
+        MemoryTarget target = new MemoryTarget();
+        target.failures.add(3000L);
+        uploader.upload(file, target);
+        // the second chunk broke after 1000 bytes, the upload resumes where the remote file ends
+        assertEquals(Arrays.asList(0L, 3000L, 4000L, 7000L), target.writes);
+        assertArrayEquals(data, target.content);
+        assertEquals(1, Metrics.snapshot().get(ChunkedUploader.METRIC_TRANSFER_RETRIES).getValue());
+    }
+
+    @Test
+    public void testRangesNotSupported() throws IOException {
+        MemoryTarget target = new MemoryTarget();
+        target.ranges = false;
+        uploader.upload(file, target);
+        assertEquals(Arrays.asList(0L, 3000L, 0L), target.writes);
+        assertArrayEquals(data, target.content);
+    }
+
+    @Test
+    public void testChecksumMismatch() throws IOException {
+        uploader.setVerifyChecksum(true);
+        MemoryTarget target = new MemoryTarget();
+        target.corrupt = 1;
+        uploader.upload(file, target);
+        assertEquals(8, target.writes.size());
+        assertArrayEquals(data, target.content);
+
+        target = new MemoryTarget();
+        target.corrupt = 1;
+        uploader.setMaxRetries(0);
+        try {
+            uploader.upload(file, target);
+            fail("The corrupted upload must fail.");
+        } catch (GdcUploadErrorException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testGiveUp() {
+        MemoryTarget target = new MemoryTarget();
+        target.broken = true;
+        uploader.setMaxRetries(2);
+        try {
+            uploader.upload(file, target);
+            fail("The broken upload must fail.");
+        } catch (IOException e) {
+            assertEquals(Arrays.asList(0L, 0L, 0L), target.writes);
+        }
+    }
+
+    @Test
+    public void testEmptyFile() throws IOException {
+        FileOutputStream fos = new FileOutputStream(file);
+        fos.close();
+        MemoryTarget target = new MemoryTarget();
+        uploader.upload(file, target);
+        assertEquals(Arrays.asList(0L), target.writes);
+        assertEquals(0, target.content.length);
+    }
+
+    @Test
+    public void testParallel() throws IOException {
+        MemoryTarget target = new MemoryTarget();
+        target.sparse = true;
+        target.failures.add(6000L);
+        uploader.setConnections(3);
+        uploader.upload(file, target);
+        assertArrayEquals(data, target.content);
+        assertEquals(Long.valueOf(0), target.writes.get(0));
+        // the failed chunk is written again
+        assertEquals(5, target.writes.size());
+        assertEquals(2, target.sessions);
+        assertEquals(0, target.openSessions);
+    }
+
+    @Test
+    public void testParallelNotSupported() throws IOException {
+        MemoryTarget target = new MemoryTarget();
+        uploader.setConnections(3);
+        uploader.upload(file, target);
+        assertArrayEquals(data, target.content);
+        // the target can't open more sessions, the file is uploaded sequentially
+        assertEquals(Arrays.asList(0L, 0L, 3000L, 6000L, 9000L), target.writes);
+    }
+
+    /**
+     * In-memory remote file
+     */
+    private static class MemoryTarget implements ChunkedUploader.Target {
+
+        private byte[] content;
+        private List<Long> writes = new ArrayList<Long>();
+        // offsets of the chunks that break in the middle once
+        private Set<Long> failures = new HashSet<Long>();
+        private boolean ranges = true;
+        private boolean broken = false;
+        // number of the complete uploads that are corrupted
+        private int corrupt = 0;
+        private int reads = 0;
+        // accepts the concurrent writes beyond the end of the file
+        private boolean sparse = false;
+        private int sessions = 0;
+        private int openSessions = 0;
+
+        public synchronized long length() {
+            return content == null ? -1 : content.length;
+        }
+
+        public synchronized boolean write(long offset, InputStream data, long length, long total)
+                throws IOException {
+            writes.add(offset);
+            if (broken) {
+                throw new IOException("Connection reset");
+            }
+            ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+            FileUtil.copy(data, chunk);
+            assertEquals(length, chunk.size());
+            if (sparse && offset > 0) {
+                byte[] grown = new byte[(int) Math.max(content.length, offset + length)];
+                System.arraycopy(content, 0, grown, 0, content.length);
+                int n = failures.remove(offset) ? chunk.size() / 3 : chunk.size();
+                System.arraycopy(chunk.toByteArray(), 0, grown, (int) offset, n);
+                content = grown;
+                if (n < chunk.size()) {
+                    throw new IOException("Connection reset");
+                }
+                return true;
+            }
+            ByteArrayOutputStream bos = new ByteArrayOutputStream();
+            if (ranges && offset > 0) {
+                bos.write(content, 0, (int) offset);
+            }
+            if (failures.remove(offset)) {
+                bos.write(chunk.toByteArray(), 0, chunk.size() / 3);
+                content = bos.toByteArray();
+                throw new IOException("Connection reset");
+            }
+            bos.write(chunk.toByteArray());
+            content = bos.toByteArray();
+            if (content.length == total && corrupt > 0) {
+                corrupt--;
+                content[0]++;
+            }
+            return true;
+        }
+
+        public InputStream read() {
+            reads++;
+            return new ByteArrayInputStream(content);
+        }
+
+        public synchronized ChunkedUploader.Target open() {
+            if (!sparse) {
+                return null;
+            }
+            sessions++;
+            openSessions++;
+            return this;
+        }
+
+        public synchronized void close() {
+            openSessions--;
+        }
+    }
+}
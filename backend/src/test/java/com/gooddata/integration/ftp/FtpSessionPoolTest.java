@@ -0,0 +1,219 @@
+/*
+ * Copyright (C) 2007-2011, GoodData(R) Corporation. All rights reserved.
+ */
+package com.gooddata.integration.ftp;
+
+import com.gooddata.integration.rest.configuration.NamePasswordConfiguration;
+import com.gooddata.util.FileUtil;
+import org.apache.commons.net.ftp.FTPClient;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FtpSessionPoolTest {
+
+    @Test
+    public void testReuse() throws IOException {
+        FtpSessionPool pool = new FakePool(2, 60000);
+        FTPClient s = pool.borrow();
+        pool.release(s);
+        assertSame(s, pool.borrow());
+        assertEquals(1, pool.getCreated());
+    }
+
+    @Test
+    public void testValidation() throws IOException, InterruptedException {
+        FtpSessionPool pool = new FakePool(2, 60000);
+        FakeClient s = (FakeClient) pool.borrow();
+        pool.release(s);
+        // the server closed the idle session
+        s.alive = false;
+        FTPClient t = pool.borrow();
+        assertNotSame(s, t);
+        assertFalse(s.isConnected());
+        assertEquals(2, pool.getCreated());
+
+        pool = new FakePool(2, 0);
+        s = (FakeClient) pool.borrow();
+        pool.release(s);
+        Thread.sleep(5);
+        assertNotSame(s, pool.borrow());
+    }
+
+    @Test
+    public void testLimit() throws IOException {
+        FtpSessionPool pool = new FakePool(2, 60000);
+        FTPClient s = pool.borrow();
+        FTPClient t = pool.tryBorrow();
+        assertNotNull(t);
+        assertNull(pool.tryBorrow());
+        pool.invalidate(t);
+        assertFalse(t.isConnected());
+        assertNotNull(pool.tryBorrow());
+        assertTrue(s.isConnected());
+    }
+
+    @Test
+    public void testConcurrentUse() throws InterruptedException {
+        final FtpSessionPool pool = new FakePool(3, 60000);
+        final AtomicInteger borrowed = new AtomicInteger();
+        final AtomicInteger maxBorrowed = new AtomicInteger();
+        final AtomicInteger errors = new AtomicInteger();
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            threads.add(new Thread() {
+                public void run() {
+                    for (int j = 0; j < 50; j++) {
+                        try {
+                            FTPClient s = pool.borrow();
+                            int n = borrowed.incrementAndGet();
+                            synchronized (maxBorrowed) {
+                                maxBorrowed.set(Math.max(maxBorrowed.get(), n));
+                            }
+                            Thread.yield();
+                            borrowed.decrementAndGet();
+                            pool.release(s);
+                        } catch (IOException e) {
+                            errors.incrementAndGet();
+                        }
+                    }
+                }
+            });
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(0, errors.get());
+        assertTrue(maxBorrowed.get() <= 3);
+        assertTrue(pool.getCreated() <= 3);
+    }
+
+    @Test
+    public void testClose() throws IOException {
+        FtpSessionPool pool = new FakePool(2, 60000);
+        FTPClient s = pool.borrow();
+        FTPClient t = pool.borrow();
+        pool.release(s);
+        pool.close();
+        assertFalse(s.isConnected());
+        pool.release(t);
+        assertFalse(t.isConnected());
+        try {
+            pool.borrow();
+            fail("The closed pool must not open new sessions.");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testFailedReconnects() throws IOException {
+        FakePool pool = new FakePool(2, 60000);
+        GdcFTPApiWrapper ftp = new GdcFTPApiWrapper(pool.config, pool);
+        ftp.getUploader().setRetryInterval(0);
+        ftp.getUploader().setMaxRetries(3);
+        File file = FileUtil.getTempFile();
+        FileUtil.writeStringToFile("data", file.getAbsolutePath());
+        // the upload starts with a logged in session
+        pool.release(pool.borrow());
+        try {
+            // the server goes down in the middle of the upload and refuses the new logins
+            pool.failLogins = true;
+            ftp.transferDir(file.getAbsolutePath(), "dir");
+            fail("The upload must fail while the server is down.");
+        } catch (IOException e) {
+            // expected
+        } finally {
+            file.delete();
+        }
+        pool.failLogins = false;
+        assertNotNull(pool.tryBorrow());
+        assertNotNull(pool.tryBorrow());
+        assertNull("The failed reconnects must not add sessions to the pool.", pool.tryBorrow());
+    }
+
+    private static class FakePool extends FtpSessionPool {
+
+        // the already connected sessions are kept, only the new logins fail
+        private volatile boolean failLogins = false;
+
+        FakePool(int maxSessions, long maxIdleTime) {
+            super(new NamePasswordConfiguration("ftp", "localhost", "user", "password"), maxSessions, maxIdleTime);
+        }
+
+        protected FTPClient createClient() {
+            return new FakeClient();
+        }
+
+        protected void login(FTPClient client) throws IOException {
+            if (failLogins)
+                throw new IOException("Connection refused");
+            ((FakeClient) client).connected = true;
+        }
+    }
+
+    private static class FakeClient extends FTPClient {
+
+        private boolean connected = false;
+        private boolean alive = true;
+
+        public boolean isConnected() {
+            return connected;
+        }
+
+        public void disconnect() {
+            connected = false;
+        }
+
+        public boolean sendNoOp() {
+            return alive;
+        }
+
+        public boolean logout() {
+            return true;
+        }
+
+        public String printWorkingDirectory() {
+            return "/";
+        }
+
+        public boolean changeWorkingDirectory(String dir) {
+            return alive;
+        }
+
+        public boolean makeDirectory(String dir) {
+            return true;
+        }
+
+        public boolean setFileType(int type) {
+            return true;
+        }
+
+        public int getReplyCode() {
+            return 250;
+        }
+
+        public boolean storeFile(String name, InputStream data) throws IOException {
+            // the connection drops in the middle of the transfer
+            connected = false;
+            throw new IOException("Connection reset");
+        }
+    }
+}
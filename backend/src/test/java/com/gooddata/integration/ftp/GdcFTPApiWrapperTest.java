@@ -0,0 +1,270 @@
+/*
+ * Copyright (C) 2007-2011, GoodData(R) Corporation. All rights reserved.
+ */
+package com.gooddata.integration.ftp;
+
+import com.gooddata.integration.rest.configuration.NamePasswordConfiguration;
+import org.apache.commons.net.ftp.FTPClient;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class GdcFTPApiWrapperTest {
+
+    private FtpStandIn ftp;
+    private GdcFTPApiWrapper wrapper;
+    private File file;
+    private byte[] data;
+
+    @Before
+    public void setUp() throws IOException {
+        ftp = new FtpStandIn();
+        NamePasswordConfiguration config = new NamePasswordConfiguration("ftp", "127.0.0.1", "user", "password");
+        FtpSessionPool pool = new FtpSessionPool(config, 2, 60000) {
+            protected FTPClient createClient() {
+                FTPClient client = super.createClient();
+                client.setDefaultPort(ftp.getPort());
+                return client;
+            }
+        };
+        wrapper = new GdcFTPApiWrapper(config, pool);
+        wrapper.getUploader().setChunkSize(1000);
+        wrapper.getUploader().setRetryInterval(0);
+
+        data = new byte[2500];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        file = File.createTempFile("dataset", ".zip");
+        FileOutputStream fos = new FileOutputStream(file);
+        fos.write(data);
+        fos.close();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        wrapper.close();
+        ftp.close();
+        file.delete();
+    }
+
+    @Test
+    public void testUpload() throws IOException {
+        wrapper.transferDir(file.getPath(), "dir");
+        assertArrayEquals(data, ftp.files.get("/dir/upload.zip"));
+        assertEquals(Arrays.asList("STOR 0", "STOR 1000", "STOR 2000"), ftp.stores);
+        assertEquals(1, ftp.logins);
+    }
+
+    @Test
+    public void testResumeBrokenConnection() throws IOException {
+        // the connection breaks after the first half of the second chunk
+        ftp.dropStore = 2;
+        ftp.dropAfter = 500;
+        wrapper.transferDir(file.getPath(), "dir");
+        assertArrayEquals(data, ftp.files.get("/dir/upload.zip"));
+        // the upload resumes from the remote size on a new session
+        assertEquals(Arrays.asList("STOR 0", "STOR 1000", "STOR 1500"), ftp.stores);
+        assertEquals(2, ftp.logins);
+    }
+
+    /**
+     * Minimal FTP server that stores the files in memory, supports the passive mode and the restarted STORs
+     */
+    private static class FtpStandIn implements Runnable {
+
+        private final ServerSocket server;
+        private final Map<String, byte[]> files = Collections.synchronizedMap(new HashMap<String, byte[]>());
+        private final Set<String> dirs = Collections.synchronizedSet(new HashSet<String>());
+        private final List<String> stores = Collections.synchronizedList(new ArrayList<String>());
+        private volatile int logins = 0;
+        // the STOR (1-based) that breaks the connection after dropAfter bytes
+        private volatile int dropStore = 0;
+        private volatile int dropAfter = 0;
+
+        FtpStandIn() throws IOException {
+            server = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+            dirs.add("/");
+            Thread t = new Thread(this, "ftp-stand-in");
+            t.setDaemon(true);
+            t.start();
+        }
+
+        int getPort() {
+            return server.getLocalPort();
+        }
+
+        void close() throws IOException {
+            server.close();
+        }
+
+        public void run() {
+            while (!server.isClosed()) {
+                final Socket control;
+                try {
+                    control = server.accept();
+                } catch (IOException e) {
+                    return;
+                }
+                Thread t = new Thread(new Runnable() {
+                    public void run() {
+                        try {
+                            serve(control);
+                        } catch (IOException e) {
+                            // the client went away
+                        }
+                    }
+                }, "ftp-stand-in-session");
+                t.setDaemon(true);
+                t.start();
+            }
+        }
+
+        private void serve(Socket control) throws IOException {
+            BufferedReader in = new BufferedReader(new InputStreamReader(control.getInputStream(), "US-ASCII"));
+            Writer out = new OutputStreamWriter(control.getOutputStream(), "US-ASCII");
+            ServerSocket passive = null;
+            String cwd = "/";
+            String renamed = null;
+            long restart = 0;
+            try {
+                reply(out, "220 Stand-in FTP server ready");
+                String line;
+                while ((line = in.readLine()) != null) {
+                    int sp = line.indexOf(' ');
+                    String cmd = ((sp < 0) ? line : line.substring(0, sp)).toUpperCase();
+                    String arg = (sp < 0) ? "" : line.substring(sp + 1);
+                    if ("USER".equals(cmd)) {
+                        reply(out, "331 Password required");
+                    } else if ("PASS".equals(cmd)) {
+                        logins++;
+                        reply(out, "230 Logged in");
+                    } else if ("PWD".equals(cmd)) {
+                        reply(out, "257 \"" + cwd + "\" is the current directory");
+                    } else if ("CWD".equals(cmd)) {
+                        String dir = path(cwd, arg);
+                        if (dirs.contains(dir)) {
+                            cwd = dir;
+                            reply(out, "250 Directory changed");
+                        } else {
+                            reply(out, "550 No such directory");
+                        }
+                    } else if ("MKD".equals(cmd)) {
+                        dirs.add(path(cwd, arg));
+                        reply(out, "257 Directory created");
+                    } else if ("TYPE".equals(cmd) || "NOOP".equals(cmd)) {
+                        reply(out, "200 OK");
+                    } else if ("PASV".equals(cmd)) {
+                        passive = new ServerSocket(0, 1, InetAddress.getByName("127.0.0.1"));
+                        int port = passive.getLocalPort();
+                        reply(out, "227 Entering Passive Mode (127,0,0,1," + (port / 256) + "," + (port % 256) + ")");
+                    } else if ("REST".equals(cmd)) {
+                        restart = Long.parseLong(arg);
+                        reply(out, "350 Restarting at " + restart);
+                    } else if ("SIZE".equals(cmd)) {
+                        byte[] f = files.get(path(cwd, arg));
+                        reply(out, (f == null) ? "550 No such file" : "213 " + f.length);
+                    } else if ("STOR".equals(cmd)) {
+                        if (!store(path(cwd, arg), restart, passive, out)) {
+                            return;
+                        }
+                        passive = null;
+                        restart = 0;
+                    } else if ("RNFR".equals(cmd)) {
+                        renamed = path(cwd, arg);
+                        reply(out, "350 Ready for RNTO");
+                    } else if ("RNTO".equals(cmd)) {
+                        files.put(path(cwd, arg), files.remove(renamed));
+                        reply(out, "250 Renamed");
+                    } else if ("QUIT".equals(cmd)) {
+                        reply(out, "221 Bye");
+                        return;
+                    } else {
+                        reply(out, "502 Command not implemented");
+                    }
+                }
+            } finally {
+                if (passive != null) {
+                    passive.close();
+                }
+                control.close();
+            }
+        }
+
+        /**
+         * Receives the file over the passive data connection, keeps the remote file up to the restart offset
+         *
+         * @return false if the connection was dropped
+         */
+        private boolean store(String name, long restart, ServerSocket passive, Writer out) throws IOException {
+            int n;
+            synchronized (stores) {
+                stores.add("STOR " + restart);
+                n = stores.size();
+            }
+            ByteArrayOutputStream content = new ByteArrayOutputStream();
+            byte[] old = files.get(name);
+            if (old != null) {
+                content.write(old, 0, (int) Math.min(restart, old.length));
+            }
+            reply(out, "150 Opening BINARY mode data connection");
+            Socket data = passive.accept();
+            passive.close();
+            try {
+                InputStream din = data.getInputStream();
+                boolean drop = (n == dropStore);
+                int received = 0;
+                byte[] buf = new byte[256];
+                int len;
+                while ((len = din.read(buf, 0, drop ? Math.min(buf.length, dropAfter - received) : buf.length)) > 0) {
+                    content.write(buf, 0, len);
+                    received += len;
+                }
+                files.put(name, content.toByteArray());
+                if (drop) {
+                    return false;
+                }
+            } finally {
+                data.close();
+            }
+            reply(out, "226 Transfer complete");
+            return true;
+        }
+
+        private static String path(String cwd, String name) {
+            if (name.startsWith("/")) {
+                return name;
+            }
+            return cwd.endsWith("/") ? cwd + name : cwd + "/" + name;
+        }
+
+        private static void reply(Writer out, String reply) throws IOException {
+            out.write(reply + "\r\n");
+            out.flush();
+        }
+    }
+}
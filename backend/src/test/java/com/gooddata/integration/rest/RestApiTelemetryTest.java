@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2007-2011, GoodData(R) Corporation. All rights reserved.
+ */
+package com.gooddata.integration.rest;
+
+import net.sf.json.JSONObject;
+import org.apache.commons.httpclient.methods.GetMethod;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RestApiTelemetryTest {
+
+    private static final long MS = 1000000;
+
+    @After
+    public void tearDown() {
+        RestApiTelemetry.reset();
+        RestApiTelemetry.setSlowCallThreshold(RestApiTelemetry.DEFAULT_SLOW_CALL_THRESHOLD);
+    }
+
+    @Test
+    public void testTemplate() {
+        assertEquals("/gdc/md/{project}/obj/{id}", RestApiTelemetry.template("/gdc/md/fk7zqmqtq6xwyzxn2zmgnkkunpzgu3sl/obj/1234"));
+        assertEquals("/gdc/projects/{project}/users", RestApiTelemetry.template("/gdc/projects/abc/users"));
+        assertEquals("/gdc/account/profile/{id}", RestApiTelemetry.template("/gdc/account/profile/4d2e1c1a7e8b9f0a"));
+        assertEquals("/gdc/md/{project}/ldm/singleloadinterface/dataset.ds/manifest",
+                RestApiTelemetry.template("/gdc/md/pid/ldm/singleloadinterface/dataset.ds/manifest"));
+        assertEquals("/gdc/", RestApiTelemetry.template("/gdc/"));
+        assertEquals("GET /gdc/md/{project}/query/reports",
+                RestApiTelemetry.endpoint(new GetMethod("https://secure.gooddata.com/gdc/md/pid/query/reports?x=1")));
+    }
+
+    @Test
+    public void testStatistics() {
+        String obj = "GET /gdc/md/{project}/obj/{id}";
+        for (int i = 1; i <= 20; i++) {
+            RestApiTelemetry.call(obj, i * 10 * MS, 200, -1, 100);
+        }
+        RestApiTelemetry.call(obj, 3000 * MS, 503, -1, -1);
+        RestApiTelemetry.retry(obj, 2000 * MS);
+        RestApiTelemetry.received(obj, 50);
+        String post = "POST /gdc/md/{project}/etl/pull";
+        RestApiTelemetry.call(post, 40 * MS, 201, 300, -1);
+
+        List<RestApiTelemetry.Endpoint> endpoints = RestApiTelemetry.getEndpoints();
+        assertEquals(2, endpoints.size());
+        RestApiTelemetry.Endpoint e = endpoints.get(0);
+        assertEquals(obj, e.getName());
+        assertEquals(21, e.getCalls());
+        assertEquals(1, e.getErrors());
+        assertEquals(1, e.getRetries());
+        assertEquals(2050, e.getBytesReceived());
+        assertEquals(3000 * MS, e.getMax());
+        // 10..50 ms, 60..100 ms, 110..200 ms and the 3 s call
+        assertEquals(5, e.getBucket(0));
+        assertEquals(5, e.getBucket(1));
+        assertEquals(10, e.getBucket(2));
+        assertEquals(1, e.getBucket(6));
+        assertEquals(250, e.getPercentile(0.5));
+        assertEquals(3000, e.getPercentile(1));
+        assertEquals(40, endpoints.get(1).getPercentile(0.95));
+        assertEquals(300, endpoints.get(1).getBytesSent());
+
+        String summary = RestApiTelemetry.summary();
+        assertTrue(summary, summary.startsWith("GoodData REST API: 22 calls, 5140 ms, 1 retries (2000 ms waiting)"));
+        assertTrue(summary, summary.contains(obj + ": 21 calls, 5100 ms"));
+
+        JSONObject json = RestApiTelemetry.toJson().getJSONObject(obj);
+        assertEquals(21, json.getLong("calls"));
+        assertEquals(2000, json.getLong("retryWaitMs"));
+        assertEquals(10, json.getJSONObject("latencyMs").getLong("le250"));
+        assertEquals(0, json.getJSONObject("latencyMs").getLong("inf"));
+    }
+
+    @Test
+    public void testEmpty() {
+        assertEquals("", RestApiTelemetry.summary());
+        assertTrue(RestApiTelemetry.toJson().isEmpty());
+    }
+}
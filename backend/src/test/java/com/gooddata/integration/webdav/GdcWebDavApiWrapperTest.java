@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2007-2011, GoodData(R) Corporation. All rights reserved.
+ */
+package com.gooddata.integration.webdav;
+
+import com.gooddata.util.FileUtil;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class GdcWebDavApiWrapperTest {
+
+    private HttpServer server;
+    private WebDavStandIn dav;
+    private GdcWebDavApiWrapper wrapper;
+    private File file;
+    private byte[] data;
+
+    @Before
+    public void setUp() throws IOException {
+        dav = new WebDavStandIn();
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", dav);
+        server.start();
+        wrapper = new GdcWebDavApiWrapper("user", "password",
+                new URL("http://localhost:" + server.getAddress().getPort() + "/uploads"));
+        wrapper.getUploader().setChunkSize(1000);
+        wrapper.getUploader().setRetryInterval(0);
+
+        data = new byte[2500];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        file = File.createTempFile("dataset", ".zip");
+        FileOutputStream fos = new FileOutputStream(file);
+        fos.write(data);
+        fos.close();
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        file.delete();
+    }
+
+    @Test
+    public void testRangedUpload() throws IOException {
+        dav.failPut = 2;
+        wrapper.transferDir(file.getPath(), "dir");
+        assertArrayEquals(data, dav.files.get("/uploads/dir/upload.zip"));
+        assertEquals(Arrays.asList("PUT -", "PUT bytes 1000-1999/2500", "PUT bytes 1000-1999/2500",
+                "PUT bytes 2000-2499/2500"), dav.puts);
+    }
+
+    @Test
+    public void testRangesNotSupported() throws IOException {
+        dav.ranges = false;
+        wrapper.transferDir(file.getPath(), "dir");
+        assertArrayEquals(data, dav.files.get("/uploads/dir/upload.zip"));
+        assertEquals(Arrays.asList("PUT -", "PUT bytes 1000-1999/2500", "PUT -"), dav.puts);
+    }
+
+    @Test
+    public void testParallelUpload() throws IOException {
+        dav.sparse = true;
+        wrapper.getUploader().setConnections(3);
+        wrapper.transferDir(file.getPath(), "dir");
+        assertArrayEquals(data, dav.files.get("/uploads/dir/upload.zip"));
+        assertEquals(3, dav.puts.size());
+    }
+
+    @Test
+    public void testParallelUploadFallback() throws IOException {
+        // the writes beyond the end of the file are rejected
+        wrapper.getUploader().setConnections(3);
+        wrapper.transferDir(file.getPath(), "dir");
+        assertArrayEquals(data, dav.files.get("/uploads/dir/upload.zip"));
+    }
+
+    /**
+     * Minimal WebDav server that stores the files in memory
+     */
+    private static class WebDavStandIn implements HttpHandler {
+
+        private Map<String, byte[]> files = new HashMap<String, byte[]>();
+        private List<String> puts = new ArrayList<String>();
+        private boolean ranges = true;
+        // accepts the writes beyond the end of the file
+        private boolean sparse = false;
+        // the PUT (1-based) that fails with 500
+        private int failPut = 0;
+
+        public void handle(HttpExchange ex) throws IOException {
+            String path = ex.getRequestURI().getPath();
+            String method = ex.getRequestMethod();
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            FileUtil.copy(ex.getRequestBody(), body);
+            if ("MKCOL".equals(method)) {
+                ex.sendResponseHeaders(201, -1);
+            } else if ("PUT".equals(method)) {
+                String range = ex.getRequestHeaders().getFirst("Content-Range");
+                puts.add("PUT " + (range == null ? "-" : range));
+                if (puts.size() == failPut) {
+                    ex.sendResponseHeaders(500, -1);
+                } else if (range == null || !ranges) {
+                    files.put(path, body.toByteArray());
+                    ex.sendResponseHeaders(201, -1);
+                } else {
+                    int offset = Integer.parseInt(range.substring("bytes ".length(), range.indexOf('-')));
+                    byte[] old = files.get(path);
+                    if (old == null || (old.length < offset && !sparse)) {
+                        ex.sendResponseHeaders(416, -1);
+                    } else {
+                        byte[] content = new byte[Math.max(old.length, offset + body.size())];
+                        System.arraycopy(old, 0, content, 0, Math.min(old.length, offset));
+                        System.arraycopy(body.toByteArray(), 0, content, offset, body.size());
+                        if (old.length > offset + body.size()) {
+                            System.arraycopy(old, offset + body.size(), content, offset + body.size(),
+                                    old.length - offset - body.size());
+                        }
+                        files.put(path, content);
+                        ex.sendResponseHeaders(204, -1);
+                    }
+                }
+            } else if ("HEAD".equals(method) || "GET".equals(method)) {
+                byte[] content = files.get(path);
+                if (content == null) {
+                    ex.sendResponseHeaders(404, -1);
+                } else if ("HEAD".equals(method)) {
+                    ex.getResponseHeaders().set("Content-Length", String.valueOf(content.length));
+                    ex.sendResponseHeaders(200, -1);
+                } else {
+                    ex.sendResponseHeaders(200, content.length);
+                    ex.getResponseBody().write(content);
+                }
+            } else {
+                ex.sendResponseHeaders(405, -1);
+            }
+            ex.close();
+        }
+    }
+}
@@ -7,10 +7,83 @@ import com.gooddata.modeling.model.SourceColumn;
 import com.gooddata.modeling.model.SourceSchema;
 import org.junit.Test;
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class MaqlGeneratorTest {
 
+    /**
+     * The MAQL generated by the original string concatenating generator for the ten column schema
+     */
+    private static final String EXPECTED_MAQL_CREATE =
+            "# This is MAQL script that generates project logical model.\n" +
+            "# See the MAQL documentation at http://developer.gooddata.com/reference/maql/maql-ddl for more details.\n" +
+            "\n" +
+            "# Create dataset. Dataset groups all following logical model elements together.\n" +
+            "CREATE DATASET {dataset.wide} VISUAL(TITLE \"null\");\n" +
+            "\n" +
+            "# Create the folders that group attributes and facts.\n" +
+            "CREATE FOLDER {dim.keys} VISUAL(TITLE \"Keys\") TYPE ATTRIBUTE;\n" +
+            "CREATE FOLDER {dim.folder1} VISUAL(TITLE \"Folder 1\") TYPE ATTRIBUTE;\n" +
+            "CREATE FOLDER {dim.dates} VISUAL(TITLE \"Dates\") TYPE ATTRIBUTE;\n" +
+            "\n" +
+            "CREATE FOLDER {ffld.facts1} VISUAL(TITLE \"Facts 1\") TYPE FACT;\n" +
+            "CREATE FOLDER {ffld.dates} VISUAL(TITLE \"Dates\") TYPE FACT;\n" +
+            "\n" +
+            "# Create attributes.\n" +
+            "# Attributes are categories that are used for slicing and dicing the numbers (facts)\n" +
+            "CREATE ATTRIBUTE {attr.wide.id} VISUAL(TITLE \"Id\", FOLDER {dim.keys}) AS KEYS {f_wide.id} FULLSET;\n" +
+            "ALTER DATASET {dataset.wide} ADD {attr.wide.id};\n" +
+            "\n" +
+            "CREATE ATTRIBUTE {attr.wide.attr1} VISUAL(TITLE \"Attribute 1\", FOLDER {dim.folder1}) AS KEYS {d_wide_attr1.id} FULLSET, {f_wide.attr1_id};\n" +
+            "ALTER DATASET {dataset.wide} ADD {attr.wide.attr1};\n" +
+            "ALTER DATATYPE {d_wide_attr1.nm_attr1} VARCHAR(128);\n" +
+            "ALTER ATTRIBUTE {attr.wide.attr1} ADD LABELS {label.wide.attr1} VISUAL(TITLE \"Attribute 1\") AS {d_wide_attr1.nm_attr1}; \n" +
+            "ALTER ATTRIBUTE  {attr.wide.attr1} DEFAULT LABEL {label.wide.attr1};\n" +
+            "# Create facts.\n" +
+            "# Facts are numbers that are aggregated by attributes.\n" +
+            "CREATE FACT {fact.wide.fact1_0} VISUAL(TITLE \"Fact 1 0\", FOLDER {ffld.facts1}) AS {f_wide.f_fact1_0};\n" +
+            "ALTER DATASET {dataset.wide} ADD {fact.wide.fact1_0};\n" +
+            "ALTER DATATYPE {f_wide.f_fact1_0} DECIMAL(15,2);\n" +
+            "CREATE FACT {fact.wide.fact1_1} VISUAL(TITLE \"Fact 1 1\", FOLDER {ffld.facts1}) AS {f_wide.f_fact1_1};\n" +
+            "ALTER DATASET {dataset.wide} ADD {fact.wide.fact1_1};\n" +
+            "\n" +
+            "CREATE FACT {fact.wide.fact1_2} VISUAL(TITLE \"Fact 1 2\", FOLDER {ffld.facts1}) AS {f_wide.f_fact1_2};\n" +
+            "ALTER DATASET {dataset.wide} ADD {fact.wide.fact1_2};\n" +
+            "\n" +
+            "# Create date facts.\n" +
+            "# Dates are represented as facts.\n" +
+            "# Dates are also connected to the date dimensions.\n" +
+            "# Connect the date to the date dimension.\n" +
+            "ALTER ATTRIBUTE {created.date} ADD KEYS {f_wide.dt_date1_id};\n" +
+            "\n" +
+            "# Create references.\n" +
+            "# References connect the dataset to other datasets.\n" +
+            "# Connect the reference to the appropriate dimension.\n" +
+            "ALTER ATTRIBUTE {attr.other1.id} ADD KEYS {f_wide.ref1_id};\n" +
+            "\n" +
+            "# Add labels to attributes\n" +
+            "ALTER ATTRIBUTE {attr.wide.attr1} ADD LABELS {label.wide.attr1.lbl1a} VISUAL(TITLE \"Label A 1\") AS {d_wide_attr1.nm_lbl1a};\n" +
+            "\n" +
+            "# Add labels to attributes\n" +
+            "ALTER ATTRIBUTE {attr.wide.attr1} ADD LABELS {label.wide.attr1.lbl1b} VISUAL(TITLE \"Label B 1\") AS {d_wide_attr1.nm_lbl1b};\n" +
+            "ALTER DATATYPE {d_wide_attr1.nm_lbl1b} INT;\n" +
+            "ALTER ATTRIBUTE  {attr.wide.attr1} ORDER BY {label.wide.attr1.lbl1b} ASC;\n" +
+            "# Add labels to attributes\n" +
+            "ALTER ATTRIBUTE {attr.wide.attr1} ADD LABELS {label.wide.attr1.url1} VISUAL(TITLE \"Link 1\") AS {d_wide_attr1.nm_url1};\n" +
+            "\n" +
+            "# Add hyperlink mark to label\n" +
+            "ALTER ATTRIBUTE {attr.wide.attr1} ALTER LABELS {label.wide.attr1.url1} HYPERLINK;\n" +
+            "ALTER ATTRIBUTE {attr.wide.id} ADD LABELS {label.wide.id} VISUAL(TITLE \"Id\") AS {f_wide.nm_id}; \n" +
+            "# Synchronize the storage and data loading interfaces with the new logical model.\n" +
+            "SYNCHRONIZE {dataset.wide};\n" +
+            "\n";
+
     @Test
     public void testGenerateMaqlCreate() {
         SourceSchema schema = SourceSchema.createSchema("test");
@@ -24,4 +97,90 @@ public class MaqlGeneratorTest {
         assertTrue(maql.indexOf("ALTER ATTRIBUTE {attr.test.attr_name} ALTER LABELS {label.test.attr_name.hyper_name} HYPERLINK") > 0);
     }
 
+    @Test
+    public void testGenerateMaqlCreatePinned() throws IOException {
+        MaqlGenerator maqlGenerator = new MaqlGenerator(createSchema(10));
+        assertEquals(EXPECTED_MAQL_CREATE, maqlGenerator.generateMaqlCreate());
+        StringWriter out = new StringWriter();
+        maqlGenerator.generateMaqlCreate(out);
+        assertEquals(EXPECTED_MAQL_CREATE, out.toString());
+    }
+
+    @Test
+    public void testGenerateMaqlToWriter() throws IOException {
+        SourceSchema schema = createSchema(500);
+        MaqlGenerator maqlGenerator = new MaqlGenerator(schema);
+        StringWriter out = new StringWriter();
+        maqlGenerator.generateMaqlCreate(out);
+        assertEquals(maqlGenerator.generateMaqlCreate(), out.toString());
+
+        out = new StringWriter();
+        maqlGenerator.generateMaqlUpdateTitles(schema.getColumns(), out);
+        maqlGenerator.generateMaqlUpdateDataTypes(schema.getColumns(), out);
+        maqlGenerator.generateMaqlSorting(schema.getColumns(), out);
+        assertEquals(maqlGenerator.generateMaqlUpdateTitles(schema.getColumns())
+                + maqlGenerator.generateMaqlUpdateDataTypes(schema.getColumns())
+                + maqlGenerator.generateMaqlSorting(schema.getColumns()), out.toString());
+    }
+
+    @Test
+    public void testGenerateMaqlWriteError() {
+        SourceSchema schema = createSchema(20);
+        Writer broken = new Writer() {
+            public void write(char[] cbuf, int off, int len) throws IOException {
+                throw new IOException("disk full");
+            }
+
+            public void flush() {
+            }
+
+            public void close() {
+            }
+        };
+        try {
+            new MaqlGenerator(schema).generateMaqlCreate(broken);
+            fail("The write error must be reported.");
+        } catch (IOException e) {
+            assertEquals("disk full", e.getMessage());
+        }
+    }
+
+    /**
+     * Creates a schema with the given number of columns. Every ten columns contain an attribute with two labels
+     * and a hyperlink, three facts, a date, a reference and an ignored column.
+     *
+     * @param columns number of columns
+     * @return the schema
+     */
+    private static SourceSchema createSchema(int columns) {
+        SourceSchema schema = SourceSchema.createSchema("wide");
+        schema.addColumn(new SourceColumn("id", SourceColumn.LDM_TYPE_CONNECTION_POINT, "Id", "Keys"));
+        for (int i = 1; schema.getColumns().size() < columns; i++) {
+            String attr = "attr" + i;
+            SourceColumn a = new SourceColumn(attr, SourceColumn.LDM_TYPE_ATTRIBUTE, "Attribute " + i, "Folder " + (i % 7));
+            a.setDataType("VARCHAR(128)");
+            a.setSortLabel("lbl" + i + "b");
+            schema.addColumn(a);
+            schema.addColumn(new SourceColumn("lbl" + i + "a", SourceColumn.LDM_TYPE_LABEL, "Label A " + i, null, attr));
+            SourceColumn b = new SourceColumn("lbl" + i + "b", SourceColumn.LDM_TYPE_LABEL, "Label B " + i, null, attr);
+            b.setDataType("INT");
+            schema.addColumn(b);
+            schema.addColumn(new SourceColumn("url" + i, SourceColumn.LDM_TYPE_HYPERLINK, "Link " + i, null, attr));
+            for (int j = 0; j < 3; j++) {
+                SourceColumn f = new SourceColumn("fact" + i + "_" + j, SourceColumn.LDM_TYPE_FACT, "Fact " + i + " " + j,
+                        "Facts " + (i % 5));
+                if (j == 0)
+                    f.setDataType("DECIMAL(15,2)");
+                schema.addColumn(f);
+            }
+            SourceColumn d = new SourceColumn("date" + i, SourceColumn.LDM_TYPE_DATE, "Date " + i, "Dates", null,
+                    "created");
+            d.setFormat("yyyy-MM-dd");
+            schema.addColumn(d);
+            schema.addColumn(new SourceColumn("ref" + i, SourceColumn.LDM_TYPE_REFERENCE, "Reference " + i, null,
+                    "id", "other" + (i % 3)));
+            schema.addColumn(new SourceColumn("ignored" + i, SourceColumn.LDM_TYPE_IGNORE, "Ignored " + i));
+        }
+        return schema;
+    }
 }
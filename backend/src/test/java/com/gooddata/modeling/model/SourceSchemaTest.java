@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2007-2011, GoodData(R) Corporation. All rights reserved.
+ */
+package com.gooddata.modeling.model;
+
+import com.gooddata.exception.ModelException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SourceSchemaTest {
+
+    @Test
+    public void testLookups() {
+        SourceSchema schema = SourceSchema.createSchema("test");
+        SourceColumn a = new SourceColumn("a", SourceColumn.LDM_TYPE_ATTRIBUTE, "A");
+        SourceColumn f = new SourceColumn("f", SourceColumn.LDM_TYPE_FACT, "F");
+        SourceColumn i = new SourceColumn("i", SourceColumn.LDM_TYPE_IGNORE, "I");
+        schema.addColumn(a);
+        schema.addColumn(f);
+        schema.addColumn(i);
+
+        assertSame(f, schema.getColumnByName("f"));
+        assertEquals(1, schema.getColumnIndex(f));
+        assertEquals(1, schema.getColumnIndex(new SourceColumn("f", SourceColumn.LDM_TYPE_FACT, "Other")));
+        assertEquals(-1, schema.getColumnIndex(new SourceColumn("x", SourceColumn.LDM_TYPE_FACT, "X")));
+        assertEquals(1, schema.getIgnored().size());
+        assertSame(schema.getIgnored(), schema.getIgnored());
+        assertTrue(schema.getLabels().isEmpty());
+        // the type strings resolve the same way as the column types
+        assertSame(schema.getFacts(), schema.getColumnByType("fact"));
+        assertTrue(schema.getColumnByType("unknown").isEmpty());
+
+        // the index is refreshed after a column is added
+        List<SourceColumn> facts = schema.getFacts();
+        SourceColumn g = new SourceColumn("g", SourceColumn.LDM_TYPE_FACT, "G");
+        schema.addColumn(g);
+        assertEquals(1, facts.size());
+        assertEquals(2, schema.getFacts().size());
+        assertEquals(3, schema.getColumnIndex(g));
+
+        // and after a column changes its name or type
+        a.setLdmType(SourceColumn.LDM_TYPE_FACT);
+        assertEquals(3, schema.getFacts().size());
+        assertTrue(schema.getAttributes().isEmpty());
+        f.setName("ff");
+        assertSame(f, schema.getColumnByName("ff"));
+        try {
+            schema.getColumnByName("f");
+            fail("Renamed column found by its former name.");
+        } catch (ModelException e) {
+            // expected
+        }
+
+        List<SourceColumn> columns = new ArrayList<SourceColumn>();
+        columns.add(i);
+        schema.setColumns(columns);
+        assertEquals(0, schema.getColumnIndex(i));
+        assertTrue(schema.getFacts().isEmpty());
+    }
+
+    @Test
+    public void testChangesInOtherSchemasKeepTheIndex() {
+        SourceSchema schema = SourceSchema.createSchema("test");
+        schema.addColumn(new SourceColumn("f", SourceColumn.LDM_TYPE_FACT, "F"));
+        SourceSchema other = SourceSchema.createSchema("other");
+        SourceColumn o = new SourceColumn("o", SourceColumn.LDM_TYPE_FACT, "O");
+        other.addColumn(o);
+
+        List<SourceColumn> facts = schema.getFacts();
+        assertEquals(1, other.getFacts().size());
+        o.setLdmType(SourceColumn.LDM_TYPE_ATTRIBUTE);
+        assertSame(facts, schema.getFacts());
+        assertTrue(other.getFacts().isEmpty());
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void testTypeListsAreImmutable() {
+        SourceSchema schema = SourceSchema.createSchema("test");
+        schema.addColumn(new SourceColumn("a", SourceColumn.LDM_TYPE_ATTRIBUTE, "A"));
+        schema.getAttributes().clear();
+    }
+}
@@ -4,10 +4,14 @@
 package com.gooddata.transform;
 
 import com.gooddata.Constants;
+import com.gooddata.modeling.model.SourceColumn;
+import com.gooddata.modeling.model.SourceSchema;
 import com.gooddata.util.DateUtil;
+import org.apache.commons.codec.digest.DigestUtils;
 import org.joda.time.DateTime;
 import org.junit.Test;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertTrue;
 
 public class TransformerTest {
@@ -24,4 +28,21 @@ public class TransformerTest {
         
     }
 
+    @Test
+    public void testTransformRow() {
+        SourceSchema schema = SourceSchema.createSchema("test");
+        SourceColumn cp = new SourceColumn("id", SourceColumn.LDM_TYPE_CONNECTION_POINT, "Id");
+        cp.setTransformation(SourceColumn.LDM_IDENTITY);
+        schema.addColumn(cp);
+        schema.addColumn(new SourceColumn("name", SourceColumn.LDM_TYPE_ATTRIBUTE, "Name"));
+        schema.addColumn(new SourceColumn("skip", SourceColumn.LDM_TYPE_IGNORE, "Skip"));
+        schema.addColumn(new SourceColumn("amount", "fact", "Amount"));
+
+        Transformer t = Transformer.create(schema);
+        assertArrayEquals(new String[]{"id", "name", "amount"}, t.getHeader(true));
+        assertArrayEquals(new String[]{"name", "amount"}, t.getHeader(false));
+        String[] row = t.transformRow(new Object[]{"x", "ignored", 1.5d}, 0);
+        assertArrayEquals(new String[]{DigestUtils.md5Hex("x|"), "x", "1.50"}, row);
+    }
+
 }
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.benchmark;
+
+import com.gooddata.util.CSVWriter;
+import com.gooddata.util.ExternalSorter;
+import com.gooddata.util.FileUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the sort and deduplication of an extracted CSV by its connection point with {@link ExternalSorter}.
+ * The file is generated on disk, so it can be much larger than the memory budget or the heap, e.g. -p rows=100000000
+ * sorts a ~4 GB file. Half of the rows repeat a connection point value.
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgs = {"-Xmx512m"})
+@State(Scope.Benchmark)
+public class ExternalSortBenchmark {
+
+    @Param({"1000000"})
+    public int rows;
+
+    /**
+     * memory budget in MB
+     */
+    @Param({"16", "64"})
+    public int memory;
+
+    private File dir;
+    private File input;
+    private File output;
+
+    @Setup
+    public void setup() throws IOException {
+        dir = FileUtil.createTempDir();
+        input = new File(dir, "data.csv");
+        output = new File(dir, "sorted.csv");
+        Random r = new Random(rows);
+        CSVWriter cw = FileUtil.createUtf8CsvWriter(input);
+        try {
+            cw.writeNext(new String[]{"id", "attr", "fact", "date"});
+            String[] row = new String[4];
+            for (int i = 0; i < rows; i++) {
+                row[0] = Integer.toHexString(r.nextInt(Math.max(rows / 2, 1)));
+                row[1] = "Customer " + r.nextInt(1000);
+                row[2] = Integer.toString(r.nextInt(100000));
+                row[3] = (1990 + r.nextInt(30)) + "-0" + (1 + r.nextInt(9)) + "-1" + r.nextInt(10);
+                cw.writeNext(row);
+            }
+        } finally {
+            cw.close();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        FileUtil.recursiveDelete(dir);
+    }
+
+    @Benchmark
+    public long sortAndDeduplicate() throws IOException {
+        ExternalSorter sorter = new ExternalSorter(new int[]{0});
+        sorter.setMemoryBudget(memory * 1024L * 1024L);
+        sorter.sort(input, output);
+        return sorter.getDuplicates();
+    }
+}
@@ -0,0 +1,132 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.benchmark;
+
+import com.gooddata.facebook.FqlResultReader;
+import com.restfb.DefaultJsonMapper;
+import com.restfb.Facebook;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the streaming {@link FqlResultReader} with the restfb mapping (materialized result list and reflective
+ * field access per cell) on a large FQL response
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FqlResultReaderBenchmark {
+
+    private static final List<String> COLUMNS = Arrays.asList("uid", "name", "sex", "locale", "birthday_date",
+            "friend_count");
+
+    /**
+     * The result class of the restfb mapping
+     */
+    public static class Result {
+        @Facebook
+        public String uid;
+        @Facebook
+        public String name;
+        @Facebook
+        public String sex;
+        @Facebook
+        public String locale;
+        @Facebook
+        public String birthday_date;
+        @Facebook
+        public String friend_count;
+    }
+
+    @Param({"100000"})
+    public int rows;
+
+    private String json;
+
+    /**
+     * Builds an FQL response that looks like the user query results
+     */
+    @Setup
+    public void setup() {
+        StringBuilder sb = new StringBuilder(rows * 130);
+        sb.append('[');
+        for (int i = 0; i < rows; i++) {
+            if (i > 0)
+                sb.append(',');
+            sb.append("{\"uid\":").append(100000000000L + i)
+                    .append(",\"name\":\"User \\u00e9 ").append(i)
+                    .append("\",\"sex\":\"").append((i % 2 == 0) ? "male" : "female")
+                    .append("\",\"locale\":\"en_US\",\"birthday_date\":\"0").append(1 + i % 9).append("/1")
+                    .append(i % 10).append("/19").append(50 + i % 50)
+                    .append("\",\"friend_count\":").append(i % 5000).append('}');
+        }
+        sb.append(']');
+        json = sb.toString();
+    }
+
+    @Benchmark
+    public long mapper() throws Exception {
+        long cells = 0;
+        List<Result> result = new DefaultJsonMapper().toJavaList(json, Result.class);
+        for (Object o : result) {
+            for (String col : COLUMNS) {
+                Object value = o.getClass().getDeclaredField(col).get(o);
+                cells += (value != null) ? value.toString().length() : 0;
+            }
+        }
+        return cells;
+    }
+
+    @Benchmark
+    public long streaming() throws Exception {
+        long cells = 0;
+        FqlResultReader r = new FqlResultReader(new StringReader(json), COLUMNS);
+        String[] row;
+        while ((row = r.readRow()) != null) {
+            for (String value : row)
+                cells += value.length();
+        }
+        return cells;
+    }
+}
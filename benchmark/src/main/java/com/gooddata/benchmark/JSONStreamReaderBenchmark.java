@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.benchmark;
+
+import com.gooddata.util.JSONStreamReader;
+import com.restfb.json.JsonArray;
+import com.restfb.json.JsonException;
+import com.restfb.json.JsonObject;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the tree parser ({@link JsonObject}) and the streaming {@link JSONStreamReader} on a large Insights-like
+ * Graph API response
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class JSONStreamReaderBenchmark {
+
+    @Param({"5000"})
+    public int metrics;
+
+    private String json;
+
+    @Setup
+    public void setup() {
+        StringBuilder sb = new StringBuilder(metrics * 3000);
+        sb.append("{\"data\":[");
+        for (int i = 0; i < metrics; i++) {
+            if (i > 0)
+                sb.append(',');
+            sb.append("{\"id\":\"23528966907/insights/metric_").append(i).append("/day\",\"name\":\"metric_")
+                    .append(i).append("\",\"period\":\"day\",\"values\":[");
+            for (int d = 0; d < 30; d++) {
+                if (d > 0)
+                    sb.append(',');
+                sb.append("{\"value\":").append((i * 31 + d) % 1000).append(",\"end_time\":\"2011-04-")
+                        .append((d < 9) ? "0" : "").append(d + 1).append("T07:00:00+0000\"}");
+            }
+            sb.append("],\"description\":\"Daily metric \\\"").append(i).append("\\\" (Unique Users)\"}");
+        }
+        sb.append("]}");
+        json = sb.toString();
+    }
+
+    @Benchmark
+    public long tree() throws JsonException {
+        long sum = 0;
+        JsonArray data = new JsonObject(json).getJsonArray("data");
+        for (int i = 0; i < data.length(); i++) {
+            JsonArray values = data.getJsonObject(i).getJsonArray("values");
+            for (int j = 0; j < values.length(); j++)
+                sum += values.getJsonObject(j).getLong("value");
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public long streaming() throws IOException {
+        long sum = 0;
+        JSONStreamReader r = new JSONStreamReader(new StringReader(json));
+        r.beginObject();
+        while (r.hasNext()) {
+            if (!"data".equals(r.nextName())) {
+                r.skipValue();
+                continue;
+            }
+            r.beginArray();
+            while (r.hasNext()) {
+                r.beginObject();
+                while (r.hasNext()) {
+                    if (!"values".equals(r.nextName())) {
+                        r.skipValue();
+                        continue;
+                    }
+                    r.beginArray();
+                    while (r.hasNext()) {
+                        r.beginObject();
+                        while (r.hasNext()) {
+                            if ("value".equals(r.nextName()))
+                                sum += Long.parseLong(r.nextString());
+                            else
+                                r.skipValue();
+                        }
+                        r.endObject();
+                    }
+                    r.endArray();
+                }
+                r.endObject();
+            }
+            r.endArray();
+        }
+        r.endObject();
+        return sum;
+    }
+}
@@ -0,0 +1,206 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.benchmark;
+
+import com.gooddata.connector.AbstractConnector;
+import com.gooddata.modeling.model.SourceColumn;
+import com.gooddata.modeling.model.SourceSchema;
+import com.gooddata.util.CSVWriter;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Random;
+
+/**
+ * Generates a deterministic synthetic dataset of the given width and length. The first column is
+ * an identity connection point computed by the transformation. The input columns repeat a quoted
+ * attribute (with separators and quotes in every fourth row), a decimal fact, a date, an integer fact
+ * and a datetime.
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+public class SyntheticDataset {
+
+    public static final String DATE_FORMAT = "yyyy-MM-dd";
+    public static final String DATETIME_FORMAT = "yyyy-MM-dd HH:mm:ss";
+
+    private static final int KINDS = 5;
+
+    private final SourceSchema schema;
+    private final String[] header;
+    private final String[][] rows;
+
+    /**
+     * Generates the dataset
+     *
+     * @param columns number of the input columns
+     * @param rows    number of rows
+     */
+    public SyntheticDataset(int columns, int rows) {
+        schema = SourceSchema.createSchema("synthetic");
+        SourceColumn id = new SourceColumn("id", SourceColumn.LDM_TYPE_CONNECTION_POINT, "Id");
+        id.setTransformation(SourceColumn.LDM_IDENTITY);
+        schema.addColumn(id);
+        header = new String[columns];
+        for (int i = 0; i < columns; i++) {
+            SourceColumn c;
+            switch (i % KINDS) {
+                case 0:
+                    c = new SourceColumn("attr" + i, SourceColumn.LDM_TYPE_ATTRIBUTE, "Attribute " + i);
+                    break;
+                case 1:
+                case 3:
+                    c = new SourceColumn("fact" + i, SourceColumn.LDM_TYPE_FACT, "Fact " + i);
+                    break;
+                case 2:
+                    c = new SourceColumn("date" + i, SourceColumn.LDM_TYPE_DATE, "Date " + i, null, null, "created");
+                    c.setFormat(DATE_FORMAT);
+                    break;
+                default:
+                    c = new SourceColumn("time" + i, SourceColumn.LDM_TYPE_DATE, "Time " + i, null, null, "created");
+                    c.setFormat(DATETIME_FORMAT);
+                    c.setDatetime("true");
+                    break;
+            }
+            schema.addColumn(c);
+            header[i] = c.getName();
+        }
+        AbstractConnector.expandDates(schema);
+
+        Random r = new Random(columns * 31L + rows);
+        this.rows = new String[rows][];
+        for (int j = 0; j < rows; j++) {
+            String[] row = new String[columns];
+            for (int i = 0; i < columns; i++) {
+                row[i] = value(i % KINDS, j, r);
+            }
+            this.rows[j] = row;
+        }
+    }
+
+    private static String value(int kind, int row, Random r) {
+        switch (kind) {
+            case 0:
+                if (row % 4 == 0)
+                    return "Customer \"" + r.nextInt(1000) + "\", Inc.";
+                return "Customer " + r.nextInt(1000);
+            case 1:
+                return Integer.toString(r.nextInt(100000)) + "." + r.nextInt(10) + r.nextInt(10);
+            case 2:
+                return date(r);
+            case 3:
+                return Integer.toString(r.nextInt(1000000));
+            default:
+                return date(r) + " " + pad(r.nextInt(24)) + ":" + pad(r.nextInt(60)) + ":" + pad(r.nextInt(60));
+        }
+    }
+
+    private static String date(Random r) {
+        return (1990 + r.nextInt(30)) + "-" + pad(1 + r.nextInt(12)) + "-" + pad(1 + r.nextInt(28));
+    }
+
+    private static String pad(int n) {
+        return (n < 10) ? ("0" + n) : (Integer.toString(n));
+    }
+
+    /**
+     * @return the schema with the identity and the expanded date columns
+     */
+    public SourceSchema getSchema() {
+        return schema;
+    }
+
+    /**
+     * @return the input column names
+     */
+    public String[] getHeader() {
+        return header;
+    }
+
+    /**
+     * @return the input rows, the transformation modifies them in place so copy them first
+     */
+    public String[][] getRows() {
+        return rows;
+    }
+
+    /**
+     * Returns the values of all date or datetime columns
+     *
+     * @param datetime true for the datetime columns
+     * @return the values
+     */
+    public String[] getDates(boolean datetime) {
+        int kind = datetime ? 4 : 2;
+        int perRow = 0;
+        for (int i = kind; i < header.length; i += KINDS)
+            perRow++;
+        String[] ret = new String[rows.length * perRow];
+        int n = 0;
+        for (String[] row : rows) {
+            for (int i = kind; i < row.length; i += KINDS)
+                ret[n++] = row[i];
+        }
+        return ret;
+    }
+
+    /**
+     * @return the dataset as CSV with the header
+     */
+    public String toCsv() {
+        StringWriter out = new StringWriter();
+        CSVWriter cw = new CSVWriter(out, ',', '"');
+        cw.writeNext(header);
+        for (String[] row : rows) {
+            cw.writeNext(row);
+        }
+        try {
+            cw.close();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    /**
+     * @return writer that discards everything
+     */
+    public static Writer nullWriter() {
+        return new Writer() {
+            public void write(char[] cbuf, int off, int len) {
+            }
+
+            public void write(String str, int off, int len) {
+            }
+
+            public void flush() {
+            }
+
+            public void close() {
+            }
+        };
+    }
+}
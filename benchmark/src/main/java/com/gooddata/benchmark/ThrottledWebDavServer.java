@@ -0,0 +1,154 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.benchmark;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Local WebDav stand-in that limits the upload bandwidth of each connection and delays each request,
+ * the way a long distance link to the data stage does. Supports the ranged PUTs at any offset.
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+public class ThrottledWebDavServer implements HttpHandler {
+
+    private final long bytesPerSecond;
+    private final long latency;
+    private final Map<String, byte[]> files = new ConcurrentHashMap<String, byte[]>();
+    private final HttpServer server;
+    private final ExecutorService executor;
+
+    /**
+     * Starts the server on a free local port
+     *
+     * @param bytesPerSecond the upload bandwidth of a single connection
+     * @param latency        the delay of each request in milliseconds
+     * @throws IOException if the server can't be started
+     */
+    public ThrottledWebDavServer(long bytesPerSecond, long latency) throws IOException {
+        this.bytesPerSecond = bytesPerSecond;
+        this.latency = latency;
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", this);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public URL getUrl() throws IOException {
+        return new URL("http://localhost:" + server.getAddress().getPort() + "/uploads");
+    }
+
+    public byte[] getFile(String path) {
+        return files.get(path);
+    }
+
+    public void stop() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    public void handle(HttpExchange ex) throws IOException {
+        sleep(latency);
+        String path = ex.getRequestURI().getPath();
+        String method = ex.getRequestMethod();
+        byte[] body = readThrottled(ex.getRequestBody());
+        if ("MKCOL".equals(method)) {
+            ex.sendResponseHeaders(201, -1);
+        } else if ("PUT".equals(method)) {
+            String range = ex.getRequestHeaders().getFirst("Content-Range");
+            if (range == null) {
+                files.put(path, body);
+                ex.sendResponseHeaders(201, -1);
+            } else {
+                write(path, Integer.parseInt(range.substring("bytes ".length(), range.indexOf('-'))), body);
+                ex.sendResponseHeaders(204, -1);
+            }
+        } else if ("HEAD".equals(method) || "GET".equals(method)) {
+            byte[] content = files.get(path);
+            if (content == null) {
+                ex.sendResponseHeaders(404, -1);
+            } else if ("HEAD".equals(method)) {
+                ex.getResponseHeaders().set("Content-Length", String.valueOf(content.length));
+                ex.sendResponseHeaders(200, -1);
+            } else {
+                ex.sendResponseHeaders(200, content.length);
+                ex.getResponseBody().write(content);
+            }
+        } else {
+            ex.sendResponseHeaders(405, -1);
+        }
+        ex.close();
+    }
+
+    private synchronized void write(String path, int offset, byte[] body) {
+        byte[] old = files.get(path);
+        if (old == null) {
+            old = new byte[0];
+        }
+        byte[] content = old;
+        if (offset + body.length > old.length) {
+            content = new byte[offset + body.length];
+            System.arraycopy(old, 0, content, 0, old.length);
+        }
+        System.arraycopy(body, 0, content, offset, body.length);
+        files.put(path, content);
+    }
+
+    private byte[] readThrottled(InputStream is) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        byte[] buffer = new byte[64 * 1024];
+        long start = System.nanoTime();
+        int n;
+        while ((n = is.read(buffer)) != -1) {
+            bos.write(buffer, 0, n);
+            long expected = bos.size() * 1000L / bytesPerSecond;
+            sleep(expected - (System.nanoTime() - start) / 1000000);
+        }
+        return bos.toByteArray();
+    }
+
+    private static void sleep(long ms) {
+        if (ms > 0) {
+            try {
+                Thread.sleep(ms);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.benchmark;
+
+import com.gooddata.integration.webdav.GdcWebDavApiWrapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the chunked and the parallel upload of a data package to the {@link ThrottledWebDavServer}
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 1)
+@Measurement(iterations = 3)
+@Fork(1)
+@State(Scope.Benchmark)
+public class UploadBenchmark {
+
+    /**
+     * package size in MB
+     */
+    @Param({"32"})
+    public int size;
+
+    /**
+     * upload bandwidth of a single connection in MB/s
+     */
+    @Param({"8"})
+    public int bandwidth;
+
+    /**
+     * request latency in ms
+     */
+    @Param({"50"})
+    public int latency;
+
+    /**
+     * chunk size in MB
+     */
+    @Param({"1", "8"})
+    public int chunkSize;
+
+    @Param({"1", "4"})
+    public int connections;
+
+    private ThrottledWebDavServer server;
+    private GdcWebDavApiWrapper wrapper;
+    private File archive;
+
+    @Setup
+    public void setup() throws IOException {
+        server = new ThrottledWebDavServer(bandwidth * 1024L * 1024L, latency);
+        wrapper = new GdcWebDavApiWrapper("user", "password", server.getUrl());
+        wrapper.getUploader().setChunkSize(chunkSize * 1024L * 1024L);
+        wrapper.getUploader().setConnections(connections);
+        archive = File.createTempFile("upload", ".zip");
+        byte[] data = new byte[size * 1024 * 1024];
+        new Random(0).nextBytes(data);
+        FileOutputStream fos = new FileOutputStream(archive);
+        try {
+            fos.write(data);
+        } finally {
+            fos.close();
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        server.stop();
+        archive.delete();
+    }
+
+    @Benchmark
+    public int upload() throws IOException {
+        wrapper.transferDir(archive.getAbsolutePath(), "benchmark");
+        return server.getFile("/uploads/benchmark/upload.zip").length;
+    }
+}
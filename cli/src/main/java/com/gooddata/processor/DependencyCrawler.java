@@ -0,0 +1,339 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.processor;
+
+import com.gooddata.exception.GdcRestApiException;
+import com.gooddata.exception.InvalidParameterException;
+import com.gooddata.integration.rest.GdcRESTApiWrapper;
+import net.sf.json.JSONObject;
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Crawls the metadata dependency graph (the using or usedby relation) of a set of objects. The objects are
+ * fetched concurrently on a worker pool, every object is fetched once. The fetched dependencies and nodes
+ * are kept for the lifetime of the crawler, so the roots that share dependencies fetch them only once.
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+public class DependencyCrawler {
+
+    private static Logger l = Logger.getLogger(DependencyCrawler.class);
+
+    /**
+     * Default number of concurrent requests
+     */
+    public static final int DEFAULT_CONCURRENCY = 4;
+
+    /**
+     * The crawled relation
+     */
+    public static enum Direction {
+        /**
+         * the objects that the object uses, they precede the object in the sorted list
+         */
+        USING,
+        /**
+         * the objects that use the object, they follow the object in the sorted list
+         */
+        USED_BY;
+
+        /**
+         * @param s the direction name (using | usedBy)
+         * @return the direction or null if the name is unknown
+         */
+        public static Direction fromString(String s) {
+            if ("using".equalsIgnoreCase(s))
+                return USING;
+            if ("usedBy".equalsIgnoreCase(s) || "used_by".equalsIgnoreCase(s))
+                return USED_BY;
+            return null;
+        }
+    }
+
+    /**
+     * The dependency API. The sessions aren't shared between threads.
+     */
+    public interface DependencySession {
+
+        /**
+         * Returns the dependency nodes of an object
+         *
+         * @param uri       the object uri
+         * @param direction the relation
+         * @return the nodes, each with the object uri in the "link" key
+         */
+        public List<JSONObject> getDependencies(String uri, Direction direction);
+
+    }
+
+    /**
+     * The dependency session backed by the GoodData REST API
+     */
+    public static class RestDependencySession implements DependencySession {
+
+        private final GdcRESTApiWrapper restApi;
+
+        public RestDependencySession(GdcRESTApiWrapper restApi) {
+            this.restApi = restApi;
+        }
+
+        public List<JSONObject> getDependencies(String uri, Direction direction) {
+            return (direction == Direction.USING) ? (restApi.using(uri)) : (restApi.usedBy(uri));
+        }
+    }
+
+    private final Direction direction;
+    // object uri -> the uris of its dependencies (the fetched objects only)
+    private final Map<String, List<String>> dependencies = new ConcurrentHashMap<String, List<String>>();
+    // object uri -> the node returned by the API
+    private final Map<String, JSONObject> nodes = new ConcurrentHashMap<String, JSONObject>();
+
+    /**
+     * Constructor
+     *
+     * @param direction the crawled relation
+     */
+    public DependencyCrawler(Direction direction) {
+        if (direction == null)
+            throw new InvalidParameterException("The dependency direction must be specified.");
+        this.direction = direction;
+    }
+
+    public Direction getDirection() {
+        return direction;
+    }
+
+    /**
+     * Returns the node of a crawled object
+     *
+     * @param uri the object uri
+     * @return the node or null if the object has been only a crawl root
+     */
+    public JSONObject getNode(String uri) {
+        return nodes.get(uri);
+    }
+
+    /**
+     * Crawls the dependency closure of the root objects. Returns once all reachable objects have been fetched.
+     *
+     * @param roots    the root object uris
+     * @param sessions worker sessions, one per worker thread
+     * @return the closure including the roots in the discovery order
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public List<String> crawl(Collection<String> roots, List<? extends DependencySession> sessions)
+            throws InterruptedException {
+        if (sessions.isEmpty())
+            throw new InvalidParameterException("No dependency sessions.");
+        Set<String> closure = new LinkedHashSet<String>();
+        List<String> known = new ArrayList<String>();
+        final BlockingQueue<DependencySession> idle = new LinkedBlockingQueue<DependencySession>(sessions);
+        ExecutorService pool = Executors.newFixedThreadPool(sessions.size());
+        CompletionService<String> fetched = new ExecutorCompletionService<String>(pool);
+        int pending = 0, fetches = 0;
+        try {
+            for (String root : roots) {
+                if (closure.add(root))
+                    known.add(root);
+            }
+            while (!known.isEmpty() || pending > 0) {
+                // expand the objects with cached dependencies, fetch the others
+                while (!known.isEmpty()) {
+                    String uri = known.remove(known.size() - 1);
+                    List<String> deps = dependencies.get(uri);
+                    if (deps != null) {
+                        for (String d : deps) {
+                            if (closure.add(d))
+                                known.add(d);
+                        }
+                    } else {
+                        fetched.submit(createFetchTask(uri, idle));
+                        pending++;
+                        fetches++;
+                    }
+                }
+                if (pending > 0) {
+                    String uri = fetched.take().get();
+                    pending--;
+                    known.add(uri);
+                }
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = (e.getCause() != null) ? (e.getCause()) : (e);
+            l.debug("Crawling the metadata dependencies failed.", cause);
+            throw new GdcRestApiException("Crawling the metadata dependencies failed: " + cause.getMessage(), cause);
+        } finally {
+            pool.shutdownNow();
+        }
+        l.debug("Crawled " + closure.size() + " objects, " + fetches + " fetched.");
+        return new ArrayList<String>(closure);
+    }
+
+    /**
+     * Creates the task that fetches the object dependencies to the cache
+     *
+     * @param uri  the object uri
+     * @param idle idle sessions
+     * @return the task that returns the uri
+     */
+    private Callable<String> createFetchTask(final String uri, final BlockingQueue<DependencySession> idle) {
+        return new Callable<String>() {
+            public String call() throws Exception {
+                DependencySession s = idle.take();
+                try {
+                    l.debug("Fetching dependencies of uri=" + uri);
+                    List<JSONObject> result = s.getDependencies(uri, direction);
+                    List<String> deps = new ArrayList<String>(result.size());
+                    for (JSONObject node : result) {
+                        String link = node.optString("link", null);
+                        if (link == null || link.equals(uri))
+                            continue;
+                        nodes.put(link, node);
+                        deps.add(link);
+                    }
+                    dependencies.put(uri, deps);
+                    return uri;
+                } finally {
+                    idle.add(s);
+                }
+            }
+        };
+    }
+
+    /**
+     * Sorts the crawled objects topologically. With {@link Direction#USING} every object follows the objects it
+     * uses, with {@link Direction#USED_BY} every object precedes the objects that use it. The independent
+     * objects keep their order. The objects on a dependency cycle are appended in their original order.
+     *
+     * @param uris crawled object uris (see {@link #crawl(Collection, List)})
+     * @return the sorted uris
+     */
+    public List<String> sort(List<String> uris) {
+        final Map<String, Integer> order = new HashMap<String, Integer>(uris.size() * 2);
+        for (String uri : uris) {
+            if (!order.containsKey(uri))
+                order.put(uri, order.size());
+        }
+        // object -> the objects that must follow it
+        Map<String, List<String>> successors = new HashMap<String, List<String>>();
+        Map<String, Integer> inDegree = new LinkedHashMap<String, Integer>();
+        for (String uri : order.keySet())
+            inDegree.put(uri, 0);
+        for (String uri : order.keySet()) {
+            List<String> deps = dependencies.get(uri);
+            if (deps == null)
+                continue;
+            for (String d : deps) {
+                if (!order.containsKey(d))
+                    continue;
+                String first = (direction == Direction.USING) ? (d) : (uri);
+                String then = (direction == Direction.USING) ? (uri) : (d);
+                List<String> s = successors.get(first);
+                if (s == null) {
+                    s = new ArrayList<String>();
+                    successors.put(first, s);
+                }
+                s.add(then);
+                inDegree.put(then, inDegree.get(then) + 1);
+            }
+        }
+        PriorityQueue<String> ready = new PriorityQueue<String>(Math.max(1, order.size()), new Comparator<String>() {
+            public int compare(String a, String b) {
+                return order.get(a).compareTo(order.get(b));
+            }
+        });
+        for (Map.Entry<String, Integer> e : inDegree.entrySet()) {
+            if (e.getValue() == 0)
+                ready.add(e.getKey());
+        }
+        List<String> sorted = new ArrayList<String>(order.size());
+        while (!ready.isEmpty()) {
+            String uri = ready.poll();
+            sorted.add(uri);
+            List<String> s = successors.get(uri);
+            if (s == null)
+                continue;
+            for (String then : s) {
+                int degree = inDegree.get(then) - 1;
+                inDegree.put(then, degree);
+                if (degree == 0)
+                    ready.add(then);
+            }
+        }
+        if (sorted.size() < order.size()) {
+            List<String> cycle = new ArrayList<String>();
+            for (Map.Entry<String, Integer> e : inDegree.entrySet()) {
+                if (e.getValue() > 0)
+                    cycle.add(e.getKey());
+            }
+            Collections.sort(cycle, new Comparator<String>() {
+                public int compare(String a, String b) {
+                    return order.get(a).compareTo(order.get(b));
+                }
+            });
+            l.debug("The metadata objects " + cycle + " are on a dependency cycle.");
+            sorted.addAll(cycle);
+        }
+        return sorted;
+    }
+
+    /**
+     * Returns the metadata object id from the object uri
+     *
+     * @param uri the object uri (/gdc/md/.../obj/id)
+     * @return the object id or -1 if the uri doesn't end with a numeric id
+     */
+    public static int getObjectId(String uri) {
+        String id = uri;
+        while (id.endsWith("/"))
+            id = id.substring(0, id.length() - 1);
+        try {
+            return Integer.parseInt(id.substring(id.lastIndexOf('/') + 1));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -30,13 +30,16 @@ import com.gooddata.integration.model.Column;
 import com.gooddata.integration.model.SLI;
 import com.gooddata.integration.rest.GdcRESTApiWrapper;
 import com.gooddata.integration.rest.MetadataObject;
+import com.gooddata.integration.rest.RestApiTelemetry;
 import com.gooddata.integration.rest.configuration.NamePasswordConfiguration;
 import com.gooddata.modeling.model.SourceSchema;
 import com.gooddata.processor.parser.DIScriptParser;
 import com.gooddata.processor.parser.ParseException;
 import com.gooddata.util.DatabaseToCsv;
 import com.gooddata.util.FileUtil;
+import com.gooddata.util.Metrics;
 import com.gooddata.util.StringUtil;
+import net.sf.json.JSONObject;
 import org.apache.commons.cli.*;
 import org.apache.log4j.Logger;
 import org.joda.time.DateTimeZone;
@@ -44,8 +47,12 @@ import org.joda.time.DateTimeZone;
 import java.io.*;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
 
 /**
  * The GoodData Data Integration CLI processor.
@@ -79,6 +86,15 @@ public class GdcDI implements Executor {
     public static String[] CLI_PARAM_TIMEZONE = {"timezone", "T"};
     public static String[] CLI_PARAM_AUTHORIZATION_TOKEN = {"authtoken", "a"};
     public static String[] CLI_PARAM_PROPERTIES = {"properties", "S"};
+    public static String[] CLI_PARAM_DAEMON = {"daemon", "d"};
+    public static String[] CLI_PARAM_DAEMON_TOKEN = {"daemontoken", "k"};
+    public static String[] CLI_PARAM_WORKERS = {"workers", "w"};
+    public static String[] CLI_PARAM_QUEUE = {"queue", "q"};
+    public static String[] CLI_PARAM_METRICS = {"metrics", "m"};
+    public static String[] CLI_PARAM_SLOW_CALL = {"slowcall", "c"};
+    public static String[] CLI_PARAM_CHUNK_SIZE = {ProcessingContext.CLI_PARAM_CHUNK_SIZE, "z"};
+    public static String[] CLI_PARAM_CONNECTIONS = {ProcessingContext.CLI_PARAM_CONNECTIONS, "n"};
+    public static String[] CLI_PARAM_VERIFY_UPLOAD = {ProcessingContext.CLI_PARAM_VERIFY_UPLOAD, "y"};
     public static String CLI_PARAM_SCRIPT = "script";
 
     private static String DEFAULT_PROPERTIES = "gdi.properties";
@@ -102,7 +118,16 @@ public class GdcDI implements Executor {
             new Option(CLI_PARAM_VERSION[1], CLI_PARAM_VERSION[0], false, "Prints the tool version."),
             new Option(CLI_PARAM_TIMEZONE[1], CLI_PARAM_TIMEZONE[0], true, "Specify the default timezone (the computer timezone is the default)."),
             new Option(CLI_PARAM_EXECUTE[1], CLI_PARAM_EXECUTE[0], true, "Commands and params to execute before the commands in provided files"),
-            new Option(CLI_PARAM_DEFAULT_DATE_FOREIGN_KEY[1], CLI_PARAM_DEFAULT_DATE_FOREIGN_KEY[0], true, "Foreign key to represent an 'unknown' date")
+            new Option(CLI_PARAM_DEFAULT_DATE_FOREIGN_KEY[1], CLI_PARAM_DEFAULT_DATE_FOREIGN_KEY[0], true, "Foreign key to represent an 'unknown' date"),
+            new Option(CLI_PARAM_DAEMON[1], CLI_PARAM_DAEMON[0], true, "Keep running and execute the scripts received on the given local TCP port"),
+            new Option(CLI_PARAM_DAEMON_TOKEN[1], CLI_PARAM_DAEMON_TOKEN[0], true, "File with the secret token the daemon clients must send on the first line (required with --daemon, keep the file readable by the trusted users only)"),
+            new Option(CLI_PARAM_WORKERS[1], CLI_PARAM_WORKERS[0], true, "Number of scripts executed concurrently in the daemon mode (default is 4)"),
+            new Option(CLI_PARAM_QUEUE[1], CLI_PARAM_QUEUE[0], true, "Keep running and execute the scripts dropped to the given directory"),
+            new Option(CLI_PARAM_METRICS[1], CLI_PARAM_METRICS[0], true, "Append the timing and throughput metrics of each command and the REST API call statistics to the given file (one JSON object per line)"),
+            new Option(CLI_PARAM_SLOW_CALL[1], CLI_PARAM_SLOW_CALL[0], true, "Log the GoodData REST API calls that take longer than the given number of milliseconds, 0 turns the logging off (default is 10000)"),
+            new Option(CLI_PARAM_CHUNK_SIZE[1], CLI_PARAM_CHUNK_SIZE[0], true, "Size of the chunks the data packages are uploaded in, in MB (default is 8)"),
+            new Option(CLI_PARAM_CONNECTIONS[1], CLI_PARAM_CONNECTIONS[0], true, "Number of connections a data package is uploaded over concurrently (default is 1)"),
+            new Option(CLI_PARAM_VERIFY_UPLOAD[1], CLI_PARAM_VERIFY_UPLOAD[0], false, "Verify the uploaded data packages by reading them back and comparing the MD5 checksums (doubles the transferred data)")
     };
 
     private CliParams cliParams = null;
@@ -156,6 +181,12 @@ public class GdcDI implements Executor {
                         cliParams.get(CLI_PARAM_USERNAME[0]), cliParams.get(CLI_PARAM_PASSWORD[0])));
             }
 
+            // zero turns the slow call logging off
+            RestApiTelemetry.setSlowCallThreshold(parseNumber(CLI_PARAM_SLOW_CALL[0],
+                    (int) RestApiTelemetry.DEFAULT_SLOW_CALL_THRESHOLD, 0));
+            // validate the upload settings, the data transfer sessions read them from the parameters
+            parseNumber(CLI_PARAM_CHUNK_SIZE[0], 1);
+            parseNumber(CLI_PARAM_CONNECTIONS[0], 1);
             connectors = instantiateConnectors();
             String execute = cliParams.get(CLI_PARAM_EXECUTE[0]);
             String scripts = cliParams.get(CLI_PARAM_SCRIPT);
@@ -174,6 +205,8 @@ public class GdcDI implements Executor {
                     execute(new File(script));
                 }
             }
+            if (cliParams.containsKey(CLI_PARAM_DAEMON[0]) || cliParams.containsKey(CLI_PARAM_QUEUE[0]))
+                serve();
             if (cliParams.containsKey(CLI_PARAM_HELP[0]))
                 l.info(commandsHelp());
             finishedSucessfuly = true;
@@ -316,6 +349,9 @@ public class GdcDI implements Executor {
             }
             finishedSucessfuly = false;
         } finally {
+            context.close();
+            if (cliParams != null)
+                reportTelemetry();
             /*
             if (cliParams != null)
                 context.getRestApi(cliParams).logout();
@@ -414,7 +450,8 @@ public class GdcDI implements Executor {
 
         l.debug("Using " + (cp.containsKey(CLI_PARAM_INSECURE[0]) ? "in" : "") + "secure protocols");
 
-        if (ln.getArgs().length == 0 && !ln.hasOption(CLI_PARAM_EXECUTE[0]) && !ln.hasOption(CLI_PARAM_HELP[0])) {
+        if (ln.getArgs().length == 0 && !ln.hasOption(CLI_PARAM_EXECUTE[0]) && !ln.hasOption(CLI_PARAM_HELP[0]) &&
+                !ln.hasOption(CLI_PARAM_DAEMON[0]) && !ln.hasOption(CLI_PARAM_QUEUE[0])) {
             throw new InvalidArgumentException("No command has been given, quitting.");
         }
 
@@ -439,13 +476,109 @@ public class GdcDI implements Executor {
         List<Command> cmds = new ArrayList<Command>();
         cmds.addAll(parseCmd(commandsStr));
         for (Command command : cmds) {
-            boolean processed = false;
-            for (int i = 0; i < connectors.length && !processed; i++) {
-                processed = connectors[i].processCommand(command, cliParams, context);
+            executeCommand(command, connectors, context);
+        }
+    }
+
+    /**
+     * Executes the commands in String using the given connectors and context
+     *
+     * @param commandsStr commands string
+     * @param connectors  connectors that process the commands
+     * @param ctx         processing context
+     */
+    void execute(final String commandsStr, final Connector[] connectors, final ProcessingContext ctx) {
+        execute(parseCmd(commandsStr), connectors, ctx);
+    }
+
+    /**
+     * Runs the daemon mode. The scripts received on the local port or dropped to the queue directory
+     * are executed by a pool of workers that keep their connectors and GoodData sessions between the scripts.
+     *
+     * @throws IOException if the port can't be opened
+     */
+    private void serve() throws IOException {
+        int workerCount = parseNumber(CLI_PARAM_WORKERS[0], ScriptWorkerPool.DEFAULT_WORKERS);
+        final ScriptWorkerPool workers = new ScriptWorkerPool(this, workerCount);
+        final ScriptServer server = cliParams.containsKey(CLI_PARAM_DAEMON[0]) ?
+                new ScriptServer(workers, parseNumber(CLI_PARAM_DAEMON[0], 0), readDaemonToken()) : null;
+        final ScriptQueueWorker queue = cliParams.containsKey(CLI_PARAM_QUEUE[0]) ?
+                new ScriptQueueWorker(workers, new File(cliParams.get(CLI_PARAM_QUEUE[0])), 2 * workerCount) : null;
+        // counted down when the running scripts are finished, the main thread may exit before the hook runs
+        final CountDownLatch finished = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+            public void run() {
+                if (server != null)
+                    server.stop();
+                if (queue != null)
+                    queue.stop();
+                // let the running scripts finish
+                try {
+                    finished.await();
+                }
+                catch (InterruptedException e) {
+                    l.warn("Interrupted while waiting for the running scripts.");
+                }
             }
-            if (!processed)
-                this.processCommand(command, cliParams, context);
+        });
+        try {
+            if (server != null) {
+                if (queue != null) {
+                    Thread t = new Thread(queue, "GdcQueue");
+                    t.setDaemon(true);
+                    t.start();
+                }
+                server.serve();
+            } else {
+                queue.run();
+            }
+        }
+        finally {
+            try {
+                workers.shutdown();
+            }
+            catch (InterruptedException e) {
+                l.warn("Interrupted while waiting for the running scripts.");
+            }
+            finally {
+                finished.countDown();
+            }
+        }
+    }
+
+    /**
+     * Reads the token the daemon clients authenticate with
+     *
+     * @return the token
+     * @throws IOException if the token file can't be read
+     */
+    private String readDaemonToken() throws IOException {
+        String file = cliParams.get(CLI_PARAM_DAEMON_TOKEN[0]);
+        if (file == null || file.length() <= 0)
+            throw new InvalidArgumentException("The '" + CLI_PARAM_DAEMON_TOKEN[0] + "' parameter is required in the daemon mode.");
+        String token = FileUtil.readStringFromFile(file).trim();
+        if (token.length() <= 0)
+            throw new InvalidArgumentException("The daemon token file '" + file + "' is empty.");
+        return token;
+    }
+
+    private int parseNumber(String param, int defaultValue) {
+        return parseNumber(param, defaultValue, 1);
+    }
+
+    private int parseNumber(String param, int defaultValue, int min) {
+        String value = cliParams.get(param);
+        if (value == null || value.length() <= 0)
+            return defaultValue;
+        try {
+            int n = Integer.parseInt(value);
+            if (n >= min)
+                return n;
         }
+        catch (NumberFormatException e) {
+            // handled below
+        }
+        throw new InvalidArgumentException("Invalid '" + param + "' value: '" + value + "'.");
     }
 
     /**
@@ -457,15 +590,107 @@ public class GdcDI implements Executor {
     public void execute(final File scriptFile) throws IOException {
         List<Command> cmds = new ArrayList<Command>();
         cmds.addAll(parseCmd(FileUtil.readStringFromFile(scriptFile.getAbsolutePath())));
+        execute(cmds, connectors, context);
+    }
+
+    /**
+     * Executes the commands using the given connectors and context
+     *
+     * @param cmds       commands to execute
+     * @param connectors connectors that process the commands
+     * @param ctx        processing context
+     */
+    private void execute(final List<Command> cmds, final Connector[] connectors, final ProcessingContext ctx) {
         for (Command command : cmds) {
-            boolean processed = false;
+            if (!executeCommand(command, connectors, ctx))
+                throw new InvalidCommandException("Unknown command '" + command.getCommand() + "'");
+        }
+    }
+
+    /**
+     * Executes a single command. The metrics collected while the command runs are logged
+     * and appended to the metrics file when the command finishes.
+     *
+     * @param command    command to execute
+     * @param connectors connectors that process the command
+     * @param ctx        processing context
+     * @return true if the command has been processed, false if it is unknown
+     */
+    private boolean executeCommand(final Command command, final Connector[] connectors, final ProcessingContext ctx) {
+        boolean processed = false;
+        boolean failed = true;
+        Metrics.begin();
+        long start = Metrics.start();
+        try {
             for (int i = 0; i < connectors.length && !processed; i++) {
-                processed = connectors[i].processCommand(command, cliParams, context);
+                processed = connectors[i].processCommand(command, cliParams, ctx);
             }
             if (!processed)
-                processed = this.processCommand(command, cliParams, context);
-            if (!processed)
-                throw new InvalidCommandException("Unknown command '" + command.getCommand() + "'");
+                processed = this.processCommand(command, cliParams, ctx);
+            failed = false;
+            return processed;
+        }
+        finally {
+            long elapsed = System.nanoTime() - start;
+            Map<String, Metrics.Metric> metrics = Metrics.end();
+            if (processed || failed)
+                reportMetrics(command.getCommand(), elapsed, metrics);
+        }
+    }
+
+    /**
+     * Logs the command's metrics and appends them to the metrics file if there is one
+     *
+     * @param command command name
+     * @param elapsed command duration in nanoseconds
+     * @param metrics the command's metrics
+     */
+    private void reportMetrics(String command, long elapsed, Map<String, Metrics.Metric> metrics) {
+        String msg = "Command " + command + " finished in " + (elapsed / 1000000) + " ms.";
+        // only the commands that load or transfer data have metrics besides the REST API calls
+        boolean dataCommand = false;
+        for (String name : metrics.keySet()) {
+            if (!name.startsWith(GdcRESTApiWrapper.METRIC_REST))
+                dataCommand = true;
+        }
+        if (dataCommand)
+            l.info(msg + "\n" + Metrics.summary(metrics));
+        else if (!metrics.isEmpty())
+            l.debug(msg + "\n" + Metrics.summary(metrics));
+        appendMetrics(Metrics.toJson(command, elapsed, metrics));
+    }
+
+    /**
+     * Logs the GoodData REST API call statistics of the whole run and appends them to the metrics file
+     * if there is one
+     */
+    private void reportTelemetry() {
+        String summary = RestApiTelemetry.summary();
+        if (summary.length() == 0)
+            return;
+        l.info(summary);
+        JSONObject json = new JSONObject();
+        json.put("endpoints", RestApiTelemetry.toJson());
+        appendMetrics(json);
+    }
+
+    /**
+     * Appends a JSON object as a single line to the metrics file if there is one
+     *
+     * @param json the metrics
+     */
+    private void appendMetrics(JSONObject json) {
+        String fileName = cliParams.get(CLI_PARAM_METRICS[0]);
+        if (fileName != null && fileName.length() > 0) {
+            try {
+                // daemon workers finish their commands concurrently
+                synchronized (this) {
+                    FileUtil.writeStringToFile(json.toString() + "\n", fileName, true);
+                }
+            }
+            catch (IOException e) {
+                l.warn("Can't write the metrics to '" + fileName + "': " + e.getMessage());
+            }
         }
     }
 
@@ -598,6 +823,8 @@ public class GdcDI implements Executor {
                 addUsersToProject(c, cli, ctx);
             } else if (c.match("DisableUsersInProject")) {
                 disableUsersInProject(c, cli, ctx);
+            } else if (c.match("SyncProjectUsers")) {
+                syncProjectUsers(c, cli, ctx);
             } else if (c.match("GetProjectUsers")) {
                 getProjectUsers(c, cli, ctx);
             } else if (c.match("InviteUser")) {
@@ -612,6 +839,8 @@ public class GdcDI implements Executor {
                 getMdObject(c, cli, ctx);
             } else if (c.match("ExportMetadataObjects")) {
                 exportMDObject(c, cli, ctx);
+            } else if (c.match("GetMetadataDependencies")) {
+                getMDDependencies(c, cli, ctx);
             } else if (c.match("ImportMetadataObjects")) {
                 importMDObject(c, cli, ctx);
             } else if (c.match("ExportJdbcToCsv")) {
@@ -620,6 +849,8 @@ public class GdcDI implements Executor {
                 migrateDatasets(c, cli, ctx);
             } else if (c.match("GenerateManifests")) {
                 generateManifests(c, cli, ctx);
+            } else if (c.match("Parallel")) {
+                executeParallel(c, cli, ctx);
             } else {
                 l.debug("No match command " + c.getCommand());
                 return false;
@@ -787,7 +1018,9 @@ public class GdcDI implements Executor {
             String token;
             String pid = ctx.getProjectIdMandatory();
             final String fileName = c.getParamMandatory("tokenFile");
-            final String idscs = c.getParamMandatory("objectIDs");
+            final String idsFile = c.getParam("objectIDsFile");
+            final String idscs = (idsFile != null && !c.checkParam("objectIDs")) ?
+                    (FileUtil.readStringFromFile(idsFile).trim()) : (c.getParamMandatory("objectIDs"));
             c.paramsProcessed();
             if (idscs != null && idscs.length() > 0) {
                 String[] idss = idscs.split(",");
@@ -835,6 +1068,90 @@ public class GdcDI implements Executor {
         }
     }
 
+    /**
+     * Crawls the dependencies of MD objects and stores the topologically sorted object IDs to a file
+     * that can be passed to the ExportMetadataObjects command
+     *
+     * @param c   command
+     * @param p   cli parameters
+     * @param ctx current context
+     * @throws IOException IO issues
+     * @throws InterruptedException if interrupted while crawling
+     */
+    private void getMDDependencies(Command c, CliParams p, ProcessingContext ctx) throws IOException, InterruptedException {
+        String pid = ctx.getProjectIdMandatory();
+        final String fileName = c.getParamMandatory("fileName");
+        final String idscs = c.getParamMandatory("objectIDs");
+        final String ds = c.getParam("direction");
+        DependencyCrawler.Direction direction = (ds != null) ? (DependencyCrawler.Direction.fromString(ds)) :
+                (DependencyCrawler.Direction.USING);
+        if (direction == null)
+            throw new InvalidParameterException("GetMetadataDependencies: The direction parameter must be either using or usedBy.");
+        int concurrency = DependencyCrawler.DEFAULT_CONCURRENCY;
+        String cs = c.getParam("concurrency");
+        if (cs != null && cs.length() > 0) {
+            try {
+                concurrency = Integer.parseInt(cs);
+            } catch (NumberFormatException e) {
+                throw new InvalidParameterException("GetMetadataDependencies: The concurrency parameter must be an integer.");
+            }
+            if (concurrency < 1)
+                throw new InvalidParameterException("GetMetadataDependencies: The concurrency must be a positive number.");
+        }
+        final String cats = c.getParam("categories");
+        c.paramsProcessed();
+
+        Set<String> categories = null;
+        if (cats != null && cats.length() > 0) {
+            categories = new HashSet<String>();
+            for (String cat : cats.split(","))
+                categories.add(cat.trim());
+        }
+        List<String> roots = new ArrayList<String>();
+        for (String id : idscs.split(",")) {
+            try {
+                roots.add("/gdc/md/" + pid + "/obj/" + Integer.parseInt(id.trim()));
+            } catch (NumberFormatException e) {
+                l.debug("Invalid metadata object ID " + id, e);
+                l.error("Invalid metadata object ID " + id);
+                throw new InvalidParameterException("Invalid metadata object ID " + id, e);
+            }
+        }
+
+        // the REST API isn't thread safe, every worker gets its own session
+        List<DependencyCrawler.DependencySession> sessions = new ArrayList<DependencyCrawler.DependencySession>();
+        sessions.add(new DependencyCrawler.RestDependencySession(ctx.getRestApi(p)));
+        List<ProcessingContext> workers = new ArrayList<ProcessingContext>();
+        DependencyCrawler crawler = new DependencyCrawler(direction);
+        List<String> sorted;
+        try {
+            while (sessions.size() < concurrency)
+                sessions.add(new DependencyCrawler.RestDependencySession(createWorkerContext(workers).getRestApi(p)));
+            sorted = crawler.sort(crawler.crawl(roots, sessions));
+        } finally {
+            closeWorkerContexts(workers);
+        }
+
+        StringBuilder result = new StringBuilder();
+        int count = 0;
+        for (String uri : sorted) {
+            JSONObject node = crawler.getNode(uri);
+            if (categories != null && node != null && !categories.contains(node.optString("category")))
+                continue;
+            int id = DependencyCrawler.getObjectId(uri);
+            if (id < 0) {
+                l.debug("Skipping the metadata object uri=" + uri + " without a numeric ID.");
+                continue;
+            }
+            if (result.length() > 0)
+                result.append(',');
+            result.append(id);
+            count++;
+        }
+        FileUtil.writeStringToFile(result.toString(), fileName);
+        l.info(count + " metadata object IDs written into " + fileName);
+    }
+
     /**
      * Imports MD objects
      *
@@ -1011,6 +1328,67 @@ public class GdcDI implements Executor {
         }
     }
 
+    /**
+     * Synchronizes the project users with the users listed in a CSV file
+     *
+     * @param c   command
+     * @param p   cli parameters
+     * @param ctx current context
+     * @throws IOException IO issues
+     * @throws InterruptedException if interrupted while synchronizing
+     */
+    private void syncProjectUsers(Command c, CliParams p, ProcessingContext ctx) throws IOException, InterruptedException {
+        String pid = ctx.getProjectIdMandatory();
+        String usersFile = c.getParamMandatory("csvFile");
+        String domain = c.getParam("domain");
+        String role = c.getParam("role");
+        boolean disableMissing = "true".equalsIgnoreCase(c.getParam("disableMissing"));
+        int concurrency = ProjectUserSync.DEFAULT_CONCURRENCY;
+        String cs = c.getParam("concurrency");
+        if (cs != null && cs.length() > 0) {
+            try {
+                concurrency = Integer.parseInt(cs);
+            } catch (NumberFormatException e) {
+                throw new InvalidParameterException("SyncProjectUsers: The concurrency parameter must be an integer.");
+            }
+            if (concurrency < 1)
+                throw new InvalidParameterException("SyncProjectUsers: The concurrency must be a positive number.");
+        }
+        int chunkSize = GdcRESTApiWrapper.USERS_CHUNK_SIZE;
+        cs = c.getParam("chunkSize");
+        if (cs != null && cs.length() > 0) {
+            try {
+                chunkSize = Integer.parseInt(cs);
+            } catch (NumberFormatException e) {
+                throw new InvalidParameterException("SyncProjectUsers: The chunkSize parameter must be an integer.");
+            }
+        }
+        c.paramsProcessed();
+
+        l.info("Synchronizing users of project " + pid + " with " + usersFile);
+        List<ProjectUserSync.Entry> entries = ProjectUserSync.readCsv(usersFile, role);
+        // the REST API isn't thread safe, every worker gets its own session
+        // the current session reads the project state before the workers start, so it's one of the workers too
+        ProjectUserSync.UserSession current = new ProjectUserSync.RestUserSession(ctx.getRestApi(p));
+        List<ProjectUserSync.UserSession> sessions = new ArrayList<ProjectUserSync.UserSession>();
+        sessions.add(current);
+        List<ProcessingContext> workers = new ArrayList<ProcessingContext>();
+        ProjectUserSync.Result result;
+        try {
+            while (sessions.size() < concurrency)
+                sessions.add(new ProjectUserSync.RestUserSession(createWorkerContext(workers).getRestApi(p)));
+            result = new ProjectUserSync(chunkSize, disableMissing).sync(pid, domain, entries, current, sessions);
+        } finally {
+            closeWorkerContexts(workers);
+        }
+        for (String error : result.getErrors())
+            l.error(error);
+        l.info("Project " + pid + " users synchronized: " + result);
+        if (!result.getErrors().isEmpty())
+            throw new GdcRestApiException("SyncProjectUsers: " + result.getErrors().size()
+                    + " user updates failed. Check the log for more details.");
+    }
+
     /**
      * Create new project command processor
      *
@@ -1360,36 +1738,113 @@ public class GdcDI implements Executor {
     }
 
     /**
-     * Enumerate reports
+     * Execute reports
      *
      * @param c   command
      * @param p   cli parameters
      * @param ctx current context
      */
     private void executeReports(Command c, CliParams p, ProcessingContext ctx) throws IOException, InterruptedException {
-        String pid = ctx.getProjectIdMandatory();
+        ctx.getProjectIdMandatory();
         String fileName = c.getParamMandatory("fileName");
+        int concurrency = ReportExecutor.DEFAULT_CONCURRENCY;
+        String cs = c.getParam("concurrency");
+        if (cs != null && cs.length() > 0) {
+            try {
+                concurrency = Integer.parseInt(cs);
+            } catch (NumberFormatException e) {
+                throw new InvalidParameterException("ExecuteReports: The concurrency parameter must be an integer.");
+            }
+        }
+        boolean waitForResults = "true".equalsIgnoreCase(c.getParam("waitForResults"));
+        String exportFormat = c.getParam("exportFormat");
+        String exportDir = c.getParam("exportDir");
         c.paramsProcessed();
 
         String result = FileUtil.readStringFromFile(fileName).trim();
         if (result != null && result.length() > 0) {
-            String[] uris = result.split("\n");
-            for (String uri : uris) {
-                try {
-                    l.info("Executing report uri=" + uri);
-                    String task = ctx.getRestApi(p).executeReport(uri.trim()).getJSONObject("execResult").getString("dataResult");
-                    l.info("Report " + uri + " execution finished: " + task);
-                } catch (GdcRestApiException e) {
-                    l.debug("The report uri=" + uri + " can't be computed!",e);
-                    l.info("The report uri=" + uri + " can't be computed!");
-                }
+            List<String> uris = new ArrayList<String>();
+            for (String uri : result.split("\n")) {
+                if (uri.trim().length() > 0)
+                    uris.add(uri.trim());
+            }
+            ReportExecutor executor = new ReportExecutor(concurrency, waitForResults, exportFormat,
+                    (exportFormat != null) ? (new File((exportDir != null) ? (exportDir) : ("."))) : (null));
+            // the REST API isn't thread safe, every worker gets its own session
+            // the current session is either one of the workers or polls the results
+            List<ReportExecutor.ReportSession> sessions = new ArrayList<ReportExecutor.ReportSession>();
+            ReportExecutor.ReportSession current = new ReportExecutor.RestReportSession(ctx.getRestApi(p));
+            if (!executor.isPolling())
+                sessions.add(current);
+            List<ProcessingContext> workers = new ArrayList<ProcessingContext>();
+            List<ReportExecutor.Report> reports;
+            try {
+                while (sessions.size() < concurrency)
+                    sessions.add(new ReportExecutor.RestReportSession(createWorkerContext(workers).getRestApi(p)));
+                reports = executor.execute(uris, current, sessions);
+            } finally {
+                closeWorkerContexts(workers);
             }
+            ReportExecutor.report(reports);
         } else {
             throw new IOException("There are no reports to execute.");
         }
         l.info("All reports executed.");
     }
 
+    /**
+     * Creates a context for a worker of a concurrent command
+     *
+     * @param workers the worker contexts created so far, the new context is added to them
+     * @return the new context
+     */
+    private static ProcessingContext createWorkerContext(List<ProcessingContext> workers) {
+        ProcessingContext w = new ProcessingContext();
+        workers.add(w);
+        return w;
+    }
+
+    /**
+     * Closes the contexts of the workers of a concurrent command
+     *
+     * @param workers the worker contexts
+     */
+    private static void closeWorkerContexts(List<ProcessingContext> workers) {
+        for (ProcessingContext w : workers)
+            w.close();
+    }
+
+    /**
+     * Executes the blocks of the Parallel command concurrently. Every block gets its own connectors and
+     * processing context that starts with the current project.
+     *
+     * @param c   command
+     * @param p   cli parameters
+     * @param ctx current context
+     * @throws InterruptedException if interrupted while waiting for the blocks
+     */
+    private void executeParallel(Command c, CliParams p, ProcessingContext ctx) throws InterruptedException {
+        final String pid = ctx.getProjectId();
+        ParallelExecutor executor = ParallelExecutor.create(c);
+        List<ParallelExecutor.Block> results = executor.execute(new ParallelExecutor.BlockProcessor() {
+            public void process(ParallelExecutor.Block block) throws Exception {
+                ProcessingContext blockContext = new ProcessingContext();
+                if (pid != null)
+                    blockContext.setProjectId(pid);
+                try {
+                    execute(block.getCommands(), instantiateConnectors(), blockContext);
+                }
+                finally {
+                    blockContext.close();
+                }
+            }
+        });
+        int failed = ParallelExecutor.report(results);
+        if (failed > 0)
+            throw new ProcessingException("Parallel: " + failed + " of " + results.size() + " blocks haven't succeeded.");
+        l.info("All parallel blocks successfully executed.");
+    }
+
     /**
      * Store project command processor
      *
@@ -1458,7 +1913,7 @@ public class GdcDI implements Executor {
      * @return array of all active connectors
      * @throws IOException in case of IO issues
      */
-    private Connector[] instantiateConnectors() throws IOException {
+    Connector[] instantiateConnectors() throws IOException {
         return new Connector[]{
                 CsvConnector.createConnector(),
                 GaConnector.createConnector(),
@@ -0,0 +1,329 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.processor;
+
+import com.gooddata.exception.InvalidCommandException;
+import com.gooddata.exception.InvalidParameterException;
+import org.apache.log4j.Logger;
+import org.apache.log4j.MDC;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Executes the blocks of a Parallel script command on a bounded worker pool. Each block runs once all
+ * blocks it depends on have finished successfully. Blocks that depend on a failed block are skipped.
+ *
+ * <pre>
+ * Parallel(workers="4") {
+ *     Block(name="accounts") { ... }
+ *     Block(name="opportunities", dependsOn="accounts") { ... }
+ * }
+ * </pre>
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+public class ParallelExecutor {
+
+    private static Logger l = Logger.getLogger(ParallelExecutor.class);
+
+    /**
+     * Default number of worker threads
+     */
+    public static final int DEFAULT_WORKERS = 4;
+
+    public static final String STATUS_OK = "OK";
+    public static final String STATUS_FAILED = "FAILED";
+    public static final String STATUS_SKIPPED = "SKIPPED";
+
+    /**
+     * Processes the commands of a single block
+     */
+    public interface BlockProcessor {
+
+        /**
+         * Executes the block's commands. Called from a worker thread.
+         *
+         * @param block the block to execute
+         * @throws Exception in case of any failure
+         */
+        public void process(Block block) throws Exception;
+
+    }
+
+    /**
+     * A named list of commands with its dependencies and execution result
+     */
+    public static class Block {
+
+        private final String name;
+        private final List<String> dependsOn;
+        private final List<Command> commands;
+        private String status;
+        private long duration;
+        private Throwable error;
+
+        public Block(String name, List<String> dependsOn, List<Command> commands) {
+            this.name = name;
+            this.dependsOn = dependsOn;
+            this.commands = commands;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<String> getDependsOn() {
+            return dependsOn;
+        }
+
+        public List<Command> getCommands() {
+            return commands;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public long getDuration() {
+            return duration;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+    }
+
+    private final Map<String, Block> blocks;
+    private final int workers;
+
+    /**
+     * Constructor
+     *
+     * @param blocks  blocks to execute
+     * @param workers number of worker threads
+     */
+    public ParallelExecutor(List<Block> blocks, int workers) {
+        if (workers < 1)
+            throw new InvalidParameterException("Parallel: The number of workers must be a positive number.");
+        this.workers = workers;
+        this.blocks = new LinkedHashMap<String, Block>();
+        for (Block b : blocks) {
+            if (this.blocks.put(b.getName(), b) != null)
+                throw new InvalidCommandException("Parallel: Duplicate block name '" + b.getName() + "'.");
+        }
+        for (Block b : blocks) {
+            for (String d : b.getDependsOn()) {
+                if (!this.blocks.containsKey(d))
+                    throw new InvalidCommandException("Parallel: The block '" + b.getName() +
+                            "' depends on an unknown block '" + d + "'.");
+            }
+        }
+        checkCycles();
+    }
+
+    /**
+     * Creates the executor from the Parallel command
+     *
+     * @param c the Parallel command with nested Block commands
+     * @return the executor
+     */
+    public static ParallelExecutor create(Command c) {
+        if (!c.isBlock())
+            throw new InvalidCommandException("Parallel: The command must enclose Block commands in braces.");
+        int workers = DEFAULT_WORKERS;
+        String w = c.getParam("workers");
+        c.paramsProcessed();
+        if (w != null && w.length() > 0) {
+            try {
+                workers = Integer.parseInt(w);
+            } catch (NumberFormatException e) {
+                throw new InvalidParameterException("Parallel: The workers parameter must be an integer.");
+            }
+        }
+        List<Block> blocks = new ArrayList<Block>();
+        for (Command b : c.getCommands()) {
+            if (!b.match("Block") || !b.isBlock())
+                throw new InvalidCommandException("Parallel: Only Block(name=\"...\") { ... } commands are " +
+                        "allowed inside the Parallel command, found '" + b.getCommand() + "'.");
+            String name = b.getParam("name");
+            if (name == null || name.length() == 0)
+                name = "block" + (blocks.size() + 1);
+            String deps = b.getParam("dependsOn");
+            b.paramsProcessed();
+            List<String> dependsOn = new ArrayList<String>();
+            if (deps != null && deps.length() > 0) {
+                for (String d : deps.split(",")) {
+                    if (d.trim().length() > 0)
+                        dependsOn.add(d.trim());
+                }
+            }
+            blocks.add(new Block(name, dependsOn, b.getCommands()));
+        }
+        return new ParallelExecutor(blocks, workers);
+    }
+
+    /**
+     * Checks that the block dependencies don't contain a cycle
+     */
+    private void checkCycles() {
+        Set<String> done = new HashSet<String>();
+        boolean progress = true;
+        while (progress && done.size() < blocks.size()) {
+            progress = false;
+            for (Block b : blocks.values()) {
+                if (!done.contains(b.getName()) && done.containsAll(b.getDependsOn())) {
+                    done.add(b.getName());
+                    progress = true;
+                }
+            }
+        }
+        if (done.size() < blocks.size())
+            throw new InvalidCommandException("Parallel: The block dependencies contain a cycle.");
+    }
+
+    /**
+     * Executes all blocks. Returns once all blocks finished or have been skipped.
+     *
+     * @param processor the block processor
+     * @return the blocks with their execution results in the declaration order
+     * @throws InterruptedException if the waiting thread is interrupted
+     */
+    public List<Block> execute(final BlockProcessor processor) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(workers, Math.max(blocks.size(), 1)));
+        CompletionService<Block> cs = new ExecutorCompletionService<Block>(pool);
+        Set<String> pending = new HashSet<String>(blocks.keySet());
+        int running = 0;
+        try {
+            while (!pending.isEmpty() || running > 0) {
+                // submit all blocks with satisfied dependencies, skip blocks with failed dependencies
+                boolean changed = true;
+                while (changed) {
+                    changed = false;
+                    for (Block b : blocks.values()) {
+                        if (!pending.contains(b.getName()))
+                            continue;
+                        boolean ready = true;
+                        for (String d : b.getDependsOn()) {
+                            String ds = blocks.get(d).getStatus();
+                            if (STATUS_FAILED.equals(ds) || STATUS_SKIPPED.equals(ds)) {
+                                b.status = STATUS_SKIPPED;
+                                pending.remove(b.getName());
+                                l.info("Skipping block '" + b.getName() + "' as the block '" + d + "' hasn't succeeded.");
+                                changed = true;
+                                ready = false;
+                                break;
+                            }
+                            if (!STATUS_OK.equals(ds))
+                                ready = false;
+                        }
+                        if (ready) {
+                            pending.remove(b.getName());
+                            cs.submit(createTask(b, processor));
+                            running++;
+                        }
+                    }
+                }
+                if (running > 0) {
+                    try {
+                        cs.take().get();
+                    } catch (ExecutionException e) {
+                        // the task records its own failure
+                        l.debug("Block execution failed.", e);
+                    }
+                    running--;
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return new ArrayList<Block>(blocks.values());
+    }
+
+    /**
+     * Wraps the block to a task that records its status and duration
+     *
+     * @param b         block
+     * @param processor block processor
+     * @return the task
+     */
+    private Callable<Block> createTask(final Block b, final BlockProcessor processor) {
+        return new Callable<Block>() {
+            public Block call() {
+                MDC.put("GdcBlock", b.getName());
+                l.info("Starting block '" + b.getName() + "'.");
+                long start = System.currentTimeMillis();
+                try {
+                    processor.process(b);
+                    b.status = STATUS_OK;
+                    l.info("Block '" + b.getName() + "' finished.");
+                } catch (Throwable e) {
+                    b.error = e;
+                    b.status = STATUS_FAILED;
+                    l.error("Block '" + b.getName() + "' failed: " + e.getMessage());
+                    l.debug("Block '" + b.getName() + "' failed.", e);
+                } finally {
+                    b.duration = System.currentTimeMillis() - start;
+                    MDC.remove("GdcBlock");
+                }
+                return b;
+            }
+        };
+    }
+
+    /**
+     * Logs the aggregated results of the executed blocks
+     *
+     * @param results executed blocks
+     * @return number of blocks that haven't succeeded
+     */
+    public static int report(List<Block> results) {
+        int ok = 0, failed = 0, skipped = 0;
+        for (Block b : results) {
+            if (STATUS_OK.equals(b.getStatus()))
+                ok++;
+            else if (STATUS_FAILED.equals(b.getStatus()))
+                failed++;
+            else
+                skipped++;
+            String msg = "Block '" + b.getName() + "': " + b.getStatus() + " (" + b.getDuration() + " ms)";
+            if (b.getError() != null)
+                msg += " " + b.getError().getMessage();
+            l.info(msg);
+        }
+        l.info("Parallel execution finished: " + ok + " succeeded, " + failed + " failed, " + skipped + " skipped.");
+        return failed + skipped;
+    }
+}
@@ -0,0 +1,496 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.processor;
+
+import com.gooddata.exception.InvalidParameterException;
+import com.gooddata.integration.rest.GdcRESTApiWrapper;
+import com.gooddata.integration.rest.GdcRESTApiWrapper.GdcUser;
+import com.gooddata.util.CSVReader;
+import com.gooddata.util.FileUtil;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Synchronizes the project users with a list of desired users. The current project users, the domain users
+ * and the roles are read once, only the difference is applied: the missing users are created in the domain,
+ * the users that aren't enabled in the project or have a different role are added in chunks and optionally
+ * the project users that aren't in the list are disabled. The updates run concurrently on a worker pool.
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+public class ProjectUserSync {
+
+    private static Logger l = Logger.getLogger(ProjectUserSync.class);
+
+    /**
+     * Default number of concurrent requests
+     */
+    public static final int DEFAULT_CONCURRENCY = 4;
+
+    /**
+     * The user management API. The sessions aren't shared between threads.
+     */
+    public interface UserSession {
+
+        /**
+         * @param projectId project ID
+         * @return all project users including the disabled ones
+         */
+        public List<GdcUser> getProjectUsers(String projectId);
+
+        /**
+         * @param domain the domain name
+         * @return the domain users by their login
+         */
+        public Map<String, GdcUser> getDomainUsers(String domain);
+
+        /**
+         * @param projectId project ID
+         * @param role      the role name or identifier
+         * @return the role uri or null if the project doesn't have the role
+         */
+        public String getRoleUri(String projectId, String role);
+
+        /**
+         * @param domain the domain name
+         * @param user   the new user
+         * @return the new user's uri
+         */
+        public String createUser(String domain, GdcUser user);
+
+        public void addUsersToProject(String projectId, List<String> uris, String roleUri);
+
+        public void disableUsersInProject(String projectId, List<String> uris);
+
+    }
+
+    /**
+     * The user session backed by the GoodData REST API
+     */
+    public static class RestUserSession implements UserSession {
+
+        private final GdcRESTApiWrapper restApi;
+
+        public RestUserSession(GdcRESTApiWrapper restApi) {
+            this.restApi = restApi;
+        }
+
+        public List<GdcUser> getProjectUsers(String projectId) {
+            return restApi.getProjectUsers(projectId, false);
+        }
+
+        public Map<String, GdcUser> getDomainUsers(String domain) {
+            return restApi.getUsers(domain);
+        }
+
+        public String getRoleUri(String projectId, String role) {
+            return restApi.getRoleUri(projectId, role);
+        }
+
+        public String createUser(String domain, GdcUser user) {
+            return restApi.createUser(domain, user);
+        }
+
+        public void addUsersToProject(String projectId, List<String> uris, String roleUri) {
+            restApi.addUsersToProjectWithRoleUri(projectId, uris, roleUri);
+        }
+
+        public void disableUsersInProject(String projectId, List<String> uris) {
+            restApi.disableUsersInProject(projectId, uris);
+        }
+    }
+
+    /**
+     * A desired project user
+     */
+    public static class Entry {
+
+        private final GdcUser user;
+        private final String role;
+
+        public Entry(GdcUser user, String role) {
+            this.user = user;
+            this.role = role;
+        }
+
+        public GdcUser getUser() {
+            return user;
+        }
+
+        public String getRole() {
+            return role;
+        }
+    }
+
+    /**
+     * The synchronization summary
+     */
+    public static class Result {
+
+        private int created;
+        private int added;
+        private int disabled;
+        private int unchanged;
+        private final List<String> errors = Collections.synchronizedList(new ArrayList<String>());
+
+        public int getCreated() {
+            return created;
+        }
+
+        /**
+         * @return number of users added to the project or with a changed role
+         */
+        public int getAdded() {
+            return added;
+        }
+
+        public int getDisabled() {
+            return disabled;
+        }
+
+        public int getUnchanged() {
+            return unchanged;
+        }
+
+        public List<String> getErrors() {
+            return errors;
+        }
+
+        public String toString() {
+            return created + " users created, " + added + " added or updated, " + disabled + " disabled, "
+                    + unchanged + " unchanged, " + errors.size() + " failed";
+        }
+    }
+
+    private final int chunkSize;
+    private final boolean disableMissing;
+
+    /**
+     * Constructor
+     *
+     * @param chunkSize      max number of users in a single project update
+     * @param disableMissing disable the project users that aren't in the desired list
+     */
+    public ProjectUserSync(int chunkSize, boolean disableMissing) {
+        if (chunkSize < 1)
+            throw new InvalidParameterException("SyncProjectUsers: The chunk size must be a positive number.");
+        this.chunkSize = chunkSize;
+        this.disableMissing = disableMissing;
+    }
+
+    /**
+     * Synchronizes the project users
+     *
+     * @param projectId project ID
+     * @param domain    the domain where the missing users are created, null if the users aren't created
+     * @param entries   the desired project users
+     * @param main      the session that reads the current state from the calling thread before the workers start
+     * @param sessions  worker sessions, one per worker thread
+     * @return the summary
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public Result sync(String projectId, String domain, List<Entry> entries, UserSession main,
+                       List<? extends UserSession> sessions) throws InterruptedException {
+        if (sessions.isEmpty())
+            throw new InvalidParameterException("SyncProjectUsers: No user sessions.");
+        final Result result = new Result();
+
+        Map<String, GdcUser> projectUsers = new HashMap<String, GdcUser>();
+        for (GdcUser u : main.getProjectUsers(projectId))
+            projectUsers.put(u.getLogin().toLowerCase(), u);
+        Map<String, String> roleUris = new HashMap<String, String>();
+        for (Entry e : entries) {
+            if (e.getRole() != null && !roleUris.containsKey(e.getRole())) {
+                String uri = main.getRoleUri(projectId, e.getRole());
+                if (uri == null)
+                    throw new InvalidParameterException("SyncProjectUsers: The project " + projectId
+                            + " doesn't have the role " + e.getRole());
+                roleUris.put(e.getRole(), uri);
+            }
+        }
+
+        // role uri -> user uris to add
+        final Map<String, List<String>> additions = new LinkedHashMap<String, List<String>>();
+        List<Entry> creations = new ArrayList<Entry>();
+        Map<String, GdcUser> domainUsers = null;
+        Set<String> desired = new HashSet<String>();
+        for (Entry e : entries) {
+            String login = e.getUser().getLogin().toLowerCase();
+            if (!desired.add(login)) {
+                l.debug("Skipping the duplicate user " + e.getUser().getLogin());
+                continue;
+            }
+            String roleUri = roleUris.get(e.getRole());
+            GdcUser current = projectUsers.get(login);
+            if (current != null && "ENABLED".equalsIgnoreCase(current.getStatus()) && (roleUri == null
+                    || (current.getRoles() != null && current.getRoles().contains(roleUri)))) {
+                result.unchanged++;
+                continue;
+            }
+            String uri = (current != null) ? (current.getUri()) : (null);
+            if (uri == null && domain != null) {
+                if (domainUsers == null) {
+                    domainUsers = new HashMap<String, GdcUser>();
+                    for (GdcUser u : main.getDomainUsers(domain).values())
+                        domainUsers.put(u.getLogin().toLowerCase(), u);
+                }
+                GdcUser u = domainUsers.get(login);
+                if (u != null)
+                    uri = u.getUri();
+            }
+            if (uri != null) {
+                addition(additions, roleUri).add(uri);
+            } else if (domain != null) {
+                creations.add(e);
+            } else {
+                result.errors.add("The user " + e.getUser().getLogin() + " isn't a project user.");
+            }
+        }
+        List<String> disabling = new ArrayList<String>();
+        if (disableMissing) {
+            for (Map.Entry<String, GdcUser> u : projectUsers.entrySet()) {
+                if (!desired.contains(u.getKey()) && "ENABLED".equalsIgnoreCase(u.getValue().getStatus()))
+                    disabling.add(u.getValue().getUri());
+            }
+        }
+        int adding = 0;
+        for (List<String> uris : additions.values())
+            adding += uris.size();
+        l.info("Synchronizing project " + projectId + " users: " + creations.size() + " to create, " + adding
+                + " to add, " + disabling.size() + " to disable, " + result.unchanged + " unchanged.");
+
+        final BlockingQueue<UserSession> idle = new LinkedBlockingQueue<UserSession>(sessions);
+        ExecutorService pool = Executors.newFixedThreadPool(sessions.size());
+        try {
+            // the new users are added once they are created
+            List<Future<String>> created = new ArrayList<Future<String>>(creations.size());
+            for (Entry e : creations)
+                created.add(pool.submit(createCreateTask(domain, e, idle, result)));
+            for (int i = 0; i < creations.size(); i++) {
+                String uri = get(created.get(i));
+                if (uri != null) {
+                    result.created++;
+                    addition(additions, roleUris.get(creations.get(i).getRole())).add(uri);
+                }
+            }
+
+            List<Future<Integer>> updates = new ArrayList<Future<Integer>>();
+            for (Map.Entry<String, List<String>> a : additions.entrySet()) {
+                List<String> uris = a.getValue();
+                for (int i = 0; i < uris.size(); i += chunkSize) {
+                    updates.add(pool.submit(createUpdateTask(projectId, a.getKey(),
+                            uris.subList(i, Math.min(uris.size(), i + chunkSize)), idle, result)));
+                }
+            }
+            for (Future<Integer> f : updates) {
+                Integer n = get(f);
+                if (n != null)
+                    result.added += n;
+            }
+
+            updates.clear();
+            for (int i = 0; i < disabling.size(); i += chunkSize) {
+                updates.add(pool.submit(createDisableTask(projectId,
+                        disabling.subList(i, Math.min(disabling.size(), i + chunkSize)), idle, result)));
+            }
+            for (Future<Integer> f : updates) {
+                Integer n = get(f);
+                if (n != null)
+                    result.disabled += n;
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return result;
+    }
+
+    private static List<String> addition(Map<String, List<String>> additions, String roleUri) {
+        List<String> uris = additions.get(roleUri);
+        if (uris == null) {
+            uris = new ArrayList<String>();
+            additions.put(roleUri, uris);
+        }
+        return uris;
+    }
+
+    private static <T> T get(Future<T> f) throws InterruptedException {
+        try {
+            return f.get();
+        } catch (ExecutionException e) {
+            // the tasks record their failures
+            return null;
+        }
+    }
+
+    /**
+     * Creates the task that creates a user in the domain
+     *
+     * @return the task that returns the new user's uri or null if the user can't be created
+     */
+    private Callable<String> createCreateTask(final String domain, final Entry e,
+                                              final BlockingQueue<UserSession> idle, final Result result) {
+        return new Callable<String>() {
+            public String call() throws Exception {
+                UserSession s = idle.take();
+                try {
+                    GdcUser u = e.getUser();
+                    if (u.getVerifyPassword() == null)
+                        u.setVerifyPassword(u.getPassword());
+                    String uri = s.createUser(domain, u);
+                    l.info("User " + u.getLogin() + " created. User URI: " + uri);
+                    return uri;
+                } catch (RuntimeException ex) {
+                    l.debug("Can't create user " + e.getUser().getLogin(), ex);
+                    result.errors.add("Can't create user " + e.getUser().getLogin() + ": " + ex.getMessage());
+                    return null;
+                } finally {
+                    idle.add(s);
+                }
+            }
+        };
+    }
+
+    /**
+     * Creates the task that adds a chunk of users to the project
+     *
+     * @return the task that returns the number of added users or null if the users can't be added
+     */
+    private Callable<Integer> createUpdateTask(final String projectId, final String roleUri, final List<String> uris,
+                                               final BlockingQueue<UserSession> idle, final Result result) {
+        return new Callable<Integer>() {
+            public Integer call() throws Exception {
+                UserSession s = idle.take();
+                try {
+                    s.addUsersToProject(projectId, uris, roleUri);
+                    l.debug("Added " + uris.size() + " users to project " + projectId + " with role " + roleUri);
+                    return uris.size();
+                } catch (RuntimeException ex) {
+                    l.debug("Can't add users " + uris + " to project " + projectId, ex);
+                    result.errors.add("Can't add users " + uris + ": " + ex.getMessage());
+                    return null;
+                } finally {
+                    idle.add(s);
+                }
+            }
+        };
+    }
+
+    /**
+     * Creates the task that disables a chunk of users in the project
+     *
+     * @return the task that returns the number of disabled users or null if the users can't be disabled
+     */
+    private Callable<Integer> createDisableTask(final String projectId, final List<String> uris,
+                                                final BlockingQueue<UserSession> idle, final Result result) {
+        return new Callable<Integer>() {
+            public Integer call() throws Exception {
+                UserSession s = idle.take();
+                try {
+                    s.disableUsersInProject(projectId, uris);
+                    l.debug("Disabled " + uris.size() + " users in project " + projectId);
+                    return uris.size();
+                } catch (RuntimeException ex) {
+                    l.debug("Can't disable users " + uris + " in project " + projectId, ex);
+                    result.errors.add("Can't disable users " + uris + ": " + ex.getMessage());
+                    return null;
+                } finally {
+                    idle.add(s);
+                }
+            }
+        };
+    }
+
+    /**
+     * Reads the desired users from a CSV file with a header. The login column is mandatory, the role, firstName,
+     * lastName, password, email, company, position, country, phone and ssoProvider columns are optional.
+     *
+     * @param fileName    the CSV file
+     * @param defaultRole the role of the users without the role column value, may be null
+     * @return the desired users
+     * @throws IOException if the file can't be read
+     */
+    public static List<Entry> readCsv(String fileName, String defaultRole) throws IOException {
+        CSVReader r = FileUtil.createUtf8CsvReader(new File(fileName));
+        try {
+            String[] header = r.readNext();
+            if (header == null)
+                throw new InvalidParameterException("SyncProjectUsers: The users file " + fileName + " is empty.");
+            Map<String, Integer> columns = new HashMap<String, Integer>();
+            for (int i = 0; i < header.length; i++)
+                columns.put(header[i].trim().toLowerCase(), i);
+            if (!columns.containsKey("login"))
+                throw new InvalidParameterException("SyncProjectUsers: The users file " + fileName
+                        + " doesn't have the login column.");
+            List<Entry> entries = new ArrayList<Entry>();
+            for (String[] row = r.readNext(); row != null; row = r.readNext()) {
+                String login = value(row, columns, "login");
+                if (login == null)
+                    continue;
+                GdcUser u = new GdcUser();
+                u.setLogin(login);
+                u.setFirstName(value(row, columns, "firstname"));
+                u.setLastName(value(row, columns, "lastname"));
+                u.setPassword(value(row, columns, "password"));
+                u.setVerifyPassword(u.getPassword());
+                u.setEmail(value(row, columns, "email"));
+                u.setCompanyName(value(row, columns, "company"));
+                u.setPosition(value(row, columns, "position"));
+                u.setCountry(value(row, columns, "country"));
+                u.setPhoneNumber(value(row, columns, "phone"));
+                u.setSsoProvider(value(row, columns, "ssoprovider"));
+                String role = value(row, columns, "role");
+                entries.add(new Entry(u, (role != null) ? (role) : (defaultRole)));
+            }
+            return entries;
+        } finally {
+            r.close();
+        }
+    }
+
+    private static String value(String[] row, Map<String, Integer> columns, String name) {
+        Integer i = columns.get(name);
+        if (i == null || i >= row.length)
+            return null;
+        String v = row[i].trim();
+        return (v.length() > 0) ? (v) : (null);
+    }
+}
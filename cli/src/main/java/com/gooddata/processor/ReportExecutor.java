@@ -0,0 +1,407 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.processor;
+
+import com.gooddata.Constants;
+import com.gooddata.exception.InvalidParameterException;
+import com.gooddata.integration.rest.GdcRESTApiWrapper;
+import net.sf.json.JSONObject;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executes a batch of reports on a bounded worker pool. At most <tt>concurrency</tt> reports are in flight
+ * (executing, being computed or exported) at the same time. The data results of the executed reports are
+ * polled from the calling thread in shared rounds instead of every worker waiting for its own report.
+ * The computed results can be exported.
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+public class ReportExecutor {
+
+    private static Logger l = Logger.getLogger(ReportExecutor.class);
+
+    /**
+     * Default number of reports in flight
+     */
+    public static final int DEFAULT_CONCURRENCY = 1;
+
+    public static final String STATUS_OK = "OK";
+    public static final String STATUS_FAILED = "FAILED";
+
+    /**
+     * The report execution API. The sessions aren't shared between threads.
+     */
+    public interface ReportSession {
+
+        /**
+         * Executes the report
+         *
+         * @param reportUri report uri
+         * @return the execution result including the "execResult" root key
+         */
+        public JSONObject executeReport(String reportUri);
+
+        /**
+         * Checks whether the report data result has been computed
+         *
+         * @param dataResultUri the data result uri
+         * @return true if the data result is ready
+         */
+        public boolean isReportResultReady(String dataResultUri);
+
+        /**
+         * Exports the computed report result
+         *
+         * @param execResult the execution result returned by {@link #executeReport(String)}
+         * @param format     export format (pdf | xls | png | csv)
+         * @return the exported report
+         */
+        public byte[] exportReportResult(JSONObject execResult, String format);
+
+    }
+
+    /**
+     * The report session backed by the GoodData REST API
+     */
+    public static class RestReportSession implements ReportSession {
+
+        private final GdcRESTApiWrapper restApi;
+
+        public RestReportSession(GdcRESTApiWrapper restApi) {
+            this.restApi = restApi;
+        }
+
+        public JSONObject executeReport(String reportUri) {
+            return restApi.executeReport(reportUri);
+        }
+
+        public boolean isReportResultReady(String dataResultUri) {
+            return restApi.isReportResultReady(dataResultUri);
+        }
+
+        public byte[] exportReportResult(JSONObject execResult, String format) {
+            return restApi.exportReportResult(execResult, format);
+        }
+    }
+
+    /**
+     * A single report execution and its result
+     */
+    public static class Report {
+
+        private final String uri;
+        private String status;
+        private long start;
+        private long latency;
+        private Throwable error;
+        private JSONObject execResult;
+        private String dataResult;
+
+        public Report(String uri) {
+            this.uri = uri;
+        }
+
+        public String getUri() {
+            return uri;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        /**
+         * @return the time from the start of the execution to the computed (or exported) result in ms
+         */
+        public long getLatency() {
+            return latency;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+
+        public String getDataResult() {
+            return dataResult;
+        }
+
+        private void finish(String status, Throwable error) {
+            this.latency = System.currentTimeMillis() - start;
+            this.error = error;
+            this.status = status;
+            if (error == null) {
+                l.info("Report " + uri + " execution finished in " + latency + " ms: " + dataResult);
+            } else {
+                l.debug("The report uri=" + uri + " can't be computed!", error);
+                l.info("The report uri=" + uri + " can't be computed!");
+            }
+        }
+    }
+
+    private final int concurrency;
+    private final boolean waitForResults;
+    private final String exportFormat;
+    private final File exportDir;
+    private long pollInterval = Constants.POLL_INTERVAL;
+
+    /**
+     * Constructor
+     *
+     * @param concurrency    max number of reports in flight
+     * @param waitForResults wait until the report data results are computed
+     * @param exportFormat   export format (pdf | xls | png | csv), null if the results aren't exported
+     * @param exportDir      the directory where the exported results are stored
+     */
+    public ReportExecutor(int concurrency, boolean waitForResults, String exportFormat, File exportDir) {
+        if (concurrency < 1)
+            throw new InvalidParameterException("ExecuteReports: The concurrency must be a positive number.");
+        if (exportFormat != null && exportDir == null)
+            throw new InvalidParameterException("ExecuteReports: The export directory must be specified.");
+        this.concurrency = concurrency;
+        this.waitForResults = waitForResults;
+        this.exportFormat = exportFormat;
+        this.exportDir = exportDir;
+    }
+
+    /**
+     * @return true if the execution needs a separate session polling the data results
+     */
+    public boolean isPolling() {
+        return waitForResults || exportFormat != null;
+    }
+
+    public int getConcurrency() {
+        return concurrency;
+    }
+
+    public void setPollInterval(long pollInterval) {
+        this.pollInterval = pollInterval;
+    }
+
+    /**
+     * Executes the reports. Returns once all reports finished or failed.
+     *
+     * @param uris     report uris
+     * @param poller   the session that polls the data results, used from the calling thread only
+     * @param sessions worker sessions, one per worker thread
+     * @return the reports with their results in the order of the uris
+     * @throws InterruptedException if the calling thread is interrupted
+     */
+    public List<Report> execute(List<String> uris, ReportSession poller, List<? extends ReportSession> sessions)
+            throws InterruptedException {
+        if (sessions.isEmpty())
+            throw new InvalidParameterException("ExecuteReports: No report sessions.");
+        if (exportFormat != null && !exportDir.isDirectory() && !exportDir.mkdirs())
+            throw new InvalidParameterException("ExecuteReports: Can't create the export directory " + exportDir);
+        List<Report> reports = new ArrayList<Report>(uris.size());
+        for (String uri : uris)
+            reports.add(new Report(uri));
+        final BlockingQueue<ReportSession> idle = new LinkedBlockingQueue<ReportSession>(sessions);
+        // reports handed back by the workers, either finished or waiting for the data result
+        final BlockingQueue<Report> events = new LinkedBlockingQueue<Report>();
+        final List<Report> computing = new ArrayList<Report>();
+        ExecutorService pool = Executors.newFixedThreadPool(sessions.size());
+        int next = 0, inFlight = 0;
+        long nextPoll = 0;
+        try {
+            while (next < reports.size() || inFlight > 0) {
+                while (next < reports.size() && inFlight < concurrency) {
+                    pool.execute(createExecuteTask(reports.get(next++), idle, events));
+                    inFlight++;
+                }
+                long timeout = (computing.isEmpty()) ? (pollInterval) :
+                        (Math.max(0, nextPoll - System.currentTimeMillis()));
+                Report r = events.poll(timeout, TimeUnit.MILLISECONDS);
+                while (r != null) {
+                    if (r.getStatus() != null)
+                        inFlight--;
+                    else
+                        computing.add(r);
+                    r = events.poll();
+                }
+                if (!computing.isEmpty() && System.currentTimeMillis() >= nextPoll) {
+                    l.debug("Polling " + computing.size() + " report results.");
+                    for (Iterator<Report> i = computing.iterator(); i.hasNext();) {
+                        Report c = i.next();
+                        try {
+                            if (poller.isReportResultReady(c.dataResult)) {
+                                i.remove();
+                                if (exportFormat != null) {
+                                    pool.execute(createExportTask(c, idle, events));
+                                } else {
+                                    c.finish(STATUS_OK, null);
+                                    inFlight--;
+                                }
+                            }
+                        } catch (RuntimeException e) {
+                            i.remove();
+                            c.finish(STATUS_FAILED, e);
+                            inFlight--;
+                        }
+                    }
+                    nextPoll = System.currentTimeMillis() + pollInterval;
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+        return reports;
+    }
+
+    /**
+     * Creates the task that executes the report
+     *
+     * @param r      report
+     * @param idle   idle sessions
+     * @param events the queue for the executed reports
+     * @return the task
+     */
+    private Runnable createExecuteTask(final Report r, final BlockingQueue<ReportSession> idle,
+                                       final BlockingQueue<Report> events) {
+        return new Runnable() {
+            public void run() {
+                ReportSession s = null;
+                try {
+                    s = idle.take();
+                    l.info("Executing report uri=" + r.uri);
+                    r.start = System.currentTimeMillis();
+                    r.execResult = s.executeReport(r.uri);
+                    r.dataResult = r.execResult.getJSONObject("execResult").getString("dataResult");
+                    if (!isPolling())
+                        r.finish(STATUS_OK, null);
+                } catch (Throwable e) {
+                    r.finish(STATUS_FAILED, e);
+                } finally {
+                    if (s != null)
+                        idle.add(s);
+                    events.add(r);
+                }
+            }
+        };
+    }
+
+    /**
+     * Creates the task that exports the computed report result
+     *
+     * @param r      report
+     * @param idle   idle sessions
+     * @param events the queue for the exported reports
+     * @return the task
+     */
+    private Runnable createExportTask(final Report r, final BlockingQueue<ReportSession> idle,
+                                      final BlockingQueue<Report> events) {
+        return new Runnable() {
+            public void run() {
+                ReportSession s = null;
+                try {
+                    s = idle.take();
+                    l.debug("Exporting report uri=" + r.uri);
+                    byte[] data = s.exportReportResult(r.execResult, exportFormat);
+                    File f = new File(exportDir, getExportFileName(r.uri));
+                    OutputStream os = new FileOutputStream(f);
+                    try {
+                        os.write(data);
+                    } finally {
+                        os.close();
+                    }
+                    r.finish(STATUS_OK, null);
+                } catch (Throwable e) {
+                    r.finish(STATUS_FAILED, e);
+                } finally {
+                    if (s != null)
+                        idle.add(s);
+                    events.add(r);
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the file name of the exported report (the report object id and the export format)
+     *
+     * @param uri report uri
+     * @return the file name
+     */
+    protected String getExportFileName(String uri) {
+        String id = uri;
+        while (id.endsWith("/"))
+            id = id.substring(0, id.length() - 1);
+        return id.substring(id.lastIndexOf('/') + 1) + "." + exportFormat;
+    }
+
+    /**
+     * Logs the aggregated results and the latency summary of the executed reports
+     *
+     * @param reports executed reports
+     * @return number of reports that have failed
+     */
+    public static int report(List<Report> reports) {
+        int failed = 0;
+        long[] latencies = new long[reports.size()];
+        int n = 0;
+        for (Report r : reports) {
+            if (STATUS_OK.equals(r.getStatus()))
+                latencies[n++] = r.getLatency();
+            else
+                failed++;
+        }
+        l.info("Executed " + reports.size() + " reports: " + n + " succeeded, " + failed + " failed.");
+        if (n > 0) {
+            Arrays.sort(latencies, 0, n);
+            long[] sorted = latencies;
+            if (n < latencies.length) {
+                sorted = new long[n];
+                System.arraycopy(latencies, 0, sorted, 0, n);
+            }
+            l.info("Report latency p50=" + percentile(sorted, 50) + " ms, p95=" + percentile(sorted, 95) +
+                    " ms, max=" + sorted[n - 1] + " ms.");
+        }
+        return failed;
+    }
+
+    /**
+     * Nearest-rank percentile
+     *
+     * @param sorted sorted values
+     * @param p      percentile (0-100]
+     * @return the percentile value
+     */
+    static long percentile(long[] sorted, int p) {
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(rank, 1) - 1];
+    }
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.processor;
+
+import com.gooddata.util.FileUtil;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Consumes the scripts dropped to a queue directory (e.g. the IN_QUEUE directory written by the web interface)
+ * and executes them on a {@link ScriptWorkerPool}. The directory is polled, a script is claimed by renaming it
+ * to the consumer's own subdirectory of <code>processing</code> (only one consumer succeeds even if several
+ * processes share the directory) and moved to <code>done</code> or <code>failed</code> when it finishes. The error
+ * message of a failed script is stored next to it in a <code>.error</code> file.
+ *
+ * The consumer subdirectory is named by the host and the process id and contains a heartbeat file touched on every
+ * poll. The claims of a consumer that stopped updating its heartbeat (e.g. it was killed) are moved to
+ * <code>failed</code> by the other consumers or by the next run, the claims of the running consumers are left alone.
+ *
+ * Files starting with a dot or ending with <code>.tmp</code> are ignored, so producers should write the script
+ * under such name and rename it when complete.
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+public class ScriptQueueWorker implements Runnable {
+
+    private static Logger l = Logger.getLogger(ScriptQueueWorker.class);
+
+    public static final String PROCESSING_DIR = "processing";
+    public static final String DONE_DIR = "done";
+    public static final String FAILED_DIR = "failed";
+
+    public static final long DEFAULT_POLL_INTERVAL = 1000;
+    public static final long DEFAULT_STALE_TIMEOUT = 5 * 60000;
+    private static final String HEARTBEAT = ".heartbeat";
+    private static final long STATISTICS_INTERVAL = 60000;
+
+    private final ScriptWorkerPool workers;
+    private final File queue;
+    private final File processing;
+    private final File claims;
+    private final File done;
+    private final File failed;
+    private final int maxInFlight;
+    private long pollInterval = DEFAULT_POLL_INTERVAL;
+    private long staleTimeout = DEFAULT_STALE_TIMEOUT;
+    private volatile boolean running = true;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private volatile int queueDepth = 0;
+
+    private static final FileFilter SCRIPTS = new FileFilter() {
+        public boolean accept(File f) {
+            return f.isFile() && !f.getName().startsWith(".") && !f.getName().endsWith(".tmp");
+        }
+    };
+
+    /**
+     * Creates the queue worker
+     *
+     * @param workers     the pool that executes the scripts
+     * @param queue       the queue directory
+     * @param maxInFlight max number of claimed scripts that haven't finished yet
+     * @throws IOException if the queue directories can't be created
+     */
+    public ScriptQueueWorker(ScriptWorkerPool workers, File queue, int maxInFlight) throws IOException {
+        this(workers, queue, maxInFlight, getOwner());
+    }
+
+    /**
+     * Creates the queue worker
+     *
+     * @param workers     the pool that executes the scripts
+     * @param queue       the queue directory
+     * @param maxInFlight max number of claimed scripts that haven't finished yet
+     * @param owner       unique name of this consumer
+     * @throws IOException if the queue directories can't be created
+     */
+    ScriptQueueWorker(ScriptWorkerPool workers, File queue, int maxInFlight, String owner) throws IOException {
+        this.workers = workers;
+        this.queue = queue;
+        this.maxInFlight = maxInFlight;
+        processing = mkdir(queue, PROCESSING_DIR);
+        claims = new File(processing, owner);
+        done = mkdir(queue, DONE_DIR);
+        failed = mkdir(queue, FAILED_DIR);
+    }
+
+    /**
+     * Returns the name of this process in the host-pid form usable as a file name
+     *
+     * @return the consumer name
+     */
+    private static String getOwner() {
+        // the JVM name is pid@host
+        String name = ManagementFactory.getRuntimeMXBean().getName();
+        int at = name.indexOf('@');
+        if (at > 0)
+            name = name.substring(at + 1) + "-" + name.substring(0, at);
+        return name.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    private static File mkdir(File parent, String name) throws IOException {
+        File dir = new File(parent, name);
+        if (!dir.isDirectory() && !dir.mkdirs())
+            throw new IOException("Can't create the queue directory " + dir.getAbsolutePath());
+        return dir;
+    }
+
+    /**
+     * Polls the queue until {@link #stop()} is called
+     */
+    public void run() {
+        recover(true);
+        l.info("Consuming scripts from " + queue.getAbsolutePath() + ".");
+        long lastStatistics = System.currentTimeMillis();
+        while (running) {
+            try {
+                poll();
+                if (System.currentTimeMillis() - lastStatistics > STATISTICS_INTERVAL) {
+                    recover(false);
+                    logStatistics();
+                    lastStatistics = System.currentTimeMillis();
+                }
+                Thread.sleep(pollInterval);
+            }
+            catch (InterruptedException e) {
+                break;
+            }
+        }
+        logStatistics();
+    }
+
+    /**
+     * Stops polling the queue, the claimed scripts are finished by the pool
+     */
+    public void stop() {
+        running = false;
+    }
+
+    /**
+     * Claims and submits the waiting scripts, oldest first
+     */
+    void poll() {
+        heartbeat();
+        File[] scripts = queue.listFiles(SCRIPTS);
+        if (scripts == null) {
+            l.warn("Can't list the queue directory " + queue.getAbsolutePath());
+            return;
+        }
+        queueDepth = scripts.length;
+        Arrays.sort(scripts, new Comparator<File>() {
+            public int compare(File a, File b) {
+                long d = a.lastModified() - b.lastModified();
+                return (d < 0) ? -1 : ((d > 0) ? 1 : a.getName().compareTo(b.getName()));
+            }
+        });
+        for (File script : scripts) {
+            if (inFlight.get() >= maxInFlight)
+                break;
+            final File claim = new File(claims, script.getName());
+            if (!script.renameTo(claim)) {
+                // claimed by another consumer
+                continue;
+            }
+            queueDepth--;
+            claimed.incrementAndGet();
+            String content;
+            try {
+                content = FileUtil.readStringFromFile(claim.getAbsolutePath());
+            }
+            catch (IOException e) {
+                l.error("Can't read the script " + claim.getAbsolutePath() + ": " + e.getMessage());
+                failures.incrementAndGet();
+                finish(claim, failed, e.getMessage());
+                continue;
+            }
+            inFlight.incrementAndGet();
+            workers.submit(script.getName(), content, new ScriptWorkerPool.JobListener() {
+                public void finished(ScriptWorkerPool.Job job) {
+                    inFlight.decrementAndGet();
+                    if (job.isSuccessful()) {
+                        succeeded.incrementAndGet();
+                        finish(claim, done, null);
+                    } else {
+                        failures.incrementAndGet();
+                        finish(claim, failed, String.valueOf(job.getError().getMessage()));
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Touches the heartbeat file of this consumer, so the other consumers don't recover its claims
+     */
+    private void heartbeat() {
+        File heartbeat = new File(claims, HEARTBEAT);
+        try {
+            if ((!claims.isDirectory() && !claims.mkdirs()) ||
+                    (!heartbeat.createNewFile() && !heartbeat.setLastModified(System.currentTimeMillis())))
+                l.warn("Can't update the heartbeat " + heartbeat.getAbsolutePath());
+        }
+        catch (IOException e) {
+            l.warn("Can't update the heartbeat " + heartbeat.getAbsolutePath() + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Moves the scripts claimed by an interrupted run of this consumer or by the consumers with a stale heartbeat
+     * to the failed directory. They may have been partially executed, so they aren't retried.
+     *
+     * @param own true to recover the claims of this consumer's previous run
+     */
+    void recover(boolean own) {
+        File[] owners = processing.listFiles();
+        if (owners == null)
+            return;
+        for (File owner : owners) {
+            if (!owner.isDirectory())
+                continue;
+            boolean mine = owner.equals(claims);
+            if (mine ? !own : !isStale(owner))
+                continue;
+            File[] scripts = owner.listFiles(SCRIPTS);
+            if (scripts != null) {
+                for (File script : scripts) {
+                    l.warn("Script " + script.getName() + " claimed by " + owner.getName() + " was interrupted.");
+                    finish(script, failed, "Interrupted by a previous run.");
+                }
+            }
+            if (!mine)
+                FileUtil.recursiveDelete(owner);
+        }
+    }
+
+    private boolean isStale(File owner) {
+        File heartbeat = new File(owner, HEARTBEAT);
+        long lastModified = heartbeat.exists() ? heartbeat.lastModified() : owner.lastModified();
+        return System.currentTimeMillis() - lastModified > staleTimeout;
+    }
+
+    private void finish(File script, File target, String error) {
+        File moved = new File(target, script.getName());
+        if (moved.exists() && !moved.delete())
+            l.warn("Can't replace " + moved.getAbsolutePath());
+        if (!script.renameTo(moved)) {
+            l.error("Can't move " + script.getAbsolutePath() + " to " + target.getAbsolutePath());
+            return;
+        }
+        if (error != null) {
+            try {
+                FileUtil.writeStringToFile(error, moved.getAbsolutePath() + ".error");
+            }
+            catch (IOException e) {
+                l.warn("Can't store the error of " + moved.getName() + ": " + e.getMessage());
+            }
+        }
+    }
+
+    public void setPollInterval(long pollInterval) {
+        this.pollInterval = pollInterval;
+    }
+
+    /**
+     * Sets the time after which the claims of a consumer that doesn't update its heartbeat are recovered
+     *
+     * @param staleTimeout the timeout in milliseconds, must be much longer than the poll interval
+     */
+    public void setStaleTimeout(long staleTimeout) {
+        this.staleTimeout = staleTimeout;
+    }
+
+    /**
+     * @return number of scripts waiting in the queue directory at the last poll
+     */
+    public int getQueueDepth() {
+        return queueDepth;
+    }
+
+    /**
+     * @return number of claimed scripts that haven't finished yet
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public long getClaimed() {
+        return claimed.get();
+    }
+
+    public long getSucceeded() {
+        return succeeded.get();
+    }
+
+    public long getFailed() {
+        return failures.get();
+    }
+
+    /**
+     * Logs the queue counters
+     */
+    public void logStatistics() {
+        l.info("Queue " + queue.getName() + ": waiting=" + getQueueDepth() + ", in flight=" + getInFlight() +
+                ", claimed=" + getClaimed() + ", done=" + getSucceeded() + ", failed=" + getFailed());
+        workers.logStatistics();
+    }
+}
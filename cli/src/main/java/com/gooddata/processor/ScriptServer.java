@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.processor;
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Accepts GoodData CL scripts on a local TCP port and runs them on a {@link ScriptWorkerPool}. A client sends
+ * the shared token on the first line, then the script text followed by a line with a single dot (or closes its
+ * output) and receives one status line:
+ *
+ * <pre>
+ * OK job=12 time=5321
+ * FAILED job=13 time=211 error=...
+ * </pre>
+ *
+ * The scripts run with the GoodData credentials of the daemon. The server listens on the loopback interface only,
+ * but any local user can connect to it, so the clients must prove they are trusted by sending the token. The token
+ * is read from a file that should be readable by the daemon user and the trusted clients only. A connection with
+ * a wrong token gets <code>FAILED error=Unauthorized</code> and its script isn't executed.
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+public class ScriptServer {
+
+    private static Logger l = Logger.getLogger(ScriptServer.class);
+
+    public static final String END_OF_SCRIPT = ".";
+    public static final String UNAUTHORIZED = ScriptWorkerPool.STATUS_FAILED + " error=Unauthorized";
+
+    private final ScriptWorkerPool workers;
+    private final int port;
+    private final String token;
+    private final ExecutorService connections = Executors.newCachedThreadPool();
+    private volatile ServerSocket server;
+    private volatile boolean running = true;
+
+    /**
+     * Creates the server
+     *
+     * @param workers the pool that executes the scripts
+     * @param port    local TCP port
+     * @param token   the secret the clients must send before the script
+     */
+    public ScriptServer(ScriptWorkerPool workers, int port, String token) {
+        if (token == null || token.length() == 0)
+            throw new IllegalArgumentException("The daemon token must not be empty.");
+        this.workers = workers;
+        this.port = port;
+        this.token = token;
+    }
+
+    /**
+     * Accepts the connections until {@link #stop()} is called
+     *
+     * @throws IOException if the port can't be opened
+     */
+    public void serve() throws IOException {
+        server = new ServerSocket(port, 50, InetAddress.getByName(null));
+        l.info("Listening for scripts on port " + port + ".");
+        try {
+            while (running) {
+                final Socket socket;
+                try {
+                    socket = server.accept();
+                }
+                catch (SocketException e) {
+                    if (!running)
+                        break;
+                    throw e;
+                }
+                connections.execute(new Runnable() {
+                    public void run() {
+                        handle(socket);
+                    }
+                });
+            }
+        }
+        finally {
+            connections.shutdown();
+            if (!server.isClosed())
+                server.close();
+        }
+    }
+
+    /**
+     * Stops accepting new connections
+     */
+    public void stop() {
+        running = false;
+        try {
+            if (server != null)
+                server.close();
+        }
+        catch (IOException e) {
+            l.debug("Error closing the server socket.", e);
+        }
+    }
+
+    private void handle(Socket socket) {
+        try {
+            try {
+                BufferedReader r = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+                Writer w = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+                String name = socket.getInetAddress().getHostAddress() + ":" + socket.getPort();
+                if (!isAuthorized(r.readLine())) {
+                    l.warn("Rejected a script from " + name + " with a wrong token.");
+                    w.write(UNAUTHORIZED + "\n");
+                    w.flush();
+                    return;
+                }
+                StringBuilder script = new StringBuilder();
+                String line;
+                while ((line = r.readLine()) != null && !END_OF_SCRIPT.equals(line.trim())) {
+                    script.append(line).append('\n');
+                }
+                ScriptWorkerPool.Job job = workers.submit(name, script.toString()).get();
+                if (job.isSuccessful()) {
+                    w.write(ScriptWorkerPool.STATUS_OK + " job=" + job.getId() + " time=" + job.getDuration() + "\n");
+                } else {
+                    w.write(ScriptWorkerPool.STATUS_FAILED + " job=" + job.getId() + " time=" + job.getDuration() +
+                            " error=" + job.getError().getMessage() + "\n");
+                }
+                w.flush();
+            }
+            finally {
+                socket.close();
+            }
+        }
+        catch (IOException e) {
+            l.warn("Error communicating with a client: " + e.getMessage());
+        }
+        catch (InterruptedException e) {
+            l.warn("Interrupted while waiting for a job.");
+        }
+        catch (ExecutionException e) {
+            l.error("Job execution error.", e.getCause());
+        }
+    }
+
+    /**
+     * Compares the client token in constant time, so the token can't be guessed from the response times
+     *
+     * @param candidate the line received from the client
+     * @return true if it matches the token
+     */
+    boolean isAuthorized(String candidate) {
+        if (candidate == null)
+            return false;
+        candidate = candidate.trim();
+        int diff = candidate.length() ^ token.length();
+        for (int i = 0; i < token.length(); i++) {
+            diff |= token.charAt(i) ^ ((i < candidate.length()) ? candidate.charAt(i) : 0);
+        }
+        return diff == 0;
+    }
+}
@@ -0,0 +1,281 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.processor;
+
+import com.gooddata.connector.Connector;
+import org.apache.log4j.Logger;
+import org.apache.log4j.MDC;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs GoodData CL scripts on a bounded pool of worker threads. Each worker keeps its connectors and
+ * its authenticated REST and data transfer sessions between the jobs, so a job doesn't pay for the connector
+ * initialization and the login. A worker drops its warm state after a failed job.
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+public class ScriptWorkerPool {
+
+    private static Logger l = Logger.getLogger(ScriptWorkerPool.class);
+
+    public static final int DEFAULT_WORKERS = 4;
+
+    public static final String STATUS_OK = "OK";
+    public static final String STATUS_FAILED = "FAILED";
+
+    private final GdcDI processor;
+    private final ExecutorService pool;
+    private final ThreadLocal<Worker> workers = new ThreadLocal<Worker>();
+    private final long started = System.currentTimeMillis();
+
+    private final AtomicLong submitted = new AtomicLong();
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong totalTime = new AtomicLong();
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+
+    /**
+     * Creates the pool
+     *
+     * @param processor the processor that executes the scripts
+     * @param size      number of worker threads
+     */
+    public ScriptWorkerPool(GdcDI processor, int size) {
+        if (size <= 0)
+            throw new IllegalArgumentException("The number of workers must be positive.");
+        this.processor = processor;
+        this.pool = Executors.newFixedThreadPool(size);
+    }
+
+    /**
+     * Queues a script for execution
+     *
+     * @param name   job name (used in the logs)
+     * @param script the script content
+     * @return the job future
+     */
+    public Future<Job> submit(String name, String script) {
+        return submit(name, script, null);
+    }
+
+    /**
+     * Queues a script for execution
+     *
+     * @param name     job name (used in the logs)
+     * @param script   the script content
+     * @param listener notified in the worker thread when the job finishes, can be null
+     * @return the job future
+     */
+    public Future<Job> submit(String name, String script, final JobListener listener) {
+        final Job job = new Job(submitted.incrementAndGet(), name, script);
+        waiting.incrementAndGet();
+        return pool.submit(new Callable<Job>() {
+            public Job call() {
+                try {
+                    run(job);
+                }
+                finally {
+                    if (listener != null)
+                        listener.finished(job);
+                }
+                return job;
+            }
+        });
+    }
+
+    private void run(Job job) {
+        waiting.decrementAndGet();
+        running.incrementAndGet();
+        MDC.put("GdcJob", job.getName());
+        long start = System.currentTimeMillis();
+        Worker w = workers.get();
+        try {
+            if (w == null) {
+                w = new Worker(processor.instantiateConnectors(), new ProcessingContext());
+                workers.set(w);
+            }
+            l.info("Job #" + job.getId() + " " + job.getName() + " started.");
+            processor.execute(job.getScript(), w.connectors, w.context);
+            job.status = STATUS_OK;
+            succeeded.incrementAndGet();
+        }
+        catch (Throwable e) {
+            // errors (e.g. a stack overflow in an expression) fail the job too, the worker is dropped below
+            job.status = STATUS_FAILED;
+            job.error = e;
+            failed.incrementAndGet();
+            l.error("Job #" + job.getId() + " " + job.getName() + " failed: " + e.getMessage());
+            l.debug("Job #" + job.getId() + " " + job.getName() + " failed.", e);
+            // the connectors or the sessions may be in an inconsistent state
+            workers.remove();
+            if (w != null)
+                w.context.close();
+        }
+        finally {
+            if (w != null)
+                w.context.reset();
+            job.duration = System.currentTimeMillis() - start;
+            totalTime.addAndGet(job.duration);
+            running.decrementAndGet();
+            l.info("Job #" + job.getId() + " " + job.getName() + " finished with status " + job.getStatus() +
+                    " in " + job.getDuration() + " ms.");
+            MDC.remove("GdcJob");
+        }
+    }
+
+    /**
+     * Stops accepting new jobs and waits for the queued ones
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void shutdown() throws InterruptedException {
+        pool.shutdown();
+        while (!pool.awaitTermination(10, TimeUnit.SECONDS)) {
+            l.info("Waiting for " + (getQueueDepth() + getRunning()) + " jobs to finish.");
+        }
+        logStatistics();
+    }
+
+    /**
+     * @return number of jobs waiting for a worker
+     */
+    public int getQueueDepth() {
+        return waiting.get();
+    }
+
+    /**
+     * @return number of jobs being executed
+     */
+    public int getRunning() {
+        return running.get();
+    }
+
+    /**
+     * @return number of successfully finished jobs
+     */
+    public long getSucceeded() {
+        return succeeded.get();
+    }
+
+    /**
+     * @return number of failed jobs
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return finished jobs per minute since the pool has been created
+     */
+    public double getThroughput() {
+        long elapsed = Math.max(1, System.currentTimeMillis() - started);
+        return (succeeded.get() + failed.get()) * 60000.0 / elapsed;
+    }
+
+    /**
+     * Logs the job counters
+     */
+    public void logStatistics() {
+        long finished = succeeded.get() + failed.get();
+        l.info("Jobs: submitted=" + submitted.get() + ", succeeded=" + succeeded.get() + ", failed=" + failed.get() +
+                ", queued=" + getQueueDepth() + ", running=" + getRunning() +
+                ", avg=" + ((finished > 0) ? totalTime.get() / finished : 0) + " ms" +
+                ", throughput=" + String.format("%.2f", getThroughput()) + " jobs/min");
+    }
+
+    /**
+     * Receives the finished jobs
+     */
+    public static interface JobListener {
+        public void finished(Job job);
+    }
+
+    /**
+     * Warm state of a worker thread
+     */
+    private static class Worker {
+        private final Connector[] connectors;
+        private final ProcessingContext context;
+
+        private Worker(Connector[] connectors, ProcessingContext context) {
+            this.connectors = connectors;
+            this.context = context;
+        }
+    }
+
+    /**
+     * A script execution
+     */
+    public static class Job {
+        private final long id;
+        private final String name;
+        private final String script;
+        private volatile String status;
+        private volatile long duration;
+        private volatile Throwable error;
+
+        private Job(long id, String name, String script) {
+            this.id = id;
+            this.name = name;
+            this.script = script;
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getScript() {
+            return script;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public long getDuration() {
+            return duration;
+        }
+
+        public Throwable getError() {
+            return error;
+        }
+
+        public boolean isSuccessful() {
+            return STATUS_OK.equals(status);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.processor;
+
+import com.gooddata.exception.GdcRestApiException;
+import junit.framework.TestCase;
+import net.sf.json.JSONObject;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * GoodData
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+public class TestDependencyCrawler extends TestCase {
+
+    /**
+     * Fake session over a static graph, counts the fetches of every object
+     */
+    private static class FakeSession implements DependencyCrawler.DependencySession {
+        private final Map<String, List<String>> graph;
+        private final Map<String, AtomicInteger> fetches;
+
+        private FakeSession(Map<String, List<String>> graph, Map<String, AtomicInteger> fetches) {
+            this.graph = graph;
+            this.fetches = fetches;
+        }
+
+        public List<JSONObject> getDependencies(String uri, DependencyCrawler.Direction direction) {
+            AtomicInteger n = new AtomicInteger();
+            AtomicInteger old = ((ConcurrentHashMap<String, AtomicInteger>) fetches).putIfAbsent(uri, n);
+            ((old != null) ? (old) : (n)).incrementAndGet();
+            if (uri.endsWith("fail"))
+                throw new IllegalStateException("failed");
+            List<JSONObject> nodes = new ArrayList<JSONObject>();
+            List<String> deps = graph.get(uri);
+            if (deps != null) {
+                for (String d : deps) {
+                    JSONObject node = new JSONObject();
+                    node.put("link", d);
+                    node.put("category", d.substring(0, d.indexOf('/')));
+                    nodes.add(node);
+                }
+            }
+            return nodes;
+        }
+    }
+
+    private Map<String, List<String>> graph;
+    private Map<String, AtomicInteger> fetches;
+    private List<FakeSession> sessions;
+
+    protected void setUp() throws Exception {
+        // dashboard -> report -> definition -> metric -> fact, the definition and the metric use the attribute
+        graph = new HashMap<String, List<String>>();
+        graph.put("dashboard/1", Arrays.asList("report/2", "report/3"));
+        graph.put("report/2", Arrays.asList("reportDefinition/4"));
+        graph.put("report/3", Arrays.asList("reportDefinition/4"));
+        graph.put("reportDefinition/4", Arrays.asList("metric/5", "attribute/6"));
+        graph.put("metric/5", Arrays.asList("fact/7", "attribute/6"));
+        fetches = new ConcurrentHashMap<String, AtomicInteger>();
+        sessions = new ArrayList<FakeSession>();
+        for (int i = 0; i < 3; i++)
+            sessions.add(new FakeSession(graph, fetches));
+    }
+
+    public void testCrawlUsing() throws Exception {
+        DependencyCrawler crawler = new DependencyCrawler(DependencyCrawler.Direction.USING);
+        List<String> closure = crawler.crawl(Arrays.asList("dashboard/1"), sessions);
+        assertEquals(7, closure.size());
+        assertEquals("dashboard/1", closure.get(0));
+        for (String uri : closure)
+            assertEquals(uri, 1, fetches.get(uri).get());
+        assertEquals("metric", crawler.getNode("metric/5").getString("category"));
+        assertNull(crawler.getNode("dashboard/1"));
+
+        List<String> sorted = crawler.sort(closure);
+        assertEquals(7, sorted.size());
+        assertEquals("dashboard/1", sorted.get(6));
+        assertTrue(sorted.indexOf("fact/7") < sorted.indexOf("metric/5"));
+        assertTrue(sorted.indexOf("attribute/6") < sorted.indexOf("metric/5"));
+        assertTrue(sorted.indexOf("metric/5") < sorted.indexOf("reportDefinition/4"));
+        assertTrue(sorted.indexOf("reportDefinition/4") < sorted.indexOf("report/2"));
+        assertTrue(sorted.indexOf("reportDefinition/4") < sorted.indexOf("report/3"));
+
+        // the cached objects aren't fetched again
+        closure = crawler.crawl(Arrays.asList("report/2", "metric/5"), sessions);
+        assertEquals(5, closure.size());
+        assertEquals(1, fetches.get("report/2").get());
+        assertEquals(1, fetches.get("metric/5").get());
+    }
+
+    public void testSortUsedBy() throws Exception {
+        DependencyCrawler crawler = new DependencyCrawler(DependencyCrawler.Direction.USED_BY);
+        List<String> sorted = crawler.sort(crawler.crawl(Arrays.asList("dashboard/1"), sessions));
+        assertEquals("dashboard/1", sorted.get(0));
+        assertTrue(sorted.indexOf("metric/5") < sorted.indexOf("fact/7"));
+    }
+
+    public void testCycle() throws Exception {
+        graph.put("fact/7", Arrays.asList("report/2"));
+        DependencyCrawler crawler = new DependencyCrawler(DependencyCrawler.Direction.USING);
+        List<String> sorted = crawler.sort(crawler.crawl(Arrays.asList("dashboard/1"), sessions));
+        assertEquals(7, sorted.size());
+        assertEquals("attribute/6", sorted.get(0));
+    }
+
+    public void testFailure() throws Exception {
+        graph.put("fact/7", Arrays.asList("metric/fail"));
+        DependencyCrawler crawler = new DependencyCrawler(DependencyCrawler.Direction.USING);
+        try {
+            crawler.crawl(Arrays.asList("dashboard/1"), sessions);
+            fail("The failed fetch hasn't been reported.");
+        } catch (GdcRestApiException e) {
+            assertTrue(e.getMessage().endsWith("failed"));
+        }
+    }
+
+    public void testGetObjectId() {
+        assertEquals(123, DependencyCrawler.getObjectId("/gdc/md/pid/obj/123"));
+        assertEquals(123, DependencyCrawler.getObjectId("/gdc/md/pid/obj/123/"));
+        assertEquals(-1, DependencyCrawler.getObjectId("/gdc/md/pid/obj/x"));
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.processor;
+
+import com.gooddata.exception.InvalidCommandException;
+import junit.framework.TestCase;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * GoodData
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+public class TestParallelExecutor extends TestCase {
+
+    private static ParallelExecutor.Block block(String name, String... dependsOn) {
+        return new ParallelExecutor.Block(name, Arrays.asList(dependsOn), new ArrayList<Command>());
+    }
+
+    public void testDependenciesAndSkipping() throws Exception {
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        ParallelExecutor executor = new ParallelExecutor(Arrays.asList(
+                block("a"), block("b"), block("c", "a", "b"), block("d", "x"), block("x"), block("e", "d")), 3);
+        List<ParallelExecutor.Block> results = executor.execute(new ParallelExecutor.BlockProcessor() {
+            public void process(ParallelExecutor.Block block) throws Exception {
+                order.add(block.getName());
+                if ("x".equals(block.getName()))
+                    throw new IllegalStateException("failed");
+            }
+        });
+        assertEquals(6, results.size());
+        assertTrue(order.indexOf("c") > order.indexOf("a"));
+        assertTrue(order.indexOf("c") > order.indexOf("b"));
+        assertFalse(order.contains("d"));
+        assertFalse(order.contains("e"));
+        assertEquals(ParallelExecutor.STATUS_OK, results.get(2).getStatus());
+        assertEquals(ParallelExecutor.STATUS_SKIPPED, results.get(3).getStatus());
+        assertEquals(ParallelExecutor.STATUS_FAILED, results.get(4).getStatus());
+        assertEquals(ParallelExecutor.STATUS_SKIPPED, results.get(5).getStatus());
+        assertEquals(3, ParallelExecutor.report(results));
+    }
+
+    public void testCycleDetection() throws Exception {
+        try {
+            new ParallelExecutor(Arrays.asList(block("a", "b"), block("b", "a")), 2);
+            fail("The cycle hasn't been detected.");
+        } catch (InvalidCommandException e) {
+            // expected
+        }
+    }
+
+}
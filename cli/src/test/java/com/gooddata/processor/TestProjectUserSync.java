@@ -0,0 +1,180 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.processor;
+
+import com.gooddata.integration.rest.GdcRESTApiWrapper.GdcUser;
+import com.gooddata.util.FileUtil;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * GoodData
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+public class TestProjectUserSync extends TestCase {
+
+    private static final String EDITOR = "/gdc/projects/p/roles/2";
+    private static final String ADMIN = "/gdc/projects/p/roles/1";
+
+    /**
+     * Fake session over the shared project state, records the updates
+     */
+    private static class FakeSession implements ProjectUserSync.UserSession {
+        private final List<GdcUser> project;
+        private final Map<String, GdcUser> domain;
+        private final List<String> calls;
+
+        private FakeSession(List<GdcUser> project, Map<String, GdcUser> domain, List<String> calls) {
+            this.project = project;
+            this.domain = domain;
+            this.calls = calls;
+        }
+
+        public List<GdcUser> getProjectUsers(String projectId) {
+            calls.add("getProjectUsers");
+            return project;
+        }
+
+        public Map<String, GdcUser> getDomainUsers(String d) {
+            calls.add("getDomainUsers");
+            return domain;
+        }
+
+        public String getRoleUri(String projectId, String role) {
+            calls.add("getRoleUri " + role);
+            if ("editor".equalsIgnoreCase(role))
+                return EDITOR;
+            if ("admin".equalsIgnoreCase(role))
+                return ADMIN;
+            return null;
+        }
+
+        public String createUser(String d, GdcUser user) {
+            if (user.getPassword() == null)
+                throw new IllegalArgumentException("no password");
+            calls.add("createUser " + user.getLogin());
+            return "/gdc/account/profile/" + user.getLogin();
+        }
+
+        public void addUsersToProject(String projectId, List<String> uris, String roleUri) {
+            List<String> sorted = new ArrayList<String>(uris);
+            Collections.sort(sorted);
+            calls.add("add " + roleUri + " " + sorted);
+        }
+
+        public void disableUsersInProject(String projectId, List<String> uris) {
+            calls.add("disable " + uris);
+        }
+    }
+
+    private static GdcUser user(String login, String status, String role) {
+        GdcUser u = new GdcUser();
+        u.setLogin(login);
+        u.setUri("/gdc/account/profile/" + login);
+        u.setStatus(status);
+        if (role != null)
+            u.setRoles(Arrays.asList(role));
+        return u;
+    }
+
+    private static ProjectUserSync.Entry entry(String login, String role, String password) {
+        GdcUser u = new GdcUser();
+        u.setLogin(login);
+        u.setFirstName("First");
+        u.setLastName("Last");
+        u.setPassword(password);
+        return new ProjectUserSync.Entry(u, role);
+    }
+
+    public void testSync() throws Exception {
+        List<GdcUser> project = Arrays.asList(
+                user("same", "ENABLED", EDITOR),
+                user("disabled", "DISABLED", EDITOR),
+                user("promoted", "ENABLED", EDITOR),
+                user("missing", "ENABLED", EDITOR));
+        Map<String, GdcUser> domain = new HashMap<String, GdcUser>();
+        domain.put("indomain", user("indomain", null, null));
+        List<String> calls = Collections.synchronizedList(new ArrayList<String>());
+        List<FakeSession> sessions = new ArrayList<FakeSession>();
+        for (int i = 0; i < 3; i++)
+            sessions.add(new FakeSession(project, domain, calls));
+
+        List<ProjectUserSync.Entry> entries = Arrays.asList(
+                entry("Same", "editor", null),
+                entry("disabled", "editor", null),
+                entry("promoted", "admin", null),
+                entry("indomain", "editor", null),
+                entry("new", "editor", "secret"),
+                entry("nopassword", "editor", null),
+                entry("same", "editor", null));
+        ProjectUserSync.Result result = new ProjectUserSync(2, true).sync("p", "domain", entries, sessions.get(0),
+                sessions);
+
+        assertEquals(1, result.getCreated());
+        assertEquals(4, result.getAdded());
+        assertEquals(1, result.getDisabled());
+        assertEquals(1, result.getUnchanged());
+        assertEquals(1, result.getErrors().size());
+        assertTrue(result.getErrors().get(0).contains("nopassword"));
+
+        // the state is read once
+        assertEquals(1, Collections.frequency(calls, "getProjectUsers"));
+        assertEquals(1, Collections.frequency(calls, "getDomainUsers"));
+        assertEquals(1, Collections.frequency(calls, "getRoleUri editor"));
+        assertTrue(calls.contains("createUser new"));
+        // the editors are added in chunks of two
+        assertTrue(calls.contains("add " + EDITOR + " [/gdc/account/profile/disabled, /gdc/account/profile/indomain]"));
+        assertTrue(calls.contains("add " + EDITOR + " [/gdc/account/profile/new]"));
+        assertTrue(calls.contains("add " + ADMIN + " [/gdc/account/profile/promoted]"));
+        assertTrue(calls.contains("disable [/gdc/account/profile/missing]"));
+    }
+
+    public void testReadCsv() throws Exception {
+        File f = File.createTempFile("users", ".csv");
+        try {
+            FileUtil.writeStringToFile("Login,Role,FirstName,LastName,Password\n"
+                    + "a@example.com,admin,A,B,secret\n"
+                    + "b@example.com,,C,D,\n"
+                    + ",editor,E,F,\n", f.getAbsolutePath());
+            List<ProjectUserSync.Entry> entries = ProjectUserSync.readCsv(f.getAbsolutePath(), "editor");
+            assertEquals(2, entries.size());
+            assertEquals("a@example.com", entries.get(0).getUser().getLogin());
+            assertEquals("admin", entries.get(0).getRole());
+            assertEquals("secret", entries.get(0).getUser().getVerifyPassword());
+            assertEquals("editor", entries.get(1).getRole());
+            assertNull(entries.get(1).getUser().getPassword());
+        } finally {
+            f.delete();
+        }
+    }
+}
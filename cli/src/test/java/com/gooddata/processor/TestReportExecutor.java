@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.processor;
+
+import com.gooddata.util.FileUtil;
+import junit.framework.TestCase;
+import net.sf.json.JSONObject;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * GoodData
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+public class TestReportExecutor extends TestCase {
+
+    /**
+     * Fake session, the report "fail" can't be executed, every result is ready after the second poll
+     */
+    private static class FakeSession implements ReportExecutor.ReportSession {
+        private final AtomicInteger running;
+        private final AtomicInteger maxRunning;
+        private final Map<String, Integer> polls;
+
+        private FakeSession(AtomicInteger running, AtomicInteger maxRunning, Map<String, Integer> polls) {
+            this.running = running;
+            this.maxRunning = maxRunning;
+            this.polls = polls;
+        }
+
+        public JSONObject executeReport(String reportUri) {
+            int r = running.incrementAndGet();
+            synchronized (maxRunning) {
+                if (r > maxRunning.get())
+                    maxRunning.set(r);
+            }
+            try {
+                Thread.sleep(20);
+                if (reportUri.endsWith("fail"))
+                    throw new IllegalStateException("failed");
+                JSONObject result = new JSONObject();
+                result.put("dataResult", reportUri + "/result");
+                JSONObject execResult = new JSONObject();
+                execResult.put("execResult", result);
+                return execResult;
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            } finally {
+                running.decrementAndGet();
+            }
+        }
+
+        public boolean isReportResultReady(String dataResultUri) {
+            Integer n = polls.get(dataResultUri);
+            n = (n == null) ? (1) : (n + 1);
+            polls.put(dataResultUri, n);
+            return n >= 2;
+        }
+
+        public byte[] exportReportResult(JSONObject execResult, String format) {
+            return execResult.getJSONObject("execResult").getString("dataResult").getBytes();
+        }
+    }
+
+    public void testConcurrentExecution() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        Map<String, Integer> polls = new ConcurrentHashMap<String, Integer>();
+        List<FakeSession> sessions = new ArrayList<FakeSession>();
+        for (int i = 0; i < 3; i++)
+            sessions.add(new FakeSession(running, maxRunning, polls));
+        List<String> uris = new ArrayList<String>();
+        for (int i = 0; i < 10; i++)
+            uris.add("/gdc/md/pid/obj/" + i);
+        uris.add("/gdc/md/pid/obj/fail");
+
+        ReportExecutor executor = new ReportExecutor(3, true, null, null);
+        executor.setPollInterval(10);
+        List<ReportExecutor.Report> reports = executor.execute(uris,
+                new FakeSession(running, maxRunning, polls), sessions);
+        assertEquals(11, reports.size());
+        assertTrue(maxRunning.get() <= 3);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(ReportExecutor.STATUS_OK, reports.get(i).getStatus());
+            assertEquals(2, polls.get(uris.get(i) + "/result").intValue());
+        }
+        assertEquals(ReportExecutor.STATUS_FAILED, reports.get(10).getStatus());
+        assertEquals(1, ReportExecutor.report(reports));
+    }
+
+    public void testExport() throws Exception {
+        File dir = FileUtil.createTempDir();
+        try {
+            Map<String, Integer> polls = new ConcurrentHashMap<String, Integer>();
+            FakeSession session = new FakeSession(new AtomicInteger(), new AtomicInteger(), polls);
+            // the missing export directory is created
+            File exports = new File(dir, "exports");
+            ReportExecutor executor = new ReportExecutor(2, false, "csv", exports);
+            executor.setPollInterval(10);
+            List<ReportExecutor.Report> reports = executor.execute(Arrays.asList("/gdc/md/pid/obj/7"),
+                    session, Arrays.asList(new FakeSession(new AtomicInteger(), new AtomicInteger(), polls)));
+            assertEquals(ReportExecutor.STATUS_OK, reports.get(0).getStatus());
+            assertEquals("/gdc/md/pid/obj/7/result",
+                    FileUtil.readStringFromFile(new File(exports, "7.csv").getAbsolutePath()).trim());
+        } finally {
+            FileUtil.recursiveDelete(dir);
+        }
+    }
+
+    public void testPercentile() {
+        long[] values = new long[100];
+        for (int i = 0; i < values.length; i++)
+            values[i] = i + 1;
+        assertEquals(50, ReportExecutor.percentile(values, 50));
+        assertEquals(95, ReportExecutor.percentile(values, 95));
+        assertEquals(7, ReportExecutor.percentile(new long[]{7}, 95));
+    }
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.processor;
+
+import com.gooddata.util.FileUtil;
+import junit.framework.TestCase;
+
+import java.io.File;
+
+/**
+ * GoodData
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+public class TestScriptQueueWorker extends TestCase {
+
+    private File queue;
+
+    protected void setUp() throws Exception {
+        queue = FileUtil.createTempDir();
+    }
+
+    protected void tearDown() throws Exception {
+        FileUtil.recursiveDelete(queue);
+    }
+
+    public void testRecoverOnlyOwnAndStaleClaims() throws Exception {
+        ScriptQueueWorker first = new ScriptQueueWorker(null, queue, 1, "host-1");
+        ScriptQueueWorker second = new ScriptQueueWorker(null, queue, 1, "host-2");
+        File script = new File(queue, "load.txt");
+        FileUtil.writeStringToFile("CreateProject(name=\"x\");", script.getAbsolutePath());
+        // the script claimed by the running first consumer (claimed by hand as there is no worker pool)
+        File claimed = new File(queue, ScriptQueueWorker.PROCESSING_DIR + "/host-1/load.txt");
+        assertTrue(new File(queue, ScriptQueueWorker.PROCESSING_DIR + "/host-1").mkdirs());
+        assertTrue(script.renameTo(claimed));
+        // touches the heartbeat
+        first.poll();
+
+        // starting the second consumer leaves the running claim alone
+        second.recover(true);
+        assertTrue(claimed.exists());
+
+        // unless the first consumer stops updating its heartbeat
+        second.setStaleTimeout(60000);
+        long past = System.currentTimeMillis() - 120000;
+        assertTrue(new File(claimed.getParentFile(), ".heartbeat").setLastModified(past));
+        second.recover(false);
+        assertFalse(claimed.exists());
+        assertTrue(new File(queue, ScriptQueueWorker.FAILED_DIR + "/load.txt").exists());
+        assertTrue(new File(queue, ScriptQueueWorker.FAILED_DIR + "/load.txt.error").exists());
+        assertFalse(claimed.getParentFile().exists());
+    }
+
+    public void testRecoverOwnClaimsOnStart() throws Exception {
+        File claimed = new File(queue, ScriptQueueWorker.PROCESSING_DIR + "/host-1/load.txt");
+        assertTrue(claimed.getParentFile().mkdirs());
+        FileUtil.writeStringToFile("CreateProject(name=\"x\");", claimed.getAbsolutePath());
+        ScriptQueueWorker worker = new ScriptQueueWorker(null, queue, 1, "host-1");
+        worker.recover(false);
+        assertTrue(claimed.exists());
+        worker.recover(true);
+        assertFalse(claimed.exists());
+        assertTrue(new File(queue, ScriptQueueWorker.FAILED_DIR + "/load.txt").exists());
+    }
+}
@@ -51,5 +51,20 @@ public class TestDIScriptParser extends TestCase {
         }
     }
 
+    public void testParseParallelBlocks() throws Exception {
+        DIScriptParser parser = new DIScriptParser(getClass().getResourceAsStream("/com/gooddata/processor/parser/parallel.txt"));
+        List<Command> commands = parser.parse();
+        assertEquals(3, commands.size());
+        Command parallel = commands.get(1);
+        assertTrue(parallel.match("Parallel"));
+        assertEquals("2", parallel.getParameters().getProperty("workers"));
+        assertEquals(3, parallel.getCommands().size());
+        Command block = parallel.getCommands().get(2);
+        assertTrue(block.isBlock());
+        assertEquals("accounts,products", block.getParameters().getProperty("dependsOn"));
+        assertEquals(2, block.getCommands().size());
+        assertFalse(commands.get(2).isBlock());
+    }
+
 
 }
@@ -35,5 +35,13 @@ public class ProcessingException extends GdcException {
         super(e);
     }
 
+    public ProcessingException(String msg) {
+        super(msg);
+    }
+
+    public ProcessingException(String msg, Throwable e) {
+        super(msg, e);
+    }
+
 
 }
@@ -41,6 +41,9 @@ public class CSVReader implements Closeable {
     public static char DEFAULT_QUOTE_CHARACTER = '"';
     public static char DEFAULT_ESCAPE_CHARACTER = '"';
 
+    public static final String METRIC_ROWS = "csv.read.rows";
+    public static final String METRIC_CHARS = "csv.read.chars";
+
     private static int CHUNK_SIZE = 4096;
 
     private final Reader r;
@@ -68,6 +71,10 @@ public class CSVReader implements Closeable {
     private int row = 1;
     private int col = 0;
 
+    // metrics, recorded when the reader is closed
+    private long rowsRead = 0;
+    private long charsRead = 0;
+
     /**
      * Constructs CSVReader using a comma for the separator.
      *
@@ -166,6 +173,7 @@ public class CSVReader implements Closeable {
             if (size == -1) {
                 break;
             }
+            charsRead += size;
             processChunk(data, size);
         }
         if (recordsQueue.isEmpty()) {
@@ -185,9 +193,11 @@ public class CSVReader implements Closeable {
                 }
                 String[] result = openRecord.toArray(new String[]{});
                 openRecord.clear();
+                rowsRead++;
                 return result;
             }
         }
+        rowsRead++;
         return recordsQueue.removeFirst();
     }
 
@@ -330,12 +340,17 @@ public class CSVReader implements Closeable {
     }
 
     /**
-     * Closes the underlying reader.
+     * Closes the underlying reader and records the number of read rows and characters
+     * to the {@link Metrics}.
      *
      * @throws IOException if the close fails
      */
     public void close() throws IOException {
         r.close();
+        Metrics.count(METRIC_ROWS, rowsRead);
+        Metrics.count(METRIC_CHARS, charsRead);
+        rowsRead = 0;
+        charsRead = 0;
     }
 
     private String getPositionString() {
@@ -49,6 +49,10 @@ public class CSVWriter implements Closeable {
 
     private boolean alwaysQuoted = true;
 
+    // metrics, recorded when the writer is closed
+    private long rowsWritten = 0;
+    private long charsWritten = 0;
+
     public boolean isAlwaysQuoted() {
         return alwaysQuoted;
     }
@@ -88,6 +92,9 @@ public class CSVWriter implements Closeable {
      */
     public static final String DEFAULT_LINE_END = "\n";
 
+    public static final String METRIC_ROWS = "csv.write.rows";
+    public static final String METRIC_CHARS = "csv.write.chars";
+
     private ResultSetHelper resultService = new ResultSetHelperService();
 
     /**
@@ -257,6 +264,8 @@ public class CSVWriter implements Closeable {
 
         sb.append(lineEnd);
         pw.write(sb.toString());
+        rowsWritten++;
+        charsWritten += sb.length();
 
     }
 
@@ -299,7 +308,8 @@ public class CSVWriter implements Closeable {
     }
 
     /**
-     * Close the underlying stream writer flushing any buffered content.
+     * Close the underlying stream writer flushing any buffered content. The number of written rows
+     * and characters is recorded to the {@link Metrics}.
      *
      * @throws IOException if bad things happen
      */
@@ -307,6 +317,10 @@ public class CSVWriter implements Closeable {
         flush();
         pw.close();
         rawWriter.close();
+        Metrics.count(METRIC_ROWS, rowsWritten);
+        Metrics.count(METRIC_CHARS, charsWritten);
+        rowsWritten = 0;
+        charsWritten = 0;
     }
 
     /**
@@ -0,0 +1,389 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.util;
+
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Sorts a CSV file by the key columns and optionally removes the rows with duplicate keys. The rows are sorted
+ * in memory up to the memory budget, the sorted runs are spilled to temporary files and merged, so the file
+ * can be larger than the available memory. Of the rows with the same key the last one in the file is kept.
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+public class ExternalSorter {
+
+    private static Logger l = Logger.getLogger(ExternalSorter.class);
+
+    /**
+     * Metric names of the sort time, the sorted rows, the removed duplicates and the spilled runs
+     */
+    public static final String METRIC_SORT = "sort";
+    public static final String METRIC_SORT_ROWS = METRIC_SORT + Metrics.ROWS_SUFFIX;
+    public static final String METRIC_SORT_DUPLICATES = "sort.duplicates";
+    public static final String METRIC_SORT_SPILLS = "sort.spills";
+
+    public static final long DEFAULT_MEMORY_BUDGET = 64L * 1024 * 1024;
+    public static final int DEFAULT_MAX_MERGE_RUNS = 64;
+
+    // rough estimate of the JVM object overhead of a row and of a value
+    private static final int ROW_OVERHEAD = 48;
+    private static final int VALUE_OVERHEAD = 56;
+
+    private final Comparator<String[]> comparator;
+    private long memoryBudget = DEFAULT_MEMORY_BUDGET;
+    private int maxMergeRuns = DEFAULT_MAX_MERGE_RUNS;
+    private boolean deduplicate = true;
+
+    private long rows;
+    private long duplicates;
+    private int spills;
+
+    /**
+     * Creates a sorter
+     *
+     * @param keyColumns indexes of the key columns, all columns are the key if null or empty
+     */
+    public ExternalSorter(int[] keyColumns) {
+        this.comparator = new KeyComparator(keyColumns);
+    }
+
+    /**
+     * Sorts the CSV file, the first row is the header that is copied to the output
+     *
+     * @param input  the CSV file
+     * @param output the sorted CSV file, can be the same as the input
+     * @throws IOException in case of IO issues
+     */
+    public void sort(File input, File output) throws IOException {
+        long start = Metrics.start();
+        rows = 0;
+        duplicates = 0;
+        spills = 0;
+        File spillDir = FileUtil.createTempDir();
+        try {
+            List<File> runs = new ArrayList<File>();
+            String[] header;
+            List<String[]> buffer = new ArrayList<String[]>();
+            CSVReader cr = FileUtil.createUtf8CsvReader(input);
+            try {
+                header = cr.readNext();
+                long size = 0;
+                String[] row;
+                while ((row = cr.readNext()) != null) {
+                    if (row.length == 1 && row[0].length() == 0) {
+                        continue;
+                    }
+                    rows++;
+                    buffer.add(row);
+                    size += estimateSize(row);
+                    if (size >= memoryBudget) {
+                        runs.add(spill(buffer, spillDir, runs.size()));
+                        buffer.clear();
+                        size = 0;
+                    }
+                }
+            } finally {
+                cr.close();
+            }
+            File result = new File(spillDir, "result.csv");
+            if (runs.isEmpty()) {
+                // fits in memory
+                sortRun(buffer);
+                CSVWriter cw = FileUtil.createUtf8CsvWriter(result);
+                try {
+                    if (header != null) {
+                        cw.writeNext(header);
+                    }
+                    write(buffer, cw);
+                } finally {
+                    cw.close();
+                }
+            } else {
+                if (!buffer.isEmpty()) {
+                    runs.add(spill(buffer, spillDir, runs.size()));
+                }
+                buffer = null;
+                // merge the oldest runs first, so the later rows win in the deduplication
+                while (runs.size() > maxMergeRuns) {
+                    List<File> merged = new ArrayList<File>(runs.subList(0, maxMergeRuns));
+                    File run = new File(spillDir, "run" + (spills++) + ".csv");
+                    merge(merged, run, null);
+                    runs.subList(0, maxMergeRuns).clear();
+                    runs.add(0, run);
+                }
+                merge(runs, result, header);
+            }
+            copy(result, output);
+        } finally {
+            FileUtil.recursiveDelete(spillDir);
+        }
+        Metrics.stop(METRIC_SORT, start);
+        Metrics.count(METRIC_SORT_ROWS, rows);
+        Metrics.count(METRIC_SORT_DUPLICATES, duplicates);
+        Metrics.count(METRIC_SORT_SPILLS, spills);
+        l.debug("Sorted " + rows + " rows using " + spills + " spill files, removed " + duplicates + " duplicates.");
+    }
+
+    /**
+     * Sorts the rows in memory and writes them to a new run file
+     */
+    private File spill(List<String[]> buffer, File spillDir, int index) throws IOException {
+        sortRun(buffer);
+        File run = new File(spillDir, "run" + (spills++) + ".csv");
+        CSVWriter cw = FileUtil.createUtf8CsvWriter(run);
+        try {
+            write(buffer, cw);
+        } finally {
+            cw.close();
+        }
+        l.debug("Spilled the sorted run " + index + " (" + buffer.size() + " rows) to " + run.getName());
+        return run;
+    }
+
+    /**
+     * Sorts the rows, the sort is stable so the equal rows keep their order
+     */
+    private void sortRun(List<String[]> buffer) {
+        Collections.sort(buffer, comparator);
+    }
+
+    /**
+     * Writes the sorted rows, keeps the last of the rows with the same key when deduplicating
+     */
+    private void write(List<String[]> sorted, CSVWriter cw) {
+        for (int i = 0; i < sorted.size(); i++) {
+            String[] row = sorted.get(i);
+            if (deduplicate && i + 1 < sorted.size() && comparator.compare(row, sorted.get(i + 1)) == 0) {
+                duplicates++;
+                continue;
+            }
+            cw.writeNext(row);
+        }
+    }
+
+    /**
+     * Merges the sorted runs, of the rows with the same key keeps the last one from the newest run
+     *
+     * @param runs   the runs ordered from the oldest
+     * @param output the merged file
+     * @param header the header written to the output or null
+     */
+    private void merge(List<File> runs, File output, String[] header) throws IOException {
+        PriorityQueue<Run> queue = new PriorityQueue<Run>(runs.size(), new Comparator<Run>() {
+            public int compare(Run a, Run b) {
+                int c = comparator.compare(a.row, b.row);
+                return (c != 0) ? c : a.index - b.index;
+            }
+        });
+        List<Run> open = new ArrayList<Run>();
+        CSVWriter cw = FileUtil.createUtf8CsvWriter(output);
+        try {
+            for (int i = 0; i < runs.size(); i++) {
+                Run run = new Run(i, FileUtil.createUtf8CsvReader(runs.get(i)));
+                open.add(run);
+                if (run.next()) {
+                    queue.add(run);
+                }
+            }
+            if (header != null) {
+                cw.writeNext(header);
+            }
+            String[] pending = null;
+            while (!queue.isEmpty()) {
+                Run run = queue.poll();
+                String[] row = run.row;
+                if (run.next()) {
+                    queue.add(run);
+                }
+                if (pending != null) {
+                    if (deduplicate && comparator.compare(pending, row) == 0) {
+                        duplicates++;
+                    } else {
+                        cw.writeNext(pending);
+                    }
+                }
+                pending = row;
+            }
+            if (pending != null) {
+                cw.writeNext(pending);
+            }
+        } finally {
+            cw.close();
+            for (Run run : open) {
+                run.reader.close();
+            }
+        }
+    }
+
+    /**
+     * Replaces the output with the sorted file
+     */
+    private void copy(File sorted, File output) throws IOException {
+        if (output.exists() && !output.delete()) {
+            throw new IOException("Can't replace " + output.getAbsolutePath());
+        }
+        if (!sorted.renameTo(output)) {
+            FileUtil.copy(new FileInputStream(sorted), new FileOutputStream(output));
+        }
+    }
+
+    private static long estimateSize(String[] row) {
+        long size = ROW_OVERHEAD;
+        for (String value : row) {
+            size += VALUE_OVERHEAD + ((value != null) ? 2 * value.length() : 0);
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of the rows read by the last sort
+     *
+     * @return the number of rows
+     */
+    public long getRows() {
+        return rows;
+    }
+
+    /**
+     * Returns the number of the rows removed by the last sort
+     *
+     * @return the number of duplicates
+     */
+    public long getDuplicates() {
+        return duplicates;
+    }
+
+    /**
+     * Returns the number of the spill files written by the last sort
+     *
+     * @return the number of spill files
+     */
+    public int getSpills() {
+        return spills;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    public void setMemoryBudget(long memoryBudget) {
+        if (memoryBudget <= 0) {
+            throw new IllegalArgumentException("The memory budget must be positive.");
+        }
+        this.memoryBudget = memoryBudget;
+    }
+
+    public int getMaxMergeRuns() {
+        return maxMergeRuns;
+    }
+
+    public void setMaxMergeRuns(int maxMergeRuns) {
+        if (maxMergeRuns < 2) {
+            throw new IllegalArgumentException("At least two runs must be merged at once.");
+        }
+        this.maxMergeRuns = maxMergeRuns;
+    }
+
+    public boolean isDeduplicate() {
+        return deduplicate;
+    }
+
+    public void setDeduplicate(boolean deduplicate) {
+        this.deduplicate = deduplicate;
+    }
+
+    /**
+     * Sorted run being merged
+     */
+    private static class Run {
+        private final int index;
+        private final CSVReader reader;
+        private String[] row;
+
+        Run(int index, CSVReader reader) {
+            this.index = index;
+            this.reader = reader;
+        }
+
+        boolean next() throws IOException {
+            row = reader.readNext();
+            return row != null;
+        }
+    }
+
+    /**
+     * Compares the rows by the key columns
+     */
+    private static class KeyComparator implements Comparator<String[]> {
+
+        private final int[] keys;
+
+        KeyComparator(int[] keys) {
+            this.keys = (keys != null && keys.length > 0) ? keys : null;
+        }
+
+        public int compare(String[] a, String[] b) {
+            if (keys == null) {
+                int n = Math.min(a.length, b.length);
+                for (int i = 0; i < n; i++) {
+                    int c = compareValues(a[i], b[i]);
+                    if (c != 0) {
+                        return c;
+                    }
+                }
+                return a.length - b.length;
+            }
+            for (int key : keys) {
+                int c = compareValues(value(a, key), value(b, key));
+                if (c != 0) {
+                    return c;
+                }
+            }
+            return 0;
+        }
+
+        private static String value(String[] row, int i) {
+            return (i < row.length) ? row[i] : null;
+        }
+
+        private static int compareValues(String a, String b) {
+            if (a == null) {
+                return (b == null) ? 0 : -1;
+            }
+            return (b == null) ? 1 : a.compareTo(b);
+        }
+    }
+}
@@ -195,6 +195,26 @@ public class FileUtil {
         return fileOrDir.delete();
     }
 
+    /**
+     * Returns the total size of a file or of all files in a directory
+     *
+     * @param fileOrDir the file or dir
+     * @return size in bytes
+     */
+    public static long getDirectorySize(File fileOrDir) {
+        if (fileOrDir.isDirectory()) {
+            long size = 0;
+            File[] files = fileOrDir.listFiles();
+            if (files != null) {
+                for (File innerFile : files) {
+                    size += getDirectorySize(innerFile);
+                }
+            }
+            return size;
+        }
+        return fileOrDir.length();
+    }
+
     /**
      * Writes a string to a file.
      *
@@ -0,0 +1,533 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.util;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONNull;
+import net.sf.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UnsupportedEncodingException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Pull-style streaming JSON reader. Reads the document token by token from a stream, so large REST API
+ * responses don't have to be read to a String and parsed to the tree first. The typical use is to
+ * navigate to an array and read only the fields that are needed from its elements:
+ *
+ * <pre>
+ * JSONStreamReader r = new JSONStreamReader(method.getResponseBodyAsStream());
+ * if (r.find("query", "entries")) {
+ *     r.beginArray();
+ *     while (r.hasNext()) {
+ *         String link = r.readFields("link").get("link");
+ *     }
+ *     r.endArray();
+ * }
+ * </pre>
+ *
+ * Syntax errors are reported as {@link IOException}s.
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+public class JSONStreamReader {
+
+    /**
+     * The JSON tokens
+     */
+    public static enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_ARRAY = 2;
+    private static final int NONEMPTY_ARRAY = 3;
+    private static final int EMPTY_OBJECT = 4;
+    private static final int DANGLING_NAME = 5;
+    private static final int NONEMPTY_OBJECT = 6;
+
+    private final Reader in;
+    private final char[] buffer = new char[8192];
+    private int pos = 0;
+    private int limit = 0;
+    private long consumed = 0;
+
+    private int[] stack = new int[32];
+    private int depth = 0;
+
+    private final StringBuilder text = new StringBuilder();
+    private Token peeked = null;
+    private String value = null;
+
+    /**
+     * Creates a reader
+     *
+     * @param in the JSON source
+     */
+    public JSONStreamReader(Reader in) {
+        if (in == null)
+            throw new IllegalArgumentException("The reader can't be null.");
+        this.in = in;
+        stack[depth++] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * Creates a reader of UTF-8 encoded JSON
+     *
+     * @param in the JSON source
+     */
+    public JSONStreamReader(InputStream in) {
+        this(utf8(in));
+    }
+
+    private static Reader utf8(InputStream in) {
+        if (in == null)
+            throw new IllegalArgumentException("The stream can't be null.");
+        try {
+            return new InputStreamReader(in, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e.getMessage());
+        }
+    }
+
+    /**
+     * Returns the type of the next token without consuming it
+     *
+     * @return the next token
+     * @throws IOException on syntax or IO errors
+     */
+    public Token peek() throws IOException {
+        if (peeked != null)
+            return peeked;
+        int c;
+        switch (stack[depth - 1]) {
+            case EMPTY_DOCUMENT:
+                stack[depth - 1] = NONEMPTY_DOCUMENT;
+                return readValue(nextClean());
+            case NONEMPTY_DOCUMENT:
+                c = nextClean();
+                if (c != -1)
+                    throw syntaxError("Unexpected content after the end of the document");
+                return peeked = Token.END_DOCUMENT;
+            case EMPTY_ARRAY:
+                c = nextClean();
+                if (c == ']') {
+                    depth--;
+                    return peeked = Token.END_ARRAY;
+                }
+                stack[depth - 1] = NONEMPTY_ARRAY;
+                return readValue(c);
+            case NONEMPTY_ARRAY:
+                c = nextClean();
+                if (c == ']') {
+                    depth--;
+                    return peeked = Token.END_ARRAY;
+                }
+                if (c != ',')
+                    throw syntaxError("Expected a ',' or ']'");
+                return readValue(nextClean());
+            case DANGLING_NAME:
+                stack[depth - 1] = NONEMPTY_OBJECT;
+                return readValue(nextClean());
+            default:
+                c = nextClean();
+                if (c == '}') {
+                    depth--;
+                    return peeked = Token.END_OBJECT;
+                }
+                if (stack[depth - 1] == NONEMPTY_OBJECT) {
+                    if (c != ',')
+                        throw syntaxError("Expected a ',' or '}'");
+                    c = nextClean();
+                }
+                if (c != '"')
+                    throw syntaxError("Expected a quoted key");
+                value = readString();
+                if (nextClean() != ':')
+                    throw syntaxError("Expected a ':' after a key");
+                stack[depth - 1] = DANGLING_NAME;
+                return peeked = Token.NAME;
+        }
+    }
+
+    /**
+     * @return true if the current array or object has more elements
+     * @throws IOException on syntax or IO errors
+     */
+    public boolean hasNext() throws IOException {
+        Token t = peek();
+        return t != Token.END_OBJECT && t != Token.END_ARRAY && t != Token.END_DOCUMENT;
+    }
+
+    public void beginObject() throws IOException {
+        consume(Token.BEGIN_OBJECT);
+    }
+
+    public void endObject() throws IOException {
+        consume(Token.END_OBJECT);
+    }
+
+    public void beginArray() throws IOException {
+        consume(Token.BEGIN_ARRAY);
+    }
+
+    public void endArray() throws IOException {
+        consume(Token.END_ARRAY);
+    }
+
+    /**
+     * @return the next property name
+     * @throws IOException if the next token isn't a name
+     */
+    public String nextName() throws IOException {
+        consume(Token.NAME);
+        return value;
+    }
+
+    /**
+     * Returns the next scalar value as text. Numbers and booleans are returned as they appear in the document.
+     *
+     * @return the value text
+     * @throws IOException if the next token isn't a string, number or boolean
+     */
+    public String nextString() throws IOException {
+        Token t = peek();
+        if (t != Token.STRING && t != Token.NUMBER && t != Token.BOOLEAN)
+            throw syntaxError("Expected a string but was " + t);
+        peeked = null;
+        return value;
+    }
+
+    /**
+     * Consumes the next null value
+     *
+     * @throws IOException if the next token isn't null
+     */
+    public void nextNull() throws IOException {
+        consume(Token.NULL);
+    }
+
+    /**
+     * Skips the next value including all nested values
+     *
+     * @throws IOException on syntax or IO errors
+     */
+    public void skipValue() throws IOException {
+        int open = 0;
+        do {
+            Token t = peek();
+            peeked = null;
+            if (t == Token.BEGIN_OBJECT || t == Token.BEGIN_ARRAY)
+                open++;
+            else if (t == Token.END_OBJECT || t == Token.END_ARRAY)
+                open--;
+            else if (t == Token.END_DOCUMENT)
+                throw syntaxError("Unexpected end of the document");
+        } while (open > 0);
+    }
+
+    /**
+     * Navigates from the start of the next value through the nested objects to the value of the
+     * property on the path. The remaining properties of the objects on the path aren't read.
+     *
+     * @param path the property names
+     * @return true if the reader is positioned before the value on the path, false if the path doesn't exist
+     * @throws IOException on syntax or IO errors
+     */
+    public boolean find(String... path) throws IOException {
+        for (String name : path) {
+            if (peek() != Token.BEGIN_OBJECT)
+                return false;
+            beginObject();
+            boolean found = false;
+            while (!found && hasNext()) {
+                if (name.equals(nextName()))
+                    found = true;
+                else
+                    skipValue();
+            }
+            if (!found)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Reads the next object and returns the scalar values of the requested properties. Other properties
+     * (including the nested objects and arrays) are skipped without being parsed to the tree.
+     *
+     * @param names the property names
+     * @return the property name to the value text map, the properties that are missing or null aren't in the map
+     * @throws IOException on syntax or IO errors
+     */
+    public Map<String, String> readFields(String... names) throws IOException {
+        Map<String, String> fields = new HashMap<String, String>(names.length * 2);
+        beginObject();
+        while (hasNext()) {
+            String name = nextName();
+            boolean requested = false;
+            for (String n : names) {
+                if (n.equals(name)) {
+                    requested = true;
+                    break;
+                }
+            }
+            Token t = peek();
+            if (requested && (t == Token.STRING || t == Token.NUMBER || t == Token.BOOLEAN))
+                fields.put(name, nextString());
+            else
+                skipValue();
+        }
+        endObject();
+        return fields;
+    }
+
+    /**
+     * Reads the next value to the json-lib tree
+     *
+     * @return {@link JSONObject}, {@link JSONArray}, String, Boolean, a number or {@link JSONNull}
+     * @throws IOException on syntax or IO errors
+     */
+    public Object readTree() throws IOException {
+        Token t = peek();
+        switch (t) {
+            case BEGIN_OBJECT:
+                beginObject();
+                JSONObject o = new JSONObject();
+                while (hasNext()) {
+                    String name = nextName();
+                    o.element(name, readTree());
+                }
+                endObject();
+                return o;
+            case BEGIN_ARRAY:
+                beginArray();
+                JSONArray a = new JSONArray();
+                while (hasNext()) {
+                    a.element(readTree());
+                }
+                endArray();
+                return a;
+            case STRING:
+                return nextString();
+            case NUMBER:
+                return toNumber(nextString());
+            case BOOLEAN:
+                return Boolean.valueOf(nextString());
+            case NULL:
+                nextNull();
+                return JSONNull.getInstance();
+            default:
+                throw syntaxError("Expected a value but was " + t);
+        }
+    }
+
+    /**
+     * Reads the next object to the json-lib tree
+     *
+     * @return the object
+     * @throws IOException on syntax or IO errors or if the next value isn't an object
+     */
+    public JSONObject readObject() throws IOException {
+        if (peek() != Token.BEGIN_OBJECT)
+            throw syntaxError("Expected " + Token.BEGIN_OBJECT + " but was " + peek());
+        return (JSONObject) readTree();
+    }
+
+    /**
+     * Closes the underlying reader
+     *
+     * @throws IOException on IO errors
+     */
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private static Number toNumber(String s) {
+        if (s.indexOf('.') >= 0 || s.indexOf('e') >= 0 || s.indexOf('E') >= 0) {
+            BigDecimal d = new BigDecimal(s);
+            double dv = d.doubleValue();
+            if (!Double.isInfinite(dv))
+                return new Double(dv);
+            return d;
+        }
+        BigInteger i = new BigInteger(s);
+        if (i.bitLength() < 32)
+            return new Integer(i.intValue());
+        if (i.bitLength() < 64)
+            return new Long(i.longValue());
+        return i;
+    }
+
+    private void consume(Token expected) throws IOException {
+        Token t = peek();
+        if (t != expected)
+            throw syntaxError("Expected " + expected + " but was " + t);
+        peeked = null;
+    }
+
+    private Token readValue(int c) throws IOException {
+        switch (c) {
+            case '{':
+                push(EMPTY_OBJECT);
+                return peeked = Token.BEGIN_OBJECT;
+            case '[':
+                push(EMPTY_ARRAY);
+                return peeked = Token.BEGIN_ARRAY;
+            case '"':
+                value = readString();
+                return peeked = Token.STRING;
+            case -1:
+                throw syntaxError("Unexpected end of the document");
+        }
+        text.setLength(0);
+        while (c != -1 && c > ' ' && ",:]}[{\"".indexOf(c) < 0) {
+            text.append((char) c);
+            c = read();
+        }
+        if (c != -1)
+            pos--;
+        value = text.toString();
+        if ("true".equals(value) || "false".equals(value))
+            return peeked = Token.BOOLEAN;
+        if ("null".equals(value))
+            return peeked = Token.NULL;
+        if (value.length() > 0) {
+            char first = value.charAt(0);
+            if (first == '-' || (first >= '0' && first <= '9'))
+                return peeked = Token.NUMBER;
+        }
+        throw syntaxError("Unexpected value '" + value + "'");
+    }
+
+    private String readString() throws IOException {
+        text.setLength(0);
+        for (; ;) {
+            // copy the unescaped runs directly from the buffer
+            int start = pos;
+            while (pos < limit) {
+                char c = buffer[pos];
+                if (c == '"' || c == '\\')
+                    break;
+                pos++;
+            }
+            text.append(buffer, start, pos - start);
+            int c = read();
+            if (c == -1)
+                throw syntaxError("Unterminated string");
+            if (c == '"')
+                return text.toString();
+            if (c != '\\') {
+                // the buffer has been refilled
+                text.append((char) c);
+            } else {
+                c = read();
+                switch (c) {
+                    case 'b':
+                        text.append('\b');
+                        break;
+                    case 't':
+                        text.append('\t');
+                        break;
+                    case 'n':
+                        text.append('\n');
+                        break;
+                    case 'f':
+                        text.append('\f');
+                        break;
+                    case 'r':
+                        text.append('\r');
+                        break;
+                    case 'u':
+                        int u = 0;
+                        for (int i = 0; i < 4; i++) {
+                            int d = Character.digit(read(), 16);
+                            if (d < 0)
+                                throw syntaxError("Illegal escape");
+                            u = (u << 4) + d;
+                        }
+                        text.append((char) u);
+                        break;
+                    case '"':
+                    case '\\':
+                    case '/':
+                        text.append((char) c);
+                        break;
+                    default:
+                        throw syntaxError("Illegal escape");
+                }
+            }
+        }
+    }
+
+    private void push(int scope) {
+        if (depth == stack.length) {
+            int[] bigger = new int[depth * 2];
+            System.arraycopy(stack, 0, bigger, 0, depth);
+            stack = bigger;
+        }
+        stack[depth++] = scope;
+    }
+
+    private int nextClean() throws IOException {
+        for (; ;) {
+            int c = read();
+            if (c == -1 || c > ' ')
+                return c;
+        }
+    }
+
+    private int read() throws IOException {
+        if (pos == limit && !fill())
+            return -1;
+        return buffer[pos++];
+    }
+
+    private boolean fill() throws IOException {
+        consumed += limit;
+        pos = 0;
+        limit = 0;
+        int n;
+        do {
+            n = in.read(buffer, 0, buffer.length);
+        } while (n == 0);
+        if (n < 0)
+            return false;
+        limit = n;
+        return true;
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException(message + " at character " + (consumed + pos));
+    }
+
+}
@@ -0,0 +1,383 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.util;
+
+import net.sf.json.JSONObject;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lightweight instrumentation: timers, counters and gauges identified by name.
+ * A counter named <code>&lt;timer&gt;.rows</code> or <code>&lt;timer&gt;.bytes</code> is reported
+ * together with its rate per second of the timer's total time. The metrics are recorded to the scope
+ * opened by {@link #begin()} in the current thread or in the thread that started it, or to the process
+ * wide scope when there is none. All methods are thread safe.
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+public class Metrics {
+
+    /**
+     * Metric kinds
+     */
+    public static enum Type {
+        TIMER, COUNTER, GAUGE
+    }
+
+    public static final String ROWS_SUFFIX = ".rows";
+    public static final String BYTES_SUFFIX = ".bytes";
+
+    private static final Scope global = new Scope(null);
+
+    private static final InheritableThreadLocal<Scope> current = new InheritableThreadLocal<Scope>();
+
+    /**
+     * Opens a new metrics scope for the current thread and the threads that it starts. Scopes nest,
+     * the enclosing scope becomes current again when this one ends.
+     */
+    public static void begin() {
+        current.set(new Scope(current.get()));
+    }
+
+    /**
+     * Closes the current thread's metrics scope and adds its metrics to the enclosing scope
+     *
+     * @return the metrics recorded in the closed scope
+     */
+    public static Map<String, Metric> end() {
+        Scope s = scope();
+        Map<String, Metric> ret = snapshot();
+        if (s.parent != null) {
+            for (Map.Entry<String, Accumulator> e : s.metrics.entrySet()) {
+                e.getValue().addTo(s.parent.get(e.getKey(), e.getValue().type));
+            }
+            current.set(s.parent);
+        } else {
+            current.remove();
+        }
+        return ret;
+    }
+
+    /**
+     * Starts a timer measurement
+     *
+     * @return the start timestamp to pass to the {@link #stop(String, long)}
+     */
+    public static long start() {
+        return System.nanoTime();
+    }
+
+    /**
+     * Records a timer measurement
+     *
+     * @param name  timer name
+     * @param start the timestamp returned by the {@link #start()}
+     * @return the measured time in nanoseconds
+     */
+    public static long stop(String name, long start) {
+        long elapsed = System.nanoTime() - start;
+        time(name, elapsed);
+        return elapsed;
+    }
+
+    /**
+     * Records a timer measurement taken elsewhere
+     *
+     * @param name  timer name
+     * @param nanos measured time in nanoseconds
+     */
+    public static void time(String name, long nanos) {
+        Accumulator a = get(name, Type.TIMER);
+        a.count.incrementAndGet();
+        a.value.addAndGet(nanos);
+        updateMax(a, nanos);
+    }
+
+    /**
+     * Increments a counter
+     *
+     * @param name  counter name
+     * @param delta the increment
+     */
+    public static void count(String name, long delta) {
+        Accumulator a = get(name, Type.COUNTER);
+        a.count.incrementAndGet();
+        a.value.addAndGet(delta);
+    }
+
+    /**
+     * Sets a gauge value, the maximal value is retained too
+     *
+     * @param name  gauge name
+     * @param value the current value
+     */
+    public static void gauge(String name, long value) {
+        Accumulator a = get(name, Type.GAUGE);
+        a.count.incrementAndGet();
+        a.value.set(value);
+        updateMax(a, value);
+    }
+
+    /**
+     * Discards all metrics recorded in the current scope
+     */
+    public static void reset() {
+        scope().metrics.clear();
+    }
+
+    /**
+     * Returns the current values of all metrics in the current scope
+     *
+     * @return metric values sorted by name
+     */
+    public static Map<String, Metric> snapshot() {
+        Map<String, Metric> ret = new TreeMap<String, Metric>();
+        for (Map.Entry<String, Accumulator> e : scope().metrics.entrySet()) {
+            Accumulator a = e.getValue();
+            ret.put(e.getKey(), new Metric(a.type, a.count.get(), a.value.get(), a.max.get()));
+        }
+        return Collections.unmodifiableMap(ret);
+    }
+
+    /**
+     * Returns the rate per second of a rows or bytes counter, computed from the total time of the timer
+     * that the counter's name is prefixed with
+     *
+     * @param name    counter name
+     * @param metrics the metrics snapshot
+     * @return the rate per second or -1 if the counter has no matching timer
+     */
+    public static double rate(String name, Map<String, Metric> metrics) {
+        Metric counter = metrics.get(name);
+        if (counter == null || counter.getType() != Type.COUNTER)
+            return -1;
+        String timerName;
+        if (name.endsWith(ROWS_SUFFIX))
+            timerName = name.substring(0, name.length() - ROWS_SUFFIX.length());
+        else if (name.endsWith(BYTES_SUFFIX))
+            timerName = name.substring(0, name.length() - BYTES_SUFFIX.length());
+        else
+            return -1;
+        Metric timer = metrics.get(timerName);
+        if (timer == null || timer.getType() != Type.TIMER || timer.getValue() <= 0)
+            return -1;
+        return counter.getValue() * 1000000000d / timer.getValue();
+    }
+
+    /**
+     * Formats the metrics as human readable summary, one metric per line
+     *
+     * @param metrics the metrics snapshot
+     * @return the summary
+     */
+    public static String summary(Map<String, Metric> metrics) {
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Metric> e : metrics.entrySet()) {
+            String name = e.getKey();
+            Metric m = e.getValue();
+            if (sb.length() > 0)
+                sb.append('\n');
+            sb.append("  ").append(name).append(": ");
+            switch (m.getType()) {
+                case TIMER:
+                    sb.append(millis(m.getValue())).append(" ms");
+                    if (m.getCount() > 1)
+                        sb.append(" (").append(m.getCount()).append(" calls, max ").append(millis(m.getMax()))
+                                .append(" ms)");
+                    break;
+                case COUNTER:
+                    sb.append(m.getValue());
+                    double rate = rate(name, metrics);
+                    if (rate >= 0)
+                        sb.append(" (").append(Math.round(rate)).append("/s)");
+                    break;
+                case GAUGE:
+                    sb.append(m.getValue());
+                    if (m.getMax() != m.getValue())
+                        sb.append(" (max ").append(m.getMax()).append(")");
+                    break;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Converts the metrics to JSON
+     *
+     * @param command the command that the metrics were collected for
+     * @param elapsed the command's duration in nanoseconds
+     * @param metrics the metrics snapshot
+     * @return the JSON object
+     */
+    public static JSONObject toJson(String command, long elapsed, Map<String, Metric> metrics) {
+        JSONObject ret = new JSONObject();
+        ret.put("command", command);
+        ret.put("elapsedMs", millis(elapsed));
+        JSONObject timers = new JSONObject();
+        JSONObject counters = new JSONObject();
+        JSONObject gauges = new JSONObject();
+        for (Map.Entry<String, Metric> e : metrics.entrySet()) {
+            String name = e.getKey();
+            Metric m = e.getValue();
+            JSONObject o = new JSONObject();
+            switch (m.getType()) {
+                case TIMER:
+                    o.put("count", m.getCount());
+                    o.put("totalMs", millis(m.getValue()));
+                    o.put("maxMs", millis(m.getMax()));
+                    timers.put(name, o);
+                    break;
+                case COUNTER:
+                    o.put("value", m.getValue());
+                    double rate = rate(name, metrics);
+                    if (rate >= 0)
+                        o.put("perSecond", Math.round(rate));
+                    counters.put(name, o);
+                    break;
+                case GAUGE:
+                    o.put("value", m.getValue());
+                    o.put("max", m.getMax());
+                    gauges.put(name, o);
+                    break;
+            }
+        }
+        ret.put("timers", timers);
+        ret.put("counters", counters);
+        ret.put("gauges", gauges);
+        return ret;
+    }
+
+    private static long millis(long nanos) {
+        return nanos / 1000000;
+    }
+
+    private static Scope scope() {
+        Scope ret = current.get();
+        return (ret != null) ? ret : global;
+    }
+
+    private static Accumulator get(String name, Type type) {
+        return scope().get(name, type);
+    }
+
+    private static void updateMax(Accumulator a, long value) {
+        long max = a.max.get();
+        while (value > max && !a.max.compareAndSet(max, value)) {
+            max = a.max.get();
+        }
+    }
+
+    private static class Scope {
+        private final Scope parent;
+        private final ConcurrentMap<String, Accumulator> metrics = new ConcurrentHashMap<String, Accumulator>();
+
+        private Scope(Scope parent) {
+            this.parent = parent;
+        }
+
+        private Accumulator get(String name, Type type) {
+            Accumulator a = metrics.get(name);
+            if (a == null) {
+                Accumulator n = new Accumulator(type);
+                a = metrics.putIfAbsent(name, n);
+                if (a == null)
+                    a = n;
+            }
+            if (a.type != type)
+                throw new IllegalArgumentException("The metric " + name + " is a " + a.type + ", not a " + type + ".");
+            return a;
+        }
+    }
+
+    private static class Accumulator {
+        private final Type type;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong value = new AtomicLong();
+        private final AtomicLong max = new AtomicLong(Long.MIN_VALUE);
+
+        private Accumulator(Type type) {
+            this.type = type;
+        }
+
+        private void addTo(Accumulator a) {
+            a.count.addAndGet(count.get());
+            if (type == Type.GAUGE)
+                a.value.set(value.get());
+            else
+                a.value.addAndGet(value.get());
+            updateMax(a, max.get());
+        }
+    }
+
+    /**
+     * Metric value snapshot
+     */
+    public static class Metric {
+        private final Type type;
+        private final long count;
+        private final long value;
+        private final long max;
+
+        public Metric(Type type, long count, long value, long max) {
+            this.type = type;
+            this.count = count;
+            this.value = value;
+            this.max = max;
+        }
+
+        /**
+         * @return the metric kind
+         */
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * @return number of the recorded measurements
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * @return total time in nanoseconds for timers, sum for counters and the last value for gauges
+         */
+        public long getValue() {
+            return value;
+        }
+
+        /**
+         * @return the longest measurement for timers, the highest value for gauges
+         */
+        public long getMax() {
+            return max;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2007-2014, GoodData(R) Corporation. All rights reserved.
+ */
+package com.gooddata.util;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ExternalSorterTest {
+
+    private File dir;
+
+    @Before
+    public void setUp() throws IOException {
+        dir = FileUtil.createTempDir();
+    }
+
+    @After
+    public void tearDown() {
+        FileUtil.recursiveDelete(dir);
+    }
+
+    @Test
+    public void testInMemory() throws Exception {
+        File in = write("id,name", "3,c", "1,a", "2,b", "1,a2");
+        ExternalSorter sorter = new ExternalSorter(new int[]{0});
+        sorter.sort(in, in);
+        List<String[]> rows = read(in);
+        assertEquals(0, sorter.getSpills());
+        assertEquals(4, sorter.getRows());
+        assertEquals(1, sorter.getDuplicates());
+        assertArrayEquals(new String[]{"id", "name"}, rows.get(0));
+        assertArrayEquals(new String[]{"1", "a2"}, rows.get(1));
+        assertArrayEquals(new String[]{"2", "b"}, rows.get(2));
+        assertArrayEquals(new String[]{"3", "c"}, rows.get(3));
+    }
+
+    @Test
+    public void testSpillAndMerge() throws Exception {
+        // the last row with each key wins
+        TreeMap<String, String> expected = new TreeMap<String, String>();
+        List<String> lines = new ArrayList<String>();
+        lines.add("id,value");
+        Random r = new Random(42);
+        for (int i = 0; i < 5000; i++) {
+            String id = "k" + r.nextInt(2000);
+            String value = "v" + i;
+            expected.put(id, value);
+            lines.add(id + "," + value);
+        }
+        File in = write(lines.toArray(new String[lines.size()]));
+        File out = new File(dir, "out.csv");
+        ExternalSorter sorter = new ExternalSorter(new int[]{0});
+        sorter.setMemoryBudget(8 * 1024);
+        sorter.setMaxMergeRuns(4);
+        sorter.sort(in, out);
+
+        assertTrue(String.valueOf(sorter.getSpills()), sorter.getSpills() > 4);
+        assertEquals(5000, sorter.getRows());
+        assertEquals(5000 - expected.size(), sorter.getDuplicates());
+        List<String[]> rows = read(out);
+        assertEquals(expected.size() + 1, rows.size());
+        int i = 1;
+        for (String id : expected.keySet()) {
+            assertArrayEquals(new String[]{id, expected.get(id)}, rows.get(i++));
+        }
+    }
+
+    @Test
+    public void testWholeRow() throws Exception {
+        File in = write("a,b", "2,x", "1,y", "2,x", "1,x", "1,y");
+        File out = new File(dir, "out.csv");
+        ExternalSorter sorter = new ExternalSorter(null);
+        sorter.setMemoryBudget(200);
+        sorter.sort(in, out);
+        List<String[]> rows = read(out);
+        assertEquals(4, rows.size());
+        assertArrayEquals(new String[]{"1", "x"}, rows.get(1));
+        assertArrayEquals(new String[]{"1", "y"}, rows.get(2));
+        assertArrayEquals(new String[]{"2", "x"}, rows.get(3));
+        assertEquals(2, sorter.getDuplicates());
+    }
+
+    @Test
+    public void testKeepDuplicates() throws Exception {
+        File in = write("id,name", "2,b", "1,a", "2,c");
+        ExternalSorter sorter = new ExternalSorter(new int[]{0});
+        sorter.setDeduplicate(false);
+        sorter.setMemoryBudget(100);
+        sorter.sort(in, in);
+        List<String[]> rows = read(in);
+        assertEquals(4, rows.size());
+        assertArrayEquals(new String[]{"1", "a"}, rows.get(1));
+        // equal keys keep the input order
+        assertArrayEquals(new String[]{"2", "b"}, rows.get(2));
+        assertArrayEquals(new String[]{"2", "c"}, rows.get(3));
+    }
+
+    private File write(String... lines) throws IOException {
+        File f = new File(dir, "in.csv");
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            sb.append(line).append('\n');
+        }
+        FileUtil.writeStringToFile(sb.toString(), f.getAbsolutePath());
+        return f;
+    }
+
+    private List<String[]> read(File f) throws IOException {
+        List<String[]> rows = new ArrayList<String[]>();
+        CSVReader cr = FileUtil.createUtf8CsvReader(f);
+        String[] row;
+        while ((row = cr.readNext()) != null) {
+            rows.add(row);
+        }
+        cr.close();
+        return rows;
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * Copyright (C) 2007-2014, GoodData(R) Corporation. All rights reserved.
+ */
+package com.gooddata.util;
+
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.apache.log4j.Logger;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class JSONStreamReaderTest {
+
+    private static Logger l = Logger.getLogger(JSONStreamReaderTest.class);
+
+    private static final String USING = "{\"using\":{\"edges\":[{\"from\":\"/gdc/md/p/obj/1\",\"to\":\"/gdc/md/p/obj/2\"}],"
+            + "\"nodes\":[{\"link\":\"/gdc/md/p/obj/2\",\"title\":\"Amount \\\"\\u00e9\\\"\",\"category\":\"fact\","
+            + "\"deprecated\":\"0\",\"size\":12,\"ratio\":0.5,\"locked\":false,\"summary\":null,\"tags\":[\"a\",\"b\"]}]}}";
+
+    @Test
+    public void testFind() throws IOException {
+        JSONStreamReader r = new JSONStreamReader(new StringReader(USING));
+        assertTrue(r.find("using", "nodes"));
+        r.beginArray();
+        JSONObject node = r.readObject();
+        assertFalse(r.hasNext());
+        r.endArray();
+
+        assertEquals("/gdc/md/p/obj/2", node.getString("link"));
+        assertEquals("Amount \"é\"", node.getString("title"));
+        assertEquals(12, node.getInt("size"));
+        assertEquals(0.5, node.getDouble("ratio"), 0);
+        assertFalse(node.getBoolean("locked"));
+        assertEquals(2, node.getJSONArray("tags").size());
+        assertEquals(JSONObject.fromObject(USING).getJSONObject("using").getJSONArray("nodes").getJSONObject(0), node);
+
+        r = new JSONStreamReader(new StringReader(USING));
+        assertFalse(r.find("using", "missing"));
+        r = new JSONStreamReader(new StringReader(USING));
+        assertFalse(r.find("using", "edges", "from"));
+    }
+
+    @Test
+    public void testReadFields() throws IOException {
+        JSONStreamReader r = new JSONStreamReader(new StringReader(USING));
+        assertTrue(r.find("using", "nodes"));
+        r.beginArray();
+        Map<String, String> fields = r.readFields("link", "size", "tags", "summary");
+        r.endArray();
+        assertEquals(JSONStreamReader.Token.END_OBJECT, r.peek());
+        assertEquals("/gdc/md/p/obj/2", fields.get("link"));
+        assertEquals("12", fields.get("size"));
+        // only the scalar values are returned
+        assertNull(fields.get("tags"));
+        assertNull(fields.get("summary"));
+        assertEquals(2, fields.size());
+    }
+
+    @Test
+    public void testSyntaxError() {
+        try {
+            JSONStreamReader r = new JSONStreamReader(new StringReader("{\"query\":{\"entries\":[{\"link\" \"x\"}]}}"));
+            r.find("query", "entries");
+            r.beginArray();
+            r.readFields("link");
+            fail("Malformed JSON accepted.");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().startsWith("Expected a ':' after a key"));
+        }
+    }
+
+    @Test
+    public void testReadDocument() throws IOException {
+        String json = "{\"data\": [ {\"id\": \"1\", \"value\": 12.5, \"ok\": true, \"none\": null}, " +
+                "{\"id\": \"2\\u00e9\\n\\\"x\\\"\", \"nested\": {\"a\": [1, [2]]}} ], \"count\": -3}";
+        JSONStreamReader r = new JSONStreamReader(new StringReader(json));
+        r.beginObject();
+        assertEquals("data", r.nextName());
+        r.beginArray();
+        r.beginObject();
+        assertEquals("id", r.nextName());
+        assertEquals("1", r.nextString());
+        assertEquals("value", r.nextName());
+        assertEquals(JSONStreamReader.Token.NUMBER, r.peek());
+        assertEquals("12.5", r.nextString());
+        assertEquals("ok", r.nextName());
+        assertEquals(JSONStreamReader.Token.BOOLEAN, r.peek());
+        assertEquals("true", r.nextString());
+        assertEquals("none", r.nextName());
+        r.nextNull();
+        assertFalse(r.hasNext());
+        r.endObject();
+        r.beginObject();
+        assertEquals("id", r.nextName());
+        assertEquals("2\u00e9\n\"x\"", r.nextString());
+        assertEquals("nested", r.nextName());
+        r.skipValue();
+        r.endObject();
+        assertFalse(r.hasNext());
+        r.endArray();
+        assertEquals("count", r.nextName());
+        assertEquals("-3", r.nextString());
+        r.endObject();
+        assertEquals(JSONStreamReader.Token.END_DOCUMENT, r.peek());
+    }
+
+    @Test
+    public void testReadTree() throws IOException {
+        JSONStreamReader r = new JSONStreamReader(new ByteArrayInputStream("[{\"a\":[1,\"b\",null]},2]".getBytes("UTF-8")));
+        Object tree = r.readTree();
+        assertTrue(tree instanceof JSONArray);
+        JSONArray a = (JSONArray) tree;
+        assertEquals(2, a.size());
+        assertEquals("b", a.getJSONObject(0).getJSONArray("a").getString(1));
+        assertEquals(2, a.getInt(1));
+        assertEquals("[{\"a\":[1,\"b\",null]},2]", a.toString());
+    }
+
+    @Test
+    public void testLongStrings() throws IOException {
+        // strings crossing the read buffer boundary
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 20000; i++)
+            sb.append((char) ('a' + i % 26));
+        String s = sb.toString();
+        JSONStreamReader r = new JSONStreamReader(new StringReader("[\"" + s + "\",\"" + s + "\"]"));
+        r.beginArray();
+        assertEquals(s, r.nextString());
+        assertEquals(s, r.nextString());
+        r.endArray();
+    }
+
+    @Test
+    public void testSyntaxErrors() throws IOException {
+        String[] invalid = new String[]{"[1,", "{\"a\" 1}", "[1 2]", "{\"a\":1,}x", "[\"abc", "[nope]", "[1] 2"};
+        for (String json : invalid) {
+            JSONStreamReader r = new JSONStreamReader(new StringReader(json));
+            try {
+                while (r.peek() != JSONStreamReader.Token.END_DOCUMENT)
+                    r.skipValue();
+                fail("Expected a syntax error: " + json);
+            }
+            catch (IOException e) {
+                // expected
+            }
+        }
+    }
+
+    /**
+     * Compares the streaming enumeration with the tree parsing of a large /query/attributes response
+     */
+    @Test
+    public void testQueryBenchmark() throws IOException {
+        byte[] response = createQueryResponse(5000).getBytes("UTF-8");
+        List<String> expected = null;
+        List<String> links = null;
+        long tree = Long.MAX_VALUE;
+        long stream = Long.MAX_VALUE;
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            expected = new ArrayList<String>();
+            JSONArray entries = JSONObject.fromObject(new String(response, "UTF-8"))
+                    .getJSONObject("query").getJSONArray("entries");
+            for (Object o : entries) {
+                expected.add(((JSONObject) o).getString("link"));
+            }
+            tree = Math.min(tree, System.nanoTime() - start);
+
+            start = System.nanoTime();
+            links = new ArrayList<String>();
+            JSONStreamReader r = new JSONStreamReader(new ByteArrayInputStream(response));
+            assertTrue(r.find("query", "entries"));
+            r.beginArray();
+            while (r.hasNext()) {
+                links.add(r.readFields("link").get("link"));
+            }
+            r.endArray();
+            stream = Math.min(stream, System.nanoTime() - start);
+        }
+        assertEquals(5000, links.size());
+        assertEquals(expected, links);
+        l.info("Enumerating " + links.size() + " entries (" + response.length / 1024 + " kB): tree " + tree / 1000000
+                + " ms, stream " + stream / 1000000 + " ms");
+    }
+
+    private static String createQueryResponse(int count) {
+        StringBuilder b = new StringBuilder("{\"query\":{\"entries\":[");
+        for (int i = 0; i < count; i++) {
+            if (i > 0)
+                b.append(',');
+            b.append("{\"link\":\"/gdc/md/project/obj/").append(i).append("\",")
+                    .append("\"author\":\"/gdc/account/profile/1\",\"tags\":\"\",\"created\":\"2011-01-01 10:00:00\",")
+                    .append("\"deprecated\":\"0\",\"summary\":\"Attribute ").append(i).append(" summary\",")
+                    .append("\"title\":\"Attribute ").append(i).append("\",\"category\":\"attribute\",")
+                    .append("\"updated\":\"2011-01-02 10:00:00\",\"contributor\":\"/gdc/account/profile/1\"}");
+        }
+        return b.append("],\"meta\":{\"summary\":\"Metadata Query Resources for project 'project'\",")
+                .append("\"title\":\"List of attributes\",\"category\":\"MD::Query::Object\"}}}").toString();
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright (C) 2007-2014, GoodData(R) Corporation. All rights reserved.
+ */
+package com.gooddata.util;
+
+import net.sf.json.JSONObject;
+import org.junit.Test;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MetricsTest {
+
+    @Test
+    public void testScope() throws Exception {
+        Metrics.begin();
+        try {
+            Metrics.time("extract", 2000000000L);
+            Metrics.time("extract", 1000000000L);
+            Metrics.count("extract.rows", 3000);
+            Metrics.count("extract.bytes", 6000);
+            Metrics.gauge("workers", 4);
+            Metrics.gauge("workers", 2);
+
+            // the threads started in the scope record to the scope too
+            Thread t = new Thread() {
+                public void run() {
+                    Metrics.count("extract.rows", 3000);
+                }
+            };
+            t.start();
+            t.join();
+
+            Map<String, Metrics.Metric> m = Metrics.snapshot();
+            assertEquals(Metrics.Type.TIMER, m.get("extract").getType());
+            assertEquals(2, m.get("extract").getCount());
+            assertEquals(3000000000L, m.get("extract").getValue());
+            assertEquals(2000000000L, m.get("extract").getMax());
+            assertEquals(6000, m.get("extract.rows").getValue());
+            assertEquals(2, m.get("workers").getValue());
+            assertEquals(4, m.get("workers").getMax());
+            assertEquals(2000, Metrics.rate("extract.rows", m), 0.001);
+            assertEquals(2000, Metrics.rate("extract.bytes", m), 0.001);
+            assertEquals(-1, Metrics.rate("workers", m), 0.001);
+
+            String summary = Metrics.summary(m);
+            assertTrue(summary, summary.contains("extract: 3000 ms (2 calls, max 2000 ms)"));
+            assertTrue(summary, summary.contains("extract.rows: 6000 (2000/s)"));
+            assertTrue(summary, summary.contains("workers: 2 (max 4)"));
+
+            JSONObject json = Metrics.toJson("TransferData", 5000000000L, m);
+            assertEquals("TransferData", json.getString("command"));
+            assertEquals(5000, json.getLong("elapsedMs"));
+            assertEquals(3000, json.getJSONObject("timers").getJSONObject("extract").getLong("totalMs"));
+            assertEquals(2000, json.getJSONObject("counters").getJSONObject("extract.rows").getLong("perSecond"));
+            assertEquals(4, json.getJSONObject("gauges").getJSONObject("workers").getLong("max"));
+        }
+        finally {
+            Metrics.end();
+        }
+    }
+
+    @Test
+    public void testNestedScopes() {
+        Metrics.begin();
+        try {
+            Metrics.count("rows", 1);
+            Metrics.begin();
+            Metrics.count("rows", 2);
+            Metrics.time("inner", 10);
+            Map<String, Metrics.Metric> inner = Metrics.end();
+            assertEquals(2, inner.get("rows").getValue());
+
+            // the inner scope is added to the outer one
+            Map<String, Metrics.Metric> outer = Metrics.snapshot();
+            assertEquals(3, outer.get("rows").getValue());
+            assertEquals(10, outer.get("inner").getValue());
+        }
+        finally {
+            Metrics.end();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testTypeMismatch() {
+        Metrics.begin();
+        try {
+            Metrics.count("x", 1);
+            Metrics.time("x", 1);
+        }
+        finally {
+            Metrics.end();
+        }
+    }
+
+    @Test
+    public void testCsvMetrics() throws Exception {
+        Metrics.begin();
+        try {
+            CSVReader r = new CSVReader(new StringReader("a,b\n1,2\n3,4\n"));
+            StringWriter sw = new StringWriter();
+            CSVWriter w = new CSVWriter(sw);
+            String[] row;
+            while ((row = r.readNext()) != null) {
+                w.writeNext(row);
+            }
+            r.close();
+            w.close();
+            Map<String, Metrics.Metric> m = Metrics.snapshot();
+            assertEquals(3, m.get(CSVReader.METRIC_ROWS).getValue());
+            assertEquals(12, m.get(CSVReader.METRIC_CHARS).getValue());
+            assertEquals(3, m.get(CSVWriter.METRIC_ROWS).getValue());
+            assertEquals(sw.toString().length(), m.get(CSVWriter.METRIC_CHARS).getValue());
+        }
+        finally {
+            Metrics.end();
+        }
+        assertFalse(Metrics.snapshot().containsKey("rows"));
+    }
+}
@@ -23,18 +23,19 @@
 
 package com.gooddata.connector;
 
-import com.gooddata.exception.InternalErrorException;
 import com.gooddata.exception.ProcessingException;
 import com.gooddata.integration.rest.GdcRESTApiWrapper;
 import com.gooddata.processor.CliParams;
 import com.gooddata.processor.Command;
 import com.gooddata.processor.ProcessingContext;
+import com.gooddata.time.TimeDimensionGenerator;
 import com.gooddata.util.FileUtil;
 import com.gooddata.util.StringUtil;
 import org.apache.log4j.Logger;
 import org.apache.log4j.MDC;
 
 import java.io.*;
+import java.util.UUID;
 
 /**
  * GoodData Google Analytics Connector
@@ -69,7 +70,10 @@ public class DateDimensionConnector extends AbstractConnector implements Connect
         return new DateDimensionConnector();
     }
 
-    private final int BUF_LEN = 2048;
+    /**
+     * Version of the cached archive content, change it whenever the data or the manifest changes
+     */
+    private static final String ARCHIVE_VERSION = "1";
 
     /**
      * {@inheritDoc}
@@ -79,15 +83,12 @@ public class DateDimensionConnector extends AbstractConnector implements Connect
         if (name == null || name.trim().length() <= 0)
             name = "";
         InputStream r = DateDimensionConnector.class.getResourceAsStream("/com/gooddata/connector/data.csv");
-        FileOutputStream w = new FileOutputStream(file);
-        byte[] buf = new byte[BUF_LEN];
-        int cnt = r.read(buf, 0, BUF_LEN);
-        while (cnt > 0) {
-            w.write(buf, 0, cnt);
-            cnt = r.read(buf, 0, BUF_LEN);
+        if (r != null) {
+            FileUtil.copy(r, new BufferedOutputStream(new FileOutputStream(file)));
+        } else {
+            // no pre-generated data, generate them
+            new TimeDimensionGenerator().generate(file);
         }
-        w.flush();
-        w.close();
         l.debug("Extracted time dimension data " + name);
     }
 
@@ -97,34 +98,49 @@ public class DateDimensionConnector extends AbstractConnector implements Connect
     public void extractAndTransfer(Command c, String pid, Connector cc, boolean waitForFinish, CliParams p, ProcessingContext ctx)
             throws IOException, InterruptedException {
         if (includeTime) {
-            l.debug("Extracting data.");
-            File tmpDir = FileUtil.createTempDir();
-            File tmpZipDir = FileUtil.createTempDir();
-            String archiveName = tmpDir.getName();
+            // the data package is the same for all projects, it is built once and cached
+            File archive = getArchive(DimensionArchiveCache.getInstance());
+            String archiveName = UUID.randomUUID().toString();
             MDC.put("GdcDataPackageDir", archiveName);
-            String archivePath = tmpZipDir.getAbsolutePath() + System.getProperty("file.separator") +
-                    archiveName + ".zip";
-
-            // extract the data to the CSV that is going to be transferred to the server
-            this.extract(tmpDir.getAbsolutePath());
-
-            this.deploy(tmpDir.getAbsolutePath(), archivePath);
             // transfer the data package to the GoodData server
-            ctx.getFtpApi(p).transferDir(archivePath);
+            ctx.getFtpApi(p).transferDir(archive.getAbsolutePath(), archiveName);
             // kick the GooDData server to load the data package to the project
             String taskUri = ctx.getRestApi(p).startLoading(pid, archiveName);
             if (waitForFinish) {
-                checkLoadingStatus(taskUri, tmpDir.getName(), p, ctx);
+                checkLoadingStatus(taskUri, archiveName, p, ctx);
             }
-            //cleanup
-            l.debug("Cleaning the temporary files.");
-            FileUtil.recursiveDelete(tmpDir);
-            FileUtil.recursiveDelete(tmpZipDir);
             MDC.remove("GdcDataPackageDir");
             l.debug("Data extract finished.");
         }
     }
 
+    /**
+     * Returns the ready-to-upload data package archive, the archive is built when it isn't cached yet
+     *
+     * @param cache the archive cache
+     * @return the archive file
+     * @throws IOException in case of IO issues
+     */
+    public File getArchive(DimensionArchiveCache cache) throws IOException {
+        if (name == null || name.trim().length() <= 0)
+            name = "";
+        String key = DimensionArchiveCache.getKey(ARCHIVE_VERSION, getType(), StringUtil.toIdentifier(name),
+                String.valueOf(includeTime));
+        return cache.get(key, new DimensionArchiveCache.ArchiveBuilder() {
+            public void build(String archivePath) throws IOException {
+                l.debug("Extracting data.");
+                File tmpDir = FileUtil.createTempDir();
+                try {
+                    extract(tmpDir.getAbsolutePath());
+                    deploy(tmpDir.getAbsolutePath(), archivePath);
+                } finally {
+                    l.debug("Cleaning the temporary files.");
+                    FileUtil.recursiveDelete(tmpDir);
+                }
+            }
+        });
+    }
+
     /**
      * Generate manifest file for date dimension in provided directory
      *
@@ -165,32 +181,31 @@ public class DateDimensionConnector extends AbstractConnector implements Connect
     /**
      * {@inheritDoc}
      */
-    public String generateMaqlCreate() {
+    public void generateMaqlCreate(Appendable out) throws IOException {
         l.debug("Generating time dimension MAQL with context " + name);
         if (name != null && name.trim().length() > 0) {
             String idp = StringUtil.toIdentifier(name);
             String ts = StringUtil.toTitle(name);
-            String script = "INCLUDE TEMPLATE \"" + getType() + "\" MODIFY (IDENTIFIER \"" + idp + "\", TITLE \"" + ts + "\");\n\n";
+            out.append("INCLUDE TEMPLATE \"").append(getType()).append("\" MODIFY (IDENTIFIER \"").append(idp)
+                    .append("\", TITLE \"").append(ts).append("\");\n\n");
             if (includeTime) {
+                BufferedReader is = new BufferedReader(new InputStreamReader(
+                        DateDimensionConnector.class.getResourceAsStream("/com/gooddata/connector/TimeDimension.maql")));
                 try {
-                    BufferedReader is = new BufferedReader(new InputStreamReader(
-                            DateDimensionConnector.class.getResourceAsStream("/com/gooddata/connector/TimeDimension.maql")));
                     String line = is.readLine();
                     while (line != null) {
-                        script += line.replace("%id%", idp).replace("%name%", ts) + "\n";
+                        out.append(line.replace("%id%", idp).replace("%name%", ts)).append('\n');
                         line = is.readLine();
                     }
-                } catch (IOException e) {
-                    throw new InternalErrorException("Can't read the time dimension MAQL,", e);
+                } finally {
+                    is.close();
                 }
             }
             l.debug("Generated time dimension MAQL with context " + name);
-            return script;
         } else {
             l.debug("Generated time dimension MAQL with no context ");
-            return "INCLUDE TEMPLATE \"" + getType() + "\"";
+            out.append("INCLUDE TEMPLATE \"").append(getType()).append("\"");
         }
-
     }
 
     /**
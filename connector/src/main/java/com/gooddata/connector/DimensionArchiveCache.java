@@ -0,0 +1,161 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.connector;
+
+import com.gooddata.util.FileUtil;
+import org.apache.commons.codec.digest.DigestUtils;
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Local cache of the ready-to-upload data package archives that are the same for every project
+ * (e.g. the date and time dimensions). The archives are addressed by the hash of the inputs that
+ * determine their content, so they are reused across runs and projects.
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+public class DimensionArchiveCache {
+
+    private static Logger l = Logger.getLogger(DimensionArchiveCache.class);
+
+    /**
+     * System property with the cache directory
+     */
+    public static final String CACHE_DIR_PROPERTY = "gdc.dimension.cache.dir";
+
+    private static final String DEFAULT_CACHE_DIR = "gooddata-dimension-cache";
+
+    private static final String ARCHIVE_EXTENSION = ".zip";
+
+    private static DimensionArchiveCache instance;
+
+    private final File dir;
+
+    // one build per key at a time within this JVM
+    private final ConcurrentMap<String, Object> locks = new ConcurrentHashMap<String, Object>();
+
+    /**
+     * Builds the archive that is going to be cached
+     */
+    public interface ArchiveBuilder {
+        /**
+         * Builds the archive
+         *
+         * @param archivePath the archive file path
+         * @throws IOException in case of IO issues
+         */
+        public void build(String archivePath) throws IOException;
+    }
+
+    /**
+     * Creates the cache in the given directory
+     *
+     * @param dir the cache directory
+     */
+    public DimensionArchiveCache(File dir) {
+        this.dir = dir;
+    }
+
+    /**
+     * Returns the default cache. It lives in the directory set by the gdc.dimension.cache.dir system property
+     * or in the system temp directory.
+     *
+     * @return the default cache
+     */
+    public static synchronized DimensionArchiveCache getInstance() {
+        if (instance == null) {
+            String d = System.getProperty(CACHE_DIR_PROPERTY);
+            if (d == null || d.trim().length() <= 0)
+                d = System.getProperty("java.io.tmpdir") + System.getProperty("file.separator") + DEFAULT_CACHE_DIR;
+            instance = new DimensionArchiveCache(new File(d));
+        }
+        return instance;
+    }
+
+    /**
+     * Computes the cache key from the inputs that determine the archive content
+     *
+     * @param parts the inputs
+     * @return the cache key
+     */
+    public static String getKey(String... parts) {
+        StringBuilder sb = new StringBuilder();
+        for (String part : parts) {
+            sb.append(part).append('\n');
+        }
+        return DigestUtils.md5Hex(sb.toString());
+    }
+
+    /**
+     * Returns the cached archive, the archive is built when it isn't in the cache yet
+     *
+     * @param key     the cache key
+     * @param builder builds the archive
+     * @return the archive file
+     * @throws IOException in case of IO issues
+     */
+    public File get(String key, ArchiveBuilder builder) throws IOException {
+        File archive = new File(dir, key + ARCHIVE_EXTENSION);
+        if (archive.isFile()) {
+            l.debug("Using the cached archive " + archive.getAbsolutePath());
+            return archive;
+        }
+        Object lock = new Object();
+        Object existing = locks.putIfAbsent(key, lock);
+        if (existing != null)
+            lock = existing;
+        synchronized (lock) {
+            if (archive.isFile())
+                return archive;
+            if (!dir.isDirectory() && !dir.mkdirs() && !dir.isDirectory())
+                throw new IOException("Can't create the archive cache directory " + dir.getAbsolutePath());
+            // other processes may share the cache, the archive is built aside and renamed
+            File tmp = new File(dir, key + "." + UUID.randomUUID().toString() + ".tmp");
+            try {
+                l.debug("Building the archive " + archive.getAbsolutePath());
+                builder.build(tmp.getAbsolutePath());
+                if (!tmp.renameTo(archive) && !archive.isFile())
+                    throw new IOException("Can't move the archive " + tmp.getAbsolutePath() + " to the cache.");
+            } finally {
+                if (tmp.exists())
+                    FileUtil.recursiveDelete(tmp);
+            }
+            l.debug("Cached the archive " + archive.getAbsolutePath());
+            return archive;
+        }
+    }
+
+    /**
+     * @return the cache directory
+     */
+    public File getDir() {
+        return dir;
+    }
+}
@@ -25,6 +25,7 @@ package com.gooddata.connector;
 
 import com.gooddata.exception.InvalidParameterException;
 import com.gooddata.exception.ProcessingException;
+import com.gooddata.facebook.FqlResultReader;
 import com.gooddata.modeling.model.SourceColumn;
 import com.gooddata.modeling.model.SourceSchema;
 import com.gooddata.processor.CliParams;
@@ -34,15 +35,13 @@ import com.gooddata.transform.Transformer;
 import com.gooddata.util.CSVWriter;
 import com.gooddata.util.FileUtil;
 import com.restfb.DefaultFacebookClient;
-import com.restfb.FacebookClient;
-import javassist.*;
-import javassist.bytecode.AnnotationsAttribute;
-import javassist.bytecode.ClassFile;
-import javassist.bytecode.annotation.Annotation;
+import com.restfb.json.JsonException;
 import org.apache.log4j.Logger;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.regex.Matcher;
@@ -120,44 +119,6 @@ public class FacebookConnector extends AbstractConnector implements Connector {
         return ret;
     }
 
-    private Class constructResultClass(List<String> cols) throws IOException {
-        try {
-            ClassPool p = ClassPool.getDefault();
-            CtClass c = p.makeClass("FacebookQueryResult");
-            ClassFile cf = c.getClassFile();
-
-            AnnotationsAttribute attribute = new AnnotationsAttribute(cf.getConstPool(), AnnotationsAttribute.visibleTag);
-            Annotation ant = new Annotation(cf.getConstPool(), ClassPool.getDefault().get("com.restfb.Facebook"));
-            attribute.addAnnotation(ant);
-            for (String col : cols) {
-                CtField f = CtField.make("public String " + col + ";", c);
-                f.getFieldInfo().addAttribute(attribute);
-                c.addField(f);
-            }
-
-            return c.toClass();
-        } catch (NotFoundException e) {
-            throw new IOException(e);
-        } catch (CannotCompileException e) {
-            throw new IOException(e);
-        }
-
-    }
-
-    private String extractValue(Object o, String fieldName) throws IOException {
-        try {
-            Object value = o.getClass().getDeclaredField(fieldName).get(o);
-            if (value != null)
-                return value.toString();
-            else
-                return "";
-        } catch (IllegalAccessException e) {
-            throw new IOException(e);
-        } catch (NoSuchFieldException e) {
-            throw new IOException(e);
-        }
-    }
-
     public void dump(String file) throws IOException {
         extract(file, false);
     }
@@ -175,30 +136,31 @@ public class FacebookConnector extends AbstractConnector implements Connector {
         cw.writeNext(header);
 
         List<String> cols = getSelectColumns(getQuery());
-        Class resultClass = constructResultClass(cols);
-
-        FacebookClient fc = new DefaultFacebookClient(oauthToken);
 
-        List result = fc.executeQuery(query, resultClass);
+        DefaultFacebookClient fc = new DefaultFacebookClient(oauthToken);
 
-        if (result != null && result.size() > 0) {
+        // map the response tokens directly to the rows in the FQL SELECT order as they arrive
+        InputStream response = fc.executeQueryStream(query);
+        FqlResultReader result = new FqlResultReader(new InputStreamReader(response, "UTF-8"), cols);
+        try {
             l.debug("Started retrieving Facebook data.");
-            for (Object o : result) {
-                String[] row = new String[cols.size()];
-                for (int i = 0; i < cols.size(); i++) {
-                    row[i] = extractValue(o, cols.get(i));
-                }
+            String[] row;
+            while ((row = result.readRow()) != null) {
                 if (transform)
                     row = t.transformRow(row, DATE_LENGTH_UNRESTRICTED);
                 cw.writeNext(row);
-                cw.flush();
             }
-        } else {
+        } catch (JsonException e) {
+            throw new IOException(e);
+        } finally {
+            response.close();
+            cw.close();
+        }
+        if (result.getRowCount() <= 0) {
             l.debug("The Facebook query hasn't returned any row.");
             throw new IOException("The Facebook query hasn't returned any row.");
         }
-        l.debug("Retrieved " + result.size() + " rows of Facebook data.");
-        cw.close();
+        l.debug("Retrieved " + result.getRowCount() + " rows of Facebook data.");
     }
 
     /**
@@ -25,6 +25,8 @@ package com.gooddata.connector;
 
 import com.gooddata.Constants;
 import com.gooddata.exception.HttpMethodException;
+import com.gooddata.exception.InternalErrorException;
+import com.gooddata.exception.InvalidParameterException;
 import com.gooddata.exception.ProcessingException;
 import com.gooddata.modeling.model.SourceColumn;
 import com.gooddata.modeling.model.SourceSchema;
@@ -40,6 +42,7 @@ import net.sf.json.JSONObject;
 import org.apache.commons.httpclient.HttpClient;
 import org.apache.commons.httpclient.HttpException;
 import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.MultiThreadedHttpConnectionManager;
 import org.apache.commons.httpclient.methods.GetMethod;
 import org.apache.log4j.Logger;
 import org.joda.time.DateTime;
@@ -47,11 +50,22 @@ import org.joda.time.format.DateTimeFormat;
 import org.joda.time.format.DateTimeFormatter;
 import org.joda.time.format.ISODateTimeFormat;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.URLEncoder;
 import java.util.ArrayList;
+import java.util.LinkedList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * GoodData Facebook Insights connector
@@ -64,7 +78,25 @@ public class FacebookInsightsConnector extends AbstractConnector implements Conn
 
     private static Logger l = Logger.getLogger(FacebookInsightsConnector.class);
 
+    /**
+     * Default number of days fetched by a single request
+     */
+    public static final int DEFAULT_WINDOW_DAYS = 30;
+
+    /**
+     * Default number of concurrent requests
+     */
+    public static final int DEFAULT_PARALLELISM = 4;
+
+    /**
+     * Default number of retries of a failed request
+     */
+    public static final int DEFAULT_MAX_RETRIES = 3;
+
     private String oauthToken;
+    private int windowDays = DEFAULT_WINDOW_DAYS;
+    private int parallelism = DEFAULT_PARALLELISM;
+    private int maxRetries = DEFAULT_MAX_RETRIES;
     private DateTime startDate;
     private DateTime endDate;
     private String baseUrl;
@@ -75,7 +107,10 @@ public class FacebookInsightsConnector extends AbstractConnector implements Conn
 
 
     protected FacebookInsightsConnector() {
-        client = new HttpClient();
+        // the date windows are fetched concurrently
+        MultiThreadedHttpConnectionManager connectionManager = new MultiThreadedHttpConnectionManager();
+        connectionManager.getParams().setDefaultMaxConnectionsPerHost(DEFAULT_PARALLELISM);
+        client = new HttpClient(connectionManager);
 
         NetUtil.configureHttpProxy(client);
 
@@ -128,23 +163,45 @@ public class FacebookInsightsConnector extends AbstractConnector implements Conn
         l.debug("Saved Facebook Insights config template.");
     }
 
+    /**
+     * GETs the uri, server errors and IO errors are retried with an exponential backoff
+     *
+     * @param uri the uri
+     * @return the response body
+     */
     private String fetchData(String uri) {
-        try {
+        int attempt = 0;
+        for (; ;) {
             GetMethod method = new GetMethod(uri);
-            client.executeMethod(method);
-            if (method.getStatusCode() == HttpStatus.SC_OK) {
-                return method.getResponseBodyAsString();
-            } else {
-                String msg = method.getStatusCode() + " " + method.getStatusText();
+            try {
+                client.executeMethod(method);
+                int status = method.getStatusCode();
+                if (status == HttpStatus.SC_OK) {
+                    return method.getResponseBodyAsString();
+                }
+                String msg = status + " " + method.getStatusText();
                 l.debug("Exception executing " + method.getName() + " on " + method.getPath() + ": " + msg);
-                throw new HttpMethodException(msg);
+                if (status < HttpStatus.SC_INTERNAL_SERVER_ERROR || attempt >= maxRetries)
+                    throw new HttpMethodException(msg);
+            } catch (HttpException e) {
+                l.debug("Error invoking Facebook REST API.", e);
+                if (attempt >= maxRetries)
+                    throw new HttpMethodException("Error invoking Facebook REST API.", e);
+            } catch (IOException e) {
+                l.debug("Error invoking Facebook REST API.", e);
+                if (attempt >= maxRetries)
+                    throw new HttpMethodException("Error invoking Facebook REST API.", e);
+            } finally {
+                method.releaseConnection();
+            }
+            attempt++;
+            long delay = Constants.RETRY_INTERVAL * (1L << (attempt - 1));
+            l.debug("Retrying the Facebook request in " + delay + " ms. Retry #" + attempt + ".");
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                throw new InternalErrorException("Interrupted while retrying the Facebook request.", e);
             }
-        } catch (HttpException e) {
-            l.debug("Error invoking Facebook REST API.", e);
-            throw new HttpMethodException("Error invoking Facebook REST API.", e);
-        } catch (IOException e) {
-            l.debug("Error invoking GoodData REST API.", e);
-            throw new HttpMethodException("Error invoking Facebook REST API.", e);
         }
     }
 
@@ -247,7 +304,21 @@ public class FacebookInsightsConnector extends AbstractConnector implements Conn
 
     }
 
-    private String fetchInsightsRecords(String uri, List<InsightsRecord> ret) {
+    /**
+     * Fetches a page of the Insights data and writes the records
+     *
+     * @param uri    page uri
+     * @param after  records with the date before or equal to this one are skipped, can be null
+     * @param until  records with the date after this one are skipped, can be null
+     * @param writer the records writer
+     * @param counts returns the number of records on the page and the number of written records
+     * @return the next page uri or null
+     * @throws IOException if the records can't be written
+     */
+    private String fetchInsightsRecords(String uri, DateTime after, DateTime until, RecordWriter writer, int[] counts)
+            throws IOException {
+        counts[0] = 0;
+        counts[1] = 0;
         String nextUri = null;
         JSONObject data = fetchJSON(uri);
         if (data != null) {
@@ -280,7 +351,13 @@ public class FacebookInsightsConnector extends AbstractConnector implements Conn
                                                 } else {
                                                     value = v.toString();
                                                 }
-                                                ret.add(new InsightsRecord(oid, d, metricName, value));
+                                                InsightsRecord r = new InsightsRecord(oid, d, metricName, value);
+                                                counts[0]++;
+                                                if ((after == null || r.getDate().isAfter(after)) &&
+                                                        (until == null || !r.getDate().isAfter(until))) {
+                                                    writer.write(r);
+                                                    counts[1]++;
+                                                }
                                             }
                                         }
                                     }
@@ -302,6 +379,76 @@ public class FacebookInsightsConnector extends AbstractConnector implements Conn
         return nextUri;
     }
 
+    /**
+     * Writes the Insights records of a window to the window's CSV file
+     */
+    private static class RecordWriter {
+        private final CSVWriter cw;
+        private final Transformer t;
+        private final boolean transform;
+        private int count = 0;
+
+        private RecordWriter(CSVWriter cw, Transformer t, boolean transform) {
+            this.cw = cw;
+            this.t = t;
+            this.transform = transform;
+        }
+
+        private void write(InsightsRecord r) {
+            String[] row = r.getRecord();
+            if (transform)
+                row = t.transformRow(row, DATE_LENGTH_UNRESTRICTED);
+            cw.writeNext(row);
+            count++;
+        }
+
+        private int getCount() {
+            return count;
+        }
+    }
+
+    /**
+     * Splits the date range to windows of the given number of days
+     *
+     * @param start      range start
+     * @param end        range end
+     * @param windowDays max days in a window
+     * @return list of the [since, until] pairs
+     */
+    static List<DateTime[]> splitDateRange(DateTime start, DateTime end, int windowDays) {
+        List<DateTime[]> windows = new ArrayList<DateTime[]>();
+        DateTime since = start;
+        do {
+            DateTime until = since.plusDays(windowDays);
+            if (!until.isBefore(end))
+                until = end;
+            windows.add(new DateTime[]{since, until});
+            since = until;
+        } while (since.isBefore(end));
+        return windows;
+    }
+
+    /**
+     * Fetches a date window. The Insights paging links point to the following periods, so the pages are
+     * followed until they are empty (last window) or past the window end (other windows).
+     *
+     * @param since  window start
+     * @param until  window end
+     * @param after  records with the date before or equal to this one are skipped, can be null
+     * @param last   is this the last window
+     * @param writer the records writer
+     * @throws IOException if the records can't be written
+     */
+    private void fetchWindow(DateTime since, DateTime until, DateTime after, boolean last, RecordWriter writer)
+            throws IOException {
+        l.debug("Retrieving Facebook data from " + defFmt.print(since) + " to " + defFmt.print(until) + ".");
+        String url = constructInsightsApiUrl(getBaseUrl(), since, until);
+        int[] counts = new int[2];
+        do {
+            url = fetchInsightsRecords(url, after, last ? null : until, writer, counts);
+        } while (url != null && url.length() > 0 && counts[0] > 0 && (last || counts[1] > 0));
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -309,35 +456,97 @@ public class FacebookInsightsConnector extends AbstractConnector implements Conn
         File dataFile = new File(file);
         l.debug("Extracting Facebook data to file=" + dataFile.getAbsolutePath());
         CSVWriter cw = FileUtil.createUtf8CsvEscapingWriter(dataFile);
-        Transformer t = Transformer.create(schema);
-        String[] header = t.getHeader(transform);
-        cw.writeNext(header);
-
-        String url = constructInsightsApiUrl(getBaseUrl(), getStartDate(), getEndDate());
-        List<InsightsRecord> result = new ArrayList<InsightsRecord>();
-        url = fetchInsightsRecords(url, result);
-        int cnt = 0;
-
-        while (result != null && result.size() > 0) {
-            cnt += result.size();
-            l.debug("Started retrieving Facebook data.");
-            for (InsightsRecord o : result) {
-                String[] record = o.getRecord();
-                String[] row = new String[record.length];
-                for (int i = 0; i < record.length; i++) {
-                    row[i] = record[i];
+        cw.writeNext(Transformer.create(schema).getHeader(transform));
+        cw.close();
+
+        // the windows are fetched to their own files that are appended in the window order, so that repeated
+        // extracts produce identical files, only the windows in flight are kept on the disk
+        int rows = 0;
+        List<DateTime[]> windows = splitDateRange(getStartDate(), getEndDate(), getWindowDays());
+        int workers = Math.min(getParallelism(), windows.size());
+        ExecutorService pool = Executors.newFixedThreadPool(workers);
+        LinkedList<File> files = new LinkedList<File>();
+        LinkedList<Future<Integer>> results = new LinkedList<Future<Integer>>();
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(dataFile, true));
+        try {
+            int next = 0;
+            while (next < windows.size() || !results.isEmpty()) {
+                while (next < windows.size() && results.size() < workers) {
+                    File windowFile = FileUtil.getTempFile();
+                    files.add(windowFile);
+                    results.add(pool.submit(createWindowTask(windows, next++, windowFile, transform)));
                 }
-                if (transform)
-                    row = t.transformRow(row, DATE_LENGTH_UNRESTRICTED);
-                cw.writeNext(row);
-                cw.flush();
+                rows += results.removeFirst().get();
+                File windowFile = files.removeFirst();
+                append(windowFile, out);
+                windowFile.delete();
             }
-            result.clear();
-            url = fetchInsightsRecords(url, result);
+        } catch (ExecutionException e) {
+            Throwable c = e.getCause();
+            if (c instanceof RuntimeException)
+                throw (RuntimeException) c;
+            if (c instanceof IOException)
+                throw (IOException) c;
+            throw new InternalErrorException("Error retrieving Facebook data.", c);
+        } catch (InterruptedException e) {
+            throw new InternalErrorException("Interrupted while retrieving Facebook data.", e);
+        } finally {
+            pool.shutdownNow();
+            out.close();
+            for (File f : files)
+                f.delete();
         }
+        l.debug("Retrieved " + rows + " rows of Facebook data in " + windows.size() + " requests.");
+    }
 
-        l.debug("Retrieved " + cnt + " rows of Facebook data.");
-        cw.close();
+    /**
+     * Creates the task that fetches a window to its own CSV file
+     *
+     * @param windows    all windows
+     * @param i          the window's index
+     * @param windowFile the window's CSV file
+     * @param transform  transform the records
+     * @return the task returning the number of the written records
+     */
+    private Callable<Integer> createWindowTask(List<DateTime[]> windows, int i, final File windowFile,
+                                               final boolean transform) {
+        final DateTime since = windows.get(i)[0];
+        final DateTime until = windows.get(i)[1];
+        // the window boundary may be returned by both adjacent windows
+        final DateTime after = (i > 0) ? since : null;
+        final boolean last = (i == windows.size() - 1);
+        return new Callable<Integer>() {
+            public Integer call() throws IOException {
+                CSVWriter cw = FileUtil.createUtf8CsvEscapingWriter(windowFile);
+                // the transformer isn't thread safe
+                RecordWriter writer = new RecordWriter(cw, Transformer.create(schema), transform);
+                try {
+                    fetchWindow(since, until, after, last, writer);
+                } finally {
+                    cw.close();
+                }
+                return writer.getCount();
+            }
+        };
+    }
+
+    /**
+     * Appends a file to the stream
+     *
+     * @param file the file
+     * @param out  the stream
+     * @throws IOException if the file can't be read or the stream written
+     */
+    private static void append(File file, OutputStream out) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) != -1)
+                out.write(buf, 0, n);
+        } finally {
+            in.close();
+        }
     }
 
     /**
@@ -372,6 +581,10 @@ public class FacebookInsightsConnector extends AbstractConnector implements Conn
         setStartDate(defFmt.parseDateTime(c.getParamMandatory("startDate")));
         setEndDate(defFmt.parseDateTime(c.getParamMandatory("endDate")));
         String auth = c.getParamMandatory("authToken");
+        if (c.checkParam("windowDays"))
+            setWindowDays(parsePositive(c.getParam("windowDays"), "windowDays"));
+        if (c.checkParam("parallelism"))
+            setParallelism(parsePositive(c.getParam("parallelism"), "parallelism"));
         c.paramsProcessed();
 
         File conf = FileUtil.getFile(configFile);
@@ -401,6 +614,17 @@ public class FacebookInsightsConnector extends AbstractConnector implements Conn
         l.info("Facebook Insights Connector configuration successfully generated. See config file: " + configFile);
     }
 
+    private static int parsePositive(String value, String name) {
+        try {
+            int n = Integer.parseInt(value);
+            if (n > 0)
+                return n;
+        } catch (NumberFormatException e) {
+            // handled below
+        }
+        throw new InvalidParameterException("The '" + name + "' parameter must be a positive number.");
+    }
+
     public DateTime getStartDate() {
         return startDate;
     }
@@ -425,6 +649,32 @@ public class FacebookInsightsConnector extends AbstractConnector implements Conn
         this.baseUrl = baseUrl;
     }
 
+    public int getWindowDays() {
+        return windowDays;
+    }
+
+    public void setWindowDays(int windowDays) {
+        this.windowDays = windowDays;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+        ((MultiThreadedHttpConnectionManager) client.getHttpConnectionManager()).getParams()
+                .setDefaultMaxConnectionsPerHost(parallelism);
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(int maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
     public String getOauthToken() {
         return oauthToken;
     }
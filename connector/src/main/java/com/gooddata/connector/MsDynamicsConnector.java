@@ -101,8 +101,9 @@ public class MsDynamicsConnector extends AbstractConnector implements Connector
      */
     public void extract(String file, boolean transform) throws IOException {
         l.debug("Extracting MS CRM data.");
+        MsDynamicsWrapper m = null;
         try {
-            MsDynamicsWrapper m = new MsDynamicsWrapper(getHostname(), getOrganization(), getUsername(), getPassword());
+            m = new MsDynamicsWrapper(getHostname(), getOrganization(), getUsername(), getPassword());
             m.connect();
             l.debug("Executing MS CRM query entity: " + getEntity() + " fields: " + getFields());
             if (fields != null && fields.length() > 0) {
@@ -121,6 +122,9 @@ public class MsDynamicsConnector extends AbstractConnector implements Connector
             throw new IOException(e);
         } catch (JaxenException e) {
             throw new IOException(e);
+        } finally {
+            if (m != null)
+                m.close();
         }
     }
 
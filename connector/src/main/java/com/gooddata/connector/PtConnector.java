@@ -232,15 +232,16 @@ public class PtConnector extends AbstractConnector implements Connector {
         return true;
     }
 
-    public String generateMaqlCreate() {
-        StringBuilder sb = new StringBuilder();
+    /**
+     * {@inheritDoc}
+     */
+    public void generateMaqlCreate(Appendable out) throws IOException {
         MaqlGenerator mg = new MaqlGenerator(storySchema);
-        sb.append(mg.generateMaqlCreate());
+        mg.generateMaqlCreate(out);
         mg = new MaqlGenerator(labelSchema);
-        sb.append(mg.generateMaqlCreate());
+        mg.generateMaqlCreate(out);
         mg = new MaqlGenerator(labelToStorySchema);
-        sb.append(mg.generateMaqlCreate());
-        return sb.toString();
+        mg.generateMaqlCreate(out);
     }
 
 
@@ -86,8 +86,9 @@ public class SugarCrmConnector extends AbstractConnector implements Connector {
      */
     public void extract(String file, boolean transform) throws IOException {
         l.debug("Extracting SugarCrm data.");
+        SugarCrmWrapper m = null;
         try {
-            SugarCrmWrapper m = new SugarCrmWrapper(getHostname(), getUsername(), getPassword());
+            m = new SugarCrmWrapper(getHostname(), getUsername(), getPassword());
             m.connect();
             l.debug("Executing SugarCrm query entity: " + getEntity() + " fields: " + getFields());
             if (fields != null && fields.length() > 0) {
@@ -112,6 +113,9 @@ public class SugarCrmConnector extends AbstractConnector implements Connector {
             throw new IOException(e);
         } catch (JaxenException e) {
             throw new IOException(e);
+        } finally {
+            if (m != null)
+                m.close();
         }
     }
 
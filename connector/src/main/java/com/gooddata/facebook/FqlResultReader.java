@@ -0,0 +1,149 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.facebook;
+
+import com.gooddata.util.JSONStreamReader;
+import com.restfb.json.JsonException;
+import com.restfb.json.JsonObject;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Maps an FQL query JSON response (an array of flat objects) directly to rows of strings in the order
+ * of the FQL SELECT columns. The response is pulled token by token with {@link JSONStreamReader}, so only a single
+ * row is held in memory and no document tree is built. Nested objects and arrays are returned as their JSON text,
+ * missing and null values as empty strings.
+ *
+ * @author zd <zd@gooddata.com>
+ * @version 1.0
+ */
+public class FqlResultReader {
+
+    private final JSONStreamReader reader;
+    private final Map<String, Integer> columnIndex = new HashMap<String, Integer>();
+    private final int columnCount;
+    private boolean started = false;
+    private boolean finished = false;
+    private int rowCount = 0;
+
+    /**
+     * Creates the reader
+     *
+     * @param json    the FQL response
+     * @param columns the FQL SELECT columns
+     */
+    public FqlResultReader(Reader json, List<String> columns) {
+        this.reader = new JSONStreamReader(json);
+        this.columnCount = columns.size();
+        for (int i = 0; i < columns.size(); i++) {
+            columnIndex.put(columns.get(i), i);
+        }
+    }
+
+    /**
+     * Reads the next row
+     *
+     * @return the row values or null if there are no more rows
+     * @throws JsonException if the response isn't an array of objects or can't be read
+     */
+    public String[] readRow() throws JsonException {
+        if (finished)
+            return null;
+        try {
+            return nextRow();
+        } catch (IOException e) {
+            throw new JsonException(e);
+        }
+    }
+
+    private String[] nextRow() throws IOException, JsonException {
+        if (!started) {
+            started = true;
+            if (reader.peek() == JSONStreamReader.Token.BEGIN_OBJECT) {
+                // FQL returns an empty object when there are no results
+                reader.beginObject();
+                if (reader.hasNext())
+                    throw new JsonException("Unexpected FQL response object");
+                reader.endObject();
+                finished = true;
+                return null;
+            }
+            reader.beginArray();
+        }
+        if (!reader.hasNext()) {
+            reader.endArray();
+            finished = true;
+            return null;
+        }
+        if (reader.peek() != JSONStreamReader.Token.BEGIN_OBJECT)
+            throw new JsonException("An FQL result row must be an object");
+        reader.beginObject();
+        String[] row = new String[columnCount];
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            Integer i = columnIndex.get(key);
+            if (i == null)
+                i = columnIndex.get(key.toLowerCase());
+            if (i == null) {
+                reader.skipValue();
+                continue;
+            }
+            switch (reader.peek()) {
+                case STRING:
+                    row[i] = reader.nextString();
+                    break;
+                case NUMBER:
+                    // keep the number formatting of the former object mapping
+                    row[i] = JsonObject.stringToValue(reader.nextString()).toString();
+                    break;
+                case BOOLEAN:
+                    row[i] = reader.nextString();
+                    break;
+                case NULL:
+                    reader.nextNull();
+                    break;
+                default:
+                    row[i] = reader.readTree().toString();
+            }
+        }
+        reader.endObject();
+        for (int i = 0; i < columnCount; i++) {
+            if (row[i] == null)
+                row[i] = "";
+        }
+        rowCount++;
+        return row;
+    }
+
+    /**
+     * @return number of rows read so far
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+}
@@ -103,6 +103,14 @@ public class MsDynamicsWrapper {
         setPassword(password);
     }
 
+    /**
+     * Logs the SOAP call statistics and releases the pooled connections to the CRM 2011 Online
+     */
+    public void close() {
+        soap.logStatistics();
+        soap.close();
+    }
+
     /**
      * Connects the CRM 2011 Online
      *
@@ -97,6 +97,13 @@ public class PivotalApi {
 
     protected DecimalFormat decf = new DecimalFormat(Constants.DEFAULT_DEC_FMT_STRING);
 
+    /**
+     * Default number of the stories waiting for their release that are kept in memory
+     */
+    public static final int DEFAULT_MAX_BUFFERED_STORIES = 10000;
+
+    private int maxBufferedStories = DEFAULT_MAX_BUFFERED_STORIES;
+
     /**
      * The Pivotal API wrapper constructor
      *
@@ -223,16 +230,6 @@ public class PivotalApi {
         }
     }
 
-    /**
-     * Writes a record to CSV writer
-     *
-     * @param cw  CSV writer
-     * @param rec record as a list
-     */
-    private void writeRecord(CSVWriter cw, List<String> rec) {
-        cw.writeNext(rec.toArray(new String[]{}));
-    }
-
     private DateTimeFormatter reader = DateTimeFormat.forPattern("MMM dd, yyyy");
     private DateTimeFormatter writer = DateTimeFormat.forPattern("yyyy-MM-dd");
 
@@ -271,7 +268,7 @@ public class PivotalApi {
      * @param csvFile                the incoming PT CSV file
      * @param velocityIterationCount the number of iterations that the velocity is computed from
      * @param velocities             returned velocities
-     * @param releaseInfo            releases
+     * @param releaseInfo            releases, null if the releases aren't needed
      * @throws Exception in case of an IO issue
      */
     public void computeIterationVelocity(String csvFile, int velocityIterationCount,
@@ -296,7 +293,7 @@ public class PivotalApi {
                         String type = row[typeIdx];
                         String name = row[nameIdx];
                         if (id != null && id.length() > 0) {
-                            if (type != null && type.length() > 0) {
+                            if (releaseInfo != null && type != null && type.length() > 0) {
                                 if ("release".equalsIgnoreCase(type)) {
                                     if (name != null && name.length() > 0) {
                                         for (String story : releaseBuffer) {
@@ -367,7 +364,10 @@ public class PivotalApi {
 
 
     /**
-     * Parses the PT CSV file into the STORY, LABEL, and LABEL_TO_STORY CSV files
+     * Parses the PT CSV file into the STORY, LABEL, and LABEL_TO_STORY CSV files. The file is read once, all three
+     * outputs are written together. The velocity is computed incrementally from the last velocityIterationCount
+     * iterations, this requires the stories ordered by iteration (as the PT exports them). Unordered files are
+     * parsed again with the velocities computed upfront.
      *
      * @param csvFile                the incoming PT CSV file
      * @param storiesCsv             the output STORY CSV file
@@ -377,127 +377,346 @@ public class PivotalApi {
      * @throws Exception in case of an IO issue
      */
     public void parse(String csvFile, String storiesCsv, String labelsCsv, String labelsToStoriesCsv, DateTime t, int velocityIterationCount) throws IOException {
+        if (!parse(csvFile, storiesCsv, labelsCsv, labelsToStoriesCsv, t, velocityIterationCount, null)) {
+            l.debug("The PT stories aren't ordered by iteration, computing the iteration velocities upfront.");
+            Map<Integer, String> velocities = computeIterationVelocity(csvFile, velocityIterationCount);
+            parse(csvFile, storiesCsv, labelsCsv, labelsToStoriesCsv, t, velocityIterationCount, velocities);
+        }
+    }
+
+    /**
+     * Parses the PT CSV file in one pass
+     *
+     * @param velocities the precomputed velocities, null computes them incrementally
+     * @return false if the velocities were to be computed incrementally and the iterations aren't ordered
+     * @throws IOException in case of an IO issue
+     */
+    private boolean parse(String csvFile, String storiesCsv, String labelsCsv, String labelsToStoriesCsv, DateTime t,
+                          int velocityIterationCount, Map<Integer, String> velocities) throws IOException {
         String today = writer.print(t);
-        Map<Integer, String> velocities = new HashMap<Integer, String>();
-        Map<String, String> releases = new HashMap<String, String>();
-        computeIterationVelocity(csvFile, velocityIterationCount, velocities, releases);
         CSVReader cr = FileUtil.createUtf8CsvReader(new File(csvFile));
-        String[] row = cr.readNext();
-        if (row != null && row.length > 0) {
-            List<String> headers = Arrays.asList(row);
-            List<String> storiesRecord = new ArrayList<String>();
-            List<String> labelsRecord = new ArrayList<String>();
-            List<String> labelsToStoriesRecord = new ArrayList<String>();
-
-            CSVWriter storiesWriter = new CSVWriter(new FileWriter(storiesCsv));
-            CSVWriter labelsWriter = new CSVWriter(new FileWriter(labelsCsv));
-            CSVWriter labelsToStoriesWriter = new CSVWriter(new FileWriter(labelsToStoriesCsv));
-
-            labelsRecord.add("cpId");
-            labelsRecord.add("Label Id");
-            labelsRecord.add("Label");
-            labelsToStoriesRecord.add("cpId");
-            labelsToStoriesRecord.add("Story Id");
-            labelsToStoriesRecord.add("Label Id");
-
-
-            for (String header : headers) {
-                if (RECORD_STORIES.contains(header)) {
-                    storiesRecord.add(header);
-                    if (header.equalsIgnoreCase("Iteration")) {
-                        storiesRecord.add("IterationFact");
-                        storiesRecord.add("IterationVelocity");
-                    }
-                    if (header.equalsIgnoreCase("Id")) {
-                        storiesRecord.add("Release");
-                    }
+        String[] headers = cr.readNext();
+        if (headers == null || headers.length <= 0) {
+            cr.close();
+            throw new InvalidParameterException("The Pivotal extract doesn't contain any row.");
+        }
+        List<String> headerList = Arrays.asList(headers);
+        int iterIdx = headerList.indexOf("Iteration");
+        int estIdx = headerList.indexOf("Estimate");
+        int idIdx = headerList.indexOf("Id");
+        int typeIdx = headerList.indexOf("Story Type");
+        int nameIdx = headerList.indexOf("Story");
+        int labelIdx = headerList.indexOf(HEADER_LABEL);
+        if (iterIdx < 0 || estIdx < 0 || idIdx < 0 || typeIdx < 0 || nameIdx < 0) {
+            cr.close();
+            throw new IOException("Iteration velocity computation failed: no Iteration or Estimate or Id or Type fields in header.");
+        }
+
+        List<String> storiesRecord = new ArrayList<String>();
+        storiesRecord.add("cpId");
+        storiesRecord.add("SnapshotDate");
+        int releaseIdx = -1;
+        for (String header : headers) {
+            if (RECORD_STORIES.contains(header)) {
+                storiesRecord.add(header);
+                if (header.equalsIgnoreCase("Iteration")) {
+                    storiesRecord.add("IterationFact");
+                    storiesRecord.add("IterationVelocity");
+                }
+                if (header.equalsIgnoreCase("Id")) {
+                    releaseIdx = storiesRecord.size();
+                    storiesRecord.add("Release");
                 }
             }
-            storiesRecord.add(0, "SnapshotDate");
-            storiesRecord.add(0, "cpId");
-            writeRecord(storiesWriter, storiesRecord);
-            writeRecord(labelsWriter, labelsRecord);
-            writeRecord(labelsToStoriesWriter, labelsToStoriesRecord);
-
-            Map<String, String> labels = new HashMap<String, String>();
-            row = cr.readNext();
+        }
+        int storiesRecordLength = storiesRecord.size();
+
+        CSVWriter storiesWriter = new CSVWriter(FileUtil.createBufferedUtf8Writer(storiesCsv));
+        CSVWriter labelsWriter = new CSVWriter(FileUtil.createBufferedUtf8Writer(labelsCsv));
+        CSVWriter labelsToStoriesWriter = new CSVWriter(FileUtil.createBufferedUtf8Writer(labelsToStoriesCsv));
+        ReleaseBuffer releaseBuffer = new ReleaseBuffer(storiesWriter, releaseIdx, getMaxBufferedStories());
+        VelocityWindow window = new VelocityWindow(velocityIterationCount);
+        try {
+            storiesWriter.writeNext(storiesRecord.toArray(new String[storiesRecordLength]));
+            labelsWriter.writeNext(new String[]{"cpId", "Label Id", "Label"});
+            labelsToStoriesWriter.writeNext(new String[]{"cpId", "Story Id", "Label Id"});
+
+            Set<String> labels = new HashSet<String>();
+            StringBuilder key = new StringBuilder();
+            String[] row = cr.readNext();
             while (row != null && row.length > 1) {
-                storiesRecord.clear();
-                labelsRecord.clear();
-                labelsToStoriesRecord.clear();
-                String storyId = "";
-                String label = "";
-                String key = today + "|";
-                for (int i = 0; i < headers.size(); i++) {
-                    String header = headers.get(i);
+                String id;
+                String type;
+                String name;
+                String iterTxt;
+                String estTxt;
+                try {
+                    id = row[idIdx];
+                    type = row[typeIdx];
+                    name = row[nameIdx];
+                    iterTxt = row[iterIdx];
+                    estTxt = row[estIdx];
+                } catch (ArrayIndexOutOfBoundsException e) {
+                    throw new IOException("Iteration velocity computation failed: data row doesn't contain Id or Type or Iteration or Estimate fields.");
+                }
+                if (id == null || id.length() <= 0)
+                    throw new IOException("Story with empty Id.");
+
+                String velocity = "0";
+                if (iterTxt != null && iterTxt.length() > 0) {
+                    int iteration = Integer.parseInt(iterTxt);
+                    if (velocities != null) {
+                        velocity = velocities.get(iteration);
+                    } else {
+                        int estimate = (estTxt != null && estTxt.length() > 0) ? (Integer.parseInt(estTxt)) : (0);
+                        if (!window.add(iteration, estimate))
+                            return false;
+                        velocity = decf.format(window.getVelocity(iteration));
+                    }
+                }
+
+                String[] record = new String[storiesRecordLength];
+                int pos = 2;
+                key.setLength(0);
+                key.append(today).append('|');
+                for (int i = 0; i < headers.length; i++) {
+                    String header = headers[i];
                     if (RECORD_STORIES.contains(header)) {
-                        key += row[i] + "|";
-                        storiesRecord.add(convertDate(header, row[i]));
-                        if (header.equalsIgnoreCase("Id")) {
-                            String id = row[i];
-                            String release = "";
-                            if (releases.containsKey(id)) {
-                                release = releases.get(id);
-                            }
-                            storiesRecord.add(release);
+                        key.append(row[i]).append('|');
+                        record[pos++] = convertDate(header, row[i]);
+                        if (i == idIdx) {
+                            // filled in when the story's release is known
+                            record[pos++] = null;
                         }
-                        if (header.equalsIgnoreCase("Iteration")) {
-                            storiesRecord.add(convertDate(header, row[i]));
-                            if (row[i] != null && row[i].length() > 0) {
-                                Integer iteration = Integer.parseInt(row[i]);
-
-                                storiesRecord.add(convertDate(header, velocities.get(iteration)));
-                            } else {
-                                storiesRecord.add(convertDate(header, "0"));
-                            }
+                        if (i == iterIdx) {
+                            record[pos++] = row[i];
+                            record[pos++] = velocity;
                         }
                     }
-                    if (HEADER_LABEL.equals(header)) {
-                        label = row[i];
+                }
+                String storyId = DigestUtils.md5Hex(key.toString());
+                record[0] = storyId;
+                record[1] = today;
+
+                // the stories belong to the release that follows them
+                if (type != null && type.length() > 0) {
+                    if ("release".equalsIgnoreCase(type)) {
+                        if (name == null || name.length() <= 0)
+                            throw new IOException("Release with no name.");
+                        releaseBuffer.add(record);
+                        releaseBuffer.flush(name);
+                    } else {
+                        releaseBuffer.add(record);
                     }
+                } else {
+                    if (releaseIdx >= 0)
+                        record[releaseIdx] = "";
+                    releaseBuffer.add(record);
                 }
-                storyId = DigestUtils.md5Hex(key);
-                storiesRecord.add(0, today);
-                storiesRecord.add(0, storyId);
-                String[] lbls = label.split(",");
-                for (String lbl : lbls) {
-                    lbl = lbl.trim();
+
+                String label = (labelIdx >= 0 && labelIdx < row.length) ? (row[labelIdx]) : ("");
+                int start = 0;
+                while (label != null && start < label.length()) {
+                    int end = label.indexOf(',', start);
+                    if (end < 0)
+                        end = label.length();
+                    String lbl = label.substring(start, end).trim();
+                    start = end + 1;
                     if (lbl.length() > 0) {
-                        if (labels.containsKey(lbl)) {
-                            String lblId = labels.get(lbl);
-                            labelsToStoriesRecord.add(storyId);
-                            labelsToStoriesRecord.add(lblId);
-                            labelsToStoriesRecord.add(0, DigestUtils.md5Hex(storyId + "|" + lblId));
-                            writeRecord(labelsToStoriesWriter, labelsToStoriesRecord);
-                        } else {
-                            String id = DigestUtils.md5Hex(lbl);
-                            labels.put(lbl, id);
-                            labelsRecord.add(lbl);
-                            labelsRecord.add(0, id);
-                            labelsToStoriesRecord.add(storyId);
-                            labelsToStoriesRecord.add(id);
-                            writeRecord(labelsWriter, labelsRecord);
-                            labelsToStoriesRecord.add(0, DigestUtils.md5Hex(storyId + "|" + id));
-                            writeRecord(labelsToStoriesWriter, labelsToStoriesRecord);
+                        String lblId = DigestUtils.md5Hex(lbl);
+                        if (labels.add(lbl)) {
+                            labelsWriter.writeNext(new String[]{lblId, lbl});
                         }
+                        labelsToStoriesWriter.writeNext(new String[]{DigestUtils.md5Hex(storyId + "|" + lblId),
+                                storyId, lblId});
                     }
-                    labelsRecord.clear();
-                    labelsToStoriesRecord.clear();
                 }
-                writeRecord(storiesWriter, storiesRecord);
                 row = cr.readNext();
             }
-            storiesWriter.flush();
+            // stories after the last release
+            releaseBuffer.flush("");
+        } finally {
+            releaseBuffer.close();
+            cr.close();
             storiesWriter.close();
-            labelsWriter.flush();
             labelsWriter.close();
-            labelsToStoriesWriter.flush();
             labelsToStoriesWriter.close();
-        } else {
-            throw new InvalidParameterException("The Pivotal extract doesn't contain any row.");
         }
+        return true;
+    }
 
+    /**
+     * Computes the iteration velocities upfront
+     *
+     * @param csvFile                the incoming PT CSV file
+     * @param velocityIterationCount the number of iterations that the velocity is computed from
+     * @return velocities by iteration
+     * @throws IOException in case of an IO issue
+     */
+    private Map<Integer, String> computeIterationVelocity(String csvFile, int velocityIterationCount)
+            throws IOException {
+        Map<Integer, String> velocities = new HashMap<Integer, String>();
+        computeIterationVelocity(csvFile, velocityIterationCount, velocities, null);
+        return velocities;
+    }
+
+    /**
+     * Estimates of the last iterations in a ring buffer. The iterations must be added in ascending order.
+     */
+    static class VelocityWindow {
+
+        private final int size;
+        private final int[] iterations;
+        private final int[] estimates;
+        private boolean empty = true;
+        private int current;
+        private int currentEstimate;
+
+        VelocityWindow(int size) {
+            this.size = Math.max(size, 0);
+            iterations = new int[this.size];
+            estimates = new int[this.size];
+            Arrays.fill(iterations, Integer.MIN_VALUE);
+        }
+
+        /**
+         * Adds the story estimate to its iteration
+         *
+         * @param iteration the iteration
+         * @param estimate  the estimate
+         * @return false if the iteration precedes an already added one
+         */
+        boolean add(int iteration, int estimate) {
+            if (empty || iteration != current) {
+                if (!empty) {
+                    if (iteration < current)
+                        return false;
+                    store(current, currentEstimate);
+                }
+                empty = false;
+                current = iteration;
+                currentEstimate = 0;
+            }
+            currentEstimate += estimate;
+            return true;
+        }
+
+        private void store(int iteration, int estimate) {
+            if (size > 0) {
+                int slot = slot(iteration);
+                iterations[slot] = iteration;
+                estimates[slot] = estimate;
+            }
+        }
+
+        private int slot(int iteration) {
+            int slot = iteration % size;
+            return (slot < 0) ? (slot + size) : (slot);
+        }
+
+        /**
+         * Computes the velocity of the current iteration from the previous ones
+         *
+         * @param iteration the current iteration
+         * @return the average estimate of the previous iterations that contain stories
+         */
+        double getVelocity(int iteration) {
+            int cnt = 0;
+            int estimate = 0;
+            for (int i = 1; i <= size; i++) {
+                int slot = slot(iteration - i);
+                if (iterations[slot] == iteration - i) {
+                    cnt++;
+                    estimate += estimates[slot];
+                }
+            }
+            return (cnt > 0) ? ((double) estimate / (double) cnt) : (0);
+        }
+    }
+
+    /**
+     * Stories waiting for the release that follows them. The stories over the limit are spilled to a temporary file.
+     */
+    private static class ReleaseBuffer {
+
+        private final CSVWriter out;
+        private final int releaseIdx;
+        private final int maxBuffered;
+        private final List<String[]> rows = new ArrayList<String[]>();
+        private File spill;
+        private CSVWriter spillWriter;
+
+        private ReleaseBuffer(CSVWriter out, int releaseIdx, int maxBuffered) {
+            this.out = out;
+            this.releaseIdx = releaseIdx;
+            this.maxBuffered = maxBuffered;
+        }
+
+        private void add(String[] record) throws IOException {
+            if (releaseIdx < 0) {
+                out.writeNext(record);
+            } else if (spillWriter == null && rows.size() < maxBuffered) {
+                rows.add(record);
+            } else {
+                if (spillWriter == null) {
+                    spill = FileUtil.getTempFile();
+                    spillWriter = new CSVWriter(FileUtil.createBufferedUtf8Writer(spill));
+                }
+                // the last column tells whether the release is to be filled in
+                String[] r = new String[record.length + 1];
+                System.arraycopy(record, 0, r, 0, record.length);
+                r[record.length] = (record[releaseIdx] == null) ? ("1") : ("0");
+                spillWriter.writeNext(r);
+            }
+        }
+
+        private void flush(String release) throws IOException {
+            for (String[] record : rows) {
+                write(record, release);
+            }
+            rows.clear();
+            if (spillWriter != null) {
+                spillWriter.close();
+                spillWriter = null;
+                CSVReader r = FileUtil.createUtf8CsvReader(spill);
+                try {
+                    String[] s = r.readNext();
+                    while (s != null) {
+                        String[] record = new String[s.length - 1];
+                        System.arraycopy(s, 0, record, 0, record.length);
+                        if ("1".equals(s[record.length]))
+                            record[releaseIdx] = null;
+                        write(record, release);
+                        s = r.readNext();
+                    }
+                } finally {
+                    r.close();
+                    spill.delete();
+                }
+            }
+        }
+
+        private void write(String[] record, String release) {
+            if (record[releaseIdx] == null)
+                record[releaseIdx] = release;
+            out.writeNext(record);
+        }
+
+        private void close() throws IOException {
+            if (spillWriter != null) {
+                spillWriter.close();
+                spillWriter = null;
+                spill.delete();
+            }
+        }
+    }
+
+    public int getMaxBufferedStories() {
+        return maxBufferedStories;
+    }
 
+    public void setMaxBufferedStories(int maxBufferedStories) {
+        this.maxBufferedStories = maxBufferedStories;
     }
 
     public String getUserName() {
@@ -140,6 +140,14 @@ public class SugarCrmWrapper {
         setPassword(password);
     }
 
+    /**
+     * Logs the SOAP call statistics and releases the pooled connections to the Sugar CRM Online
+     */
+    public void close() {
+        soap.logStatistics();
+        soap.close();
+    }
+
     /**
      * Connects the Sugar CRM Online
      *
@@ -20,15 +20,13 @@
  * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
  * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
  */
-
 package com.gooddata.time;
 
-import com.gooddata.util.CSVWriter;
-import com.gooddata.util.FileUtil;
-
-import java.io.File;
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.text.DecimalFormat;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
 
 /**
  * Generates the time dimension CSV
@@ -43,35 +41,113 @@ public class TimeDimensionGenerator {
         tg.generate("/Users/zdenek/temp/data.csv");
     }
 
-    DecimalFormat nf = new DecimalFormat("00");
+    /**
+     * Number of the generated rows (one per second of the day)
+     */
+    public static final int ROW_COUNT = 24 * 60 * 60;
+
+    private static final String[] HEADER = {"second_of_day", "second", "minute_of_day", "minute", "hour", "hour12",
+            "am_pm", "time", "time12"};
+
+    // rows are formatted to this buffer and written in bulk
+    private static final int BUF_SIZE = 64 * 1024;
+
+    private static final int MAX_ROW_LENGTH = 128;
 
     public void generate(String outputCsv) throws IOException {
-        String[] header = {"second_of_day", "second", "minute_of_day", "minute", "hour", "hour12", "am_pm", "time", "time12"};
-        CSVWriter cw = FileUtil.createUtf8CsvEscapingWriter(new File(outputCsv));
-        cw.writeNext(header);
-        for (int sec_of_day = 0; sec_of_day < 24 * 60 * 60; sec_of_day++) {
-            String[] row = new String[header.length];
-            row[0] = nf.format(sec_of_day);
+        Writer w = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(outputCsv), "utf8"), BUF_SIZE);
+        try {
+            generate(w);
+        } finally {
+            w.close();
+        }
+    }
+
+    /**
+     * Writes the time dimension CSV. The output is identical to the one of the CSV escaping writer
+     * (all values quoted, numbers formatted to at least two digits), the values are formatted directly
+     * to a char buffer.
+     *
+     * @param w the writer, it isn't closed
+     * @throws IOException in case of IO issues
+     */
+    public void generate(Writer w) throws IOException {
+        char[] buf = new char[BUF_SIZE];
+        int pos = 0;
+        for (int i = 0; i < HEADER.length; i++) {
+            if (i > 0)
+                buf[pos++] = ',';
+            buf[pos++] = '"';
+            HEADER[i].getChars(0, HEADER[i].length(), buf, pos);
+            pos += HEADER[i].length();
+            buf[pos++] = '"';
+        }
+        buf[pos++] = '\n';
+        for (int sec_of_day = 0; sec_of_day < ROW_COUNT; sec_of_day++) {
+            if (pos + MAX_ROW_LENGTH > buf.length) {
+                w.write(buf, 0, pos);
+                pos = 0;
+            }
             int sec = sec_of_day % 60;
-            row[1] = nf.format(sec);
             int minute_of_day = sec_of_day / 60;
-            row[2] = nf.format(minute_of_day);
             int minute = minute_of_day % 60;
-            row[3] = nf.format(minute);
             int hour = minute_of_day / 60;
-            row[4] = nf.format(hour);
             int hour12 = (hour == 12) ? (12) : (hour % 12);
-            row[5] = nf.format(hour12);
-            String ampm = (hour < 12) ? ("AM") : ("PM");
-            row[6] = ampm;
-            String time = nf.format(hour) + ":" + nf.format(minute) + ":" + nf.format(sec);
-            row[7] = time;
-            String time12 = nf.format(hour12) + ":" + nf.format(minute) + ":" + nf.format(sec);
-            row[8] = time12;
-            cw.writeNext(row);
+            pos = number(buf, pos, sec_of_day);
+            pos = number(buf, pos, sec);
+            pos = number(buf, pos, minute_of_day);
+            pos = number(buf, pos, minute);
+            pos = number(buf, pos, hour);
+            pos = number(buf, pos, hour12);
+            buf[pos++] = '"';
+            buf[pos++] = (hour < 12) ? 'A' : 'P';
+            buf[pos++] = 'M';
+            buf[pos++] = '"';
+            buf[pos++] = ',';
+            pos = time(buf, pos, hour, minute, sec);
+            buf[pos++] = ',';
+            pos = time(buf, pos, hour12, minute, sec);
+            buf[pos++] = '\n';
+        }
+        w.write(buf, 0, pos);
+        w.flush();
+    }
+
+    /**
+     * Formats the quoted number (at least two digits) followed by the separator
+     */
+    private static int number(char[] buf, int pos, int n) {
+        buf[pos++] = '"';
+        if (n < 100) {
+            pos = twoDigits(buf, pos, n);
+        } else {
+            String s = Integer.toString(n);
+            s.getChars(0, s.length(), buf, pos);
+            pos += s.length();
         }
-        cw.flush();
-        cw.close();
+        buf[pos++] = '"';
+        buf[pos++] = ',';
+        return pos;
+    }
+
+    /**
+     * Formats the quoted hh:mm:ss time
+     */
+    private static int time(char[] buf, int pos, int h, int m, int s) {
+        buf[pos++] = '"';
+        pos = twoDigits(buf, pos, h);
+        buf[pos++] = ':';
+        pos = twoDigits(buf, pos, m);
+        buf[pos++] = ':';
+        pos = twoDigits(buf, pos, s);
+        buf[pos++] = '"';
+        return pos;
+    }
+
+    private static int twoDigits(char[] buf, int pos, int n) {
+        buf[pos++] = (char) ('0' + n / 10);
+        buf[pos++] = (char) ('0' + n % 10);
+        return pos;
     }
 
 }
@@ -28,6 +28,8 @@ import java.lang.reflect.Method;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import static java.lang.String.format;
 import static java.util.Collections.*;
@@ -45,8 +47,14 @@ public final class ReflectionUtils {
      * In-memory shared cache of reflection data for
      * {@link #findFieldsWithAnnotation(Class, Class)}.
      */
-    private static final Map<ClassAnnotationCacheKey, List<?>> FIELDS_WITH_ANNOTATION_CACHE =
-            synchronizedMap(new HashMap<ClassAnnotationCacheKey, List<?>>());
+    private static final ConcurrentMap<ClassAnnotationCacheKey, List<?>> FIELDS_WITH_ANNOTATION_CACHE =
+            new ConcurrentHashMap<ClassAnnotationCacheKey, List<?>>();
+
+    /**
+     * In-memory shared cache of reflection data for {@link #getAccessors(Class)}.
+     */
+    private static final ConcurrentMap<Class<?>, List<Method>> ACCESSORS_CACHE =
+            new ConcurrentHashMap<Class<?>, List<Method>>();
 
     /**
      * Prevents instantiation.
@@ -112,8 +120,11 @@ public final class ReflectionUtils {
         }
 
         fieldsWithAnnotation = unmodifiableList(fieldsWithAnnotation);
-        FIELDS_WITH_ANNOTATION_CACHE.put(cacheKey, fieldsWithAnnotation);
-        return fieldsWithAnnotation;
+        // concurrent lookups of the same type compute the same list, keep the first one
+        @SuppressWarnings("unchecked")
+        List<FieldWithAnnotation<T>> previous =
+                (List<FieldWithAnnotation<T>>) FIELDS_WITH_ANNOTATION_CACHE.putIfAbsent(cacheKey, fieldsWithAnnotation);
+        return (previous != null) ? previous : fieldsWithAnnotation;
     }
 
     /**
@@ -148,6 +159,10 @@ public final class ReflectionUtils {
         if (clazz == null)
             throw new IllegalArgumentException("The 'clazz' parameter cannot be null.");
 
+        List<Method> cachedMethods = ACCESSORS_CACHE.get(clazz);
+        if (cachedMethods != null)
+            return cachedMethods;
+
         List<Method> methods = new ArrayList<Method>();
 
         for (Method method : clazz.getMethods()) {
@@ -174,7 +189,9 @@ public final class ReflectionUtils {
             }
         });
 
-        return unmodifiableList(methods);
+        methods = unmodifiableList(methods);
+        List<Method> previous = ACCESSORS_CACHE.putIfAbsent(clazz, methods);
+        return (previous != null) ? previous : methods;
     }
 
     /**
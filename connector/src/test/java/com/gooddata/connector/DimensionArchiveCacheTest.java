@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.connector;
+
+import com.gooddata.util.FileUtil;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+public class DimensionArchiveCacheTest extends TestCase {
+
+    private File dir;
+
+    public void setUp() throws IOException {
+        dir = FileUtil.createTempDir();
+    }
+
+    public void tearDown() {
+        FileUtil.recursiveDelete(dir);
+    }
+
+    public void testArchiveIsBuiltOnce() throws IOException {
+        DimensionArchiveCache cache = new DimensionArchiveCache(dir);
+        final int[] builds = new int[1];
+        DimensionArchiveCache.ArchiveBuilder builder = new DimensionArchiveCache.ArchiveBuilder() {
+            public void build(String archivePath) throws IOException {
+                builds[0]++;
+                FileUtil.writeStringToFile("archive", archivePath);
+            }
+        };
+        String key = DimensionArchiveCache.getKey("a", "b");
+        File first = cache.get(key, builder);
+        File second = new DimensionArchiveCache(dir).get(key, builder);
+        assertEquals(first, second);
+        assertEquals(1, builds[0]);
+        assertEquals(1, dir.listFiles().length);
+        assertFalse(key.equals(DimensionArchiveCache.getKey("a", "c")));
+    }
+
+    public void testDateDimensionArchive() throws IOException {
+        DateDimensionConnector c = DateDimensionConnector.createConnector();
+        c.setName("created");
+        c.setIncludeTime(true);
+        DimensionArchiveCache cache = new DimensionArchiveCache(dir);
+        File archive = c.getArchive(cache);
+        assertEquals(archive, c.getArchive(cache));
+
+        ZipFile zip = new ZipFile(archive);
+        Set<String> entries = new HashSet<String>();
+        for (ZipEntry e : Collections.list(zip.entries())) {
+            entries.add(e.getName());
+        }
+        zip.close();
+        assertTrue(entries.contains("data.csv"));
+        assertTrue(entries.contains("upload_info.json"));
+
+        c.setName("closed");
+        assertFalse(archive.equals(c.getArchive(cache)));
+    }
+}
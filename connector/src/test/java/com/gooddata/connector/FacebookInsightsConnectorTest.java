@@ -0,0 +1,183 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.connector;
+
+import com.gooddata.Constants;
+import com.gooddata.modeling.model.SourceColumn;
+import com.gooddata.modeling.model.SourceSchema;
+import com.gooddata.util.CSVReader;
+import com.gooddata.util.FileUtil;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.joda.time.format.DateTimeFormat;
+import org.joda.time.format.DateTimeFormatter;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the Insights extraction against a local stand-in of the Graph API
+ */
+public class FacebookInsightsConnectorTest extends TestCase {
+
+    private static final long DAY = 86400;
+
+    private static final DateTimeFormatter ISO = DateTimeFormat.forPattern("yyyy-MM-dd'T'HH:mm:ssZ").withZone(DateTimeZone.UTC);
+
+    private HttpServer server;
+    private String baseUrl;
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicInteger failures = new AtomicInteger();
+    private final Set<String> failed = Collections.synchronizedSet(new HashSet<String>());
+    private long today;
+
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/123/insights/page_views/day", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                requests.incrementAndGet();
+                String query = exchange.getRequestURI().getQuery();
+                long since = Long.parseLong(param(query, "since"));
+                long until = Long.parseLong(param(query, "until"));
+                // every request fails once, the connector must retry it
+                if (failed.add(since + "-" + until)) {
+                    failures.incrementAndGet();
+                    respond(exchange, 500, "{}");
+                    return;
+                }
+                StringBuilder sb = new StringBuilder("{\"data\":[{\"id\":\"123/insights/page_views/day\"," +
+                        "\"name\":\"page_views\",\"period\":\"day\",\"values\":[");
+                boolean first = true;
+                // both window ends are returned, the connector must not duplicate the boundaries
+                for (long t = since; t <= until && t <= today; t += DAY) {
+                    if (!first)
+                        sb.append(',');
+                    first = false;
+                    sb.append("{\"value\":").append(t / DAY).append(",\"end_time\":\"")
+                            .append(ISO.print(t * 1000)).append("\"}");
+                }
+                // the next page starts the day after this one
+                sb.append("]}],\"paging\":{\"next\":\"").append(baseUrl).append("?since=").append(until + DAY)
+                        .append("&until=").append(until + DAY + (until - since)).append("\"}}");
+                respond(exchange, 200, sb.toString());
+            }
+        });
+        server.start();
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/123/insights/page_views/day";
+    }
+
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private static String param(String query, String name) {
+        for (String p : query.split("&")) {
+            if (p.startsWith(name + "="))
+                return p.substring(name.length() + 1);
+        }
+        return null;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream os = exchange.getResponseBody();
+        os.write(bytes);
+        os.close();
+    }
+
+    public void testSplitDateRange() {
+        DateTime start = new DateTime(2011, 1, 1, 0, 0, 0, 0);
+        List<DateTime[]> w = FacebookInsightsConnector.splitDateRange(start, start.plusDays(65), 30);
+        assertEquals(3, w.size());
+        assertEquals(start.plusDays(30), w.get(0)[1]);
+        assertEquals(start.plusDays(30), w.get(1)[0]);
+        assertEquals(start.plusDays(65), w.get(2)[1]);
+        assertEquals(1, FacebookInsightsConnector.splitDateRange(start, start, 30).size());
+    }
+
+    public void testConcurrentExtract() throws IOException {
+        DateTime start = new DateTime(2011, 1, 1, 0, 0, 0, 0, DateTimeZone.UTC);
+        DateTime end = start.plusDays(100);
+        // the last window follows the paging links until there are no more data
+        today = end.plusDays(5).getMillis() / 1000;
+
+        FacebookInsightsConnector c = FacebookInsightsConnector.createConnector();
+        c.schema = createSchema();
+        c.setBaseUrl(baseUrl);
+        c.setOauthToken("token");
+        c.setStartDate(start);
+        c.setEndDate(end);
+        c.setWindowDays(7);
+        c.setParallelism(4);
+
+        File csv = FileUtil.getTempFile();
+        c.extract(csv.getAbsolutePath(), false);
+
+        CSVReader r = FileUtil.createUtf8CsvReader(csv);
+        r.readNext(); // header
+        Set<String> values = new HashSet<String>();
+        String[] row;
+        int rows = 0;
+        double previous = -1;
+        while ((row = r.readNext()) != null) {
+            assertEquals("123", row[0]);
+            assertEquals("page_views", row[2]);
+            assertTrue("Duplicate value " + row[3], values.add(row[3]));
+            // the windows are written in the window order
+            double value = Double.parseDouble(row[3]);
+            assertTrue("Value " + value + " out of order", value > previous);
+            previous = value;
+            rows++;
+        }
+        r.close();
+        csv.delete();
+        assertEquals(106, rows);
+        assertTrue(requests.get() > 15);
+        assertEquals(failed.size(), failures.get());
+        assertEquals(2 * failures.get(), requests.get());
+    }
+
+    private static SourceSchema createSchema() {
+        SourceSchema s = SourceSchema.createSchema("fb");
+        s.addColumn(new SourceColumn("objectid", SourceColumn.LDM_TYPE_ATTRIBUTE, "objectid"));
+        SourceColumn dt = new SourceColumn("date", SourceColumn.LDM_TYPE_DATE, "date");
+        dt.setFormat(Constants.DEFAULT_DATE_FMT_STRING);
+        s.addColumn(dt);
+        s.addColumn(new SourceColumn("metric", SourceColumn.LDM_TYPE_ATTRIBUTE, "metric"));
+        s.addColumn(new SourceColumn("value", SourceColumn.LDM_TYPE_FACT, "value"));
+        return s;
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.facebook;
+
+import com.restfb.DefaultFacebookClient;
+import com.restfb.exception.FacebookResponseStatusException;
+import com.restfb.json.JsonException;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.List;
+
+public class FqlResultReaderTest extends TestCase {
+
+    private static final List<String> COLUMNS = Arrays.asList("uid", "name", "age");
+
+    public void testReadRows() throws JsonException {
+        String json = "[{\"name\":\"John \\\"Doe\\\"\",\"uid\":1234567890123,\"age\":null}," +
+                "{\"uid\":2,\"name\":\"Jane\",\"age\":31,\"extra\":{\"a\":[1,2]}},{}]";
+        FqlResultReader r = new FqlResultReader(new StringReader(json), COLUMNS);
+        assertTrue(Arrays.equals(new String[]{"1234567890123", "John \"Doe\"", ""}, r.readRow()));
+        assertTrue(Arrays.equals(new String[]{"2", "Jane", "31"}, r.readRow()));
+        assertTrue(Arrays.equals(new String[]{"", "", ""}, r.readRow()));
+        assertNull(r.readRow());
+        assertNull(r.readRow());
+        assertEquals(3, r.getRowCount());
+    }
+
+    public void testNestedValues() throws JsonException {
+        String json = "[ {\"uid\" : \"1\", \"name\" : {\"first\":\"John\"}, \"age\" : [1, 2]} ]";
+        FqlResultReader r = new FqlResultReader(new StringReader(json), COLUMNS);
+        String[] row = r.readRow();
+        assertEquals("1", row[0]);
+        assertTrue(row[1].contains("\"first\""));
+        assertTrue(row[2].startsWith("["));
+        assertNull(r.readRow());
+    }
+
+    public void testEmptyResults() throws JsonException {
+        assertNull(new FqlResultReader(new StringReader("[]"), COLUMNS).readRow());
+        assertNull(new FqlResultReader(new StringReader("{}"), COLUMNS).readRow());
+    }
+
+    public void testInvalidResponse() {
+        try {
+            new FqlResultReader(new StringReader("[1,2]"), COLUMNS).readRow();
+            fail("Expected a syntax error.");
+        }
+        catch (JsonException e) {
+            // expected
+        }
+    }
+
+    public void testStreamedResponse() throws Exception {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/method/fql.query", new HttpHandler() {
+            public void handle(HttpExchange exchange) throws IOException {
+                byte[] body = readQuery(exchange).contains("error") ?
+                        ("{\"error_code\":601,\"error_msg\":\"Parser error\"}".getBytes("UTF-8")) :
+                        (" [{\"uid\":1,\"name\":\"John\"},{\"uid\":2,\"name\":\"Jane\"}]".getBytes("UTF-8"));
+                // chunked, the client can't know the length up front
+                exchange.sendResponseHeaders(200, 0);
+                OutputStream os = exchange.getResponseBody();
+                os.write(body);
+                os.close();
+            }
+        });
+        server.start();
+        final String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/method";
+        DefaultFacebookClient fc = new DefaultFacebookClient("token") {
+            @Override
+            protected String getFacebookLegacyEndpointUrl() {
+                return url;
+            }
+        };
+        try {
+            InputStream response = fc.executeQueryStream("SELECT uid, name FROM user");
+            try {
+                FqlResultReader r = new FqlResultReader(new InputStreamReader(response, "UTF-8"), COLUMNS);
+                assertTrue(Arrays.equals(new String[]{"1", "John", ""}, r.readRow()));
+                assertTrue(Arrays.equals(new String[]{"2", "Jane", ""}, r.readRow()));
+                assertNull(r.readRow());
+            } finally {
+                response.close();
+            }
+            try {
+                fc.executeQueryStream("SELECT error FROM user");
+                fail("Expected the FQL error.");
+            } catch (FacebookResponseStatusException e) {
+                assertEquals(Integer.valueOf(601), e.getErrorCode());
+            }
+        } finally {
+            server.stop(0);
+        }
+    }
+
+    private static String readQuery(HttpExchange exchange) throws IOException {
+        InputStream is = exchange.getRequestBody();
+        StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = is.read()) >= 0)
+            sb.append((char) c);
+        return sb.toString();
+    }
+}
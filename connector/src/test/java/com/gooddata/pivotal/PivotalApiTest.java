@@ -0,0 +1,177 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.pivotal;
+
+import com.gooddata.util.CSVReader;
+import com.gooddata.util.CSVWriter;
+import com.gooddata.util.FileUtil;
+import junit.framework.TestCase;
+import org.joda.time.DateTime;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class PivotalApiTest extends TestCase {
+
+    private static final String[] HEADER = {"Id", "Story", "Labels", "Iteration", "Iteration Start", "Iteration End",
+            "Story Type", "Estimate", "Current State", "Created at", "Accepted at", "Deadline", "Requested By",
+            "Owned By", "URL"};
+
+    private File dir;
+
+    public void setUp() throws IOException {
+        dir = FileUtil.createTempDir();
+    }
+
+    public void tearDown() {
+        FileUtil.recursiveDelete(dir);
+    }
+
+    private List<String[]> createStories() {
+        List<String[]> rows = new ArrayList<String[]>();
+        int id = 1;
+        for (int iteration = 1; iteration <= 8; iteration++) {
+            // iteration 4 has no stories
+            if (iteration == 4)
+                continue;
+            for (int i = 0; i < iteration; i++) {
+                rows.add(story(id++, "Story, \"" + id + "\"", "ui, backend ,,", String.valueOf(iteration),
+                        "feature", String.valueOf(i % 3)));
+            }
+            if (iteration % 3 == 0)
+                rows.add(story(id++, "Release " + iteration, "", String.valueOf(iteration), "release", ""));
+        }
+        rows.add(story(id++, "Chore", "ops", "8", "", "1"));
+        // icebox
+        for (int i = 0; i < 5; i++) {
+            rows.add(story(id++, "Icebox " + i, "ui", "", "bug", ""));
+        }
+        return rows;
+    }
+
+    private static String[] story(int id, String name, String labels, String iteration, String type, String estimate) {
+        return new String[]{String.valueOf(id), name, labels, iteration, "Feb 01, 2011", "Feb 14, 2011", type,
+                estimate, "accepted", "Jan 03, 2011", "", "", "joe", "jane", "http://pt/" + id};
+    }
+
+    private String write(String name, List<String[]> rows) throws IOException {
+        File f = new File(dir, name);
+        CSVWriter cw = new CSVWriter(FileUtil.createBufferedUtf8Writer(f));
+        cw.writeNext(HEADER);
+        for (String[] row : rows) {
+            cw.writeNext(row);
+        }
+        cw.close();
+        return f.getAbsolutePath();
+    }
+
+    private static List<String[]> read(String file) throws IOException {
+        CSVReader cr = FileUtil.createUtf8CsvReader(new File(file));
+        List<String[]> rows = new ArrayList<String[]>();
+        String[] row;
+        while ((row = cr.readNext()) != null) {
+            rows.add(row);
+        }
+        cr.close();
+        return rows;
+    }
+
+    /**
+     * Parses the file and checks the velocities and releases against the upfront computation
+     */
+    private List<String[]> parseAndCheck(PivotalApi api, String csv) throws IOException {
+        String stories = new File(dir, "stories.csv").getAbsolutePath();
+        String labels = new File(dir, "labels.csv").getAbsolutePath();
+        String labelsToStories = new File(dir, "labelsToStories.csv").getAbsolutePath();
+        api.parse(csv, stories, labels, labelsToStories, new DateTime(2011, 3, 1, 0, 0, 0, 0), 3);
+
+        Map<Integer, String> velocities = new HashMap<Integer, String>();
+        Map<String, String> releases = new HashMap<String, String>();
+        api.computeIterationVelocity(csv, 3, velocities, releases);
+
+        List<String[]> rows = read(stories);
+        List<String> header = Arrays.asList(rows.get(0));
+        int idIdx = header.indexOf("Id");
+        int releaseIdx = header.indexOf("Release");
+        int iterIdx = header.indexOf("Iteration");
+        int velocityIdx = header.indexOf("IterationVelocity");
+        assertEquals(idIdx + 1, releaseIdx);
+        assertEquals(iterIdx + 2, velocityIdx);
+        for (String[] row : rows.subList(1, rows.size())) {
+            String release = releases.get(row[idIdx]);
+            assertEquals((release != null) ? (release) : (""), row[releaseIdx]);
+            if (row[iterIdx].length() > 0)
+                assertEquals(velocities.get(Integer.parseInt(row[iterIdx])), row[velocityIdx]);
+            else
+                assertEquals("0", row[velocityIdx]);
+        }
+
+        assertEquals(4, read(labels).size());
+        List<String[]> ls = read(labelsToStories);
+        // two labels for each feature story, one for the chore and the icebox stories
+        assertEquals(1 + 2 * 32 + 1 + 5, ls.size());
+        return rows;
+    }
+
+    public void testParse() throws IOException {
+        PivotalApi api = new PivotalApi("usr", "psw", "1");
+        String csv = write("pt.csv", createStories());
+        List<String[]> rows = parseAndCheck(api, csv);
+        assertEquals(createStories().size() + 1, rows.size());
+
+        // the spilled stories produce the same output
+        api.setMaxBufferedStories(2);
+        List<String[]> spilled = parseAndCheck(api, csv);
+        assertEquals(rows.size(), spilled.size());
+        for (int i = 0; i < rows.size(); i++) {
+            assertTrue(Arrays.equals(rows.get(i), spilled.get(i)));
+        }
+    }
+
+    public void testParseUnorderedIterations() throws IOException {
+        List<String[]> stories = createStories();
+        Collections.reverse(stories);
+        parseAndCheck(new PivotalApi("usr", "psw", "1"), write("pt.csv", stories));
+    }
+
+    public void testVelocityWindow() {
+        PivotalApi.VelocityWindow w = new PivotalApi.VelocityWindow(2);
+        assertTrue(w.add(1, 3));
+        assertEquals(0.0, w.getVelocity(1));
+        assertTrue(w.add(2, 5));
+        assertEquals(3.0, w.getVelocity(2));
+        assertTrue(w.add(4, 1));
+        // iteration 3 has no stories
+        assertEquals(5.0, w.getVelocity(4));
+        assertTrue(w.add(5, 1));
+        assertEquals(1.0, w.getVelocity(5));
+        assertFalse(w.add(2, 1));
+    }
+}
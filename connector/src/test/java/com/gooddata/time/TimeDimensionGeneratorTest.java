@@ -0,0 +1,58 @@
+/*
+ * Copyright (c) 2009, GoodData Corporation. All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *     * Redistributions of source code must retain the above copyright notice, this list of conditions and
+ *        the following disclaimer.
+ *     * Redistributions in binary form must reproduce the above copyright notice, this list of conditions
+ *        and the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *     * Neither the name of the GoodData Corporation nor the names of its contributors may be used to endorse
+ *        or promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS
+ * OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY
+ * AND FITNESS FOR A PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR
+ * CONTRIBUTORS BE LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL
+ * DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE,
+ * DATA, OR PROFITS; OR BUSINESS INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY,
+ * WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE POSSIBILITY OF SUCH DAMAGE.
+ */
+
+package com.gooddata.time;
+
+import com.gooddata.util.CSVWriter;
+import junit.framework.TestCase;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.text.DecimalFormat;
+
+public class TimeDimensionGeneratorTest extends TestCase {
+
+    /**
+     * The direct formatting must produce the same CSV as the DecimalFormat and CSVWriter did
+     */
+    public void testGenerate() throws IOException {
+        StringWriter expected = new StringWriter();
+        DecimalFormat nf = new DecimalFormat("00");
+        CSVWriter cw = new CSVWriter(expected, ',', '"', '"');
+        cw.writeNext(new String[]{"second_of_day", "second", "minute_of_day", "minute", "hour", "hour12", "am_pm",
+                "time", "time12"});
+        for (int s = 0; s < TimeDimensionGenerator.ROW_COUNT; s++) {
+            int hour = s / 3600;
+            int hour12 = (hour == 12) ? (12) : (hour % 12);
+            cw.writeNext(new String[]{nf.format(s), nf.format(s % 60), nf.format(s / 60), nf.format(s / 60 % 60),
+                    nf.format(hour), nf.format(hour12), (hour < 12) ? ("AM") : ("PM"),
+                    nf.format(hour) + ":" + nf.format(s / 60 % 60) + ":" + nf.format(s % 60),
+                    nf.format(hour12) + ":" + nf.format(s / 60 % 60) + ":" + nf.format(s % 60)});
+        }
+        cw.close();
+
+        StringWriter actual = new StringWriter();
+        new TimeDimensionGenerator().generate(actual);
+        assertEquals(expected.toString(), actual.toString());
+    }
+}
@@ -37,6 +37,7 @@ import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
+import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
@@ -167,7 +168,14 @@ public class WebInterface extends HttpServlet {
             String id = DigestUtils.md5Hex(value);
             templateContent = templateContent.replace("%ID%", id);
             fileName = fileName.replace("%ID%", id);
-            FileUtil.writeStringToFile(templateContent, IN_QUEUE + System.getProperty("file.separator") + fileName);
+            // write under a temporary name first, so the queue worker never picks up an incomplete script
+            File tmp = new File(IN_QUEUE, "." + fileName + ".tmp");
+            FileUtil.writeStringToFile(templateContent, tmp.getAbsolutePath());
+            File script = new File(IN_QUEUE, fileName);
+            if (script.exists() && !script.delete())
+                throw new IOException("Can't replace the queued script " + fileName);
+            if (!tmp.renameTo(script))
+                throw new IOException("Can't queue the script " + fileName);
         } else {
             debug("Parameter EMAIL not supplied.");
             throw new IOException("Parameter EMAIL not supplied.");